@@ -1,63 +1,176 @@
 package amqp;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import io.vertx.core.AbstractVerticle;
-import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.rabbitmq.RabbitMQClient;
 import trucksimulation.Bus;
+import trucksimulation.DropPolicy;
+import trucksimulation.TelemetryDataWriter;
+import trucksimulation.TelemetryEncoder;
+import trucksimulation.TelemetryFanOutVerticle;
+import trucksimulation.TelemetryFormat;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
 
 
 /**
- * Forwards messages to an AMQP queue.
+ * Forwards messages to an AMQP broker, see {@link AmqpPublisher}.
+ *
+ * Without an exchange, all messages are sent to the queue <code>simulation</code>. With an exchange, the queue is
+ * bound to the exchange and messages are routed by truck and simulation: <code>telemetry.&lt;truckId&gt;</code>,
+ * <code>state.&lt;simulationId&gt;.&lt;truckId&gt;</code> and <code>publish</code> for messages sent to
+ * {@link Bus#AMQP_PUB}. The publisher's metrics are published once per second on {@link Bus#AMQP_METRICS}.
  */
 public class AmqpBridgeVerticle extends AbstractVerticle {
 	
 	private static final String QUEUE_NAME = "simulation";
+	private static final String JSON = "application/json";
+	private static final long METRICS_PERIOD_MS = 1000;
 	private static final Logger LOGGER = LoggerFactory.getLogger(AmqpBridgeVerticle.class);
 	private JsonObject amqpConf;
-	private RabbitMQClient client;
+	private RabbitMQConnection connection;
+	private AmqpPublisher publisher;
+	private String exchange;
+	private TelemetryFormat telemetryFormat;
+	/** binary telemetry streams by routing key */
+	private Map<String, TelemetryEncoder> encoders = new HashMap<>();
+	private int keyFrameInterval;
+	private StringBuilder json = new StringBuilder(256);
 
 	
 	@Override
-	public void start() throws Exception {
-		amqpConf = config().getJsonObject("amqp");
-		client = RabbitMQClient.create(vertx, amqpConf);
-		client.start(this::declareQueue);
+	public void start(Future<Void> startFuture) throws Exception {
+		amqpConf = config().getJsonObject("amqp", new JsonObject());
+		telemetryFormat = TelemetryFormat.valueOf(amqpConf.getString("format", "json").toUpperCase());
+		keyFrameInterval = Math.max(1, amqpConf.getInteger("keyFrameInterval", 1));
+		exchange = amqpConf.getString("exchange", "");
+		int channels = Math.max(1, amqpConf.getInteger("channels", 2));
+		if(amqpConf.getLong("maxPending", 100000L) < 1) {
+			startFuture.fail(new IllegalArgumentException("amqp.maxPending must be at least 1"));
+			return;
+		}
+		if("memory".equals(amqpConf.getString("broker", "rabbitmq"))) {
+			InMemoryAmqpBroker broker = new InMemoryAmqpBroker(vertx).setRetain(false);
+			List<AmqpChannel> memoryChannels = new ArrayList<>();
+			for(int i = 0; i < channels; i++) {
+				memoryChannels.add(broker.createChannel());
+			}
+			LOGGER.info("Publishing to an in-memory broker");
+			startPublishing(memoryChannels);
+			startFuture.complete();
+			return;
+		}
+		RabbitMQConnection.open(vertx, amqpConf.getString("uri", "amqp://localhost"), channels,
+				amqpConf.getLong("confirmTimeout", 5000L), exchange, amqpConf.getString("exchangeType", "topic"), QUEUE_NAME, res -> {
+			if(res.succeeded()) {
+				connection = res.result();
+				startPublishing(connection.getChannels());
+				startFuture.complete();
+			} else {
+				LOGGER.error("Could not connect to RabbitMQ Server. Check configuration.", res.cause());
+				startFuture.fail(res.cause());
+			}
+		});
+	}
+	
+	private void startPublishing(List<AmqpChannel> channels) {
+		publisher = new AmqpPublisher(vertx, channels)
+				.setBatchSize(amqpConf.getInteger("batchSize", 100))
+				.setMaxPending(amqpConf.getLong("maxPending", 100000L))
+				.setDropPolicy(DropPolicy.valueOf(amqpConf.getString("dropPolicy", "newest").toUpperCase()))
+				.setRetries(amqpConf.getInteger("retries", 3), amqpConf.getLong("retryDelay", 100L));
+		vertx.eventBus().consumer(Bus.AMQP_PUB.address(), this::publish);
+		vertx.eventBus().consumer(Bus.TRUCK_STATE.address(), this::publishTruckState);
+		if(amqpConf.getBoolean("telemetry", false)) {
+			TelemetryMessageCodec.register(vertx.eventBus());
+			if(TelemetryFanOutVerticle.isBatchOnly(config())) {
+				vertx.eventBus().consumer(Bus.TELEMETRY_DETER_BATCH.address(), (Message<TelemetryBatch> msg) -> {
+					TelemetryBatch batch = msg.body();
+					for(int i = 0; i < batch.size(); i++) {
+						publishTelemetry(batch.get(i));
+					}
+				});
+			} else {
+				vertx.eventBus().consumer(Bus.TELEMETRY_DETER.address(), (Message<TelemetryMessage> msg) -> publishTelemetry(msg.body()));
+			}
+		}
+		long[] last = {0, System.nanoTime()};
+		vertx.setPeriodic(METRICS_PERIOD_MS, t -> {
+			long now = System.nanoTime();
+			long published = publisher.getPublished();
+			double rate = (published - last[0]) * 1e9 / (now - last[1]);
+			last[0] = published;
+			last[1] = now;
+			vertx.eventBus().publish(Bus.AMQP_METRICS.address(), publisher.getMetrics().put("messagesPerSecond", rate));
+		});
+	}
+	
+	@Override
+	public void stop(Future<Void> stopFuture) throws Exception {
+		if(connection == null) {
+			stopFuture.complete();
+			return;
+		}
+		vertx.<Void>executeBlocking(f -> {
+			connection.close();
+			f.complete();
+		}, stopFuture.completer());
 	}
 	
-	private void declareQueue(AsyncResult<Void> startResult) {
-		if(startResult.succeeded()) {
-			client.queueDeclare(QUEUE_NAME, false, false, false, declareResult -> {
-				if(declareResult.succeeded()) {
-					vertx.eventBus().consumer(Bus.AMQP_PUB.address(), this::publish);
-					vertx.eventBus().consumer(Bus.TRUCK_STATE.address(), this::publish);
-				} else {
-					LOGGER.error("Could not declare queue {0}", QUEUE_NAME, declareResult.cause());
-				}
-			});
+	private String routingKey(String key) {
+		return exchange.isEmpty() ? QUEUE_NAME : key;
+	}
+	
+	/**
+	 * Forwards deteriorated telemetry data in the configured format. Binary frames continue the stream of their
+	 * routing key, every <code>keyFrameInterval</code>-th frame of a stream is a key frame.
+	 */
+	private void publishTelemetry(TelemetryMessage telemetry) {
+		String key = routingKey("telemetry." + telemetry.getTruckId());
+		if(telemetryFormat == TelemetryFormat.BINARY) {
+			TelemetryEncoder encoder = encoders.get(key);
+			if(encoder == null) {
+				encoder = new TelemetryEncoder().setKeyFrameInterval(keyFrameInterval);
+				encoders.put(key, encoder);
+			}
+			publisher.publish(new AmqpMessage(exchange, key, TelemetryFormat.BINARY.getContentType(),
+					encoder.encode(telemetry).getBytes()), null);
 		} else {
-			LOGGER.error("Could not connect to RabbitMQ Server. Check configuration.", startResult.cause());
+			json.setLength(0);
+			TelemetryDataWriter.write(telemetry, json);
+			publisher.publish(new AmqpMessage(exchange, key, JSON, json.toString().getBytes(StandardCharsets.UTF_8)), null);
 		}
-
 	}
 	
+	private void publishTruckState(Message<JsonObject> msg) {
+		JsonObject state = msg.body();
+		String key = routingKey("state." + state.getString("simulationId") + "." + state.getString("truckId"));
+		publisher.publish(new AmqpMessage(exchange, key, JSON, state.encode().getBytes(StandardCharsets.UTF_8)), null);
+	}
 	
+	/**
+	 * Publishes messages which are sent to {@link Bus#AMQP_PUB}, the sender receives a reply once the broker has
+	 * confirmed the message.
+	 */
 	private void publish(Message<JsonObject> msg) {
-		JsonObject body = msg.body();
-		JsonObject message = new JsonObject().put("body", body.toString());
-		
-		client.basicPublish("", QUEUE_NAME, message, pubResult -> {
-			if(pubResult.succeeded()) {
-				msg.reply(pubResult.result());
+		byte[] body = msg.body().encode().getBytes(StandardCharsets.UTF_8);
+		publisher.publish(new AmqpMessage(exchange, routingKey("publish"), JSON, body), res -> {
+			if(res.succeeded()) {
+				msg.reply(null);
 			} else {
-				pubResult.cause().printStackTrace();
-				LOGGER.error(pubResult.cause());
-				msg.fail(500, pubResult.cause().getMessage());
+				LOGGER.error("Could not publish message", res.cause());
+				msg.fail(500, res.cause().getMessage());
 			}
-			
-		});		
+		});
 	}
 }
@@ -0,0 +1,28 @@
+package amqp;
+
+import java.util.List;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+
+/**
+ * A channel to a broker on which batches of messages are published with publisher confirms.
+ * The {@link AmqpPublisher} publishes at most one batch at a time on each channel.
+ */
+public interface AmqpChannel {
+
+	/**
+	 * Publishes the messages in the given order.
+	 *
+	 * @param batch
+	 * @param confirmed called on the publisher's context once the broker has confirmed all messages of the batch,
+	 * failed if the broker has rejected a message or the channel failed
+	 */
+	void publish(List<AmqpMessage> batch, Handler<AsyncResult<Void>> confirmed);
+
+	/**
+	 * @return true if the broker doesn't accept messages, e.g. because it is low on memory
+	 */
+	boolean isBlocked();
+
+}
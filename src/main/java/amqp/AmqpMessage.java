@@ -0,0 +1,42 @@
+package amqp;
+
+/**
+ * A message which is published to an exchange with a routing key.
+ */
+public final class AmqpMessage {
+
+	private final String exchange;
+	private final String routingKey;
+	private final String contentType;
+	private final byte[] body;
+
+	/**
+	 * @param exchange name of the exchange, empty for the default exchange
+	 * @param routingKey routing key, the queue name for the default exchange
+	 * @param contentType content type of the body, may be null
+	 * @param body
+	 */
+	public AmqpMessage(String exchange, String routingKey, String contentType, byte[] body) {
+		this.exchange = exchange;
+		this.routingKey = routingKey;
+		this.contentType = contentType;
+		this.body = body;
+	}
+
+	public String getExchange() {
+		return exchange;
+	}
+
+	public String getRoutingKey() {
+		return routingKey;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+}
@@ -0,0 +1,241 @@
+package amqp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.DropPolicy;
+
+/**
+ * Publishes messages in batches on several {@link AmqpChannel}s and waits for the broker's confirms.
+ *
+ * Messages wait in a bounded buffer until a channel is free, a free channel takes up to <code>batchSize</code>
+ * waiting messages at once. Hence batches are small while the broker keeps up and grow when it slows down. Channels
+ * which the broker blocks get no further batches, once more than <code>maxPending</code> messages wait, messages are
+ * dropped according to the {@link DropPolicy}. Rejected batches are retried on the next free channel; the channel
+ * which failed backs off exponentially.
+ *
+ * Messages of different batches may be confirmed out of order if there are several channels. Must be used on a
+ * single event loop.
+ */
+public class AmqpPublisher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AmqpPublisher.class);
+	/** time after which publishing is tried again if all channels are blocked */
+	private static final long BLOCKED_POLL_MS = 100;
+	private static final int MAX_BACKOFF_SHIFT = 10;
+
+	private final Vertx vertx;
+	private final List<AmqpChannel> channels;
+	/** true while a channel publishes a batch or backs off */
+	private final boolean[] busy;
+	private final int[] failures;
+	private final Deque<Entry> pending = new ArrayDeque<>();
+	private long blockedTimer = -1;
+
+	private int batchSize = 100;
+	private long maxPending = 100000;
+	private DropPolicy dropPolicy = DropPolicy.NEWEST;
+	private int retries = 3;
+	private long retryDelayMs = 100;
+
+	private long published = 0;
+	private long failed = 0;
+	private long dropped = 0;
+	private long retried = 0;
+	private long batches = 0;
+	private long batchedMessages = 0;
+	private int inFlight = 0;
+	private long totalConfirmNanos = 0;
+	private long maxConfirmNanos = 0;
+
+	/**
+	 * @param vertx
+	 * @param channels channels on which the messages are published, at least one
+	 */
+	public AmqpPublisher(Vertx vertx, List<AmqpChannel> channels) {
+		if(channels.isEmpty()) {
+			throw new IllegalArgumentException("at least one channel is needed");
+		}
+		this.vertx = vertx;
+		this.channels = new ArrayList<>(channels);
+		this.busy = new boolean[channels.size()];
+		this.failures = new int[channels.size()];
+	}
+
+	/**
+	 * Adds the message to the buffer and publishes it once a channel is free.
+	 *
+	 * @param msg
+	 * @param confirmed called once the broker has confirmed the message, or failed if it has been dropped or rejected; may be null
+	 */
+	public void publish(AmqpMessage msg, Handler<AsyncResult<Void>> confirmed) {
+		if(pending.size() >= maxPending) {
+			if(dropPolicy == DropPolicy.NEWEST) {
+				drop(new Entry(msg, confirmed));
+				return;
+			}
+			drop(pending.poll());
+		}
+		pending.offer(new Entry(msg, confirmed));
+		dispatch();
+	}
+
+	private void drop(Entry entry) {
+		dropped++;
+		if(entry.confirmed != null) {
+			entry.confirmed.handle(Future.failedFuture("dropped, too many messages are pending"));
+		}
+	}
+
+	private void dispatch() {
+		boolean idle = true;
+		for(int i = 0; i < channels.size(); i++) {
+			if(!busy[i] && !pending.isEmpty() && !channels.get(i).isBlocked()) {
+				publishBatch(i);
+			}
+			idle &= !busy[i];
+		}
+		if(idle && !pending.isEmpty() && blockedTimer == -1) {
+			// all channels are blocked
+			blockedTimer = vertx.setTimer(BLOCKED_POLL_MS, t -> {
+				blockedTimer = -1;
+				dispatch();
+			});
+		}
+	}
+
+	private void publishBatch(int channel) {
+		List<Entry> entries = new ArrayList<>(Math.min(batchSize, pending.size()));
+		List<AmqpMessage> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+		while(entries.size() < batchSize && !pending.isEmpty()) {
+			Entry entry = pending.poll();
+			entries.add(entry);
+			batch.add(entry.msg);
+		}
+		busy[channel] = true;
+		inFlight++;
+		batches++;
+		batchedMessages += batch.size();
+		long start = System.nanoTime();
+		channels.get(channel).publish(batch, res -> {
+			inFlight--;
+			if(res.succeeded()) {
+				long confirmNanos = System.nanoTime() - start;
+				totalConfirmNanos += confirmNanos;
+				maxConfirmNanos = Math.max(maxConfirmNanos, confirmNanos);
+				published += entries.size();
+				failures[channel] = 0;
+				busy[channel] = false;
+				for(Entry entry : entries) {
+					if(entry.confirmed != null) {
+						entry.confirmed.handle(Future.succeededFuture());
+					}
+				}
+			} else {
+				LOGGER.warn("broker did not confirm {0} messages: {1}", entries.size(), res.cause().toString());
+				// retried messages are published before the messages which arrived in the meantime
+				for(int i = entries.size() - 1; i >= 0; i--) {
+					Entry entry = entries.get(i);
+					if(entry.attempt < retries) {
+						entry.attempt++;
+						retried++;
+						pending.addFirst(entry);
+					} else {
+						failed++;
+						if(entry.confirmed != null) {
+							entry.confirmed.handle(Future.failedFuture(res.cause()));
+						}
+					}
+				}
+				long backoff = retryDelayMs << Math.min(failures[channel]++, MAX_BACKOFF_SHIFT);
+				vertx.setTimer(Math.max(1, backoff), t -> {
+					busy[channel] = false;
+					dispatch();
+				});
+			}
+			dispatch();
+		});
+	}
+
+	/**
+	 * @return message and batch counters, the confirm latency and the number of blocked channels
+	 */
+	public JsonObject getMetrics() {
+		int blocked = 0;
+		for(AmqpChannel channel : channels) {
+			blocked += channel.isBlocked() ? 1 : 0;
+		}
+		return new JsonObject()
+				.put("published", published)
+				.put("failed", failed)
+				.put("dropped", dropped)
+				.put("retries", retried)
+				.put("pending", pending.size())
+				.put("inFlightBatches", inFlight)
+				.put("batches", batches)
+				.put("avgBatchSize", batches > 0 ? (double) batchedMessages / batches : 0.0)
+				.put("avgConfirmMs", batches > 0 ? totalConfirmNanos / 1000000.0 / batches : 0.0)
+				.put("maxConfirmMs", maxConfirmNanos / 1000000.0)
+				.put("channels", channels.size())
+				.put("blockedChannels", blocked);
+	}
+
+	/**
+	 * @return number of messages which have been confirmed by the broker
+	 */
+	public long getPublished() {
+		return published;
+	}
+
+	public AmqpPublisher setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+		return this;
+	}
+
+	/**
+	 * @param maxPending maximum number of messages which wait for a channel, at least 1
+	 */
+	public AmqpPublisher setMaxPending(long maxPending) {
+		if(maxPending < 1) {
+			throw new IllegalArgumentException("maxPending must be at least 1");
+		}
+		this.maxPending = maxPending;
+		return this;
+	}
+
+	public AmqpPublisher setDropPolicy(DropPolicy dropPolicy) {
+		this.dropPolicy = dropPolicy;
+		return this;
+	}
+
+	/**
+	 * @param retries number of times a rejected message is published again
+	 * @param retryDelayMs time for which a channel backs off after its first failure, doubled for each further failure
+	 */
+	public AmqpPublisher setRetries(int retries, long retryDelayMs) {
+		this.retries = retries;
+		this.retryDelayMs = retryDelayMs;
+		return this;
+	}
+
+	private static class Entry {
+		final AmqpMessage msg;
+		final Handler<AsyncResult<Void>> confirmed;
+		int attempt = 0;
+
+		Entry(AmqpMessage msg, Handler<AsyncResult<Void>> confirmed) {
+			this.msg = msg;
+			this.confirmed = confirmed;
+		}
+	}
+
+}
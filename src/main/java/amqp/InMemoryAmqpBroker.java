@@ -0,0 +1,104 @@
+package amqp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * Broker stand-in which keeps all published messages in memory, for tests and for runs without a RabbitMQ server.
+ * Confirms can be delayed, a share of the batches can be rejected and publishing can be blocked like a broker which
+ * runs low on memory.
+ */
+public class InMemoryAmqpBroker {
+
+	private final Vertx vertx;
+	private final List<AmqpMessage> messages = new ArrayList<>();
+	private volatile long latencyMs = 0;
+	private volatile double nackRate = 0;
+	private volatile boolean blocked = false;
+	private Random random = new Random();
+	private boolean retain = true;
+
+	public InMemoryAmqpBroker(Vertx vertx) {
+		this.vertx = vertx;
+	}
+
+	/**
+	 * @return a new channel to this broker
+	 */
+	public AmqpChannel createChannel() {
+		return new AmqpChannel() {
+			@Override
+			public void publish(List<AmqpMessage> batch, Handler<AsyncResult<Void>> confirmed) {
+				if(latencyMs > 0) {
+					vertx.setTimer(latencyMs, t -> confirm(batch, confirmed));
+				} else {
+					vertx.runOnContext(v -> confirm(batch, confirmed));
+				}
+			}
+
+			@Override
+			public boolean isBlocked() {
+				return blocked;
+			}
+		};
+	}
+
+	private void confirm(List<AmqpMessage> batch, Handler<AsyncResult<Void>> confirmed) {
+		boolean nack;
+		synchronized(this) {
+			nack = nackRate > 0 && random.nextDouble() < nackRate;
+			if(!nack && retain) {
+				messages.addAll(batch);
+			}
+		}
+		confirmed.handle(nack ? Future.failedFuture("nack") : Future.succeededFuture());
+	}
+
+	/**
+	 * @return all messages which have been confirmed, in the order in which they have been confirmed
+	 */
+	public synchronized List<AmqpMessage> getMessages() {
+		return new ArrayList<>(messages);
+	}
+
+	/**
+	 * @param latencyMs time after which a batch is confirmed
+	 */
+	public InMemoryAmqpBroker setLatency(long latencyMs) {
+		this.latencyMs = latencyMs;
+		return this;
+	}
+
+	/**
+	 * @param nackRate share of the batches which are rejected, between 0 and 1
+	 * @param seed seed of the random numbers which decide which batches are rejected
+	 */
+	public synchronized InMemoryAmqpBroker setNackRate(double nackRate, long seed) {
+		this.nackRate = nackRate;
+		this.random = new Random(seed);
+		return this;
+	}
+
+	/**
+	 * @param blocked true if channels should report that the broker doesn't accept messages
+	 */
+	public InMemoryAmqpBroker setBlocked(boolean blocked) {
+		this.blocked = blocked;
+		return this;
+	}
+
+	/**
+	 * @param retain false to only confirm messages without keeping them, e.g. for load tests
+	 */
+	public synchronized InMemoryAmqpBroker setRetain(boolean retain) {
+		this.retain = retain;
+		return this;
+	}
+
+}
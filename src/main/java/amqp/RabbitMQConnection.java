@@ -0,0 +1,160 @@
+package amqp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Connection to a RabbitMQ broker with several channels in confirm mode.
+ *
+ * The RabbitMQ java client blocks while it publishes, waits for confirms or the broker has blocked the connection,
+ * hence each channel publishes on a thread of a worker pool with one thread per channel.
+ */
+public class RabbitMQConnection {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RabbitMQConnection.class);
+
+	private final Connection connection;
+	private final WorkerExecutor executor;
+	private final List<AmqpChannel> channels = new ArrayList<>();
+	private volatile boolean blocked = false;
+
+	private RabbitMQConnection(Vertx vertx, Connection connection, int channelCount, long confirmTimeoutMs) throws IOException {
+		this.connection = connection;
+		this.executor = vertx.createSharedWorkerExecutor("amqp-publisher-" + System.identityHashCode(this), channelCount);
+		connection.addBlockedListener(new BlockedListener() {
+			@Override
+			public void handleBlocked(String reason) {
+				LOGGER.warn("broker has blocked publishing: {0}", reason);
+				blocked = true;
+			}
+
+			@Override
+			public void handleUnblocked() {
+				LOGGER.info("broker has unblocked publishing");
+				blocked = false;
+			}
+		});
+		for(int i = 0; i < channelCount; i++) {
+			channels.add(new ConfirmChannel(confirmTimeoutMs));
+		}
+	}
+
+	/**
+	 * Connects to the broker, declares the queue and, if given, the exchange to which the queue is bound with all
+	 * routing keys, and opens the channels.
+	 *
+	 * @param vertx
+	 * @param uri amqp uri of the broker
+	 * @param channelCount number of channels
+	 * @param confirmTimeoutMs time in ms after which unconfirmed messages are considered failed
+	 * @param exchange name of the exchange, empty to use the default exchange
+	 * @param exchangeType type of the exchange, e.g. topic or fanout
+	 * @param queue name of the queue
+	 * @param handler
+	 */
+	public static void open(Vertx vertx, String uri, int channelCount, long confirmTimeoutMs, String exchange, String exchangeType,
+			String queue, Handler<AsyncResult<RabbitMQConnection>> handler) {
+		vertx.<RabbitMQConnection>executeBlocking(f -> {
+			try {
+				ConnectionFactory factory = new ConnectionFactory();
+				factory.setUri(uri);
+				factory.setAutomaticRecoveryEnabled(true);
+				Connection connection = factory.newConnection();
+				Channel channel = connection.createChannel();
+				channel.queueDeclare(queue, false, false, false, null);
+				if(!exchange.isEmpty()) {
+					channel.exchangeDeclare(exchange, exchangeType, false);
+					channel.queueBind(queue, exchange, "#");
+				}
+				channel.close();
+				f.complete(new RabbitMQConnection(vertx, connection, channelCount, confirmTimeoutMs));
+			} catch(Exception e) {
+				f.fail(e);
+			}
+		}, handler);
+	}
+
+	/**
+	 * @return the channels in confirm mode
+	 */
+	public List<AmqpChannel> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Closes the connection and all channels, blocks until the broker has acknowledged.
+	 */
+	public void close() {
+		executor.close();
+		try {
+			connection.close();
+		} catch(IOException e) {
+			LOGGER.warn("could not close connection", e);
+		}
+	}
+
+	private class ConfirmChannel implements AmqpChannel {
+
+		private final long confirmTimeoutMs;
+		/** only used by the worker thread which publishes the current batch */
+		private Channel channel;
+
+		ConfirmChannel(long confirmTimeoutMs) throws IOException {
+			this.confirmTimeoutMs = confirmTimeoutMs;
+			open();
+		}
+
+		private void open() throws IOException {
+			channel = connection.createChannel();
+			channel.confirmSelect();
+		}
+
+		@Override
+		public void publish(List<AmqpMessage> batch, Handler<AsyncResult<Void>> confirmed) {
+			executor.<Void>executeBlocking(f -> {
+				try {
+					if(!channel.isOpen()) {
+						open();
+					}
+					for(AmqpMessage msg : batch) {
+						AMQP.BasicProperties props = new AMQP.BasicProperties.Builder().contentType(msg.getContentType()).build();
+						channel.basicPublish(msg.getExchange(), msg.getRoutingKey(), props, msg.getBody());
+					}
+					if(channel.waitForConfirms(confirmTimeoutMs)) {
+						f.complete();
+					} else {
+						f.fail("broker rejected messages");
+					}
+				} catch(IOException | TimeoutException | RuntimeException e) {
+					f.fail(e);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					f.fail(e);
+				}
+			}, false, confirmed);
+		}
+
+		@Override
+		public boolean isBlocked() {
+			return blocked;
+		}
+	}
+
+}
@@ -5,11 +5,24 @@ public enum Bus {
 	STOP_SIMULATION("simulation.stop"),
 	SIMULATION_STATUS("simulation.status"),
 	SIMULATION_ENDED("simulation.ended"),
+	SIMULATION_METRICS("simulation.metrics"),
+	RECEIVER_METRICS("receiver.metrics"),
+	START_SHARD("simulation.shard.start"),
 	TRUCK_STATE("truck.state"),
 	BOX_MSG_DETER("truck.box.deteriorated"),
 	BOX_MSG("truck.box"),
+	TELEMETRY_DETER("truck.telemetry.deteriorated"),
+	TELEMETRY("truck.telemetry"),
+	TELEMETRY_DETER_BATCH("truck.telemetry.deteriorated.batch"),
+	TELEMETRY_BATCH("truck.telemetry.batch"),
+	BOX_MSG_DETER_BATCH("truck.box.deteriorated.batch"),
+	BOX_MSG_BATCH("truck.box.batch"),
+	VIEWPORT_SUBSCRIBE("viewport.subscribe"),
+	VIEWPORT_UNSUBSCRIBE("viewport.unsubscribe"),
+	VIEWPORT("truck.viewport"),
 	CALC_ROUTE("route.calculate"),
 	AMQP_PUB("amqp.publish"),
+	AMQP_METRICS("amqp.metrics"),
 	CITY_SAMPLE("cities.sample");
 	
 	private String address;
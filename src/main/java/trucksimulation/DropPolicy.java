@@ -0,0 +1,19 @@
+package trucksimulation;
+
+/**
+ * Which messages a sink drops when its bounded buffer is full, i.e. when its receiver can't keep up.
+ * Dropped messages are counted in the sink's metrics.
+ */
+public enum DropPolicy {
+
+	/**
+	 * Messages which arrive while the buffer is full are dropped, the buffered messages are sent.
+	 */
+	NEWEST,
+
+	/**
+	 * The messages which have been waiting the longest are dropped to make room for new messages.
+	 */
+	OLDEST
+
+}
@@ -10,14 +10,19 @@ import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
 
 /**
- * Listens on the eventbus for messages from trucks and forwards them to a http server.
- *
+ * Listens on the eventbus for messages from trucks and forwards them to a http server, see {@link HttpTelemetrySink}.
+ * The sink's metrics are published once per second on {@link Bus#RECEIVER_METRICS}.
  */
 public class HttpNotificationVerticle extends AbstractVerticle {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(HttpNotificationVerticle.class);
+	private static final long METRICS_PERIOD_MS = 1000;
+	
+	private HttpTelemetrySink sink;
 
 	@Override
 	public void start() throws Exception {
@@ -30,19 +35,45 @@ public class HttpNotificationVerticle extends AbstractVerticle {
 	}
 
 	private void registerBoxMessageListener() throws MalformedURLException {
-		URL url = new URL(config().getJsonObject("simulation", new JsonObject()).getString("receiverUrl"));
+		JsonObject simConf = config().getJsonObject("simulation", new JsonObject());
+		URL url = new URL(simConf.getString("receiverUrl"));
 		String host = url.getHost();
 		int port = url.getPort();
 		String path = url.getPath();
 		
-		HttpClientOptions opts = new HttpClientOptions().setDefaultHost(host).setDefaultPort(port).setConnectTimeout(500);
+		TelemetryFormat format = TelemetryFormat.valueOf(simConf.getString("receiverFormat", "json").toUpperCase());
+		int maxInFlight = simConf.getInteger("receiverMaxInFlight", 64);
+		
+		HttpClientOptions opts = new HttpClientOptions().setDefaultHost(host).setDefaultPort(port).setConnectTimeout(500)
+				.setKeepAlive(true).setMaxPoolSize(maxInFlight).setPipelining(simConf.getBoolean("receiverPipelining", false));
 		HttpClient client = vertx.createHttpClient(opts);
-		vertx.eventBus().consumer(Bus.BOX_MSG_DETER.address(), (Message<JsonObject> msg) -> {
-			client.post(path, response -> {
-				LOGGER.trace("notified " + url.toString());
-			}).putHeader("content-type", "application/json").end(msg.body().toString());
-
+		sink = new HttpTelemetrySink(vertx, client, path, format)
+				.setBatchSize(simConf.getInteger("receiverBatchSize", 1))
+				.setBatchMs(simConf.getLong("receiverBatchMs", 0L))
+				.setMaxInFlight(maxInFlight)
+				.setMaxPending(simConf.getLong("receiverMaxPending", 10000L))
+				.setDropPolicy(DropPolicy.valueOf(simConf.getString("receiverDropPolicy", "newest").toUpperCase()))
+				.setRetries(simConf.getInteger("receiverRetries", 3), simConf.getLong("receiverRetryDelay", 100L))
+				.setTimeoutMs(simConf.getLong("receiverTimeout", 5000L))
+				.setKeyFrameInterval(simConf.getInteger("receiverKeyFrameInterval", 1))
+				.setCompression(HttpTelemetrySink.Compression.valueOf(simConf.getString("receiverCompression", "none").toUpperCase()),
+						simConf.getInteger("receiverCompressionLevel", -1));
+		TelemetryMessageCodec.register(vertx.eventBus());
+		if(TelemetryFanOutVerticle.isBatchOnly(config())) {
+			vertx.eventBus().consumer(Bus.TELEMETRY_DETER_BATCH.address(), (Message<TelemetryBatch> msg) -> sink.send(msg.body()));
+		} else {
+			vertx.eventBus().consumer(Bus.TELEMETRY_DETER.address(), (Message<TelemetryMessage> msg) -> sink.send(msg.body()));
+		}
+		vertx.setPeriodic(METRICS_PERIOD_MS, t -> {
+			vertx.eventBus().publish(Bus.RECEIVER_METRICS.address(), sink.getMetrics().put("url", url.toString()));
 		});
 	}
+	
+	@Override
+	public void stop() throws Exception {
+		if(sink != null) {
+			sink.flush();
+		}
+	}
 
 }
@@ -0,0 +1,420 @@
+package trucksimulation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Posts telemetry messages to an http receiver, collecting several messages into one request.
+ *
+ * A request is sent once a batch holds <code>batchSize</code> messages or its first message is <code>batchMs</code>
+ * old. At most <code>maxInFlight</code> requests are sent at the same time, further batches wait until a request has
+ * finished. If more than <code>maxPending</code> messages wait, either the newest or the oldest waiting messages are
+ * dropped, so that a slow receiver cannot fill the heap. Requests which fail or are answered with a server error or
+ * 429 are retried with exponential backoff, a request keeps its slot while it waits for the retry.
+ *
+ * Request bodies may be compressed with gzip or deflate. Compression is done on worker threads, as compressing a
+ * large batch would block the event loop for milliseconds.
+ *
+ * Binary bodies are frames of one stream, encoded in the order in which the requests are started. Every
+ * <code>keyFrameInterval</code>-th frame is a key frame; larger intervals make the bodies smaller, but a receiver which
+ * gets the requests out of order or misses one cannot decode the bodies up to the next key frame.
+ *
+ * Must be used on the event loop of the http client.
+ */
+public class HttpTelemetrySink {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HttpTelemetrySink.class);
+
+	/**
+	 * Content encoding of the request bodies.
+	 */
+	public enum Compression {
+		NONE(null),
+		GZIP("gzip"),
+		/** zlib format, as specified for the deflate content encoding */
+		DEFLATE("deflate");
+
+		private final String encoding;
+
+		Compression(String encoding) {
+			this.encoding = encoding;
+		}
+
+		public String getEncoding() {
+			return encoding;
+		}
+
+		/**
+		 * @param body
+		 * @param level compression level from 1 (fastest) to 9 (smallest)
+		 * @return the compressed body
+		 */
+		public Buffer compress(Buffer body, int level) {
+			if(this == NONE) {
+				return body;
+			}
+			Deflater deflater = new Deflater(level, this == GZIP);
+			try {
+				byte[] input = body.getBytes();
+				Buffer out = Buffer.buffer(input.length / 4 + 64);
+				if(this == GZIP) {
+					out.appendBytes(GZIP_HEADER);
+				}
+				deflater.setInput(input);
+				deflater.finish();
+				byte[] chunk = new byte[8192];
+				while(!deflater.finished()) {
+					int n = deflater.deflate(chunk);
+					out.appendBytes(chunk, 0, n);
+				}
+				if(this == GZIP) {
+					CRC32 crc = new CRC32();
+					crc.update(input);
+					out.appendIntLE((int) crc.getValue()).appendIntLE(input.length);
+				}
+				return out;
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	/** gzip member header without name, time and flags */
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final Vertx vertx;
+	private final HttpClient client;
+	private final String path;
+	private final TelemetryFormat format;
+	private final TelemetryEncoder encoder = new TelemetryEncoder();
+	private final StringBuilder json = new StringBuilder(256);
+
+	private int batchSize = 1;
+	private long batchMs = 0;
+	private int maxInFlight = 64;
+	private long maxPending = 10000;
+	private DropPolicy dropPolicy = DropPolicy.NEWEST;
+	private int retries = 3;
+	private long retryDelayMs = 100;
+	private long timeoutMs = 5000;
+	private Compression compression = Compression.NONE;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	private List<TelemetryMessage> batch = new ArrayList<>();
+	private long batchTimer = -1;
+	private final Deque<List<TelemetryMessage>> waiting = new ArrayDeque<>();
+	private long waitingMessages = 0;
+	private int inFlight = 0;
+
+	private long requests = 0;
+	private long sentMessages = 0;
+	private long failedMessages = 0;
+	private long droppedMessages = 0;
+	private long retried = 0;
+	private long totalLatencyNanos = 0;
+	private long lastLatencyNanos = 0;
+	private long maxLatencyNanos = 0;
+	private long uncompressedBytes = 0;
+	private long bytes = 0;
+	private long compressed = 0;
+	private long totalCompressNanos = 0;
+
+	/**
+	 * @param vertx
+	 * @param client client with the receiver as default host and port
+	 * @param path path to which the messages are posted
+	 * @param format format of the request bodies
+	 */
+	public HttpTelemetrySink(Vertx vertx, HttpClient client, String path, TelemetryFormat format) {
+		this.vertx = vertx;
+		this.client = client;
+		this.path = path;
+		this.format = format;
+		encoder.setKeyFrameInterval(1);
+	}
+
+	/**
+	 * Adds the message to the current batch, sends the batch if it is full.
+	 *
+	 * @param msg
+	 */
+	public void send(TelemetryMessage msg) {
+		batch.add(msg);
+		if(batch.size() >= batchSize) {
+			flush();
+		} else if(batchTimer == -1 && batchMs > 0) {
+			batchTimer = vertx.setTimer(batchMs, t -> {
+				batchTimer = -1;
+				flush();
+			});
+		}
+	}
+
+	/**
+	 * Adds the messages of an envelope to the current batch, sends the batch whenever it is full.
+	 *
+	 * @param envelope
+	 */
+	public void send(TelemetryBatch envelope) {
+		for(int i = 0; i < envelope.size(); i++) {
+			send(envelope.get(i));
+		}
+	}
+
+	/**
+	 * Sends the current batch, or queues it if too many requests are in flight.
+	 */
+	public void flush() {
+		if(batchTimer != -1) {
+			vertx.cancelTimer(batchTimer);
+			batchTimer = -1;
+		}
+		if(batch.isEmpty()) {
+			return;
+		}
+		List<TelemetryMessage> full = batch;
+		batch = new ArrayList<>(Math.min(batchSize, 1024));
+		if(inFlight < maxInFlight) {
+			start(full);
+			return;
+		}
+		if(waitingMessages + full.size() > maxPending) {
+			if(dropPolicy == DropPolicy.NEWEST) {
+				droppedMessages += full.size();
+				return;
+			}
+			while(!waiting.isEmpty() && waitingMessages + full.size() > maxPending) {
+				List<TelemetryMessage> oldest = waiting.poll();
+				waitingMessages -= oldest.size();
+				droppedMessages += oldest.size();
+			}
+		}
+		waiting.offer(full);
+		waitingMessages += full.size();
+	}
+
+	/**
+	 * Takes a request slot and posts the messages, once they have been compressed on a worker thread.
+	 */
+	private void start(List<TelemetryMessage> messages) {
+		inFlight++;
+		Buffer body = encode(messages);
+		uncompressedBytes += body.length();
+		if(compression == Compression.NONE) {
+			post(messages, body, 0);
+			return;
+		}
+		long[] compressNanos = {0};
+		vertx.<Buffer>executeBlocking(f -> {
+			long start = System.nanoTime();
+			Buffer compressed = compression.compress(body, compressionLevel);
+			compressNanos[0] = System.nanoTime() - start;
+			f.complete(compressed);
+		}, false, res -> {
+			if(res.failed()) {
+				finished(messages, false, res.cause().toString());
+				return;
+			}
+			compressed++;
+			totalCompressNanos += compressNanos[0];
+			post(messages, res.result(), 0);
+		});
+	}
+
+	private void post(List<TelemetryMessage> messages, Buffer body, int attempt) {
+		long start = System.nanoTime();
+		// the exception handler may be called after a response, e.g. if the connection is closed
+		boolean[] done = {false};
+		HttpClientRequest request = client.post(path, response -> {
+			if(done[0]) {
+				return;
+			}
+			done[0] = true;
+			int status = response.statusCode();
+			if(status >= 200 && status < 300) {
+				succeeded(messages, System.nanoTime() - start);
+			} else if(status >= 500 || status == 429) {
+				failed(messages, body, attempt, "status " + status);
+			} else {
+				// the receiver won't accept the messages on a retry either
+				finished(messages, false, "status " + status);
+			}
+		});
+		request.exceptionHandler(e -> {
+			if(!done[0]) {
+				done[0] = true;
+				failed(messages, body, attempt, e.toString());
+			}
+		});
+		request.setTimeout(timeoutMs).putHeader("content-type", format.getContentType());
+		if(compression != Compression.NONE) {
+			request.putHeader("content-encoding", compression.getEncoding());
+		}
+		if(attempt == 0) {
+			bytes += body.length();
+		}
+		request.end(body);
+	}
+
+	private void succeeded(List<TelemetryMessage> messages, long latencyNanos) {
+		requests++;
+		sentMessages += messages.size();
+		lastLatencyNanos = latencyNanos;
+		totalLatencyNanos += latencyNanos;
+		maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+		LOGGER.trace("posted {0} messages to {1}", messages.size(), path);
+		finished(messages, true, null);
+	}
+
+	private void failed(List<TelemetryMessage> messages, Buffer body, int attempt, String reason) {
+		if(attempt < retries) {
+			retried++;
+			vertx.setTimer(retryDelayMs << attempt, t -> post(messages, body, attempt + 1));
+		} else {
+			finished(messages, false, reason);
+		}
+	}
+
+	private void finished(List<TelemetryMessage> messages, boolean success, String reason) {
+		if(!success) {
+			failedMessages += messages.size();
+			LOGGER.warn("could not post {0} messages to {1}: {2}", messages.size(), path, reason);
+		}
+		inFlight--;
+		while(inFlight < maxInFlight && !waiting.isEmpty()) {
+			List<TelemetryMessage> next = waiting.poll();
+			waitingMessages -= next.size();
+			start(next);
+		}
+	}
+
+	private Buffer encode(List<TelemetryMessage> messages) {
+		switch(format) {
+		case BINARY:
+			return encoder.encode(messages);
+		case NDJSON:
+			json.setLength(0);
+			for(TelemetryMessage msg : messages) {
+				TelemetryDataWriter.write(msg, json);
+				json.append('\n');
+			}
+			return Buffer.buffer(json.toString());
+		default:
+			json.setLength(0);
+			if(batchSize == 1) {
+				// single messages are posted as json objects, as they always have been
+				TelemetryDataWriter.write(messages.get(0), json);
+			} else {
+				json.append('[');
+				for(int i = 0; i < messages.size(); i++) {
+					if(i > 0) {
+						json.append(',');
+					}
+					TelemetryDataWriter.write(messages.get(i), json);
+				}
+				json.append(']');
+			}
+			return Buffer.buffer(json.toString());
+		}
+	}
+
+	/**
+	 * @return request and message counters, the average batch size and the latency of successful requests
+	 */
+	public JsonObject getMetrics() {
+		return new JsonObject()
+				.put("requests", requests)
+				.put("sentMessages", sentMessages)
+				.put("failedMessages", failedMessages)
+				.put("droppedMessages", droppedMessages)
+				.put("retries", retried)
+				.put("inFlight", inFlight)
+				.put("pendingMessages", waitingMessages + batch.size())
+				.put("avgBatchSize", requests > 0 ? (double) sentMessages / requests : 0.0)
+				.put("lastLatencyMs", lastLatencyNanos / 1000000.0)
+				.put("avgLatencyMs", requests > 0 ? totalLatencyNanos / 1000000.0 / requests : 0.0)
+				.put("maxLatencyMs", maxLatencyNanos / 1000000.0)
+				.put("uncompressedBytes", uncompressedBytes)
+				.put("bytes", bytes)
+				.put("avgCompressMs", compressed > 0 ? totalCompressNanos / 1000000.0 / compressed : 0.0);
+	}
+
+	public HttpTelemetrySink setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+		return this;
+	}
+
+	/**
+	 * @param batchMs time in ms after which an incomplete batch is sent, 0 to wait until it is full
+	 */
+	public HttpTelemetrySink setBatchMs(long batchMs) {
+		this.batchMs = batchMs;
+		return this;
+	}
+
+	public HttpTelemetrySink setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+		return this;
+	}
+
+	/**
+	 * @param maxPending maximum number of messages which wait for a request slot
+	 */
+	public HttpTelemetrySink setMaxPending(long maxPending) {
+		this.maxPending = maxPending;
+		return this;
+	}
+
+	public HttpTelemetrySink setDropPolicy(DropPolicy dropPolicy) {
+		this.dropPolicy = dropPolicy;
+		return this;
+	}
+
+	/**
+	 * @param retries number of retries of a failed request
+	 * @param retryDelayMs delay of the first retry, doubled for each further retry
+	 */
+	public HttpTelemetrySink setRetries(int retries, long retryDelayMs) {
+		this.retries = retries;
+		this.retryDelayMs = retryDelayMs;
+		return this;
+	}
+
+	/**
+	 * @param compression content encoding of the request bodies
+	 * @param level compression level from 1 (fastest) to 9 (smallest), -1 for the default level
+	 */
+	public HttpTelemetrySink setCompression(Compression compression, int level) {
+		this.compression = compression;
+		this.compressionLevel = level;
+		return this;
+	}
+
+	/**
+	 * @param frames number of binary frames from one key frame to the next, 1 (default) makes each body a key frame
+	 */
+	public HttpTelemetrySink setKeyFrameInterval(int frames) {
+		encoder.setKeyFrameInterval(Math.max(1, frames));
+		return this;
+	}
+
+	public HttpTelemetrySink setTimeoutMs(long timeoutMs) {
+		this.timeoutMs = timeoutMs;
+		return this;
+	}
+
+}
@@ -0,0 +1,36 @@
+package trucksimulation;
+
+/**
+ * How a simulation sheds load when its ticks can't keep up with the tick interval, i.e. when a tick
+ * starts at least one interval later than scheduled. Every dropped message, dropped tick and coarsened
+ * step is counted and published on {@link Bus#SIMULATION_METRICS}.
+ *
+ * Policies only apply to simulations driven by the timer, batch simulations never fall behind.
+ */
+public enum OverrunPolicy {
+
+	/**
+	 * Late ticks are run as usual. The timer fires late ticks back to back, so the event loop stays
+	 * busy until the simulation has caught up.
+	 */
+	NONE,
+
+	/**
+	 * The trucks are moved by several steps at once, so that simulated time keeps up with wall-clock time.
+	 * The timer ticks which are covered by such a coarse step are dropped, box data is published once per
+	 * coarse step.
+	 */
+	COARSEN,
+
+	/**
+	 * Late ticks move the trucks as usual but don't publish any box data.
+	 */
+	SKIP_PUBLISH,
+
+	/**
+	 * Late ticks are dropped without moving the trucks, simulated time runs slower than wall-clock time
+	 * until the simulation keeps up again.
+	 */
+	SLOW_CLOCK
+
+}
@@ -12,21 +12,37 @@ import trucksimulation.routing.RouteSegmentAdapter;
 import trucksimulation.routing.RouteSegmentArrayAdapter;
 import trucksimulation.traffic.LocalDateTimeAdapter;
 
-public interface Serializer {
-	
-	static Gson get() {
-		GsonBuilder builder = new GsonBuilder();
-		builder.registerTypeAdapter(RouteSegment.class, new RouteSegmentAdapter());
-		builder.registerTypeAdapter(RouteSegment[].class, new RouteSegmentArrayAdapter());
-		builder.registerTypeAdapter(Position.class, new PositionAdapter());
-		builder.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter());
-		Gson gson = builder.create();
-		return gson;
+/**
+ * Shared serialization setup of the simulation.
+ *
+ * {@link #get()} returns a single preconfigured Gson instance with all type adapters registered,
+ * Gson instances are thread-safe and can be shared by all verticles. Telemetry data, which is serialized
+ * for every truck in every tick, is written by the hand-written {@link TelemetryDataWriter} instead.
+ */
+public final class Serializer {
+
+	private static final Gson GSON = getBuilder()
+			.registerTypeAdapter(RouteSegment.class, new RouteSegmentAdapter())
+			.registerTypeAdapter(RouteSegment[].class, new RouteSegmentArrayAdapter())
+			.registerTypeAdapter(Position.class, new PositionAdapter())
+			.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+			.create();
+
+	private Serializer() {
 	}
-	
-	static GsonBuilder getBuilder() {
-		GsonBuilder builder = new GsonBuilder();
-		return builder;
+
+	/**
+	 * @return the shared Gson instance with all adapters of the simulation
+	 */
+	public static Gson get() {
+		return GSON;
+	}
+
+	/**
+	 * @return a new builder without any adapters
+	 */
+	public static GsonBuilder getBuilder() {
+		return new GsonBuilder();
 	}
 
 }
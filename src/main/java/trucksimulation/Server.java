@@ -1,6 +1,7 @@
 package trucksimulation;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -9,10 +10,15 @@ import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.StaticHandler;
+import io.vertx.ext.web.handler.sockjs.BridgeEvent;
+import io.vertx.ext.web.handler.sockjs.BridgeEventType;
 import io.vertx.ext.web.handler.sockjs.BridgeOptions;
 import io.vertx.ext.web.handler.sockjs.PermittedOptions;
 import io.vertx.ext.web.handler.sockjs.SockJSHandler;
 import trucksimulation.traffic.TrafficManager;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+import trucksimulation.viewport.ViewportStreamer;
 
 public class Server extends AbstractVerticle {
 	
@@ -20,26 +26,87 @@ public class Server extends AbstractVerticle {
 	private static final String TRUCKS_COLLECTION = "trucks";
 	private static final String ROUTES_COLLECTION = "routes";
 	private MongoClient mongo;
+	private ViewportStreamer viewports;
 	private static final Logger LOGGER = LoggerFactory.getLogger(Server.class);
 
 	@Override
 	public void start() throws Exception {
 		mongo = MongoClient.createShared(vertx, config().getJsonObject("mongodb", new JsonObject()));
 	    Router router = Router.router(vertx);
+	    TelemetryMessageCodec.register(vertx.eventBus());
+	    JsonObject viewportConf = config().getJsonObject("viewport", new JsonObject());
+	    // republishing the whole fleet as json is costly and only needed by clients which do not use viewports
+	    if(viewportConf.getBoolean("broadcast", false)) {
+		    forwardTelemetry(Bus.TELEMETRY, Bus.BOX_MSG);
+		    forwardTelemetry(Bus.TELEMETRY_DETER, Bus.BOX_MSG_DETER);
+		    forwardTelemetryBatches(Bus.TELEMETRY_BATCH, Bus.BOX_MSG_BATCH);
+		    forwardTelemetryBatches(Bus.TELEMETRY_DETER_BATCH, Bus.BOX_MSG_DETER_BATCH);
+	    }
+	    // with the fan-out adapter, single messages are copies of the envelopes
+	    boolean fanOut = TelemetryFanOutVerticle.isEnabled(config());
+	    viewports = new ViewportStreamer(vertx, viewportConf.getDouble("cellSize", 0.1), viewportConf.getDouble("maxRate", 10.0),
+	    		viewportConf.getLong("ttl", 30000L));
+	    viewports.start(!fanOut);
 	    setUpBusBridge(router);
 	    setUpRoutes(router);
 	    router.route().handler(StaticHandler.create());
 	    vertx.createHttpServer().requestHandler(router::accept).listen(config().getInteger("port", 8080));
 	}
 	
+	/**
+	 * The bridge can only send json bodies to SockJS clients, hence telemetry messages are republished
+	 * as json on the bridged addresses.
+	 */
+	private void forwardTelemetry(Bus from, Bus to) {
+		vertx.eventBus().consumer(from.address(), (Message<TelemetryMessage> msg) -> {
+			vertx.eventBus().publish(to.address(), TelemetryDataWriter.toJson(msg.body()));
+		});
+	}
+	
+	/**
+	 * Telemetry envelopes are republished as one json array per envelope.
+	 */
+	private void forwardTelemetryBatches(Bus from, Bus to) {
+		vertx.eventBus().consumer(from.address(), (Message<TelemetryBatch> msg) -> {
+			vertx.eventBus().publish(to.address(), TelemetryDataWriter.toJson(msg.body()));
+		});
+	}
+	
 	private void setUpBusBridge(final Router router) {
 		BridgeOptions opts = new BridgeOptions()//
 				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.BOX_MSG.address()))//
-				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.BOX_MSG_DETER.address()));
-	    SockJSHandler ebHandler = SockJSHandler.create(vertx).bridge(opts);
+				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.BOX_MSG_DETER.address()))//
+				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.BOX_MSG_BATCH.address()))//
+				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.BOX_MSG_DETER_BATCH.address()))//
+				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.SIMULATION_METRICS.address()))//
+				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.RECEIVER_METRICS.address()))//
+				.addOutboundPermitted(new PermittedOptions().setAddress(Bus.AMQP_METRICS.address()))//
+				.addOutboundPermitted(new PermittedOptions().setAddressRegex(ViewportStreamer.ADDRESS_REGEX))//
+				.addInboundPermitted(new PermittedOptions().setAddress(Bus.VIEWPORT_SUBSCRIBE.address()))//
+				.addInboundPermitted(new PermittedOptions().setAddress(Bus.VIEWPORT_UNSUBSCRIBE.address()));
+	    SockJSHandler ebHandler = SockJSHandler.create(vertx).bridge(opts, this::handleBridgeEvent);
 	    router.route("/eventbus/*").handler(ebHandler);
 	}
 	
+	/**
+	 * Binds the viewports to the socket which has subscribed them, so that they are removed when the client
+	 * unregisters from the viewport's address or the socket is closed.
+	 */
+	private void handleBridgeEvent(BridgeEvent event) {
+		JsonObject raw = event.getRawMessage();
+		String address = raw != null ? raw.getString("address") : null;
+		if(event.type() == BridgeEventType.SEND
+				&& (Bus.VIEWPORT_SUBSCRIBE.address().equals(address) || Bus.VIEWPORT_UNSUBSCRIBE.address().equals(address))
+				&& raw.getValue("body") instanceof JsonObject) {
+			raw.getJsonObject("body").put("socket", event.socket().writeHandlerID());
+		} else if(event.type() == BridgeEventType.UNREGISTER && ViewportStreamer.viewportId(address) != null) {
+			viewports.unsubscribe(ViewportStreamer.viewportId(address), event.socket().writeHandlerID());
+		} else if(event.type() == BridgeEventType.SOCKET_CLOSED) {
+			viewports.closeSocket(event.socket().writeHandlerID());
+		}
+		event.complete(true);
+	}
+	
 	private void setUpRoutes(Router router) {
 		TrafficManager trafficMgr = new TrafficManager(mongo);
 		
@@ -98,11 +165,41 @@ public class Server extends AbstractVerticle {
 		});
 	}
 	
+	/**
+	 * Starts the simulation. Batch mode can be requested with the query parameter <code>duration</code>,
+	 * which specifies the simulated duration in seconds. The query parameter <code>seed</code> makes the run reproducible.
+	 * With <code>resume=true</code>, the simulation continues from its latest checkpoint if there is one.
+	 * 
+	 * @param ctx
+	 */
 	private void startSimulation(RoutingContext ctx) {
 		JsonObject simulation = ctx.get("simulation");
 		if(simulation == null) {
 			throw new IllegalArgumentException("daum!");
 		}
+		String duration = ctx.request().getParam("duration");
+		if(duration != null) {
+			try {
+				simulation.put("batch", true).put("duration", Long.parseLong(duration));
+			} catch(NumberFormatException ex) {
+				JsonObject err = new JsonObject().put("error", "duration must be a number of seconds");
+				JsonResponse.build(ctx).setStatusCode(400).end(err.toString());
+				return;
+			}
+		}
+		String seed = ctx.request().getParam("seed");
+		if(seed != null) {
+			try {
+				simulation.put("seed", Long.parseLong(seed));
+			} catch(NumberFormatException ex) {
+				JsonObject err = new JsonObject().put("error", "seed must be a number");
+				JsonResponse.build(ctx).setStatusCode(400).end(err.toString());
+				return;
+			}
+		}
+		if(Boolean.parseBoolean(ctx.request().getParam("resume"))) {
+			simulation.put("resume", true);
+		}
 		vertx.eventBus().send(Bus.START_SIMULATION.address(), simulation, h -> {
 			if(h.succeeded()) {
 				JsonResponse.build(ctx).end(new JsonObject().put("status", "started").toString());
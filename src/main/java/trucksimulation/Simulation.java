@@ -1,19 +1,24 @@
 package trucksimulation;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 import com.google.gson.Gson;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
@@ -24,7 +29,11 @@ import trucksimulation.routing.Position;
 import trucksimulation.routing.Route;
 import trucksimulation.traffic.TrafficIncident;
 import trucksimulation.trucks.DestinationArrivedException;
+import trucksimulation.trucks.FleetState;
+import trucksimulation.trucks.SplitMix64;
+import trucksimulation.trucks.TelemetryBatch;
 import trucksimulation.trucks.TelemetryData;
+import trucksimulation.trucks.TelemetryMessage;
 import trucksimulation.trucks.Truck;
 import trucksimulation.trucks.TruckEventListener;
 
@@ -34,23 +43,109 @@ import trucksimulation.trucks.TruckEventListener;
 public class Simulation implements TruckEventListener {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(Simulation.class);
+	/**
+	 * Simulated start time of seeded simulations for which no start time has been set.
+	 */
+	private static final LocalDateTime SEEDED_START_TIME = LocalDateTime.of(2017, 1, 1, 0, 0);
+	/**
+	 * Maximum number of steps by which the trucks are moved at once when the simulation is behind.
+	 */
+	private static final int MAX_COARSE_STEPS = 10;
+	private static final long METRICS_PERIOD_MS = 1000;
 	
 	private String id;
 	private boolean endlessMode = false;
 	private Vertx vertx;
 	private Map<String, HashSet<Truck>> route2trucksMap = new HashMap<>();
 	private List<Truck> trucks = new ArrayList<>();
-	private List<Long> timerIds = new ArrayList<>();
 	/**
-	 * Mapping of truck ids to interval counts.
+	 * Movement state of all trucks of the simulation.
+	 */
+	private FleetState fleet = new FleetState();
+	/**
+	 * Trucks which are moved in each tick. Trucks are removed when they arrive at their destination (unless in endless mode).
+	 */
+	private List<Truck> movingTrucks = new ArrayList<>();
+	private TickEngine tickEngine;
+	private SimulationClock clock;
+	/**
+	 * When true, ticks are run back to back on the simulation clock until {@link #batchDurationMs} of simulated time have passed.
+	 */
+	private boolean batchMode = false;
+	private long batchDurationMs = 0;
+	/**
+	 * When true, trucks are not moved in each tick but positioned according to their speed profile
+	 * whenever their box data is published or they arrive at their destination.
+	 */
+	private boolean lazyMode = false;
+	/**
+	 * Seed from which the random streams of all trucks are derived.
+	 */
+	private long seed = new SplittableRandom().nextLong();
+	/**
+	 * When true, the simulation produces the same output in each run: the simulation waits for
+	 * asynchronously calculated routes instead of continuing without them.
+	 */
+	private boolean seeded = false;
+	/**
+	 * Number of new routes which are being calculated for trucks in endless mode.
+	 */
+	private int pendingRoutes = 0;
+	private Handler<Simulation> endHandler;
+	/**
+	 * Called every {@link #checkpointIntervalMs} of simulated time, see {@link SimulationCheckpoint}.
+	 */
+	private Handler<Simulation> checkpointHandler;
+	private long checkpointIntervalMs = 0;
+	private OverrunPolicy overrunPolicy = OverrunPolicy.NONE;
+	/** false while the current tick doesn't publish box data, see {@link OverrunPolicy#SKIP_PUBLISH} */
+	private boolean publishing = true;
+	/** number of upcoming timer ticks which have already been simulated by a coarse step */
+	private long coveredTicks = 0;
+	/** number of additional steps which have been simulated by coarse steps */
+	private long coarsenedSteps = 0;
+	/** number of timer ticks which have been dropped by the overrun policy */
+	private long droppedTicks = 0;
+	/** number of box messages which have not been published due to the overrun policy */
+	private long droppedMessages = 0;
+	/** metrics are published every this many ticks, i.e. about once per second */
+	private long metricsTicks = 1;
+	/**
+	 * Collect the box data of all trucks until it is published as one envelope, null if each message is published by itself.
+	 */
+	private TelemetryBatch.Builder exactBatch;
+	private TelemetryBatch.Builder deteriorateBatch;
+	private boolean batchTelemetry = false;
+	/** simulated time in ms between two envelopes, 0 for one envelope per tick */
+	private long telemetryBatchMs = 0;
+	/** simulated time at which the last envelopes have been published */
+	private long lastFlush;
+	private int arrivedCount = 0;
+	private boolean stopped = false;
+	/**
+	 * Trucks whose pause ends at a future tick. Parked trucks are neither moved nor published until then.
+	 */
+	private TimingWheel<Truck> pauseEnds;
+	/**
+	 * Trucks which are due at a future tick: eager trucks when their deteriorated box data has to be
+	 * published, lazy trucks when they have to be materialized.
+	 */
+	private TimingWheel<Truck> dueTrucks;
+	/**
+	 * Tick for which each truck has been scheduled in {@link #dueTrucks}, indexed by the truck's slot.
+	 * Items which fire at a different tick are outdated, -1 if the truck is no longer scheduled.
 	 */
-	private Map<String, Integer> intervalCount = new HashMap<>();
+	private long[] dueTicks = new long[0];
 	private Map<TrafficIncident, List<String>> incident2RoutesMap = new HashMap<>();
 	private int truckCount;
 	private int incidentCount;
 	private Future<Boolean> allRoutesLoaded = Future.future();
 	private Future<Boolean> allIncidentsAssigned = Future.future();
 	private LocalDateTime startTime;
+	/**
+	 * Simulated time in seconds by which the trucks are moved in each tick.
+	 */
+	private int stepSeconds = 1;
 	/**
 	 * interval in which the trucks' positions should be updated in the simulation.
 	 */
@@ -68,6 +163,7 @@ public class Simulation implements TruckEventListener {
 	public Simulation(String simulationId, Vertx vertx) {
 		this(simulationId);
 		this.vertx = vertx;
+		TelemetryMessageCodec.register(vertx.eventBus());
 	}
 	
 	/**
@@ -85,52 +181,388 @@ public class Simulation implements TruckEventListener {
 	public void start() {
 		LOGGER.info("simulation `{0}`: start requested", id);
 		allIncidentsAssigned.setHandler(h -> {
-			LOGGER.info("simulation `{0}`: initialization completed, starting simulation with {1} trucks.", id, trucks.size());
-			startTime = LocalDateTime.now(ZoneOffset.UTC);
+			if(stopped) {
+				LOGGER.info("simulation `{0}` has been stopped during initialization", id);
+				return;
+			}
+			LOGGER.info("simulation `{0}`: initialization completed, starting simulation with {1} trucks and seed {2}.", id, trucks.size(), seed);
+			if(startTime == null) {
+				startTime = seeded ? SEEDED_START_TIME : LocalDateTime.now(ZoneOffset.UTC);
+			}
+			clock = new SimulationClock(startTime.toInstant(ZoneOffset.UTC).toEpochMilli());
 			for(Truck truck : trucks) {
+				truck.setRandom(new SplitMix64(truckSeed(truck.getId())));
 				truck.setTrafficEventListener(this);
-				long timerId = startMoving(truck);
-				timerIds.add(timerId);
+				fleet.setTimestamp(truck.getSlot(), clock.getTime());
+				truck.setLazy(lazyMode);
+				movingTrucks.add(truck);
 			}
+			initSchedule();
+			for(Truck truck : movingTrucks) {
+				schedule(truck, 0);
+			}
+			run();
 		});
 	}
 	
 	/**
-	 * Sets a periodic timer which moves the truck in each interval.
+	 * Continues a simulation whose state has been restored from a checkpoint.
+	 * In batch mode, only the remaining simulated duration is run.
 	 * 
-	 * @param truck truck to be moved
-	 * @return id of the timer, so that it can be cancelled
+	 * @see SimulationCheckpoint#restore(io.vertx.core.buffer.Buffer, Simulation)
 	 */
-	private long startMoving(Truck truck) {
-		intervalCount.put(truck.getId(), 0);
-		long tId = vertx.setPeriodic(intervalMs, timerId -> {
+	public void resume() {
+		if(clock == null) {
+			throw new IllegalStateException("simulation `" + id + "` has not been restored from a checkpoint.");
+		}
+		if(stopped) {
+			LOGGER.info("simulation `{0}` has been stopped during initialization", id);
+			return;
+		}
+		LOGGER.info("simulation `{0}`: resuming with {1} moving trucks at {2}s of simulated time", id, movingTrucks.size(), clock.getElapsed() / 1000);
+		for(Truck truck : trucks) {
+			truck.setTrafficEventListener(this);
+		}
+		run();
+	}
+	
+	private void run() {
+		tickEngine = new TickEngine(vertx, id, intervalMs, this::tick);
+		metricsTicks = Math.max(1, METRICS_PERIOD_MS / intervalMs);
+		if(batchTelemetry) {
+			exactBatch = new TelemetryBatch.Builder(movingTrucks.size());
+			deteriorateBatch = new TelemetryBatch.Builder(movingTrucks.size());
+			lastFlush = clock.getTime();
+		}
+		if(batchMode) {
+			long stepMs = stepSeconds * 1000;
+			long ticks = Math.max(0, (batchDurationMs + stepMs - 1) / stepMs - clock.getElapsed() / stepMs);
+			LOGGER.info("simulation `{0}`: running {1} ticks in batch mode", id, ticks);
+			tickEngine.startBatch(ticks, v -> {
+				LOGGER.info("simulation `{0}` has ended, simulated duration of {1}s has passed", id, clock.getElapsed() / 1000);
+				end();
+			});
+		} else {
+			tickEngine.start();
+		}
+	}
+	
+	/**
+	 * Moves all trucks which have not yet arrived at their destination and publishes their box data.
+	 * 
+	 * Parked and lazy trucks are skipped, they are handled when their items of the timing wheels fire.
+	 * If the tick is late, the {@link #overrunPolicy} decides whether the trucks are moved by several steps,
+	 * whether box data is published and whether the tick is run at all.
+	 * 
+	 * @param tickNo number of the current tick
+	 */
+	private void tick(long tickNo) {
+		int steps = 1;
+		boolean late = tickEngine.getLastLagMs() >= intervalMs;
+		publishing = true;
+		if(overrunPolicy == OverrunPolicy.COARSEN && coveredTicks > 0) {
+			// the tick has already been simulated by a coarse step
+			coveredTicks--;
+			droppedTicks++;
+			late = false;
+			steps = 0;
+		} else if(late && overrunPolicy == OverrunPolicy.COARSEN) {
+			steps = (int) Math.min(MAX_COARSE_STEPS, tickEngine.getLastLagMs() / intervalMs + 1);
+			coveredTicks = steps - 1;
+			coarsenedSteps += steps - 1;
+		} else if(late && overrunPolicy == OverrunPolicy.SLOW_CLOCK) {
+			droppedTicks++;
+			steps = 0;
+		} else if(late && overrunPolicy == OverrunPolicy.SKIP_PUBLISH) {
+			publishing = false;
+		}
+		if(steps > 0) {
+			advance(steps);
+		}
+		if(!batchMode && tickNo % metricsTicks == 0) {
+			publishMetrics(late);
+		}
+	}
+	
+	/**
+	 * Moves all trucks by the given number of steps at once, box data is published once.
+	 */
+	private void advance(int steps) {
+		long checkpointsBefore = clock.getElapsed() / Math.max(1, checkpointIntervalMs);
+		clock.advance(steps * stepSeconds * 1000);
+		fleet.advanceAll(steps * stepSeconds);
+		long tick = getTick();
+		while(pauseEnds.getTick() < tick) {
+			pauseEnds.advance(this::endPause);
+		}
+		Iterator<Truck> iter = movingTrucks.iterator();
+		while(iter.hasNext()) {
+			Truck truck = iter.next();
+			int slot = truck.getSlot();
+			if(fleet.isParked(slot) || fleet.isLazy(slot)) {
+				continue;
+			}
 			try {
-				truck.move();
-				publishBoxData(truck);
-			} catch(DestinationArrivedException ex) {
-				LOGGER.info("truck `{0}` has arrived at destination", truck.getId());
-				if(endlessMode) {
-					truck.pause(10);
-					assignNewRoute(truck);
+				truck.completeMove();
+				if(publishing) {
+					publishTelemetryData(Bus.TELEMETRY, truck, truck.getTelemetryBox().getTelemetryData());
+					droppedMessages += steps - 1;
 				} else {
-					cancelTimer(timerId);
+					droppedMessages += steps;
+				}
+				if(fleet.getIdle(slot) > 0) {
+					park(truck);
+				}
+			} catch(DestinationArrivedException ex) {
+				if(!arrive(truck)) {
+					iter.remove();
 				}
 			} catch (Exception ex) {
 				LOGGER.error("truck `{0}`: Unexpected error, stopping", truck.getId(), ex);
-				cancelTimer(timerId);
+				unschedule(truck);
+				iter.remove();
 			}
-		});
-		return tId;
+		}
+		while(dueTrucks.getTick() < tick) {
+			dueTrucks.advance(this::handleDue);
+		}
+		if(movingTrucks.isEmpty()) {
+			tickEngine.stop();
+			LOGGER.info("simulation `{0}` has ended, all trucks have arrived", id);
+			end();
+		} else if(checkpointHandler != null && clock.getElapsed() / checkpointIntervalMs > checkpointsBefore) {
+			// a resumed simulation continues after the checkpoint, nothing may be pending
+			flushTelemetry();
+			checkpointHandler.handle(this);
+		} else if(clock.getTime() - lastFlush >= telemetryBatchMs) {
+			flushTelemetry();
+		}
+	}
+	
+	/**
+	 * Publishes the tick statistics of the engine and the load which has been shed because of late ticks.
+	 * 
+	 * @param late true if the current tick started at least one interval late
+	 */
+	private void publishMetrics(boolean late) {
+		JsonObject metrics = getMetrics().put("late", late);
+		vertx.eventBus().publish(Bus.SIMULATION_METRICS.address(), metrics);
+	}
+	
+	/**
+	 * Handles the arrival of a truck at its destination.
+	 * 
+	 * @return true if the truck keeps moving, i.e. it gets a new route in endless mode
+	 */
+	private boolean arrive(Truck truck) {
+		LOGGER.info("truck `{0}` has arrived at destination", truck.getId());
+		arrivedCount++;
+		if(endlessMode) {
+			truck.pause(10);
+			assignNewRoute(truck);
+			if(!truck.isLazy()) {
+				park(truck);
+			}
+			return true;
+		}
+		unschedule(truck);
+		return false;
+	}
+	
+	/**
+	 * @return number of ticks since the start of the simulation, items of the timing wheels are scheduled for these ticks
+	 */
+	private long getTick() {
+		return clock.getElapsed() / (stepSeconds * 1000);
+	}
+	
+	/**
+	 * @return the first tick at or after the given simulated time
+	 */
+	private long getTickAt(long time) {
+		long stepMs = stepSeconds * 1000;
+		return Math.floorDiv(time - clock.getStartTime() + stepMs - 1, stepMs);
+	}
+	
+	private void initSchedule() {
+		pauseEnds = new TimingWheel<>(getTick());
+		dueTrucks = new TimingWheel<>(getTick());
+	}
+	
+	/**
+	 * Schedules the next events of a truck which starts or continues moving.
+	 * 
+	 * @param truck
+	 * @param ticksSincePublish number of ticks since the truck's deteriorated box data has been published
+	 */
+	private void schedule(Truck truck, int ticksSincePublish) {
+		int slot = truck.getSlot();
+		if(slot >= dueTicks.length) {
+			int length = dueTicks.length;
+			dueTicks = Arrays.copyOf(dueTicks, Math.max(slot + 1, length * 2));
+			Arrays.fill(dueTicks, length, dueTicks.length, -1);
+		}
+		if(truck.isLazy()) {
+			scheduleLazy(truck);
+		} else {
+			setDue(truck, getTick() + publishInterval - ticksSincePublish);
+			if(fleet.isParked(slot)) {
+				pauseEnds.schedule(getPauseEnd(slot), truck);
+			}
+		}
+	}
+	
+	private void setDue(Truck truck, long tick) {
+		dueTicks[truck.getSlot()] = tick;
+		dueTrucks.schedule(tick, truck);
+	}
+	
+	/**
+	 * Makes all scheduled items of a truck which no longer moves outdated.
+	 */
+	private void unschedule(Truck truck) {
+		dueTicks[truck.getSlot()] = -1;
+	}
+	
+	/**
+	 * Schedules a lazy truck for its next materialization: the next tick in which box data is published or the
+	 * tick in which the truck arrives, whichever comes first.
+	 */
+	private void scheduleLazy(Truck truck) {
+		long tick = getTick();
+		long next = (tick / publishInterval + 1) * publishInterval;
+		long arrival = truck.getArrivalTime();
+		if(arrival != Long.MAX_VALUE) {
+			next = Math.min(next, getTickAt(arrival));
+		}
+		setDue(truck, Math.max(next, tick + 1));
+	}
+	
+	private void handleDue(Truck truck) {
+		long tick = dueTrucks.getTick();
+		if(dueTicks[truck.getSlot()] != tick) {
+			// outdated item
+			return;
+		}
+		if(truck.isLazy()) {
+			updateLazy(truck);
+		} else {
+			setDue(truck, tick + publishInterval);
+			if(fleet.isParked(truck.getSlot())) {
+				return;
+			}
+			if(publishing && tick + publishInterval > getTick()) {
+				publishTelemetryData(Bus.TELEMETRY_DETER, truck, truck.getTelemetryBoxInexact().getTelemetryData());
+			} else {
+				// not published or the truck is due again within the same coarse step
+				droppedMessages++;
+			}
+		}
+	}
+	
+	/**
+	 * Positions a lazy truck at the current time and publishes its box data.
+	 */
+	private void updateLazy(Truck truck) {
+		try {
+			truck.materialize(clock.getTime());
+			truck.completeMove();
+			if(fleet.getStatus(truck.getSlot()) != FleetState.MOVED) {
+				// nothing to publish
+			} else if(publishing) {
+				publishLazyBoxData(truck);
+			} else {
+				droppedMessages += 2;
+			}
+			scheduleLazy(truck);
+		} catch(DestinationArrivedException ex) {
+			if(arrive(truck)) {
+				scheduleLazy(truck);
+			} else {
+				movingTrucks.remove(truck);
+			}
+		} catch (Exception ex) {
+			LOGGER.error("truck `{0}`: Unexpected error, stopping", truck.getId(), ex);
+			unschedule(truck);
+			movingTrucks.remove(truck);
+		}
+	}
+	
+	/**
+	 * Stops moving a pausing truck until its pause is over.
+	 */
+	private void park(Truck truck) {
+		fleet.park(truck.getSlot());
+		pauseEnds.schedule(getPauseEnd(truck.getSlot()), truck);
+	}
+	
+	/**
+	 * @return tick in which the pause of a parked truck is completed
+	 */
+	private long getPauseEnd(int slot) {
+		return getTickAt(fleet.getTimestamp(slot)) + (fleet.getIdle(slot) + stepSeconds - 1) / stepSeconds;
+	}
+	
+	/**
+	 * Unparks a truck whose pause is over, the truck is handled like a truck which completed its break in this tick.
+	 */
+	private void endPause(Truck truck) {
+		int slot = truck.getSlot();
+		if(!fleet.isParked(slot)) {
+			return;
+		}
+		long end = getPauseEnd(slot);
+		if(end > getTick()) {
+			// the pause has been extended
+			pauseEnds.schedule(end, truck);
+		} else {
+			fleet.unpark(slot, clock.getTime());
+		}
+	}
+	
+	/**
+	 * Derives the seed of a truck's random stream from the simulation's seed and the truck's id, so that
+	 * each truck gets the same stream no matter in which order or on which shard the trucks are created.
+	 */
+	private long truckSeed(String truckId) {
+		long h = seed;
+		for(int i = 0; i < truckId.length(); i++) {
+			h = 31 * h + truckId.charAt(i);
+		}
+		// finalizer of the SplitMix64 generator, spreads similar ids over the whole range
+		h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+		return h ^ (h >>> 31);
+	}
+	
+	/**
+	 * Notifies the end handler or publishes the end of the simulation on the bus if no handler has been set.
+	 */
+	private void end() {
+		flushTelemetry();
+		if(endHandler != null) {
+			endHandler.handle(this);
+		} else {
+			vertx.eventBus().publish(Bus.SIMULATION_ENDED.address(), new JsonObject().put("id", this.id).put("arrived", arrivedCount));
+		}
 	}
 	
 	/**
 	 * Retrieves a random city and sets it as the new destination for the truck.
 	 * 
+	 * In a seeded simulation, the city is picked using the truck's random stream and the simulation is
+	 * suspended until the route has been calculated, so that the route is always assigned at the same simulated time.
+	 * 
 	 * @param truck
 	 */
 	private void assignNewRoute(Truck truck) {
 		Gson gson = Serializer.get();
-		vertx.eventBus().send(Bus.CITY_SAMPLE.address(), new JsonObject().put("size", 1), (AsyncResult<Message<JsonArray>> repl) -> {
+		JsonObject sampleRequest = new JsonObject().put("size", 1);
+		if(seeded) {
+			sampleRequest.put("pick", truck.getRandom().nextLong());
+			routeRequested();
+		}
+		vertx.eventBus().send(Bus.CITY_SAMPLE.address(), sampleRequest, (AsyncResult<Message<JsonArray>> repl) -> {
 			if(repl.succeeded()) {
 				JsonObject city = repl.result().body().getJsonObject(0);
 				JsonArray destPos = city.getJsonObject("pos").getJsonArray("coordinates");
@@ -141,55 +573,85 @@ public class Simulation implements TruckEventListener {
 				vertx.eventBus().send(Bus.CALC_ROUTE.address(), msg, (AsyncResult<Message<String>> r) -> {
 					if(r.succeeded()) {
 						Route route = gson.fromJson(r.result().body(), Route.class);
+						if(truck.isLazy()) {
+							// the new route starts now, not at the truck's last materialization
+							truck.materialize(clock.getTime());
+						}
 						truck.setRoute(route);
+						if(truck.isLazy()) {
+							// the truck may arrive before its next materialization
+							scheduleLazy(truck);
+						}
 						LOGGER.info("truck `{0}`: new destination is {1}", truck.getId(), city.getString("name"));
 					} else {
 						// destination not found on map, retry
 						LOGGER.warn("truck `{0}`: failed to assign new destination", truck.getId(), r.cause());
 						assignNewRoute(truck);
 					}
+					routeReceived();
 				});	
 			} else {
 				LOGGER.error("truck `{0}`: failed to assign new destination", truck.getId(), repl.cause());
+				routeReceived();
 			}
 		});
 	}
 	
-	private void cancelTimer(long timerId) {
-		vertx.cancelTimer(timerId);
-		this.timerIds.remove(timerId);
-		if(!isRunning()) {
-			LOGGER.info("simulation `{0}` has ended, all trucks have arrived", id);
-			vertx.eventBus().publish(Bus.SIMULATION_ENDED.address(), new JsonObject().put("id", this.id));
+	private void routeRequested() {
+		pendingRoutes++;
+		tickEngine.suspend();
+	}
+	
+	/**
+	 * Resumes a seeded simulation when no more routes are pending.
+	 */
+	private void routeReceived() {
+		if(seeded && --pendingRoutes == 0 && !stopped) {
+			tickEngine.resume();
 		}
 	}
 	
 	/**
-	 * Publishes the correct simulation data when called and deteriorated data
-	 * every {@link #publishInterval} calls.
+	 * Publishes the correct and the deteriorated data of a lazy truck.
+	 * Lazy trucks are only materialized every {@link #publishInterval} ticks, hence both are published at once.
+	 * 
 	 * @param truck
 	 */
-	private void publishBoxData(Truck truck) {
-		TelemetryData correctData = truck.getTelemetryBox().getTelemetryData();
-		Gson gson = Serializer.get();
-		JsonObject correctDataJson = new JsonObject(gson.toJson(correctData)).put("truckId", truck.getId());
-		vertx.eventBus().publish(Bus.BOX_MSG.address(), correctDataJson);
-		
-		int ctr = intervalCount.get(truck.getId()) + 1;
-		intervalCount.put(truck.getId(), ctr);
-		if(ctr % publishInterval == 0) {
-			intervalCount.put(truck.getId(), 0);
-			TelemetryData inexactData = truck.getTelemetryBoxInexact().getTelemetryData();
-			JsonObject dataJson = new JsonObject(gson.toJson(inexactData)).put("truckId", truck.getId());
-			vertx.eventBus().publish(Bus.BOX_MSG_DETER.address(), dataJson);
+	private void publishLazyBoxData(Truck truck) {
+		publishTelemetryData(Bus.TELEMETRY, truck, truck.getTelemetryBox().getTelemetryData());
+		publishTelemetryData(Bus.TELEMETRY_DETER, truck, truck.getTelemetryBoxInexact().getTelemetryData());
+	}
+	
+	private void publishTelemetryData(Bus address, Truck truck, TelemetryData data) {
+		if(exactBatch != null) {
+			(address == Bus.TELEMETRY ? exactBatch : deteriorateBatch).add(truck.getId(), data);
+		} else {
+			vertx.eventBus().publish(address.address(), TelemetryMessage.of(truck.getId(), data));
+		}
+	}
+	
+	/**
+	 * Publishes the box data which has been collected since the last envelopes, if telemetry is batched.
+	 */
+	private void flushTelemetry() {
+		if(exactBatch == null) {
+			return;
+		}
+		lastFlush = clock.getTime();
+		if(exactBatch.size() > 0) {
+			vertx.eventBus().publish(Bus.TELEMETRY_BATCH.address(), exactBatch.build());
+		}
+		if(deteriorateBatch.size() > 0) {
+			vertx.eventBus().publish(Bus.TELEMETRY_DETER_BATCH.address(), deteriorateBatch.build());
 		}
 	}
 	
 	@Override
 	public void handleTrafficEvent(Truck truck, EventType type) {
 		JsonObject truckStateMessage = new JsonObject() //
+				.put("simulationId", id) //
 				.put("truckId", truck.getId()) //
-				.put("ts", System.currentTimeMillis()) //
+				.put("ts", clock.getTime()) //
 				.put("eventType", type.name());
 		vertx.eventBus().publish(Bus.TRUCK_STATE.address(), truckStateMessage);
 	}
@@ -198,13 +660,22 @@ public class Simulation implements TruckEventListener {
 		if(vertx == null) {
 			throw new IllegalStateException("Simulation obj must be initialized with vertx instance.");
 		}
-		for(long timerId : timerIds) {
-			vertx.cancelTimer(timerId);
+		stopped = true;
+		if(tickEngine != null) {
+			tickEngine.stop();
+			flushTelemetry();
 		}
 	}
 	
 	
+	/**
+	 * Adds the truck to the simulation. The truck's state is moved into the simulation's fleet unless
+	 * it has been created in that fleet.
+	 * 
+	 * @param truck
+	 */
 	public void addTruck(Truck truck) {
+		truck.setFleet(fleet);
 		this.trucks.add(truck);
 		if(!route2trucksMap.containsKey(truck.getRouteId())) {
 			route2trucksMap.put(truck.getRouteId(), new HashSet<>());
@@ -212,6 +683,14 @@ public class Simulation implements TruckEventListener {
 		this.route2trucksMap.get(truck.getRouteId()).add(truck);
 	}
 	
+	/**
+	 * @param routeId
+	 * @return true if at least one truck of the simulation drives on the route
+	 */
+	public boolean hasRoute(String routeId) {
+		return route2trucksMap.containsKey(routeId);
+	}
+	
 	public void removeTruck(Truck truck) {
 		trucks.remove(truck);
 		route2trucksMap.remove(truck.getRouteId());
@@ -269,7 +748,7 @@ public class Simulation implements TruckEventListener {
 	}
 	
 	public boolean isRunning() {
-		return timerIds.size() >= 1;
+		return tickEngine != null && tickEngine.isRunning();
 	}
 
 	public void setVertx(Vertx vertx) {
@@ -337,10 +816,85 @@ public class Simulation implements TruckEventListener {
 	}
 
 	/**
-	 * Returns the time at which the simulation actually started 
-	 * (which usually differs from the time when the start method has been called due to async loading of data).
+	 * @return the simulated time of the simulation, null if the simulation has not been started yet
+	 */
+	public SimulationClock getClock() {
+		return clock;
+	}
+
+	public boolean isBatchMode() {
+		return batchMode;
+	}
+
+	/**
+	 * Runs the simulation in batch mode: ticks are run back to back without timers until the given
+	 * simulated duration has passed, output is published on the bus as usual.
+	 * 
+	 * @param batchDurationMs simulated time in ms after which the simulation ends
+	 */
+	public void setBatchMode(long batchDurationMs) {
+		if(batchDurationMs <= 0) {
+			throw new IllegalArgumentException("batch duration must be positive");
+		}
+		this.batchMode = true;
+		this.batchDurationMs = batchDurationMs;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Makes the simulation reproducible: all random decisions of the trucks are derived from the given seed
+	 * and the simulation waits for asynchronous route calculations. Together with a fixed start time
+	 * (the 1st of January 2017 by default), two runs with the same seed produce the same telemetry data for each truck.
 	 * 
-	 * @return start time
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.seeded = true;
+	}
+
+	public boolean isSeeded() {
+		return seeded;
+	}
+
+	public boolean isLazyMode() {
+		return lazyMode;
+	}
+
+	/**
+	 * In lazy mode, the trucks' positions are computed from their speed profiles instead of moving
+	 * the trucks in each tick. Trucks are only positioned when their box data is published, i.e. every
+	 * {@link #publishInterval} ticks, and when they arrive at their destination.
+	 * 
+	 * @param lazyMode
+	 */
+	public void setLazyMode(boolean lazyMode) {
+		this.lazyMode = lazyMode;
+	}
+
+	/**
+	 * @return the movement state of all trucks of the simulation
+	 */
+	public FleetState getFleet() {
+		return fleet;
+	}
+
+	/**
+	 * @return the engine which drives the simulation, null if the simulation has not been started yet
+	 */
+	public TickEngine getTickEngine() {
+		return tickEngine;
+	}
+
+	/**
+	 * Returns the simulated time at which the simulation started. Unless a start time has been set,
+	 * this is the time at which the simulation actually started (which usually differs from the time when
+	 * the start method has been called due to async loading of data).
+	 * 
+	 * @return start time in UTC
 	 */
 	public LocalDateTime getStartTime() {
 		return startTime;
@@ -350,6 +904,119 @@ public class Simulation implements TruckEventListener {
 		this.startTime = startTime;
 	}
 
+	/**
+	 * Sets the handler which is called when all trucks of the simulation have arrived.
+	 * By default the end of the simulation is published on {@link Bus#SIMULATION_ENDED}.
+	 * 
+	 * @param endHandler
+	 */
+	public void setEndHandler(Handler<Simulation> endHandler) {
+		this.endHandler = endHandler;
+	}
+	
+	/**
+	 * Sets the handler which is called periodically with the running simulation in order to write a
+	 * {@link SimulationCheckpoint}. The handler is called on the simulation's context after a tick.
+	 * 
+	 * @param intervalSeconds simulated time in seconds between two calls, must be a multiple of the step
+	 * @param checkpointHandler
+	 */
+	public void setCheckpointHandler(long intervalSeconds, Handler<Simulation> checkpointHandler) {
+		if(intervalSeconds <= 0 || intervalSeconds % stepSeconds != 0) {
+			throw new IllegalArgumentException("checkpoint interval must be a positive multiple of " + stepSeconds + "s");
+		}
+		this.checkpointIntervalMs = intervalSeconds * 1000;
+		this.checkpointHandler = checkpointHandler;
+	}
+	
+	/**
+	 * @return trucks which have not yet arrived at their destination
+	 */
+	List<Truck> getMovingTrucks() {
+		return movingTrucks;
+	}
+	
+	/**
+	 * @return number of ticks since the truck's deteriorated box data has been published
+	 */
+	int getIntervalCount(Truck truck) {
+		long due = truck.getSlot() < dueTicks.length ? dueTicks[truck.getSlot()] : -1;
+		return truck.isLazy() || due < 0 ? 0 : (int) (publishInterval - (due - getTick()));
+	}
+	
+	/**
+	 * Restores the simulated time and arrivals of a simulation from a checkpoint.
+	 */
+	void restoreState(SimulationClock clock, int arrivedCount) {
+		this.clock = clock;
+		initSchedule();
+		this.startTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(clock.getStartTime()), ZoneOffset.UTC);
+		this.arrivedCount = arrivedCount;
+	}
+	
+	/**
+	 * Adds a truck which has been restored from a checkpoint.
+	 * 
+	 * @param truck a truck which has been created in the simulation's fleet
+	 * @param moving true if the truck has not yet arrived
+	 * @param ticks number of ticks since the truck's deteriorated box data has been published
+	 */
+	void restoreTruck(Truck truck, boolean moving, int ticks) {
+		addTruck(truck);
+		if(moving) {
+			movingTrucks.add(truck);
+			schedule(truck, ticks);
+		}
+	}
+	
+	public boolean isBatchTelemetry() {
+		return batchTelemetry;
+	}
+
+	/**
+	 * Publishes the box data of all trucks as {@link TelemetryBatch} envelopes on {@link Bus#TELEMETRY_BATCH}
+	 * and {@link Bus#TELEMETRY_DETER_BATCH} instead of one {@link TelemetryMessage} per truck and tick.
+	 * Must be set before the simulation is started.
+	 * 
+	 * @param batchTelemetry
+	 * @param batchMs simulated time in ms which an envelope covers at most, 0 for one envelope per tick
+	 */
+	public void setBatchTelemetry(boolean batchTelemetry, long batchMs) {
+		this.batchTelemetry = batchTelemetry;
+		this.telemetryBatchMs = batchMs;
+	}
+	
+	public OverrunPolicy getOverrunPolicy() {
+		return overrunPolicy;
+	}
+
+	/**
+	 * @param overrunPolicy how the simulation sheds load when its ticks can't keep up with the interval
+	 */
+	public void setOverrunPolicy(OverrunPolicy overrunPolicy) {
+		this.overrunPolicy = overrunPolicy;
+	}
+	
+	/**
+	 * @return tick statistics and the load which has been shed due to the overrun policy, as published on {@link Bus#SIMULATION_METRICS}
+	 */
+	public JsonObject getMetrics() {
+		JsonObject metrics = tickEngine != null ? tickEngine.getStats() : new JsonObject();
+		return metrics.put("id", id)
+				.put("simulatedMs", clock != null ? clock.getElapsed() : 0)
+				.put("policy", overrunPolicy.name())
+				.put("coarsenedSteps", coarsenedSteps)
+				.put("droppedTicks", droppedTicks)
+				.put("droppedMessages", droppedMessages);
+	}
+	
+	/**
+	 * @return number of destination arrivals since the simulation has been started
+	 */
+	public int getArrivedCount() {
+		return arrivedCount;
+	}
+
 	public boolean isEndlessMode() {
 		return endlessMode;
 	}
@@ -0,0 +1,408 @@
+package trucksimulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.routing.Position;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteSegment;
+import trucksimulation.traffic.TrafficIncident;
+import trucksimulation.trucks.SplitMix64;
+import trucksimulation.trucks.TelemetryData;
+import trucksimulation.trucks.Truck;
+
+/**
+ * Compact binary snapshot of a running simulation from which the simulation can be resumed.
+ *
+ * The routes of a simulation are immutable and large, hence they are not part of the checkpoints: they are
+ * written once to a separate route file which is keyed by route id and to which new routes, e.g. of trucks in
+ * endless mode, are appended. A checkpoint only contains the simulated time, the traffic incidents and the
+ * mutable state of each truck: the key of its route, its position, segment and point index, remaining pause
+ * time, flags, current incident and the data which its telemetry boxes have sent last. Restoring a simulation
+ * neither requires the database nor deserializing the routes' GeoJSON.
+ *
+ * The state of each truck's random streams is written as-is, so writing a checkpoint does not change the
+ * output of a seeded simulation and a simulation which is resumed from a checkpoint produces the same output
+ * as the simulation which has written the checkpoint.
+ *
+ * An instance keeps track of the routes which have already been written for a single simulation and must only
+ * be used on the simulation's context.
+ */
+public class SimulationCheckpoint {
+
+	/** "TSCP" */
+	private static final int MAGIC = 0x54534350;
+	/** "TSRT" */
+	private static final int ROUTES_MAGIC = 0x54535254;
+	private static final int VERSION = 3;
+
+	/** keys of the routes which have been written to the route file */
+	private final Map<Route, String> routeKeys = new IdentityHashMap<>();
+	private final Set<String> keys = new HashSet<>();
+	private boolean routeFileStarted;
+	private boolean newRouteFile;
+
+	/**
+	 * @return true if the last call of {@link #writeRoutes(Simulation)} has started a new route file which replaces
+	 *         the existing file, false if it has returned records which are appended to the existing file
+	 */
+	public boolean isNewRouteFile() {
+		return newRouteFile;
+	}
+
+	/**
+	 * Forgets which routes have been written, e.g. because the route file could not be written. The next call
+	 * of {@link #writeRoutes(Simulation)} starts a new route file.
+	 */
+	public void reset() {
+		routeKeys.clear();
+		keys.clear();
+		routeFileStarted = false;
+	}
+
+	/**
+	 * Writes the routes of the simulation which have not been written yet. Must be called before
+	 * {@link #write(Simulation)}, whose checkpoint refers to the routes by their key.
+	 *
+	 * A new route file is started when none has been started yet or when most of the written routes
+	 * are no longer used by any truck, so that the route file of an endless simulation does not grow forever.
+	 *
+	 * @param simulation
+	 * @return the new records of the route file, see {@link #isNewRouteFile()}
+	 */
+	public Buffer writeRoutes(Simulation simulation) {
+		Set<Route> routes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(Truck truck : simulation.getTrucks()) {
+			if(truck.getRoute() != null) {
+				routes.add(truck.getRoute());
+			}
+		}
+		if(routeKeys.size() > 2 * routes.size()) {
+			reset();
+		}
+		newRouteFile = !routeFileStarted;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			if(newRouteFile) {
+				out.writeInt(ROUTES_MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(simulation.getId());
+			}
+			for(Truck truck : simulation.getTrucks()) {
+				Route route = truck.getRoute();
+				if(route != null && !routeKeys.containsKey(route)) {
+					String key = newRouteKey(truck.getRouteId());
+					out.writeUTF(key);
+					writeRoute(route, out);
+					routeKeys.put(route, key);
+				}
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("could not write routes of simulation " + simulation.getId(), e);
+		}
+		routeFileStarted = true;
+		return Buffer.buffer(bytes.toByteArray());
+	}
+
+	/**
+	 * The route of a truck is keyed by the truck's route id, routes which have been assigned later on,
+	 * e.g. in endless mode, get a key derived from it.
+	 */
+	private String newRouteKey(String routeId) {
+		String key = String.valueOf(routeId);
+		for(int i = 1; !keys.add(key); i++) {
+			key = routeId + "#" + i;
+		}
+		return key;
+	}
+
+	/**
+	 * Writes the state of the simulation. Must be called on the simulation's context while the
+	 * simulation is running, i.e. between two ticks, and after {@link #writeRoutes(Simulation)}.
+	 *
+	 * @param simulation
+	 * @return the checkpoint
+	 */
+	public Buffer write(Simulation simulation) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			write(simulation, out);
+		} catch(IOException e) {
+			throw new IllegalStateException("could not write checkpoint of simulation " + simulation.getId(), e);
+		}
+		return Buffer.buffer(bytes.toByteArray());
+	}
+
+	private void write(Simulation simulation, DataOutput out) throws IOException {
+		List<Truck> trucks = simulation.getTrucks();
+		Set<Truck> moving = new HashSet<>(simulation.getMovingTrucks());
+		Map<TrafficIncident, Integer> incidents = new IdentityHashMap<>();
+		for(Truck truck : trucks) {
+			if(truck.getRoute() != null && !routeKeys.containsKey(truck.getRoute())) {
+				throw new IllegalStateException("route of truck " + truck.getId() + " has not been written");
+			}
+			for(TrafficIncident incident : truck.getTrafficIncidents()) {
+				incidents.putIfAbsent(incident, incidents.size());
+			}
+			if(truck.getCurIncident() != null) {
+				incidents.putIfAbsent(truck.getCurIncident(), incidents.size());
+			}
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(simulation.getId());
+		out.writeLong(simulation.getClock().getStartTime());
+		out.writeLong(simulation.getClock().getTime());
+		out.writeBoolean(simulation.isSeeded());
+		out.writeLong(simulation.getSeed());
+		out.writeInt(simulation.getArrivedCount());
+
+		out.writeInt(incidents.size());
+		for(TrafficIncident incident : ordered(incidents)) {
+			writePosition(incident.getStart(), out);
+			writePosition(incident.getEnd(), out);
+			out.writeDouble(incident.getDirection());
+			out.writeDouble(incident.getSpeed());
+			out.writeBoolean(incident.isActive());
+			out.writeBoolean(incident.isReported());
+		}
+
+		out.writeInt(trucks.size());
+		for(Truck truck : trucks) {
+			out.writeUTF(truck.getId());
+			writeString(truck.getRouteId(), out);
+			writeString(routeKeys.get(truck.getRoute()), out);
+			out.writeBoolean(moving.contains(truck));
+			out.writeInt(simulation.getIntervalCount(truck));
+			writeRandom(truck.getRandom(), out);
+			writeRandom(truck.getTelemetryBoxInexact().getRandom(), out);
+			out.writeInt(truck.getTrafficIncidents().size());
+			for(TrafficIncident incident : truck.getTrafficIncidents()) {
+				out.writeInt(incidents.get(incident));
+			}
+			out.writeInt(truck.getCurIncident() != null ? incidents.get(truck.getCurIncident()) : -1);
+			writeTelemetryData(truck.getTelemetryBox().getTelemetryData(), out);
+			writeTelemetryData(truck.getTelemetryBoxInexact().getTelemetryData(), out);
+			truck.getFleet().write(truck.getSlot(), out);
+		}
+	}
+
+	/**
+	 * Restores the state of a simulation from its route file and a checkpoint. The simulation must have been
+	 * created without trucks and is continued with {@link Simulation#resume()}. A record at the end of the route
+	 * file which has been written partially is ignored, the checkpoint does not refer to it.
+	 *
+	 * @param routes the route file, see {@link #writeRoutes(Simulation)}
+	 * @param checkpoint a checkpoint which has been written by {@link #write(Simulation)}
+	 * @param simulation
+	 * @throws IllegalArgumentException if the buffers do not contain a valid route file and checkpoint
+	 */
+	public static void restore(Buffer routes, Buffer checkpoint, Simulation simulation) {
+		try(DataInputStream routesIn = new DataInputStream(new ByteArrayInputStream(routes.getBytes()));
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint.getBytes()))) {
+			restore(readRoutes(routesIn, simulation), in, simulation);
+		} catch(IOException e) {
+			throw new IllegalArgumentException("invalid checkpoint of simulation " + simulation.getId(), e);
+		}
+	}
+
+	private static Map<String, Route> readRoutes(DataInputStream in, Simulation simulation) throws IOException {
+		if(in.readInt() != ROUTES_MAGIC) {
+			throw new IllegalArgumentException("not a route file");
+		}
+		readHeader(in, simulation);
+		Map<String, Route> routes = new HashMap<>();
+		try {
+			while(in.available() > 0) {
+				String key = in.readUTF();
+				routes.put(key, readRoute(in));
+			}
+		} catch(EOFException e) {
+			// the last record has been written partially
+		}
+		return routes;
+	}
+
+	private static void readHeader(DataInput in, Simulation simulation) throws IOException {
+		int version = in.readInt();
+		if(version != VERSION) {
+			throw new IllegalArgumentException("unsupported checkpoint version " + version);
+		}
+		String simId = in.readUTF();
+		if(!simId.equals(simulation.getId())) {
+			throw new IllegalArgumentException("checkpoint belongs to simulation " + simId + ", not " + simulation.getId());
+		}
+	}
+
+	private static void restore(Map<String, Route> routes, DataInput in, Simulation simulation) throws IOException {
+		if(in.readInt() != MAGIC) {
+			throw new IllegalArgumentException("not a simulation checkpoint");
+		}
+		readHeader(in, simulation);
+		SimulationClock clock = new SimulationClock(in.readLong());
+		clock.advance(in.readLong() - clock.getStartTime());
+		boolean seeded = in.readBoolean();
+		long seed = in.readLong();
+		if(seeded) {
+			simulation.setSeed(seed);
+		}
+		simulation.restoreState(clock, in.readInt());
+
+		TrafficIncident[] incidents = new TrafficIncident[in.readInt()];
+		for(int i = 0; i < incidents.length; i++) {
+			TrafficIncident incident = new TrafficIncident();
+			incident.setStart(readPosition(in));
+			incident.setEnd(readPosition(in));
+			incident.setDirection(in.readDouble());
+			incident.setSpeed(in.readDouble());
+			incident.setActive(in.readBoolean());
+			incident.setReported(in.readBoolean());
+			incidents[i] = incident;
+		}
+
+		int truckCount = in.readInt();
+		for(int i = 0; i < truckCount; i++) {
+			Truck truck = new Truck(in.readUTF(), simulation.getFleet());
+			truck.setRouteId(readString(in));
+			String routeKey = readString(in);
+			Route route = routeKey != null ? routes.get(routeKey) : null;
+			if(routeKey != null && route == null) {
+				throw new IllegalArgumentException("route " + routeKey + " of truck " + truck.getId() + " is missing");
+			}
+			boolean moving = in.readBoolean();
+			int ticks = in.readInt();
+			truck.setRandom(readRandom(in), readRandom(in));
+			int incidentCount = in.readInt();
+			for(int j = 0; j < incidentCount; j++) {
+				truck.addTrafficIncident(incidents[in.readInt()]);
+			}
+			int curIncident = in.readInt();
+			if(curIncident >= 0) {
+				truck.setCurIncident(incidents[curIncident]);
+			}
+			truck.getTelemetryBox().setTelemetryData(readTelemetryData(truck.getId(), in));
+			truck.getTelemetryBoxInexact().setTelemetryData(readTelemetryData(truck.getId(), in));
+			// read last, the fleet state overrides the flags which have been set above
+			simulation.getFleet().read(truck.getSlot(), in, route);
+			simulation.restoreTruck(truck, moving, ticks);
+		}
+	}
+
+	private static <T> List<T> ordered(Map<T, Integer> indices) {
+		List<T> list = new ArrayList<>(indices.keySet());
+		list.sort((a, b) -> Integer.compare(indices.get(a), indices.get(b)));
+		return list;
+	}
+
+	private static void writeRoute(Route route, DataOutput out) throws IOException {
+		writePosition(route.getStart(), out);
+		writePosition(route.getGoal(), out);
+		out.writeDouble(route.getTimeMs());
+		out.writeDouble(route.getDistanceMeters());
+		out.writeInt(route.getSegmentCount());
+		for(RouteSegment segment : route.getSegments()) {
+			out.writeDouble(segment.getTime());
+			out.writeDouble(segment.getDistance());
+			out.writeInt(segment.getSize());
+			for(int i = 0; i < segment.getSize(); i++) {
+				out.writeDouble(segment.getLat(i));
+				out.writeDouble(segment.getLon(i));
+			}
+		}
+	}
+
+	private static Route readRoute(DataInput in) throws IOException {
+		Position start = readPosition(in);
+		Position goal = readPosition(in);
+		Route route = new Route();
+		route.setTimeMs(in.readDouble());
+		route.setDistanceMeters(in.readDouble());
+		RouteSegment[] segments = new RouteSegment[in.readInt()];
+		for(int s = 0; s < segments.length; s++) {
+			double time = in.readDouble();
+			double distance = in.readDouble();
+			double[] lats = new double[in.readInt()];
+			double[] lons = new double[lats.length];
+			for(int i = 0; i < lats.length; i++) {
+				lats[i] = in.readDouble();
+				lons[i] = in.readDouble();
+			}
+			segments[s] = new RouteSegment(lats, lons, time, distance);
+		}
+		route.setSegments(segments);
+		// the segments determine start and goal, unless they have been set explicitly
+		route.setStart(start);
+		route.setGoal(goal);
+		return route;
+	}
+
+	/**
+	 * Only the position and time of the data which has been sent last are needed to continue the box's data.
+	 */
+	private static void writeTelemetryData(TelemetryData data, DataOutput out) throws IOException {
+		out.writeBoolean(data != null);
+		if(data != null) {
+			writePosition(data.getPosition(), out);
+			out.writeLong(data.getTimeStamp());
+		}
+	}
+
+	private static TelemetryData readTelemetryData(String truckId, DataInput in) throws IOException {
+		if(!in.readBoolean()) {
+			return null;
+		}
+		TelemetryData data = new TelemetryData(truckId, false);
+		data.setPosition(readPosition(in));
+		data.setTimeStamp(in.readLong());
+		return data;
+	}
+
+	private static void writeRandom(SplitMix64 random, DataOutput out) throws IOException {
+		out.writeLong(random.getSeed());
+		out.writeLong(random.getGamma());
+	}
+
+	private static SplitMix64 readRandom(DataInput in) throws IOException {
+		return new SplitMix64(in.readLong(), in.readLong());
+	}
+
+	private static void writePosition(Position pos, DataOutput out) throws IOException {
+		out.writeBoolean(pos != null);
+		if(pos != null) {
+			out.writeDouble(pos.getLat());
+			out.writeDouble(pos.getLon());
+		}
+	}
+
+	private static Position readPosition(DataInput in) throws IOException {
+		return in.readBoolean() ? new Position(in.readDouble(), in.readDouble()) : null;
+	}
+
+	private static void writeString(String value, DataOutput out) throws IOException {
+		out.writeBoolean(value != null);
+		if(value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
@@ -0,0 +1,50 @@
+package trucksimulation;
+
+/**
+ * Simulated time of a simulation.
+ *
+ * The clock is only advanced by the simulation's ticks, hence simulated time is independent
+ * from wall-clock time and runs faster than real time in batch mode.
+ */
+public class SimulationClock {
+
+	private final long startMs;
+	private long timeMs;
+
+	/**
+	 * @param startMs simulated start time in ms since epoch
+	 */
+	public SimulationClock(long startMs) {
+		this.startMs = startMs;
+		this.timeMs = startMs;
+	}
+
+	/**
+	 * @param ms simulated time in ms by which the clock is advanced
+	 */
+	public void advance(long ms) {
+		timeMs += ms;
+	}
+
+	/**
+	 * @return current simulated time in ms since epoch
+	 */
+	public long getTime() {
+		return timeMs;
+	}
+
+	/**
+	 * @return simulated start time in ms since epoch
+	 */
+	public long getStartTime() {
+		return startMs;
+	}
+
+	/**
+	 * @return simulated time in ms which has passed since the start
+	 */
+	public long getElapsed() {
+		return timeMs - startMs;
+	}
+
+}
@@ -1,5 +1,16 @@
 package trucksimulation;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -7,6 +18,7 @@ import java.util.stream.Collectors;
 import com.google.gson.Gson;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -21,75 +33,349 @@ import trucksimulation.trucks.Truck;
 
 /**
  * Verticle for initializing, starting and stopping simulations.
+ * 
+ * Several instances of the verticle can be deployed as shards, each with its own
+ * <code>shardIndex</code> and the total <code>shardCount</code> in its config.
+ * Every shard runs the trucks of a simulation whose id is mapped to the shard's index,
+ * so that the trucks of a single simulation are moved on several event loops.
  */
 public class SimulationControllerVerticle extends AbstractVerticle {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SimulationControllerVerticle.class);
+	/**
+	 * Simulated duration in seconds of a batch simulation if no duration has been specified.
+	 */
+	private static final long DEFAULT_BATCH_DURATION_S = 24 * 60 * 60;
 	private MongoClient mongo;
 	private int intervalMS;
 	private int msgInterval;
+	private boolean lazyMode;
+	private OverrunPolicy overrunPolicy;
+	private boolean batchTelemetry;
+	private long telemetryBatchMs;
+	/**
+	 * Simulated time in seconds between two checkpoints of a running simulation, 0 if no checkpoints are written.
+	 */
+	private long checkpointInterval;
+	private String checkpointDir;
+	private int shardIndex;
+	private int shardCount;
 	/**
-	 * Maps simulation id's to the running state of the simulation (true when
-	 * running).
+	 * Maps the id's of running simulations to true.
 	 */
 	private LocalMap<String, Boolean> simulationStatus;
+	/**
+	 * Maps simulation id's to the number of shards which are still running the simulation.
+	 */
+	private LocalMap<String, Integer> shardsRunning;
+	/**
+	 * Maps simulation id's to the number of destination arrivals of all shards which have ended.
+	 */
+	private LocalMap<String, Integer> arrivals;
 
 	private HashMap<String, Simulation> simulations = new HashMap<String, Simulation>();
+	private HashMap<String, SimulationCheckpoint> checkpoints = new HashMap<String, SimulationCheckpoint>();
 
 	@Override
 	public void start() throws Exception {
 		mongo = MongoClient.createShared(vertx, config().getJsonObject("mongodb", new JsonObject()));
 		intervalMS = config().getJsonObject("simulation", new JsonObject()).getInteger("interval_ms", 1000);
 		msgInterval = config().getJsonObject("simulation", new JsonObject()).getInteger("msgInterval", 1);
+		lazyMode = config().getJsonObject("simulation", new JsonObject()).getBoolean("lazy", false);
+		String policy = config().getJsonObject("simulation", new JsonObject()).getString("overrunPolicy", "none");
+		overrunPolicy = OverrunPolicy.valueOf(policy.toUpperCase());
+		batchTelemetry = config().getJsonObject("simulation", new JsonObject()).getBoolean("telemetryBatch", false);
+		telemetryBatchMs = config().getJsonObject("simulation", new JsonObject()).getLong("telemetryBatchMs", 0L);
+		checkpointInterval = config().getJsonObject("simulation", new JsonObject()).getLong("checkpointInterval", 0L);
+		checkpointDir = config().getJsonObject("simulation", new JsonObject()).getString("checkpointDir", "checkpoints");
+		shardIndex = config().getInteger("shardIndex", 0);
+		shardCount = config().getInteger("shardCount", 1);
 
 		SharedData sd = vertx.sharedData();
 		simulationStatus = sd.getLocalMap("simStatusMap");
+		shardsRunning = sd.getLocalMap("simShardsMap");
+		arrivals = sd.getLocalMap("simArrivalsMap");
 
 		vertx.eventBus().consumer(Bus.START_SIMULATION.address(), this::startSimulation);
+		vertx.eventBus().consumer(Bus.START_SHARD.address(), this::startShard);
 		vertx.eventBus().consumer(Bus.STOP_SIMULATION.address(), this::stopSimulation);
 		vertx.eventBus().consumer(Bus.SIMULATION_STATUS.address(), this::getSimulationStatus);
 		vertx.eventBus().consumer(Bus.SIMULATION_ENDED.address(), this::handleSimulationEnded);
 	}
 
 	/**
-	 * Loads all trucks from the db which belong to this simulation and starts
-	 * moving them as soon as their corresponding routes are loaded.
+	 * Marks the simulation as running and instructs all shards to start their part of the simulation.
 	 * 
 	 * @param msg
 	 */
 	private void startSimulation(Message<JsonObject> msg) {
 		JsonObject simulationJson = msg.body();
 		String simId = simulationJson.getString("_id");
-		if (isSimulationRunning(simId)) {
+		// the shards consume start requests concurrently, only one of them may start the simulation
+		if (simulationStatus.putIfAbsent(simId, true) != null) {
 			msg.fail(400, "Simulation is already running.");
 			return;
 		}
+		shardsRunning.put(simId, shardCount);
+		arrivals.put(simId, 0);
+		msg.reply("ok");
+		vertx.eventBus().publish(Bus.START_SHARD.address(), simulationJson);
+	}
+
+	/**
+	 * Loads all trucks from the db which belong to this simulation and to this shard and starts
+	 * moving them as soon as their corresponding routes are loaded. If the simulation should be resumed,
+	 * the shard's state is restored from its latest checkpoint instead.
+	 * 
+	 * @param msg
+	 */
+	private void startShard(Message<JsonObject> msg) {
+		JsonObject simulationJson = msg.body();
+		String simId = simulationJson.getString("_id");
 		Simulation simulation = new Simulation(simId, vertx);
 		simulation.setIntervalMs(intervalMS);
 		simulation.setPublishInterval(msgInterval);
+		simulation.setLazyMode(simulationJson.getBoolean("lazy", lazyMode));
+		simulation.setOverrunPolicy(overrunPolicy);
+		simulation.setBatchTelemetry(batchTelemetry, telemetryBatchMs);
+		if (simulationJson.getLong("seed") != null) {
+			simulation.setSeed(simulationJson.getLong("seed"));
+		}
+		if (simulationJson.getLong("startTime") != null) {
+			Instant start = Instant.ofEpochMilli(simulationJson.getLong("startTime"));
+			simulation.setStartTime(LocalDateTime.ofInstant(start, ZoneOffset.UTC));
+		}
 		simulation.setEndlessMode(simulationJson.getBoolean("endless", false));
+		if (simulationJson.getBoolean("batch", false)) {
+			simulation.setBatchMode(simulationJson.getLong("duration", DEFAULT_BATCH_DURATION_S) * 1000);
+		}
+		simulation.setEndHandler(this::shardEnded);
+		if (checkpointInterval > 0) {
+			simulation.setCheckpointHandler(checkpointInterval, this::writeCheckpoint);
+		}
 		simulations.put(simId, simulation);
 
+		if (simulationJson.getBoolean("resume", false)) {
+			resumeShard(simulation);
+		} else {
+			loadShard(simulation);
+		}
+	}
+
+	/**
+	 * Restores the shard's part of the simulation from its route file and latest checkpoint. The simulation
+	 * is started from the beginning if there is no checkpoint.
+	 * 
+	 * @param simulation
+	 */
+	private void resumeShard(Simulation simulation) {
+		String simId = simulation.getId();
+		vertx.fileSystem().readFile(checkpointFile(simId).toString(), res -> {
+			if (res.failed()) {
+				LOGGER.info("simulation `{0}`: shard {1} has no checkpoint, starting from the beginning", simId, shardIndex);
+				loadShard(simulation);
+				return;
+			}
+			vertx.fileSystem().readFile(routeFile(simId).toString(), routes -> {
+				try {
+					if (routes.failed()) {
+						throw new IllegalArgumentException("route file is missing", routes.cause());
+					}
+					SimulationCheckpoint.restore(routes.result(), res.result(), simulation);
+				} catch (IllegalArgumentException e) {
+					LOGGER.error("simulation `{0}`: shard {1} could not restore checkpoint", simId, shardIndex, e);
+					shardEnded(simulation);
+					return;
+				}
+				simulation.resume();
+			});
+		});
+	}
+
+	private void loadShard(Simulation simulation) {
+		String simId = simulation.getId();
 		JsonObject trucksQuery = new JsonObject().put("simulation", simId);
 		mongo.find("trucks", trucksQuery, res -> {
 			if (res.failed()) {
-				msg.fail(500, res.cause().getMessage());
-			} else {
-				msg.reply("ok");
-				setRunningStatus(simId, true);
-				simulations.get(simId).setTruckCount(res.result().size());
-				for (JsonObject truckJson : res.result()) {
-					Truck truck = new Truck(truckJson.getString("_id"));
-					truck.setRouteId(truckJson.getString("route"));
-					simulation.addTruck(truck);
-					assignRoute(simId, truck);
-				}
-				loadTrafficIncidents(simId);
-				simulation.start();
+				LOGGER.error("simulation `{0}`: shard {1} could not load trucks", simId, shardIndex, res.cause());
+				shardEnded(simulation);
+				return;
+			}
+			// trucks are sorted so that they are moved and published in the same order in each run
+			List<JsonObject> shardTrucks = res.result().stream()
+					.filter(t -> isInShard(t.getString("_id")))
+					.sorted(Comparator.comparing(t -> t.getString("_id")))
+					.collect(Collectors.toList());
+			LOGGER.info("simulation `{0}`: shard {1} of {2} runs {3} trucks", simId, shardIndex, shardCount, shardTrucks.size());
+			if (shardTrucks.isEmpty()) {
+				shardEnded(simulation);
+				return;
+			}
+			simulation.setTruckCount(shardTrucks.size());
+			for (JsonObject truckJson : shardTrucks) {
+				Truck truck = new Truck(truckJson.getString("_id"), simulation.getFleet());
+				truck.setRouteId(truckJson.getString("route"));
+				simulation.addTruck(truck);
+				assignRoute(simId, truck);
+			}
+			loadTrafficIncidents(simId);
+			simulation.start();
+		});
+	}
+
+	/**
+	 * Writes a checkpoint of the shard's part of the simulation. The checkpoint is taken on the event loop,
+	 * writing the files is done in the background: routes which have not been written yet are appended to
+	 * the route file before the checkpoint which refers to them is replaced atomically, so that a crash
+	 * never leaves a partially written checkpoint behind.
+	 * 
+	 * @param simulation
+	 */
+	private void writeCheckpoint(Simulation simulation) {
+		SimulationCheckpoint writer = checkpoints.computeIfAbsent(simulation.getId(), id -> new SimulationCheckpoint());
+		Buffer routes = writer.writeRoutes(simulation);
+		// decided by writeRoutes, which starts a new route file when most routes are no longer used
+		boolean newRouteFile = writer.isNewRouteFile();
+		Buffer checkpoint = writer.write(simulation);
+		Path routeFile = routeFile(simulation.getId());
+		Path file = checkpointFile(simulation.getId());
+		vertx.<Void>executeBlocking(fut -> {
+			try {
+				writeFiles(routeFile, routes, newRouteFile, file, checkpoint);
+				fut.complete();
+			} catch (IOException e) {
+				fut.fail(e);
+			}
+		}, true, res -> {
+			if (res.failed()) {
+				LOGGER.warn("simulation `{0}`: could not write checkpoint {1}", simulation.getId(), file, res.cause());
+				// the route file may be incomplete, the next checkpoint starts a new one
+				writer.reset();
 			}
 		});
 	}
 
+	/**
+	 * Replaces or appends to the route file, then replaces the checkpoint which refers to the routes.
+	 * 
+	 * @param routeFile
+	 * @param routes records of the route file, see {@link SimulationCheckpoint#writeRoutes(Simulation)}
+	 * @param newRouteFile whether the records start a new route file, see {@link SimulationCheckpoint#isNewRouteFile()}
+	 * @param file
+	 * @param checkpoint
+	 * @throws IOException
+	 */
+	static void writeFiles(Path routeFile, Buffer routes, boolean newRouteFile, Path file, Buffer checkpoint) throws IOException {
+		Files.createDirectories(file.getParent());
+		if (newRouteFile) {
+			replace(routeFile, routes);
+		} else if (routes.length() > 0) {
+			Files.write(routeFile, routes.getBytes(), StandardOpenOption.APPEND);
+		}
+		replace(file, checkpoint);
+	}
+
+	private static void replace(Path file, Buffer content) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(tmp, content.getBytes());
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the shard's checkpoint and route file of a simulation which has ended. Blocking operations
+	 * are ordered, hence the files are deleted after pending writes.
+	 * 
+	 * @param simId
+	 */
+	private void deleteCheckpoint(String simId) {
+		checkpoints.remove(simId);
+		Path file = checkpointFile(simId);
+		Path routeFile = routeFile(simId);
+		vertx.<Void>executeBlocking(fut -> {
+			try {
+				Files.deleteIfExists(file);
+				Files.deleteIfExists(routeFile);
+				fut.complete();
+			} catch (IOException e) {
+				fut.fail(e);
+			}
+		}, true, res -> {
+			if (res.failed()) {
+				LOGGER.warn("simulation `{0}`: could not delete checkpoint {1}", simId, file, res.cause());
+			}
+		});
+	}
+
+	/**
+	 * A checkpoint only contains the trucks of a single shard, hence it can only be resumed with the same number of shards.
+	 */
+	private Path checkpointFile(String simId) {
+		return Paths.get(checkpointDir, simId + "-" + shardIndex + "-of-" + shardCount + ".ckpt").toAbsolutePath();
+	}
+
+	/**
+	 * The routes of the shard's trucks, which are written once per simulation and referred to by its checkpoints.
+	 */
+	private Path routeFile(String simId) {
+		return Paths.get(checkpointDir, simId + "-" + shardIndex + "-of-" + shardCount + ".routes").toAbsolutePath();
+	}
+
+	private boolean isInShard(String truckId) {
+		return isInShard(truckId, shardIndex, shardCount);
+	}
+
+	/**
+	 * @return whether the truck is run by the shard with the given index
+	 */
+	static boolean isInShard(String truckId, int shardIndex, int shardCount) {
+		return Math.floorMod(truckId.hashCode(), shardCount) == shardIndex;
+	}
+
+	private void shardEnded(Simulation simulation) {
+		String simId = simulation.getId();
+		simulations.remove(simId);
+		deleteCheckpoint(simId);
+		shardEnded(simId, simulation.getArrivedCount());
+	}
+
+	/**
+	 * Accounts for the end of the simulation in this shard and publishes the end of the simulation
+	 * when the last shard has ended.
+	 * 
+	 * @param simId
+	 * @param arrived number of destination arrivals in this shard
+	 */
+	void shardEnded(String simId, int arrived) {
+		if (shardsRunning.get(simId) == null) {
+			// simulation has been stopped in the meantime
+			return;
+		}
+		addAndGet(arrivals, simId, arrived);
+		if (addAndGet(shardsRunning, simId, -1) == 0) {
+			// each shard has added its arrivals before it has counted itself out
+			int allArrived = arrivals.remove(simId);
+			shardsRunning.remove(simId);
+			vertx.eventBus().publish(Bus.SIMULATION_ENDED.address(), new JsonObject().put("id", simId).put("arrived", allArrived));
+		}
+	}
+
+	/**
+	 * Atomically adds the delta to the value of the shared map.
+	 * 
+	 * @return the updated value
+	 */
+	private int addAndGet(LocalMap<String, Integer> map, String key, int delta) {
+		while (true) {
+			Integer current = map.get(key);
+			if (current == null) {
+				return delta;
+			}
+			if (map.replaceIfPresent(key, current, current + delta)) {
+				return current + delta;
+			}
+		}
+	}
+
 	/**
 	 * Stops the simulation if it is running in this verticle and updates the
 	 * running status in the shared status map {@link #simulationStatus}.
@@ -105,7 +391,10 @@ public class SimulationControllerVerticle extends AbstractVerticle {
 			Simulation simulation = simulations.get(simId);
 			simulation.stop();
 			simulations.remove(simId);
-			setRunningStatus(simId, false);
+		}
+		if (shardsRunning.remove(simId) != null) {
+			arrivals.remove(simId);
+			clearRunningStatus(simId);
 		}
 	}
 
@@ -117,7 +406,7 @@ public class SimulationControllerVerticle extends AbstractVerticle {
 	private void handleSimulationEnded(Message<JsonObject> msg) {
 		String simId = msg.body().getString("id");
 		simulations.remove(simId);
-		setRunningStatus(simId, false);
+		clearRunningStatus(simId);
 	}
 
 	/**
@@ -158,13 +447,16 @@ public class SimulationControllerVerticle extends AbstractVerticle {
 					FindOptions idFieldOnly = new FindOptions().setFields(new JsonObject().put("_id", true));
 
 					mongo.findWithOptions("routes", intersectionQuery, idFieldOnly, routes -> {
-						if (routes.result() != null && !routes.result().isEmpty()) {
-							TrafficIncident trafficIncident = gson.fromJson(incidentJson.toString(),
-									TrafficIncident.class);
-							List<String> routeIds = routes.result().stream().map(c -> c.getString("_id"))
-									.collect(Collectors.toList());
-							simulation.addTrafficIncident(trafficIncident, routeIds);
+						TrafficIncident trafficIncident = gson.fromJson(incidentJson.toString(),
+								TrafficIncident.class);
+						List<String> routeIds = new ArrayList<>();
+						if (routes.result() != null) {
+							// routes of other shards are not known to this shard's simulation
+							routeIds = routes.result().stream().map(c -> c.getString("_id"))
+									.filter(simulation::hasRoute).collect(Collectors.toList());
 						}
+						// incidents which do not affect any truck must be added as well, otherwise the simulation won't start
+						simulation.addTrafficIncident(trafficIncident, routeIds);
 					});
 				}
 			}
@@ -180,13 +472,13 @@ public class SimulationControllerVerticle extends AbstractVerticle {
 	}
 
 	/**
-	 * Sets the status of the simulation so that all local verticles can see it.
+	 * Marks the simulation as not running so that all local verticles can see it. Only running simulations
+	 * are kept in the map, so that a start can claim a simulation with {@link LocalMap#putIfAbsent(Object, Object)}.
 	 * 
 	 * @param simulationId
-	 * @param status
 	 */
-	private void setRunningStatus(String simulationId, boolean status) {
-		simulationStatus.put(simulationId, status);
+	private void clearRunningStatus(String simulationId) {
+		simulationStatus.remove(simulationId);
 	}
 
 	private boolean isSimulationRunning(String simulationId) {
@@ -6,6 +6,11 @@ import io.vertx.core.DeploymentOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.receiver.TelemetryReceiverVerticle;
+import trucksimulation.recorder.TelemetryRecorderVerticle;
+import trucksimulation.recorder.TelemetryReplayVerticle;
+import trucksimulation.routing.DistanceStrategy;
+import trucksimulation.routing.Position;
 import trucksimulation.routing.RouteCalculationVerticle;
 
 public class StarterVerticle extends AbstractVerticle {
@@ -14,20 +19,25 @@ public class StarterVerticle extends AbstractVerticle {
 
 	@Override
 	public void start() {
+		String distance = config().getJsonObject("simulation", new JsonObject()).getString("distance", "haversine");
+		Position.setDistanceStrategy(DistanceStrategy.valueOf(distance.toUpperCase()));
+		LOGGER.info("Using {0} distance calculation", Position.getDistanceStrategy());
 
 		DeploymentOptions routeMgrOptions = new DeploymentOptions().setWorker(true).setInstances(2).setConfig(config());
 		DeploymentOptions deplOptions = new DeploymentOptions().setConfig(config());
+		// a replay feeds the sinks with recorded telemetry instead of simulations
+		boolean replay = config().getJsonObject("replay", new JsonObject()).getBoolean("enabled", false);
 
-		vertx.deployVerticle(RouteCalculationVerticle.class.getName(), routeMgrOptions, w -> {
-			if (w.failed()) {
-				LOGGER.error("Deployment of RouteManager failed.", w.cause());
-			}
-			vertx.deployVerticle(new SimulationControllerVerticle(), deplOptions, e -> {
-				if (e.failed()) {
-					LOGGER.error("Deployment of TruckController failed.", e.cause());
+		if(replay) {
+			LOGGER.info("Replay mode, no simulations are deployed");
+		} else {
+			vertx.deployVerticle(RouteCalculationVerticle.class.getName(), routeMgrOptions, w -> {
+				if (w.failed()) {
+					LOGGER.error("Deployment of RouteManager failed.", w.cause());
 				}
+				deploySimulationShards();
 			});
-		});
+		}
 
 		vertx.deployVerticle(new Server(), deplOptions, e -> {
 			if (e.failed()) {
@@ -36,6 +46,22 @@ public class StarterVerticle extends AbstractVerticle {
 		});
 		
 		
+		if(TelemetryFanOutVerticle.isEnabled(config())) {
+			vertx.deployVerticle(new TelemetryFanOutVerticle(), deplOptions, h -> {
+				if (h.failed()) {
+					LOGGER.error("Deployment of telemetry fan-out verticle failed. ", h.cause());
+				}
+			});
+		}
+		
+		if(config().getJsonObject("receiver", new JsonObject()).getBoolean("enabled", false)) {
+			vertx.deployVerticle(new TelemetryReceiverVerticle(), deplOptions, h -> {
+				if (h.failed()) {
+					LOGGER.error("Deployment of stand-in receiver verticle failed. ", h.cause());
+				}
+			});
+		}
+		
 		if(config().getJsonObject("simulation", new JsonObject()).getBoolean("postData", true)) {
 			vertx.deployVerticle(new HttpNotificationVerticle(), deplOptions, h -> {
 				if (h.failed()) {
@@ -44,6 +70,14 @@ public class StarterVerticle extends AbstractVerticle {
 			});
 		}
 		
+		if(!replay && config().getJsonObject("recorder", new JsonObject()).getBoolean("enabled", false)) {
+			vertx.deployVerticle(new TelemetryRecorderVerticle(), deplOptions, h -> {
+				if (h.failed()) {
+					LOGGER.error("Deployment of telemetry recorder verticle failed. ", h.cause());
+				}
+			});
+		}
+		
 		if(config().getJsonObject("amqp").getBoolean("enabled", false)) {
 			vertx.deployVerticle(new AmqpBridgeVerticle(), deplOptions, h -> {
 				if (h.failed()) {
@@ -51,6 +85,31 @@ public class StarterVerticle extends AbstractVerticle {
 				}
 			});
 		}
+		
+		if(replay) {
+			vertx.deployVerticle(new TelemetryReplayVerticle(), deplOptions, h -> {
+				if (h.failed()) {
+					LOGGER.error("Deployment of telemetry replay verticle failed. ", h.cause());
+				}
+			});
+		}
 
 	}
+	
+	/**
+	 * Deploys one simulation controller per shard. Each controller instance runs on its own event loop
+	 * and moves its share of the trucks of each simulation.
+	 */
+	private void deploySimulationShards() {
+		int shardCount = Math.max(1, config().getJsonObject("simulation", new JsonObject()).getInteger("shards", 1));
+		LOGGER.info("Deploying {0} simulation controller shard/s", shardCount);
+		for(int shard = 0; shard < shardCount; shard++) {
+			JsonObject shardConf = config().copy().put("shardIndex", shard).put("shardCount", shardCount);
+			vertx.deployVerticle(new SimulationControllerVerticle(), new DeploymentOptions().setConfig(shardConf), e -> {
+				if (e.failed()) {
+					LOGGER.error("Deployment of TruckController failed.", e.cause());
+				}
+			});
+		}
+	}
 }
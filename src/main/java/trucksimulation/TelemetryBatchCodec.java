@@ -0,0 +1,96 @@
+package trucksimulation;
+
+import static trucksimulation.TelemetryMessageCodec.appendString;
+import static trucksimulation.TelemetryMessageCodec.getString;
+import static trucksimulation.TelemetryMessageCodec.getStringLength;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import trucksimulation.trucks.TelemetryBatch;
+
+/**
+ * Event bus codec for {@link TelemetryBatch}es.
+ *
+ * Local consumers receive the published (immutable) batch itself. Between clustered nodes the batch is sent
+ * as the number of messages, followed by the truck and box ids of all messages (as in the {@link TelemetryMessageCodec})
+ * and the remaining fields column by column.
+ */
+public class TelemetryBatchCodec implements MessageCodec<TelemetryBatch, TelemetryBatch> {
+
+	public static final String NAME = "telemetry-batch";
+
+	@Override
+	public void encodeToWire(Buffer buffer, TelemetryBatch batch) {
+		int size = batch.size();
+		buffer.appendInt(size);
+		for(int i = 0; i < size; i++) {
+			appendString(buffer, batch.getTruckId(i));
+			appendString(buffer, batch.getBoxId(i));
+		}
+		for(int i = 0; i < size; i++) {
+			buffer.appendLong(batch.getTimeStamp(i));
+		}
+		for(int i = 0; i < size; i++) {
+			buffer.appendDouble(batch.getLat(i)).appendDouble(batch.getLon(i));
+		}
+		for(int i = 0; i < size; i++) {
+			buffer.appendDouble(batch.getAltitude(i));
+		}
+		for(int i = 0; i < size; i++) {
+			buffer.appendInt(batch.getVerticalAccuracy(i)).appendInt(batch.getHorizontalAccuracy(i));
+		}
+		for(int i = 0; i < size; i++) {
+			buffer.appendDouble(batch.getSpeed(i)).appendDouble(batch.getBearing(i));
+		}
+		for(int i = 0; i < size; i++) {
+			buffer.appendDouble(batch.getTemperature(i));
+		}
+	}
+
+	@Override
+	public TelemetryBatch decodeFromWire(int pos, Buffer buffer) {
+		int size = buffer.getInt(pos);
+		pos += 4;
+		String[] ids = new String[size * 2];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = getString(buffer, pos);
+			pos += getStringLength(buffer, pos);
+		}
+		int timeStamps = pos;
+		int positions = timeStamps + size * 8;
+		int altitudes = positions + size * 16;
+		int accuracies = altitudes + size * 8;
+		int movements = accuracies + size * 8;
+		int temperatures = movements + size * 16;
+		TelemetryBatch.Builder builder = new TelemetryBatch.Builder(size);
+		for(int i = 0; i < size; i++) {
+			builder.add(ids[2 * i], ids[2 * i + 1],
+					buffer.getLong(timeStamps + i * 8),
+					buffer.getDouble(positions + i * 16),
+					buffer.getDouble(positions + i * 16 + 8),
+					buffer.getDouble(altitudes + i * 8),
+					buffer.getInt(accuracies + i * 8),
+					buffer.getInt(accuracies + i * 8 + 4),
+					buffer.getDouble(movements + i * 16),
+					buffer.getDouble(movements + i * 16 + 8),
+					buffer.getDouble(temperatures + i * 8));
+		}
+		return builder.build();
+	}
+
+	@Override
+	public TelemetryBatch transform(TelemetryBatch batch) {
+		return batch;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public byte systemCodecID() {
+		return -1;
+	}
+
+}
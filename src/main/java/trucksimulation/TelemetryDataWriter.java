@@ -0,0 +1,148 @@
+package trucksimulation;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryData;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Hand-written json serialization of telemetry data, for the consumers of {@link TelemetryMessage}s which
+ * forward them as json.
+ *
+ * Produces the same fields in the same order as serializing the data with {@link Serializer#get()} and adding
+ * the truck's id, but without reflection, without building an intermediate json tree and without parsing a
+ * json string. Values which are not finite (e.g. the speed of a truck whose timestamp didn't change) are
+ * written as null, as json has no representation for them.
+ */
+public final class TelemetryDataWriter {
+
+	private TelemetryDataWriter() {
+	}
+
+	/**
+	 * Appends the telemetry data as json to the given builder, which can be reused for all messages
+	 * by resetting its length.
+	 *
+	 * @param data
+	 * @param truckId id of the truck, added as <code>truckId</code> field
+	 * @param out
+	 */
+	public static void write(TelemetryData data, String truckId, StringBuilder out) {
+		write(TelemetryMessage.of(truckId, data), out);
+	}
+
+	/**
+	 * Appends the message as json to the given builder, which can be reused for all messages
+	 * by resetting its length.
+	 *
+	 * @param msg
+	 * @param out
+	 */
+	public static void write(TelemetryMessage msg, StringBuilder out) {
+		out.append('{');
+		if(msg.getBoxId() != null) {
+			out.append("\"id\":");
+			string(msg.getBoxId(), out);
+			out.append(',');
+		}
+		out.append("\"timeStamp\":").append(msg.getTimeStamp());
+		if(msg.hasPosition()) {
+			out.append(",\"position\":{\"type\":\"Point\",\"coordinates\":[");
+			number(msg.getLon(), out);
+			out.append(',');
+			number(msg.getLat(), out);
+			out.append("]}");
+		}
+		out.append(",\"altitude\":");
+		number(msg.getAltitude(), out);
+		out.append(",\"verticalAccuracy\":").append(msg.getVerticalAccuracy());
+		out.append(",\"horizontalAccuracy\":").append(msg.getHorizontalAccuracy());
+		out.append(",\"speed\":");
+		number(msg.getSpeed(), out);
+		out.append(",\"bearing\":");
+		number(msg.getBearing(), out);
+		out.append(",\"temperature\":");
+		number(msg.getTemperature(), out);
+		if(msg.getTruckId() != null) {
+			out.append(",\"truckId\":");
+			string(msg.getTruckId(), out);
+		}
+		out.append('}');
+	}
+
+	/**
+	 * @param data
+	 * @param truckId id of the truck, added as <code>truckId</code> field
+	 * @return the telemetry data as json object
+	 */
+	public static JsonObject toJson(TelemetryData data, String truckId) {
+		return toJson(TelemetryMessage.of(truckId, data));
+	}
+
+	/**
+	 * @param msg
+	 * @return the message as json object, e.g. to be published to the SockJS bridge
+	 */
+	public static JsonObject toJson(TelemetryMessage msg) {
+		JsonObject json = new JsonObject();
+		if(msg.getBoxId() != null) {
+			json.put("id", msg.getBoxId());
+		}
+		json.put("timeStamp", msg.getTimeStamp());
+		if(msg.hasPosition()) {
+			JsonArray coordinates = new JsonArray().add(finite(msg.getLon())).add(finite(msg.getLat()));
+			json.put("position", new JsonObject().put("type", "Point").put("coordinates", coordinates));
+		}
+		json.put("altitude", finite(msg.getAltitude()))
+				.put("verticalAccuracy", msg.getVerticalAccuracy())
+				.put("horizontalAccuracy", msg.getHorizontalAccuracy())
+				.put("speed", finite(msg.getSpeed()))
+				.put("bearing", finite(msg.getBearing()))
+				.put("temperature", finite(msg.getTemperature()));
+		if(msg.getTruckId() != null) {
+			json.put("truckId", msg.getTruckId());
+		}
+		return json;
+	}
+
+	/**
+	 * @param batch
+	 * @return the messages of the batch as json array of json objects, e.g. to be published to the SockJS bridge
+	 */
+	public static JsonArray toJson(TelemetryBatch batch) {
+		JsonArray json = new JsonArray();
+		for(int i = 0; i < batch.size(); i++) {
+			json.add(toJson(batch.get(i)));
+		}
+		return json;
+	}
+
+	private static Double finite(double value) {
+		return Double.isFinite(value) ? value : null;
+	}
+
+	private static void number(double value, StringBuilder out) {
+		if(Double.isFinite(value)) {
+			out.append(value);
+		} else {
+			out.append("null");
+		}
+	}
+
+	private static void string(String value, StringBuilder out) {
+		out.append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if(c < 0x20) {
+				out.append(String.format("\\u%04x", (int) c));
+			} else {
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
+}
@@ -0,0 +1,150 @@
+package trucksimulation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.TelemetryEncoder.Sample;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Decodes frames of the compact binary telemetry format written by a {@link TelemetryEncoder}.
+ *
+ * The frames of a stream must be decoded in the order in which they have been encoded, starting with a key frame.
+ * A frame which doesn't follow the previous frame of the stream is rejected, as are all further frames up to the next
+ * key frame. Not thread-safe.
+ */
+public class TelemetryDecoder {
+
+	private final List<Sample> trucks = new ArrayList<>();
+	private boolean started = false;
+	/** sequence number of the next frame of the stream */
+	private long sequence;
+	/** read position in the current frame */
+	private int pos;
+
+	/**
+	 * @param frame
+	 * @return the messages of the frame
+	 * @throws IllegalArgumentException if the frame is not valid or it continues a stream whose previous frames haven't been decoded
+	 *         or have been lost
+	 */
+	public List<TelemetryMessage> decode(Buffer frame) {
+		pos = 0;
+		try {
+			byte version = frame.getByte(pos++);
+			if(version != TelemetryEncoder.VERSION && version != TelemetryEncoder.VERSION_WITHOUT_SEQUENCE) {
+				throw new IllegalArgumentException("unsupported telemetry format version " + version);
+			}
+			boolean keyFrame = (frame.getByte(pos++) & TelemetryEncoder.KEY_FRAME) != 0;
+			long frameSequence = version == TelemetryEncoder.VERSION ? readVarint(frame) : sequence;
+			if(keyFrame) {
+				trucks.clear();
+				started = true;
+			} else if(!started) {
+				throw new IllegalArgumentException("telemetry stream doesn't start with a key frame");
+			} else if(frameSequence != sequence) {
+				started = false;
+				throw new IllegalArgumentException("telemetry frame " + frameSequence + " doesn't follow frame " + (sequence - 1)
+						+ ", waiting for the next key frame");
+			}
+			sequence = frameSequence + 1;
+			int count = (int) readVarint(frame);
+			List<TelemetryMessage> messages = new ArrayList<>(count);
+			for(int i = 0; i < count; i++) {
+				messages.add(record(frame));
+			}
+			return messages;
+		} catch(IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("truncated telemetry frame", e);
+		}
+	}
+
+	private TelemetryMessage record(Buffer frame) {
+		int index = (int) readVarint(frame);
+		Sample prev;
+		if(index == trucks.size()) {
+			String truckId = readString(frame);
+			String boxId = readString(frame, truckId);
+			prev = new Sample(index, truckId, boxId);
+			trucks.add(prev);
+		} else if(index < trucks.size()) {
+			prev = trucks.get(index);
+		} else {
+			throw new IllegalArgumentException("unknown truck " + index + " in telemetry frame");
+		}
+		int nan = frame.getByte(pos++);
+		prev.ts = readDelta(frame, prev.ts);
+		double lat = Double.NaN;
+		double lon = Double.NaN;
+		if((nan & TelemetryEncoder.NAN_POSITION) == 0) {
+			prev.lat = readDelta(frame, prev.lat);
+			prev.lon = readDelta(frame, prev.lon);
+			lat = prev.lat / TelemetryEncoder.COORDINATE_SCALE;
+			lon = prev.lon / TelemetryEncoder.COORDINATE_SCALE;
+		}
+		double altitude = Double.NaN;
+		if((nan & TelemetryEncoder.NAN_ALTITUDE) == 0) {
+			prev.altitude = readDelta(frame, prev.altitude);
+			altitude = prev.altitude / TelemetryEncoder.ALTITUDE_SCALE;
+		}
+		prev.verticalAccuracy = readDelta(frame, prev.verticalAccuracy);
+		prev.horizontalAccuracy = readDelta(frame, prev.horizontalAccuracy);
+		double speed = Double.NaN;
+		if((nan & TelemetryEncoder.NAN_SPEED) == 0) {
+			prev.speed = readDelta(frame, prev.speed);
+			speed = prev.speed / TelemetryEncoder.SPEED_SCALE;
+		}
+		double bearing = Double.NaN;
+		if((nan & TelemetryEncoder.NAN_BEARING) == 0) {
+			prev.bearing = readDelta(frame, prev.bearing);
+			bearing = prev.bearing / TelemetryEncoder.BEARING_SCALE;
+		}
+		double temperature = Double.NaN;
+		if((nan & TelemetryEncoder.NAN_TEMPERATURE) == 0) {
+			prev.temperature = readDelta(frame, prev.temperature);
+			temperature = prev.temperature / TelemetryEncoder.TEMPERATURE_SCALE;
+		}
+		return new TelemetryMessage(prev.truckId, prev.boxId, prev.ts, lat, lon, altitude,
+				(int) prev.verticalAccuracy, (int) prev.horizontalAccuracy, speed, bearing, temperature);
+	}
+
+	private long readDelta(Buffer frame, long prev) {
+		long zigzag = readVarint(frame);
+		return prev + ((zigzag >>> 1) ^ -(zigzag & 1));
+	}
+
+	private long readVarint(Buffer frame) {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			byte b = frame.getByte(pos++);
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("malformed varint in telemetry frame");
+	}
+
+	private String readString(Buffer frame) {
+		return readString(frame, null);
+	}
+
+	/**
+	 * @param truckId the value of a string which refers to the truck id
+	 */
+	private String readString(Buffer frame, String truckId) {
+		int header = (int) readVarint(frame);
+		if(header == TelemetryEncoder.NULL_STRING) {
+			return null;
+		} else if(header == TelemetryEncoder.SAME_ID) {
+			return truckId;
+		}
+		int length = header - TelemetryEncoder.STRING_OFFSET;
+		String value = new String(frame.getBytes(pos, pos + length), StandardCharsets.UTF_8);
+		pos += length;
+		return value;
+	}
+
+}
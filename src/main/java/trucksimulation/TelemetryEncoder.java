@@ -0,0 +1,252 @@
+package trucksimulation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Encodes telemetry messages into the compact binary telemetry format, the counterpart of {@link TelemetryDecoder}.
+ *
+ * <p>A stream of frames is encoded, each frame holds a number of records. The first record of a truck's box in a stream
+ * carries the truck's and box's id, afterwards the box is referenced by its index in the stream. Each record
+ * holds the differences of all fields to the truck's previous record as zigzag varints, coordinates are encoded as
+ * fixed-point values with a resolution of 1e-7 degrees (about 1cm), altitude, bearing and temperature with two
+ * and speed with three decimal places. Values which are not finite are decoded as NaN.</p>
+ *
+ * <p>After {@link #reset()}, the next frame is a key frame which doesn't depend on the previous frames. Each frame
+ * carries its sequence number since the last key frame, so that a decoder detects lost or reordered frames and waits
+ * for the next key frame. Sinks whose frames may be delivered out of order or to different receivers start key frames
+ * periodically, see {@link #setKeyFrameInterval(int)}. Not thread-safe.</p>
+ *
+ * <pre>
+ * frame  := version:byte flags:byte sequence:varint count:varint record*
+ * record := truck:varint [truckId:string boxId:string] nan:byte ts lat lon altitude vAcc hAcc speed bearing temperature
+ * string := 0:varint for null | 1:varint for the truck id | (length + 2):varint utf8
+ * </pre>
+ */
+public class TelemetryEncoder {
+
+	static final byte VERSION = 2;
+	/** version of frames without sequence numbers, which are still decoded */
+	static final byte VERSION_WITHOUT_SEQUENCE = 1;
+	/** frame flag: the decoder forgets all trucks and previous records of the stream */
+	static final int KEY_FRAME = 1;
+
+	static final double COORDINATE_SCALE = 1e7;
+	static final double ALTITUDE_SCALE = 100;
+	static final double SPEED_SCALE = 1000;
+	static final double BEARING_SCALE = 100;
+	static final double TEMPERATURE_SCALE = 100;
+
+	/** string header of null */
+	static final int NULL_STRING = 0;
+	/** string header of a box id which equals the truck id */
+	static final int SAME_ID = 1;
+	/** string header of other strings: length + offset */
+	static final int STRING_OFFSET = 2;
+
+	/** flags of the values which are not finite */
+	static final int NAN_POSITION = 1;
+	static final int NAN_ALTITUDE = 2;
+	static final int NAN_SPEED = 4;
+	static final int NAN_BEARING = 8;
+	static final int NAN_TEMPERATURE = 16;
+
+	private final Map<String, Sample> trucks = new HashMap<>();
+	private int nextIndex = 0;
+	private boolean keyFrame = true;
+	/** number of frames since the last key frame */
+	private int sequence = 0;
+	private int keyFrameInterval = 0;
+
+	/**
+	 * Starts a new stream, the next frame is a key frame.
+	 */
+	public void reset() {
+		trucks.clear();
+		nextIndex = 0;
+		keyFrame = true;
+		sequence = 0;
+	}
+
+	/**
+	 * @param frames number of frames after which the encoder starts a key frame by itself, 1 for key frames only,
+	 *        0 (default) to start key frames only on {@link #reset()}
+	 * @return this encoder
+	 */
+	public TelemetryEncoder setKeyFrameInterval(int frames) {
+		this.keyFrameInterval = Math.max(0, frames);
+		return this;
+	}
+
+	/**
+	 * @param msg
+	 * @return a frame which contains the message
+	 */
+	public Buffer encode(TelemetryMessage msg) {
+		Buffer out = beginFrame(1);
+		record(out, msg.getTruckId(), msg.getBoxId(), msg.getTimeStamp(), msg.getLat(), msg.getLon(), msg.getAltitude(),
+				msg.getVerticalAccuracy(), msg.getHorizontalAccuracy(), msg.getSpeed(), msg.getBearing(), msg.getTemperature());
+		return out;
+	}
+
+	/**
+	 * @param messages
+	 * @return a frame which contains the messages in the given order
+	 */
+	public Buffer encode(List<TelemetryMessage> messages) {
+		Buffer out = beginFrame(messages.size());
+		for(TelemetryMessage msg : messages) {
+			record(out, msg.getTruckId(), msg.getBoxId(), msg.getTimeStamp(), msg.getLat(), msg.getLon(), msg.getAltitude(),
+					msg.getVerticalAccuracy(), msg.getHorizontalAccuracy(), msg.getSpeed(), msg.getBearing(), msg.getTemperature());
+		}
+		return out;
+	}
+
+	/**
+	 * @param batch
+	 * @return a frame which contains all messages of the batch
+	 */
+	public Buffer encode(TelemetryBatch batch) {
+		return encode(batch, 0, batch.size());
+	}
+
+	/**
+	 * @param batch
+	 * @param from index of the first message
+	 * @param to index after the last message
+	 * @return a frame which contains the given range of messages of the batch
+	 */
+	public Buffer encode(TelemetryBatch batch, int from, int to) {
+		Buffer out = beginFrame(to - from);
+		for(int i = from; i < to; i++) {
+			record(out, batch.getTruckId(i), batch.getBoxId(i), batch.getTimeStamp(i), batch.getLat(i), batch.getLon(i),
+					batch.getAltitude(i), batch.getVerticalAccuracy(i), batch.getHorizontalAccuracy(i),
+					batch.getSpeed(i), batch.getBearing(i), batch.getTemperature(i));
+		}
+		return out;
+	}
+
+	private Buffer beginFrame(int count) {
+		if(keyFrameInterval > 0 && sequence >= keyFrameInterval) {
+			reset();
+		}
+		Buffer out = Buffer.buffer(8 + count * 24);
+		out.appendByte(VERSION).appendByte((byte) (keyFrame ? KEY_FRAME : 0));
+		writeVarint(out, sequence++);
+		writeVarint(out, count);
+		keyFrame = false;
+		return out;
+	}
+
+	private void record(Buffer out, String truckId, String boxId, long ts, double lat, double lon, double altitude,
+			int vAcc, int hAcc, double speed, double bearing, double temperature) {
+		Sample prev = trucks.get(truckId);
+		if(prev == null || !Objects.equals(prev.boxId, boxId)) {
+			prev = new Sample(nextIndex++, truckId, boxId);
+			trucks.put(truckId, prev);
+			writeVarint(out, prev.index);
+			writeString(out, truckId);
+			if(boxId != null && boxId.equals(truckId)) {
+				// boxes usually have the id of their truck
+				writeVarint(out, SAME_ID);
+			} else {
+				writeString(out, boxId);
+			}
+		} else {
+			writeVarint(out, prev.index);
+		}
+		int nan = (Double.isFinite(lat) && Double.isFinite(lon) ? 0 : NAN_POSITION)
+				| (Double.isFinite(altitude) ? 0 : NAN_ALTITUDE)
+				| (Double.isFinite(speed) ? 0 : NAN_SPEED)
+				| (Double.isFinite(bearing) ? 0 : NAN_BEARING)
+				| (Double.isFinite(temperature) ? 0 : NAN_TEMPERATURE);
+		out.appendByte((byte) nan);
+		writeDelta(out, prev.ts, ts);
+		prev.ts = ts;
+		if((nan & NAN_POSITION) == 0) {
+			long fixedLat = Math.round(lat * COORDINATE_SCALE);
+			long fixedLon = Math.round(lon * COORDINATE_SCALE);
+			writeDelta(out, prev.lat, fixedLat);
+			writeDelta(out, prev.lon, fixedLon);
+			prev.lat = fixedLat;
+			prev.lon = fixedLon;
+		}
+		prev.altitude = writeFixed(out, prev.altitude, altitude, ALTITUDE_SCALE);
+		writeDelta(out, prev.verticalAccuracy, vAcc);
+		prev.verticalAccuracy = vAcc;
+		writeDelta(out, prev.horizontalAccuracy, hAcc);
+		prev.horizontalAccuracy = hAcc;
+		prev.speed = writeFixed(out, prev.speed, speed, SPEED_SCALE);
+		prev.bearing = writeFixed(out, prev.bearing, bearing, BEARING_SCALE);
+		prev.temperature = writeFixed(out, prev.temperature, temperature, TEMPERATURE_SCALE);
+	}
+
+	/**
+	 * Writes the difference of a finite value to the previous value, nothing for other values.
+	 *
+	 * @return the new previous value
+	 */
+	private static long writeFixed(Buffer out, long prev, double value, double scale) {
+		if(!Double.isFinite(value)) {
+			return prev;
+		}
+		long fixed = Math.round(value * scale);
+		writeDelta(out, prev, fixed);
+		return fixed;
+	}
+
+	private static void writeDelta(Buffer out, long prev, long value) {
+		long delta = value - prev;
+		writeVarint(out, (delta << 1) ^ (delta >> 63));
+	}
+
+	static void writeVarint(Buffer out, long value) {
+		while((value & ~0x7FL) != 0) {
+			out.appendByte((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.appendByte((byte) value);
+	}
+
+	private static void writeString(Buffer out, String value) {
+		if(value == null) {
+			writeVarint(out, NULL_STRING);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, bytes.length + STRING_OFFSET);
+			out.appendBytes(bytes);
+		}
+	}
+
+	/**
+	 * Previous record of a truck in fixed-point representation, each stream starts with these values.
+	 */
+	static class Sample {
+		final int index;
+		final String truckId;
+		final String boxId;
+		long ts = 0;
+		long lat = 0;
+		long lon = 0;
+		long altitude = 0;
+		long verticalAccuracy = 20;
+		long horizontalAccuracy = 5;
+		long speed = 0;
+		long bearing = 0;
+		long temperature = Math.round(20 * TEMPERATURE_SCALE);
+
+		Sample(int index, String truckId, String boxId) {
+			this.index = index;
+			this.truckId = truckId;
+			this.boxId = boxId;
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package trucksimulation;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.trucks.TelemetryBatch;
+
+/**
+ * Compatibility adapter for simulations which publish telemetry envelopes: republishes each message of a
+ * {@link TelemetryBatch} as individual {@link trucksimulation.trucks.TelemetryMessage}, for consumers which
+ * only listen on {@link Bus#TELEMETRY} and {@link Bus#TELEMETRY_DETER}.
+ */
+public class TelemetryFanOutVerticle extends AbstractVerticle {
+
+	/**
+	 * @param config configuration of the application
+	 * @return whether the adapter is deployed: the simulations publish envelopes which are republished as single messages
+	 */
+	public static boolean isEnabled(JsonObject config) {
+		return isBatched(config) && config.getJsonObject("simulation", new JsonObject()).getBoolean("telemetryFanOut", true);
+	}
+
+	/**
+	 * @param config configuration of the application
+	 * @return whether telemetry is only published as envelopes, so that sinks must consume the envelopes
+	 */
+	public static boolean isBatchOnly(JsonObject config) {
+		return isBatched(config) && !isEnabled(config);
+	}
+
+	private static boolean isBatched(JsonObject config) {
+		boolean replay = config.getJsonObject("replay", new JsonObject()).getBoolean("enabled", false);
+		return !replay && config.getJsonObject("simulation", new JsonObject()).getBoolean("telemetryBatch", false);
+	}
+
+	@Override
+	public void start() throws Exception {
+		EventBus eb = vertx.eventBus();
+		TelemetryMessageCodec.register(eb);
+		eb.consumer(Bus.TELEMETRY_BATCH.address(), (Message<TelemetryBatch> msg) -> fanOut(msg.body(), Bus.TELEMETRY));
+		eb.consumer(Bus.TELEMETRY_DETER_BATCH.address(), (Message<TelemetryBatch> msg) -> fanOut(msg.body(), Bus.TELEMETRY_DETER));
+	}
+
+	private void fanOut(TelemetryBatch batch, Bus address) {
+		for(int i = 0; i < batch.size(); i++) {
+			vertx.eventBus().publish(address.address(), batch.get(i));
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package trucksimulation;
+
+/**
+ * Wire format in which the sinks send telemetry data to external receivers.
+ */
+public enum TelemetryFormat {
+
+	/**
+	 * One json object per message, or a json array of the messages if several messages are sent at once,
+	 * see {@link TelemetryDataWriter}.
+	 */
+	JSON("application/json"),
+
+	/**
+	 * One json object per line, see {@link TelemetryDataWriter}.
+	 */
+	NDJSON("application/x-ndjson"),
+
+	/**
+	 * Frames of the compact binary telemetry format, see {@link TelemetryEncoder}. By default, each frame sent by a
+	 * sink is a key frame, as frames may be reordered or consumed by different receivers.
+	 */
+	BINARY("application/x-trucksimulation-telemetry");
+
+	private final String contentType;
+
+	TelemetryFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+}
@@ -0,0 +1,115 @@
+package trucksimulation;
+
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Event bus codec for {@link TelemetryMessage}s.
+ *
+ * Local consumers receive the published (immutable) message itself. Between clustered nodes the message
+ * is sent in a fixed binary layout: the truck id and the box id as length-prefixed UTF-8 (length -1 for null),
+ * followed by the timestamp, latitude, longitude, altitude, vertical and horizontal accuracy, speed, bearing
+ * and temperature.
+ */
+public class TelemetryMessageCodec implements MessageCodec<TelemetryMessage, TelemetryMessage> {
+
+	public static final String NAME = "telemetry";
+
+	/**
+	 * Registers this codec and the {@link TelemetryBatchCodec} as default codecs for telemetry messages and batches,
+	 * unless they have been registered already. Each verticle which publishes or consumes telemetry registers them,
+	 * hence they are also available on clustered nodes which only consume telemetry.
+	 *
+	 * @param eventBus
+	 */
+	public static void register(EventBus eventBus) {
+		try {
+			eventBus.registerDefaultCodec(TelemetryMessage.class, new TelemetryMessageCodec());
+		} catch(IllegalStateException e) {
+			// already registered
+		}
+		try {
+			eventBus.registerDefaultCodec(TelemetryBatch.class, new TelemetryBatchCodec());
+		} catch(IllegalStateException e) {
+			// already registered
+		}
+	}
+
+	@Override
+	public void encodeToWire(Buffer buffer, TelemetryMessage msg) {
+		appendString(buffer, msg.getTruckId());
+		appendString(buffer, msg.getBoxId());
+		buffer.appendLong(msg.getTimeStamp())
+			.appendDouble(msg.getLat())
+			.appendDouble(msg.getLon())
+			.appendDouble(msg.getAltitude())
+			.appendInt(msg.getVerticalAccuracy())
+			.appendInt(msg.getHorizontalAccuracy())
+			.appendDouble(msg.getSpeed())
+			.appendDouble(msg.getBearing())
+			.appendDouble(msg.getTemperature());
+	}
+
+	@Override
+	public TelemetryMessage decodeFromWire(int pos, Buffer buffer) {
+		String truckId = getString(buffer, pos);
+		pos += getStringLength(buffer, pos);
+		String boxId = getString(buffer, pos);
+		pos += getStringLength(buffer, pos);
+		return new TelemetryMessage(truckId, boxId,
+				buffer.getLong(pos),
+				buffer.getDouble(pos + 8),
+				buffer.getDouble(pos + 16),
+				buffer.getDouble(pos + 24),
+				buffer.getInt(pos + 32),
+				buffer.getInt(pos + 36),
+				buffer.getDouble(pos + 40),
+				buffer.getDouble(pos + 48),
+				buffer.getDouble(pos + 56));
+	}
+
+	@Override
+	public TelemetryMessage transform(TelemetryMessage msg) {
+		return msg;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public byte systemCodecID() {
+		return -1;
+	}
+
+	static void appendString(Buffer buffer, String value) {
+		if(value == null) {
+			buffer.appendInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			buffer.appendInt(bytes.length).appendBytes(bytes);
+		}
+	}
+
+	static String getString(Buffer buffer, int pos) {
+		int length = buffer.getInt(pos);
+		if(length < 0) {
+			return null;
+		}
+		return new String(buffer.getBytes(pos + 4, pos + 4 + length), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return number of bytes of the string which starts at the given position
+	 */
+	static int getStringLength(Buffer buffer, int pos) {
+		return 4 + Math.max(0, buffer.getInt(pos));
+	}
+
+}
@@ -0,0 +1,268 @@
+package trucksimulation;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Clock of a single simulation.
+ *
+ * Uses one periodic timer per simulation which invokes the tick handler in each interval,
+ * the handler is expected to advance all trucks of the simulation in one batch.
+ * The engine measures how long each tick takes and how far the tick started behind
+ * its schedule, so that a simulation which can't keep up with its interval becomes visible.
+ * 
+ * Alternatively the engine can run a fixed number of ticks back to back without any timer,
+ * see {@link #startBatch(long, Handler)}.
+ * 
+ * A running engine can be suspended, e.g. while the simulation waits for the result of an asynchronous
+ * operation which must be applied before the simulation may continue. Suspended ticks are not run at all.
+ */
+public class TickEngine {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TickEngine.class);
+	/**
+	 * Overruns are summarized in a single log message per report period instead of logging each tick.
+	 */
+	private static final long REPORT_PERIOD_MS = 10000;
+	/**
+	 * In batch mode, ticks are run for at most this time before other events of the event loop are processed.
+	 */
+	private static final long BATCH_SLICE_MS = 50;
+
+	private final Vertx vertx;
+	private final String name;
+	private final long intervalMs;
+	private final Handler<Long> tickHandler;
+	private long timerId = -1;
+	private long startNanos;
+	private boolean batchMode = false;
+	private boolean batchRunning = false;
+	private boolean suspended = false;
+	private long batchTicks;
+	private Handler<Void> batchCompletionHandler;
+
+	private long tickCount = 0;
+	private long overrunCount = 0;
+	/** timer ticks which have been skipped while the engine was suspended */
+	private long skippedCount = 0;
+	private long lastTickNanos = 0;
+	private long maxTickNanos = 0;
+	private long lastLagMs = 0;
+	private long maxLagMs = 0;
+
+	private long reportTicks = 0;
+	private long reportOverruns = 0;
+	private long reportMaxTickNanos = 0;
+	private long reportMaxLagMs = 0;
+
+	/**
+	 *
+	 * @param vertx vertx instance on which the timer is registered
+	 * @param name name used in log messages, usually the simulation id
+	 * @param intervalMs tick interval in ms
+	 * @param tickHandler called once per tick with the number of the current tick (starting at 1)
+	 */
+	public TickEngine(Vertx vertx, String name, long intervalMs, Handler<Long> tickHandler) {
+		if(intervalMs < 1) {
+			throw new IllegalArgumentException("interval must be at least 1ms");
+		}
+		this.vertx = vertx;
+		this.name = name;
+		this.intervalMs = intervalMs;
+		this.tickHandler = tickHandler;
+	}
+
+	public void start() {
+		if(isRunning()) {
+			throw new IllegalStateException("tick engine of `" + name + "` is already running.");
+		}
+		startNanos = System.nanoTime();
+		timerId = vertx.setPeriodic(intervalMs, id -> tick());
+	}
+
+	/**
+	 * Runs the given number of ticks back to back without waiting for the interval to pass.
+	 * Ticks are run in slices on the current context, so that messages and stop requests are still
+	 * processed between two slices.
+	 * 
+	 * @param ticks number of ticks to run
+	 * @param completionHandler called when all ticks have been run, but not if the engine has been stopped before
+	 */
+	public void startBatch(long ticks, Handler<Void> completionHandler) {
+		if(isRunning()) {
+			throw new IllegalStateException("tick engine of `" + name + "` is already running.");
+		}
+		batchMode = true;
+		batchRunning = true;
+		batchTicks = ticks;
+		batchCompletionHandler = completionHandler;
+		startNanos = System.nanoTime();
+		vertx.runOnContext(v -> runBatchSlice());
+	}
+
+	private void runBatchSlice() {
+		long sliceEnd = System.nanoTime() + BATCH_SLICE_MS * 1000000;
+		while(batchRunning && !suspended && tickCount < batchTicks && System.nanoTime() < sliceEnd) {
+			long tickStart = System.nanoTime();
+			tickCount++;
+			tickHandler.handle(tickCount);
+			lastTickNanos = System.nanoTime() - tickStart;
+			maxTickNanos = Math.max(maxTickNanos, lastTickNanos);
+		}
+		if(!batchRunning || suspended) {
+			return;
+		}
+		if(tickCount < batchTicks) {
+			vertx.runOnContext(v -> runBatchSlice());
+		} else {
+			batchRunning = false;
+			LOGGER.info("simulation `{0}`: {1} ticks completed in batch mode after {2}ms", name, tickCount, (System.nanoTime() - startNanos) / 1000000);
+			if(batchCompletionHandler != null) {
+				batchCompletionHandler.handle(null);
+			}
+		}
+	}
+
+	public void stop() {
+		if(timerId != -1) {
+			vertx.cancelTimer(timerId);
+			timerId = -1;
+		}
+		batchRunning = false;
+	}
+
+	/**
+	 * Stops running ticks until {@link #resume()} is called. In batch mode no ticks are skipped,
+	 * the batch continues with the next tick on resume. The periodic timer keeps firing, but its ticks
+	 * are skipped until the engine is resumed.
+	 */
+	public void suspend() {
+		suspended = true;
+	}
+
+	public void resume() {
+		if(suspended) {
+			suspended = false;
+			if(batchRunning) {
+				vertx.runOnContext(v -> runBatchSlice());
+			}
+		}
+	}
+
+	public boolean isSuspended() {
+		return suspended;
+	}
+
+	public boolean isRunning() {
+		return timerId != -1 || batchRunning;
+	}
+
+	/**
+	 * @return true if the engine runs ticks back to back instead of in each interval
+	 */
+	public boolean isBatchMode() {
+		return batchMode;
+	}
+
+	private void tick() {
+		if(suspended) {
+			skippedCount++;
+			return;
+		}
+		long tickStart = System.nanoTime();
+		tickCount++;
+		// periodic timers fire at a fixed rate, so tick n is due at start + n * interval
+		long dueNanos = startNanos + (tickCount + skippedCount) * intervalMs * 1000000;
+		lastLagMs = Math.max(0, (tickStart - dueNanos) / 1000000);
+
+		tickHandler.handle(tickCount);
+
+		lastTickNanos = System.nanoTime() - tickStart;
+		maxTickNanos = Math.max(maxTickNanos, lastTickNanos);
+		maxLagMs = Math.max(maxLagMs, lastLagMs);
+		if(isOverrun()) {
+			overrunCount++;
+			reportOverruns++;
+		}
+		report();
+	}
+
+	private void report() {
+		reportTicks++;
+		reportMaxTickNanos = Math.max(reportMaxTickNanos, lastTickNanos);
+		reportMaxLagMs = Math.max(reportMaxLagMs, lastLagMs);
+		if(reportTicks * intervalMs >= REPORT_PERIOD_MS) {
+			if(reportOverruns > 0) {
+				LOGGER.warn("simulation `{0}`: {1} of {2} ticks exceeded the interval of {3}ms (max tick duration {4}ms, max lag {5}ms)",
+						name, reportOverruns, reportTicks, intervalMs, reportMaxTickNanos / 1000000, reportMaxLagMs);
+			}
+			reportTicks = 0;
+			reportOverruns = 0;
+			reportMaxTickNanos = 0;
+			reportMaxLagMs = 0;
+		}
+	}
+
+	/**
+	 * @return true if the last tick took longer than the tick interval
+	 */
+	public boolean isOverrun() {
+		return !batchMode && lastTickNanos > intervalMs * 1000000;
+	}
+
+	/**
+	 * @return tick statistics of the engine as json object
+	 */
+	public JsonObject getStats() {
+		return new JsonObject()
+				.put("ticks", tickCount)
+				.put("overruns", overrunCount)
+				.put("skipped", skippedCount)
+				.put("intervalMs", intervalMs)
+				.put("lastTickMs", lastTickNanos / 1000000.0)
+				.put("maxTickMs", maxTickNanos / 1000000.0)
+				.put("lastLagMs", lastLagMs)
+				.put("maxLagMs", maxLagMs);
+	}
+
+	public long getIntervalMs() {
+		return intervalMs;
+	}
+
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	public long getOverrunCount() {
+		return overrunCount;
+	}
+
+	/**
+	 * @return duration of the last tick in nanoseconds
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * @return longest tick duration in nanoseconds
+	 */
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+
+	/**
+	 * @return delay in ms between the scheduled and the actual start of the last tick
+	 */
+	public long getLastLagMs() {
+		return lastLagMs;
+	}
+
+	public long getMaxLagMs() {
+		return maxLagMs;
+	}
+
+}
@@ -0,0 +1,150 @@
+package trucksimulation;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel which schedules items for future ticks of a simulation.
+ *
+ * Scheduling an item and firing it take constant time, items which are not due yet cost nothing
+ * while ticks pass. The first level has one bucket per tick for the next {@value #SIZE} ticks, each
+ * higher level has {@value #SIZE} buckets which span all buckets of the level below. Whenever the wheel of
+ * a level has turned once, the next bucket of the level above is cascaded into the lower levels.
+ * Items which are due beyond the span of all levels are kept in an overflow bucket.
+ *
+ * Items cannot be cancelled: owners of items whose deadline may change remember the tick for which the
+ * item has been scheduled and ignore the item when it fires at a different tick.
+ *
+ * @param <T> type of the scheduled items
+ */
+public class TimingWheel<T> {
+
+	private static final int BITS = 8;
+	private static final int SIZE = 1 << BITS;
+	private static final int MASK = SIZE - 1;
+	private static final int LEVELS = 4;
+
+	private final Bucket[][] levels = new Bucket[LEVELS][SIZE];
+	private Bucket overflow = new Bucket();
+	/** spare bucket which is swapped with the bucket that is fired */
+	private Bucket spare = new Bucket();
+	/** all items which are due at or before this tick have been fired */
+	private long tick;
+	private int size = 0;
+
+	/**
+	 * @param tick the current tick, the first call to {@link #advance(Consumer)} fires the items of the next tick
+	 */
+	public TimingWheel(long tick) {
+		this.tick = tick;
+		for(Bucket[] level : levels) {
+			for(int i = 0; i < SIZE; i++) {
+				level[i] = new Bucket();
+			}
+		}
+	}
+
+	/**
+	 * Schedules the item for the given tick. Items which are due at or before the current tick
+	 * are fired with the next tick.
+	 *
+	 * @param due tick at which the item is fired
+	 * @param item
+	 */
+	public void schedule(long due, T item) {
+		place(Math.max(due, tick + 1), item);
+		size++;
+	}
+
+	private void place(long due, Object item) {
+		for(int level = 0; level < LEVELS; level++) {
+			int shift = BITS * (level + 1);
+			if(due >>> shift == tick >>> shift) {
+				levels[level][(int) (due >>> (BITS * level)) & MASK].add(due, item);
+				return;
+			}
+		}
+		overflow.add(due, item);
+	}
+
+	/**
+	 * Advances the wheel by one tick and passes all items which are due at the new tick to the handler,
+	 * in the order in which they have been scheduled for that tick. The handler may schedule items.
+	 *
+	 * @param handler
+	 */
+	@SuppressWarnings("unchecked")
+	public void advance(Consumer<? super T> handler) {
+		tick++;
+		if((tick & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+			Bucket pending = overflow;
+			overflow = new Bucket();
+			cascade(pending);
+		}
+		for(int level = LEVELS - 1; level > 0; level--) {
+			if((tick & ((1L << (BITS * level)) - 1)) == 0) {
+				int idx = (int) (tick >>> (BITS * level)) & MASK;
+				Bucket pending = levels[level][idx];
+				levels[level][idx] = spare;
+				cascade(pending);
+				spare = pending;
+			}
+		}
+		int idx = (int) tick & MASK;
+		Bucket due = levels[0][idx];
+		if(due.size == 0) {
+			return;
+		}
+		levels[0][idx] = spare;
+		size -= due.size;
+		for(int i = 0; i < due.size; i++) {
+			handler.accept((T) due.items[i]);
+		}
+		due.clear();
+		spare = due;
+	}
+
+	private void cascade(Bucket bucket) {
+		for(int i = 0; i < bucket.size; i++) {
+			place(bucket.dues[i], bucket.items[i]);
+		}
+		bucket.clear();
+	}
+
+	/**
+	 * @return the tick whose items have been fired last
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return number of items which have not been fired yet
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static class Bucket {
+		private long[] dues = new long[0];
+		private Object[] items = new Object[0];
+		private int size = 0;
+
+		private void add(long due, Object item) {
+			if(size == items.length) {
+				// most buckets stay empty, hence they are only allocated when used
+				dues = Arrays.copyOf(dues, Math.max(4, size * 2));
+				items = Arrays.copyOf(items, Math.max(4, size * 2));
+			}
+			dues[size] = due;
+			items[size] = item;
+			size++;
+		}
+
+		private void clear() {
+			Arrays.fill(items, 0, size, null);
+			size = 0;
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package trucksimulation.receiver;
+
+import java.util.Arrays;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Histogram of latencies with a resolution of 1ms. Latencies above the highest bucket are counted in the highest
+ * bucket, negative latencies (e.g. due to clock skew) in the lowest. Not thread-safe.
+ */
+public class LatencyHistogram {
+
+	private final long[] counts;
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+	/**
+	 * @param maxMs highest latency in ms which is recorded exactly
+	 */
+	public LatencyHistogram(int maxMs) {
+		counts = new long[maxMs + 1];
+	}
+
+	/**
+	 * @param latencyMs
+	 */
+	public void record(long latencyMs) {
+		long clamped = Math.max(0, latencyMs);
+		counts[(int) Math.min(clamped, counts.length - 1)]++;
+		count++;
+		sum += clamped;
+		max = Math.max(max, clamped);
+	}
+
+	/**
+	 * @return number of recorded latencies
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the lowest latency in ms which is at least as high as the given percentage of all latencies, 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long rank = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for(int ms = 0; ms < counts.length; ms++) {
+			seen += counts[ms];
+			if(seen >= rank && seen > 0) {
+				return ms;
+			}
+		}
+		return 0;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count > 0 ? (double) sum / count : 0;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	/**
+	 * @return mean, median, 99th percentile and maximum in ms
+	 */
+	public JsonObject toJson() {
+		return new JsonObject()
+				.put("mean", getMean())
+				.put("p50", getPercentile(50))
+				.put("p99", getPercentile(99))
+				.put("max", max);
+	}
+
+}
@@ -0,0 +1,240 @@
+package trucksimulation.receiver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import trucksimulation.JsonResponse;
+import trucksimulation.TelemetryDecoder;
+import trucksimulation.TelemetryFormat;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Lightweight stand-in for the telematics receiver, which accepts the box messages posted by the
+ * {@link trucksimulation.HttpNotificationVerticle} in all formats and content encodings, validates and counts them.
+ * The delivery latency of a message is the time between its timestamp and its arrival, which is meaningful if the
+ * timestamps are wall-clock time, e.g. in real-time simulations and replays at speed 1.
+ *
+ * Latency and errors can be injected to test the sink's backpressure and retries: each request is answered after
+ * <code>latency</code> plus up to <code>latencyJitter</code> ms, a share of <code>errorRate</code> of the requests is
+ * rejected with <code>errorStatus</code> without looking at the messages.
+ *
+ * The statistics are served as json on <code>GET &lt;path&gt;/stats</code> and reset by <code>DELETE &lt;path&gt;/stats</code>.
+ */
+public class TelemetryReceiverVerticle extends AbstractVerticle {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryReceiverVerticle.class);
+	private static final int MAX_LATENCY_MS = 60000;
+
+	private final LatencyHistogram latency = new LatencyHistogram(MAX_LATENCY_MS);
+	private HttpServer server;
+	private Random random;
+	private long delayMs;
+	private long jitterMs;
+	private double errorRate;
+	private int errorStatus;
+
+	private long requests;
+	private long rejectedRequests;
+	private long invalidRequests;
+	private long messages;
+	private long invalidMessages;
+	private long bytes;
+	private long firstArrival;
+	private long lastArrival;
+
+	@Override
+	public void start(Future<Void> startFuture) throws Exception {
+		JsonObject conf = config().getJsonObject("receiver", new JsonObject());
+		String path = conf.getString("path", "/api/v1/fleet-telematics");
+		delayMs = conf.getLong("latency", 0L);
+		jitterMs = conf.getLong("latencyJitter", 0L);
+		errorRate = conf.getDouble("errorRate", 0.0);
+		errorStatus = conf.getInteger("errorStatus", 503);
+		random = conf.containsKey("seed") ? new Random(conf.getLong("seed")) : new Random();
+		resetStats();
+
+		Router router = Router.router(vertx);
+		router.get(path + "/stats").handler(ctx -> JsonResponse.build(ctx).end(getStats().encode()));
+		router.delete(path + "/stats").handler(ctx -> {
+			resetStats();
+			ctx.response().setStatusCode(204).end();
+		});
+		router.post(path).handler(ctx -> ctx.request().bodyHandler(body -> receive(ctx, body)));
+		server = vertx.createHttpServer().requestHandler(router::accept).listen(conf.getInteger("port", 9090), res -> {
+			if(res.failed()) {
+				startFuture.fail(res.cause());
+			} else {
+				LOGGER.info("Receiving telemetry data on port {0} at {1}", res.result().actualPort(), path);
+				startFuture.complete();
+			}
+		});
+	}
+
+	/**
+	 * @return port on which the receiver listens
+	 */
+	public int getPort() {
+		return server.actualPort();
+	}
+
+	private void receive(RoutingContext ctx, Buffer body) {
+		long now = System.currentTimeMillis();
+		requests++;
+		bytes += body.length();
+		if(errorRate > 0 && random.nextDouble() < errorRate) {
+			rejectedRequests++;
+			respond(ctx, errorStatus);
+			return;
+		}
+		long invalidBefore = invalidMessages;
+		try {
+			Buffer content = decompress(ctx.request().getHeader("content-encoding"), body);
+			String contentType = ctx.request().getHeader("content-type");
+			if(contentType != null && contentType.startsWith(TelemetryFormat.BINARY.getContentType())) {
+				for(TelemetryMessage msg : new TelemetryDecoder().decode(content)) {
+					count(now, validate(msg));
+				}
+			} else if(contentType != null && contentType.startsWith(TelemetryFormat.NDJSON.getContentType())) {
+				for(String line : content.toString().split("\n")) {
+					if(!line.isEmpty()) {
+						count(now, validate(new JsonObject(line)));
+					}
+				}
+			} else {
+				String json = content.toString().trim();
+				if(json.startsWith("[")) {
+					for(Object msg : new JsonArray(json)) {
+						count(now, msg instanceof JsonObject ? validate((JsonObject) msg) : -1);
+					}
+				} else {
+					count(now, validate(new JsonObject(json)));
+				}
+			}
+		} catch(IOException | RuntimeException e) {
+			LOGGER.debug("invalid request: {0}", e.toString());
+			invalidRequests++;
+			respond(ctx, 400);
+			return;
+		}
+		if(invalidMessages > invalidBefore) {
+			invalidRequests++;
+			respond(ctx, 400);
+		} else {
+			respond(ctx, 200);
+		}
+	}
+
+	private void count(long now, long timeStamp) {
+		if(timeStamp < 0) {
+			invalidMessages++;
+			return;
+		}
+		if(messages == 0) {
+			firstArrival = now;
+		}
+		lastArrival = now;
+		messages++;
+		latency.record(now - timeStamp);
+	}
+
+	/**
+	 * @return the message's timestamp, -1 if the message is not valid
+	 */
+	private static long validate(JsonObject msg) {
+		Long timeStamp = msg.getLong("timeStamp");
+		if(msg.getString("truckId") == null || timeStamp == null || timeStamp <= 0) {
+			return -1;
+		}
+		JsonObject position = msg.getJsonObject("position");
+		if(position != null) {
+			JsonArray coordinates = position.getJsonArray("coordinates");
+			if(coordinates == null || coordinates.size() != 2
+					|| !isValidPosition(coordinates.getDouble(1), coordinates.getDouble(0))) {
+				return -1;
+			}
+		}
+		Double speed = msg.getDouble("speed");
+		return speed != null && speed < 0 ? -1 : timeStamp;
+	}
+
+	private static long validate(TelemetryMessage msg) {
+		if(msg.getTruckId() == null || msg.getTimeStamp() <= 0 || msg.getSpeed() < 0
+				|| (msg.hasPosition() && !isValidPosition(msg.getLat(), msg.getLon()))) {
+			return -1;
+		}
+		return msg.getTimeStamp();
+	}
+
+	private static boolean isValidPosition(Double lat, Double lon) {
+		return lat != null && lon != null && lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180;
+	}
+
+	private void respond(RoutingContext ctx, int status) {
+		long delay = delayMs + (jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0);
+		if(delay > 0) {
+			vertx.setTimer(delay, t -> ctx.response().setStatusCode(status).end());
+		} else {
+			ctx.response().setStatusCode(status).end();
+		}
+	}
+
+	private static Buffer decompress(String encoding, Buffer body) throws IOException {
+		if(encoding == null || encoding.equals("identity")) {
+			return body;
+		}
+		ByteArrayInputStream compressed = new ByteArrayInputStream(body.getBytes());
+		try(InputStream in = encoding.equals("gzip") ? new GZIPInputStream(compressed) : new InflaterInputStream(compressed)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length() * 4);
+			byte[] chunk = new byte[8192];
+			int n;
+			while((n = in.read(chunk)) > 0) {
+				out.write(chunk, 0, n);
+			}
+			return Buffer.buffer(out.toByteArray());
+		}
+	}
+
+	/**
+	 * @return request and message counters, the rate at which valid messages have arrived and their delivery latency in ms
+	 */
+	public JsonObject getStats() {
+		double seconds = (lastArrival - firstArrival) / 1000.0;
+		return new JsonObject()
+				.put("requests", requests)
+				.put("rejectedRequests", rejectedRequests)
+				.put("invalidRequests", invalidRequests)
+				.put("messages", messages)
+				.put("invalidMessages", invalidMessages)
+				.put("bytes", bytes)
+				.put("messagesPerSecond", seconds > 0 ? messages / seconds : 0.0)
+				.put("latencyMs", latency.toJson());
+	}
+
+	private void resetStats() {
+		requests = 0;
+		rejectedRequests = 0;
+		invalidRequests = 0;
+		messages = 0;
+		invalidMessages = 0;
+		bytes = 0;
+		firstArrival = 0;
+		lastArrival = 0;
+		latency.reset();
+	}
+
+}
@@ -0,0 +1,387 @@
+package trucksimulation.recorder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.TelemetryEncoder;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Records telemetry messages to segmented, memory-mapped, append-only files.
+ *
+ * <p>Messages are handed over to a dedicated writer thread through a lock-free queue, {@link #record(TelemetryMessage)}
+ * never blocks. When more than <code>maxPending</code> messages are waiting for the writer, further messages are
+ * dropped and counted.</p>
+ *
+ * <p>The writer encodes the messages in frames of the compact binary telemetry format (see {@link TelemetryEncoder})
+ * and appends them to the current segment file, which is mapped into memory. Each frame is prefixed with its length.
+ * A segment starts with a header which holds the time range of its messages and the end of its data, which is
+ * updated after each frame. Every <code>indexIntervalMs</code> of message time, the encoder starts a key frame whose
+ * offset is written to the segment's time index file, so that a segment can be read from any indexed frame on. When
+ * a frame doesn't fit into the current segment, the segment is truncated to its data and a new one is started.
+ * Existing segments are never overwritten, a new recorder continues with the next segment number.</p>
+ *
+ * <pre>
+ * 00000001.seg := header(64 bytes) (length:int frame)*
+ * header       := magic:int version:int firstTs:long lastTs:long dataEnd:long frames:int indexEntries:int
+ * 00000001.idx := (maxTsBefore:long offset:long)*
+ * </pre>
+ *
+ * The index entry's time is the latest message time of all frames before the indexed frame. Reading all messages
+ * after a time <code>t</code> can therefore start at the last entry whose time is before <code>t</code>.
+ *
+ * @see TelemetryRecordingReader
+ */
+public class TelemetryRecorder implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryRecorder.class);
+
+	/** "TREC" */
+	static final int MAGIC = 0x54524543;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int FIRST_TS = 8;
+	static final int LAST_TS = 16;
+	static final int DATA_END = 24;
+	static final int FRAMES = 32;
+	static final int INDEX_ENTRIES = 36;
+	static final int INDEX_ENTRY_SIZE = 16;
+	static final String SEGMENT_SUFFIX = ".seg";
+	static final String INDEX_SUFFIX = ".idx";
+
+	/** maximum number of messages per frame, limits the size of a frame to a few hundred kB */
+	private static final int MAX_FRAME_MESSAGES = 4096;
+	private static final int MIN_SEGMENT_SIZE = 1 << 20;
+	private static final int MAX_INDEX_ENTRIES = 1 << 16;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final Path dir;
+	private final int segmentSize;
+	private final long indexIntervalMs;
+	private final long maxPending;
+
+	private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+	/** number of messages in the queue */
+	private final AtomicLong pending = new AtomicLong();
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writer;
+	private volatile boolean idle = false;
+	private volatile boolean closed = false;
+	private volatile boolean failed = false;
+
+	// state of the writer thread
+	private final TelemetryEncoder encoder = new TelemetryEncoder();
+	private int sequence;
+	private Path segmentFile;
+	private Path indexFile;
+	private RandomAccessFile segmentRaf;
+	private RandomAccessFile indexRaf;
+	private MappedByteBuffer segment;
+	private MappedByteBuffer index;
+	private long firstTs;
+	private long lastTs;
+	private int frames;
+	private int indexEntries;
+	/** true if the next frame starts a new index entry */
+	private boolean indexNext;
+	private long lastIndexTs;
+
+	/**
+	 * Creates the recorder and starts its writer thread.
+	 *
+	 * @param dir directory of the segment files, created if it doesn't exist
+	 * @param segmentSize maximum size of a segment file in bytes, at least 1MB
+	 * @param indexIntervalMs message time in ms between two entries of the time index
+	 * @param maxPending maximum number of messages which wait for the writer
+	 * @throws IOException if the directory cannot be created or read
+	 */
+	public TelemetryRecorder(Path dir, int segmentSize, long indexIntervalMs, long maxPending) throws IOException {
+		if(segmentSize < MIN_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("segment size must be at least " + MIN_SEGMENT_SIZE + " bytes");
+		}
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.indexIntervalMs = indexIntervalMs;
+		this.maxPending = maxPending;
+		Files.createDirectories(dir);
+		sequence = lastSequence(dir);
+		writer = new Thread(this::run, "telemetry-recorder-" + dir.getFileName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @return number of the last segment in the directory, 0 if there is none
+	 */
+	static int lastSequence(Path dir) throws IOException {
+		int last = 0;
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+			for(Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					last = Math.max(last, Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+				} catch(NumberFormatException e) {
+					// not a segment
+				}
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Hands the message over to the writer thread.
+	 *
+	 * @param msg
+	 * @return false if the message has been dropped because too many messages are pending or the recorder is closed
+	 */
+	public boolean record(TelemetryMessage msg) {
+		return enqueue(msg, 1);
+	}
+
+	/**
+	 * Hands all messages of the batch over to the writer thread.
+	 *
+	 * @param batch
+	 * @return false if the batch has been dropped because too many messages are pending or the recorder is closed
+	 */
+	public boolean record(TelemetryBatch batch) {
+		return batch.size() == 0 || enqueue(batch, batch.size());
+	}
+
+	private boolean enqueue(Object item, int count) {
+		if(closed || failed || pending.get() + count > maxPending) {
+			dropped.addAndGet(count);
+			return false;
+		}
+		pending.addAndGet(count);
+		queue.offer(item);
+		if(idle) {
+			LockSupport.unpark(writer);
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of messages which have been written
+	 */
+	public long getRecorded() {
+		return recorded.get();
+	}
+
+	/**
+	 * @return number of messages which have been dropped
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of messages which wait for the writer
+	 */
+	public long getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * Writes all pending messages, truncates the last segment and stops the writer thread. Blocks until the writer
+	 * has finished.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		List<TelemetryMessage> messages = new ArrayList<>(MAX_FRAME_MESSAGES);
+		try {
+			while(true) {
+				Object item = queue.poll();
+				if(item == null) {
+					if(!messages.isEmpty()) {
+						writeMessages(messages);
+					} else if(closed) {
+						break;
+					} else {
+						idle = true;
+						if(queue.isEmpty() && !closed) {
+							LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+						}
+						idle = false;
+					}
+				} else if(item instanceof TelemetryMessage) {
+					pending.decrementAndGet();
+					messages.add((TelemetryMessage) item);
+					if(messages.size() == MAX_FRAME_MESSAGES) {
+						writeMessages(messages);
+					}
+				} else {
+					if(!messages.isEmpty()) {
+						writeMessages(messages);
+					}
+					TelemetryBatch batch = (TelemetryBatch) item;
+					pending.addAndGet(-batch.size());
+					writeBatch(batch);
+				}
+			}
+		} catch(IOException | RuntimeException e) {
+			LOGGER.error("recording to {0} failed, further messages are dropped", dir, e);
+			failed = true;
+			dropped.addAndGet(pending.getAndSet(0));
+			queue.clear();
+		} finally {
+			try {
+				finishSegment();
+			} catch(IOException e) {
+				LOGGER.error("could not close segment {0}", segmentFile, e);
+			}
+		}
+	}
+
+	private void writeMessages(List<TelemetryMessage> messages) throws IOException {
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for(TelemetryMessage msg : messages) {
+			min = Math.min(min, msg.getTimeStamp());
+			max = Math.max(max, msg.getTimeStamp());
+		}
+		write(min, max, messages.size(), () -> encoder.encode(messages));
+		messages.clear();
+	}
+
+	private void writeBatch(TelemetryBatch batch) throws IOException {
+		for(int from = 0; from < batch.size(); from += MAX_FRAME_MESSAGES) {
+			int start = from;
+			int end = Math.min(batch.size(), from + MAX_FRAME_MESSAGES);
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for(int i = start; i < end; i++) {
+				min = Math.min(min, batch.getTimeStamp(i));
+				max = Math.max(max, batch.getTimeStamp(i));
+			}
+			write(min, max, end - start, () -> encoder.encode(batch, start, end));
+		}
+	}
+
+	/**
+	 * Appends a frame to the current segment, starting a new segment if the frame doesn't fit.
+	 *
+	 * @param minTs earliest message time of the frame
+	 * @param maxTs latest message time of the frame
+	 * @param count number of messages of the frame
+	 * @param frameEncoder encodes the frame, called again if the frame has to be encoded as key frame of a new segment
+	 */
+	private void write(long minTs, long maxTs, int count, Supplier<Buffer> frameEncoder) throws IOException {
+		if(segment == null) {
+			openSegment();
+		}
+		startIndexEntry(minTs);
+		Buffer frame = frameEncoder.get();
+		if(segment.position() + 4 + frame.length() > segmentSize || (indexNext && indexEntries == MAX_INDEX_ENTRIES)) {
+			finishSegment();
+			openSegment();
+			startIndexEntry(minTs);
+			frame = frameEncoder.get();
+			if(HEADER_SIZE + 4 + frame.length() > segmentSize) {
+				throw new IOException("frame of " + frame.length() + " bytes exceeds the segment size");
+			}
+		}
+		if(indexNext) {
+			index.putLong(frames == 0 ? Long.MIN_VALUE : lastTs).putLong(segment.position());
+			indexEntries++;
+			indexNext = false;
+		}
+		segment.putInt(frame.length());
+		segment.put(frame.getByteBuf().nioBuffer());
+		firstTs = Math.min(firstTs, minTs);
+		lastTs = Math.max(lastTs, maxTs);
+		frames++;
+		segment.putLong(FIRST_TS, firstTs)
+			.putLong(LAST_TS, lastTs)
+			.putInt(FRAMES, frames)
+			.putInt(INDEX_ENTRIES, indexEntries)
+			.putLong(DATA_END, segment.position());
+		recorded.addAndGet(count);
+	}
+
+	/**
+	 * Starts a key frame which is added to the time index if the index interval has passed.
+	 */
+	private void startIndexEntry(long minTs) {
+		if(indexNext || minTs - lastIndexTs >= indexIntervalMs) {
+			encoder.reset();
+			indexNext = true;
+			lastIndexTs = minTs;
+		}
+	}
+
+	private void openSegment() throws IOException {
+		sequence++;
+		segmentFile = dir.resolve(String.format("%08d%s", sequence, SEGMENT_SUFFIX));
+		indexFile = dir.resolve(String.format("%08d%s", sequence, INDEX_SUFFIX));
+		segmentRaf = new RandomAccessFile(segmentFile.toFile(), "rw");
+		indexRaf = new RandomAccessFile(indexFile.toFile(), "rw");
+		segment = segmentRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		index = indexRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) MAX_INDEX_ENTRIES * INDEX_ENTRY_SIZE);
+		firstTs = Long.MAX_VALUE;
+		lastTs = Long.MIN_VALUE;
+		frames = 0;
+		indexEntries = 0;
+		indexNext = true;
+		segment.putInt(MAGIC).putInt(VERSION)
+			.putLong(firstTs)
+			.putLong(lastTs)
+			.putLong(HEADER_SIZE)
+			.putInt(frames)
+			.putInt(indexEntries);
+		segment.position(HEADER_SIZE);
+	}
+
+	/**
+	 * Flushes the current segment and truncates it and its index to the data which has been written.
+	 */
+	private void finishSegment() throws IOException {
+		if(segment == null) {
+			return;
+		}
+		long dataEnd = segment.position();
+		segment.force();
+		index.force();
+		segment = null;
+		index = null;
+		try {
+			segmentRaf.setLength(dataEnd);
+			indexRaf.setLength((long) indexEntries * INDEX_ENTRY_SIZE);
+		} catch(IOException e) {
+			// the mapping may prevent truncation on some platforms, readers rely on the header's data end
+			LOGGER.debug("could not truncate segment {0}", segmentFile, e);
+		} finally {
+			segmentRaf.close();
+			indexRaf.close();
+		}
+	}
+
+}
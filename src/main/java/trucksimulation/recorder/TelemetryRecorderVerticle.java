@@ -0,0 +1,84 @@
+package trucksimulation.recorder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.Bus;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Records the exact and the deteriorated telemetry data of all simulations, see {@link TelemetryRecorder}.
+ * The data is written to the subdirectories <code>exact</code> and <code>deteriorated</code> of the configured directory.
+ *
+ * If the simulations publish telemetry envelopes, the envelopes are recorded instead of the fanned out messages.
+ */
+public class TelemetryRecorderVerticle extends AbstractVerticle {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryRecorderVerticle.class);
+	public static final String EXACT = "exact";
+	public static final String DETERIORATED = "deteriorated";
+
+	private TelemetryRecorder exact;
+	private TelemetryRecorder deteriorated;
+
+	@Override
+	public void start(Future<Void> startFuture) throws Exception {
+		JsonObject conf = config().getJsonObject("recorder", new JsonObject());
+		Path dir = Paths.get(conf.getString("dir", "recordings"));
+		int segmentSize = conf.getInteger("segmentSize", 64) << 20;
+		long indexIntervalMs = conf.getLong("indexInterval", 60L) * 1000;
+		long maxPending = conf.getLong("maxPending", 1000000L);
+		boolean batches = config().getJsonObject("simulation", new JsonObject()).getBoolean("telemetryBatch", false);
+
+		vertx.<Void>executeBlocking(f -> {
+			try {
+				exact = new TelemetryRecorder(dir.resolve(EXACT), segmentSize, indexIntervalMs, maxPending);
+				deteriorated = new TelemetryRecorder(dir.resolve(DETERIORATED), segmentSize, indexIntervalMs, maxPending);
+				f.complete();
+			} catch(Exception e) {
+				f.fail(e);
+			}
+		}, res -> {
+			if(res.failed()) {
+				LOGGER.error("Could not start recording to {0}", dir, res.cause());
+				startFuture.fail(res.cause());
+				return;
+			}
+			EventBus eb = vertx.eventBus();
+			TelemetryMessageCodec.register(eb);
+			if(batches) {
+				eb.consumer(Bus.TELEMETRY_BATCH.address(), (Message<TelemetryBatch> msg) -> exact.record(msg.body()));
+				eb.consumer(Bus.TELEMETRY_DETER_BATCH.address(), (Message<TelemetryBatch> msg) -> deteriorated.record(msg.body()));
+			} else {
+				eb.consumer(Bus.TELEMETRY.address(), (Message<TelemetryMessage> msg) -> exact.record(msg.body()));
+				eb.consumer(Bus.TELEMETRY_DETER.address(), (Message<TelemetryMessage> msg) -> deteriorated.record(msg.body()));
+			}
+			LOGGER.info("Recording telemetry data to {0}", dir.toAbsolutePath());
+			startFuture.complete();
+		});
+	}
+
+	@Override
+	public void stop(Future<Void> stopFuture) throws Exception {
+		// closing waits for the writer threads
+		vertx.<Void>executeBlocking(f -> {
+			for(TelemetryRecorder recorder : new TelemetryRecorder[] {exact, deteriorated}) {
+				if(recorder != null) {
+					recorder.close();
+					LOGGER.info("recorded {0} messages, dropped {1}", recorder.getRecorded(), recorder.getDropped());
+				}
+			}
+			f.complete();
+		}, stopFuture.completer());
+	}
+
+}
@@ -0,0 +1,162 @@
+package trucksimulation.recorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.TelemetryDecoder;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Reads the segments which a {@link TelemetryRecorder} has written to a directory.
+ *
+ * Segments whose time range doesn't overlap the requested range are skipped, within a segment reading starts at the
+ * last indexed frame before the requested range. Segments which are still being written can be read up to the last
+ * frame which has been completed.
+ */
+public class TelemetryRecordingReader {
+
+	private final Path dir;
+
+	/**
+	 * @param dir directory of the segment files
+	 */
+	public TelemetryRecordingReader(Path dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @return all segment files of the recording, in the order in which they have been written
+	 * @throws IOException
+	 */
+	public List<Path> getSegments() throws IOException {
+		List<Path> segments = new ArrayList<>();
+		if(!Files.isDirectory(dir)) {
+			return segments;
+		}
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + TelemetryRecorder.SEGMENT_SUFFIX)) {
+			for(Path file : files) {
+				segments.add(file);
+			}
+		}
+		// segment numbers have a fixed width
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * @return time of the earliest message of the recording, Long.MAX_VALUE if nothing has been recorded
+	 * @throws IOException if a segment cannot be read
+	 */
+	public long getFirstTimeStamp() throws IOException {
+		for(Path file : getSegments()) {
+			try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				if(channel.size() < TelemetryRecorder.HEADER_SIZE) {
+					continue;
+				}
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TelemetryRecorder.HEADER_SIZE);
+				if(header.getInt(0) == TelemetryRecorder.MAGIC && header.getInt(TelemetryRecorder.FRAMES) > 0) {
+					return header.getLong(TelemetryRecorder.FIRST_TS);
+				}
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Passes all recorded messages to the consumer, in the order in which they have been recorded.
+	 *
+	 * @param consumer
+	 * @throws IOException if a segment cannot be read or is not valid
+	 */
+	public void read(Consumer<TelemetryMessage> consumer) throws IOException {
+		read(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+	}
+
+	/**
+	 * Passes the recorded messages whose time is within the given range to the consumer, in the order in which they
+	 * have been recorded.
+	 *
+	 * @param fromTs earliest message time in ms, inclusive
+	 * @param toTs latest message time in ms, inclusive
+	 * @param consumer
+	 * @throws IOException if a segment cannot be read or is not valid
+	 */
+	public void read(long fromTs, long toTs, Consumer<TelemetryMessage> consumer) throws IOException {
+		for(Path segment : getSegments()) {
+			readSegment(segment, fromTs, toTs, consumer);
+		}
+	}
+
+	private void readSegment(Path file, long fromTs, long toTs, Consumer<TelemetryMessage> consumer) throws IOException {
+		MappedByteBuffer segment;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(segment.capacity() < TelemetryRecorder.HEADER_SIZE || segment.getInt(0) != TelemetryRecorder.MAGIC) {
+			throw new IOException(file + " is not a telemetry segment");
+		}
+		if(segment.getInt(4) != TelemetryRecorder.VERSION) {
+			throw new IOException("unsupported version " + segment.getInt(4) + " of segment " + file);
+		}
+		long firstTs = segment.getLong(TelemetryRecorder.FIRST_TS);
+		long lastTs = segment.getLong(TelemetryRecorder.LAST_TS);
+		if(segment.getInt(TelemetryRecorder.FRAMES) == 0 || lastTs < fromTs || firstTs > toTs) {
+			return;
+		}
+		long dataEnd = segment.getLong(TelemetryRecorder.DATA_END);
+		int pos = (int) seek(file, segment.getInt(TelemetryRecorder.INDEX_ENTRIES), fromTs);
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		while(pos < dataEnd) {
+			int length = segment.getInt(pos);
+			ByteBuffer frame = segment.duplicate();
+			frame.position(pos + 4).limit(pos + 4 + length);
+			pos += 4 + length;
+			try {
+				for(TelemetryMessage msg : decoder.decode(Buffer.buffer(Unpooled.wrappedBuffer(frame)))) {
+					if(msg.getTimeStamp() >= fromTs && msg.getTimeStamp() <= toTs) {
+						consumer.accept(msg);
+					}
+				}
+			} catch(IllegalArgumentException e) {
+				throw new IOException("invalid frame in segment " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * @return offset of the last indexed frame before which all messages are earlier than the given time
+	 */
+	private long seek(Path segmentFile, int entries, long fromTs) throws IOException {
+		String name = segmentFile.getFileName().toString();
+		Path indexFile = segmentFile.resolveSibling(
+				name.substring(0, name.length() - TelemetryRecorder.SEGMENT_SUFFIX.length()) + TelemetryRecorder.INDEX_SUFFIX);
+		long offset = TelemetryRecorder.HEADER_SIZE;
+		if(!Files.exists(indexFile)) {
+			return offset;
+		}
+		try(FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			int count = (int) Math.min(entries, channel.size() / TelemetryRecorder.INDEX_ENTRY_SIZE);
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * TelemetryRecorder.INDEX_ENTRY_SIZE);
+			for(int i = 0; i < count; i++) {
+				if(index.getLong(i * TelemetryRecorder.INDEX_ENTRY_SIZE) >= fromTs) {
+					break;
+				}
+				offset = index.getLong(i * TelemetryRecorder.INDEX_ENTRY_SIZE + 8);
+			}
+		}
+		return offset;
+	}
+
+}
@@ -0,0 +1,122 @@
+package trucksimulation.recorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Replays a recording of a {@link TelemetryRecorder} in the order in which the messages have been recorded.
+ *
+ * Messages are paced by their time: with speed 1 a message is passed on as much later after the start of the replay
+ * as it has been sent after the origin of the replay, with speed N N times faster. With speed 0, messages are passed
+ * on as fast as the consumer accepts them. Messages which are due at the same time are passed on in chunks.
+ *
+ * A replay is run by a single thread, which blocks while it waits for the next message to be due.
+ */
+public class TelemetryReplay {
+
+	private static final int MAX_CHUNK = 1024;
+
+	private final TelemetryRecordingReader reader;
+	private final double speed;
+	private volatile boolean stopped = false;
+
+	private List<TelemetryMessage> chunk;
+	private Consumer<List<TelemetryMessage>> consumer;
+	private long replayed;
+
+	/**
+	 * @param dir directory of the recording
+	 * @param speed factor by which the replay is faster than the recording, 0 to replay at maximum speed
+	 */
+	public TelemetryReplay(Path dir, double speed) {
+		if(speed < 0) {
+			throw new IllegalArgumentException("speed must not be negative");
+		}
+		this.reader = new TelemetryRecordingReader(dir);
+		this.speed = speed;
+	}
+
+	/**
+	 * @return the reader of the replayed recording
+	 */
+	public TelemetryRecordingReader getReader() {
+		return reader;
+	}
+
+	/**
+	 * Replays the messages whose time is within the given range. Returns once all messages have been passed on or
+	 * the replay has been stopped.
+	 *
+	 * @param fromTs earliest message time in ms, inclusive
+	 * @param toTs latest message time in ms, inclusive
+	 * @param originTs message time which corresponds to the start of the replay
+	 * @param startNanos start of the replay in {@link System#nanoTime()}
+	 * @param consumer receives the messages in chunks once they are due, the chunks are not reused
+	 * @return number of replayed messages
+	 * @throws IOException if the recording cannot be read
+	 */
+	public long replay(long fromTs, long toTs, long originTs, long startNanos, Consumer<List<TelemetryMessage>> consumer)
+			throws IOException {
+		this.consumer = consumer;
+		this.chunk = new ArrayList<>(MAX_CHUNK);
+		this.replayed = 0;
+		try {
+			reader.read(fromTs, toTs, msg -> {
+				if(speed > 0) {
+					long due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(msg.getTimeStamp() - originTs) / speed);
+					if(due - System.nanoTime() > 0) {
+						// everything before this message is due now
+						flush();
+						long wait;
+						while((wait = due - System.nanoTime()) > 0 && !stopped) {
+							LockSupport.parkNanos(this, wait);
+						}
+					}
+				}
+				if(stopped) {
+					throw new CancellationException();
+				}
+				chunk.add(msg);
+				if(chunk.size() == MAX_CHUNK) {
+					flush();
+				}
+			});
+			flush();
+		} catch(CancellationException e) {
+			// stopped
+		}
+		return replayed;
+	}
+
+	/**
+	 * Stops the replay. A replay thread which waits for the next message to be due returns once it is interrupted or
+	 * the message is due.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return true if the replay has been stopped
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	private void flush() {
+		if(!chunk.isEmpty()) {
+			replayed += chunk.size();
+			consumer.accept(chunk);
+			chunk = new ArrayList<>(MAX_CHUNK);
+		}
+	}
+
+}
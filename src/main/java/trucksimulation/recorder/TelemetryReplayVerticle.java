@@ -0,0 +1,114 @@
+package trucksimulation.recorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import trucksimulation.Bus;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Replays the exact and the deteriorated telemetry data which the {@link TelemetryRecorderVerticle} has recorded.
+ * The messages are published on the same addresses as the messages of a simulation, so that all sinks receive them
+ * as if the simulation was running.
+ *
+ * Each recording is read by its own thread, which hands the due messages over to the event loop of this verticle.
+ * At most {@link #MAX_PENDING_CHUNKS} chunks per recording wait for the event loop, hence a replay at maximum speed
+ * is as fast as the event loop publishes the messages.
+ */
+public class TelemetryReplayVerticle extends AbstractVerticle {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryReplayVerticle.class);
+	private static final int MAX_PENDING_CHUNKS = 4;
+
+	private final List<TelemetryReplay> replays = new ArrayList<>();
+	private final List<Thread> threads = new ArrayList<>();
+
+	@Override
+	public void start(Future<Void> startFuture) throws Exception {
+		JsonObject conf = config().getJsonObject("replay", new JsonObject());
+		Path dir = Paths.get(conf.getString("dir", config().getJsonObject("recorder", new JsonObject()).getString("dir", "recordings")));
+		double speed = conf.getDouble("speed", 1.0);
+		long fromTs = conf.getLong("from", Long.MIN_VALUE);
+		long toTs = conf.getLong("to", Long.MAX_VALUE);
+		TelemetryMessageCodec.register(vertx.eventBus());
+
+		replays.add(new TelemetryReplay(dir.resolve(TelemetryRecorderVerticle.EXACT), speed));
+		replays.add(new TelemetryReplay(dir.resolve(TelemetryRecorderVerticle.DETERIORATED), speed));
+		vertx.<Long>executeBlocking(f -> {
+			try {
+				long first = Long.MAX_VALUE;
+				for(TelemetryReplay replay : replays) {
+					first = Math.min(first, replay.getReader().getFirstTimeStamp());
+				}
+				f.complete(Math.max(fromTs, first));
+			} catch(IOException e) {
+				f.fail(e);
+			}
+		}, res -> {
+			if(res.failed()) {
+				LOGGER.error("Could not read recording {0}", dir, res.cause());
+				startFuture.fail(res.cause());
+				return;
+			}
+			if(res.result() == Long.MAX_VALUE) {
+				LOGGER.warn("No telemetry has been recorded to {0}", dir.toAbsolutePath());
+			}
+			long startNanos = System.nanoTime();
+			start(replays.get(0), Bus.TELEMETRY, fromTs, toTs, res.result(), startNanos);
+			start(replays.get(1), Bus.TELEMETRY_DETER, fromTs, toTs, res.result(), startNanos);
+			LOGGER.info("Replaying telemetry data of {0} at speed {1}", dir.toAbsolutePath(), speed > 0 ? speed : "max");
+			startFuture.complete();
+		});
+	}
+
+	private void start(TelemetryReplay replay, Bus address, long fromTs, long toTs, long originTs, long startNanos) {
+		Semaphore pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+		Thread thread = new Thread(() -> {
+			try {
+				long count = replay.replay(fromTs, toTs, originTs, startNanos, chunk -> {
+					try {
+						pendingChunks.acquire();
+					} catch(InterruptedException e) {
+						replay.stop();
+						return;
+					}
+					context.runOnContext(v -> {
+						for(TelemetryMessage msg : chunk) {
+							vertx.eventBus().publish(address.address(), msg);
+						}
+						pendingChunks.release();
+					});
+				});
+				LOGGER.info("replayed {0} messages on {1}", count, address.address());
+			} catch(IOException e) {
+				if(!replay.isStopped()) {
+					LOGGER.error("replay on {0} failed", address.address(), e);
+				}
+			}
+		}, "telemetry-replay-" + address.address());
+		thread.setDaemon(true);
+		threads.add(thread);
+		thread.start();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		for(TelemetryReplay replay : replays) {
+			replay.stop();
+		}
+		for(Thread thread : threads) {
+			thread.interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package trucksimulation.routing;
+
+/**
+ * Formulas for the distance between two positions given in degrees.
+ *
+ * The strategy used by {@link Position#getDistance(double, double, double, double)} can be selected with
+ * {@link Position#setDistanceStrategy(DistanceStrategy)}, e.g. with <code>simulation.distance</code> in the config.
+ */
+public enum DistanceStrategy {
+
+	/**
+	 * Spherical law of cosines. Needs an <code>acos</code> and is numerically poor for short distances:
+	 * identical positions may be several centimeters apart due to rounding errors.
+	 */
+	LAW_OF_COSINES {
+		@Override
+		public double getDistance(double latDegA, double lonDegA, double latDegB, double lonDegB) {
+			double latA = Math.toRadians(latDegA);
+			double lonA = Math.toRadians(lonDegA);
+			double latB = Math.toRadians(latDegB);
+			double lonB = Math.toRadians(lonDegB);
+			double cosAng = (Math.cos(latA) * Math.cos(latB) * Math.cos(lonB - lonA)) + (Math.sin(latA) * Math.sin(latB));
+			if(cosAng > 1) {
+				cosAng = 1; // might be > 1 due to rounding errors
+			}
+			return Math.acos(cosAng) * EARTH_RADIUS;
+		}
+	},
+
+	/**
+	 * Haversine formula, exact on a sphere for all distances.
+	 */
+	HAVERSINE {
+		@Override
+		public double getDistance(double latDegA, double lonDegA, double latDegB, double lonDegB) {
+			double latA = Math.toRadians(latDegA);
+			double latB = Math.toRadians(latDegB);
+			double sinDLat = Math.sin((latB - latA) / 2);
+			double sinDLon = Math.sin(Math.toRadians(lonDegB - lonDegA) / 2);
+			double h = sinDLat * sinDLat + Math.cos(latA) * Math.cos(latB) * sinDLon * sinDLon;
+			return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+		}
+	},
+
+	/**
+	 * Equirectangular projection around the mean latitude of both positions, i.e. the distance on a local
+	 * tangent plane. Needs a single <code>cos</code> and <code>sqrt</code>.
+	 *
+	 * Compared to {@link #HAVERSINE} at latitudes between -70 and 70 degrees, the relative error is below 1e-8
+	 * for distances up to 1km (less than 0.01mm) and below 1e-6 for distances up to 10km (less than 1cm),
+	 * which covers the distances between two points of a route and the steps of a truck.
+	 * It must not be used for long distances or near the poles: at 100km the error grows to about 10m.
+	 */
+	EQUIRECTANGULAR {
+		@Override
+		public double getDistance(double latDegA, double lonDegA, double latDegB, double lonDegB) {
+			double x = Math.toRadians(lonDegB - lonDegA) * Math.cos(Math.toRadians((latDegA + latDegB) / 2));
+			double y = Math.toRadians(latDegB - latDegA);
+			return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+		}
+	};
+
+	private static final int EARTH_RADIUS = 6378137;
+
+	/**
+	 * @return distance in meters between A and B
+	 */
+	public abstract double getDistance(double latDegA, double lonDegA, double latDegB, double lonDegB);
+
+}
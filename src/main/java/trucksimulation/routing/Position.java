@@ -2,7 +2,8 @@ package trucksimulation.routing;
 
 public class Position {
 
-	private static final int EARTH_RADIUS = 6378137;
+	/** set once on startup and read on every event loop */
+	private static volatile DistanceStrategy distanceStrategy = DistanceStrategy.HAVERSINE;
 	private double lat;
 	private double lon;
 	private String name;
@@ -39,11 +40,32 @@ public class Position {
 	}
 
 	public Position moveTowards(Position target, double distance2move, double distance2NextPos) {
-		double latNew, lonNew;
-		double stepsize = distance2NextPos / distance2move;
-		latNew = lat + (target.lat - lat) / stepsize;
-		lonNew = lon + (target.lon - lon) / stepsize;
-		return new Position(latNew, lonNew);
+		double fraction = distance2move / distance2NextPos;
+		return new Position(interpolate(lat, target.lat, fraction), interpolate(lon, target.lon, fraction));
+	}
+
+	/**
+	 * Writes the point at the given fraction of the way between A and B into the buffer.
+	 * Interpolation is linear in latitude and longitude, which is exact enough for the short
+	 * distances between two points of a route.
+	 * 
+	 * @param fraction
+	 *            0 for A, 1 for B
+	 * @param out
+	 *            buffer which receives latitude and longitude at offset and offset+1
+	 * @param offset
+	 *            index of the latitude in the buffer
+	 */
+	public static void interpolate(double latA, double lonA, double latB, double lonB, double fraction, double[] out, int offset) {
+		out[offset] = interpolate(latA, latB, fraction);
+		out[offset + 1] = interpolate(lonA, lonB, fraction);
+	}
+
+	/**
+	 * @return the value at the given fraction of the way from a to b
+	 */
+	public static double interpolate(double a, double b, double fraction) {
+		return a + (b - a) * fraction;
 	}
 
 	/**
@@ -53,17 +75,33 @@ public class Position {
 	 * @return distance in meters (approximated using a 2d sphere)
 	 */
 	public double getDistance(Position other) {
-		double latA = Math.toRadians(lat);
-		double lonA = Math.toRadians(lon);
-		double latB = Math.toRadians(other.lat);
-		double lonB = Math.toRadians(other.lon);
-		double cosAng = (Math.cos(latA) * Math.cos(latB) * Math.cos(lonB - lonA)) + (Math.sin(latA) * Math.sin(latB));
-		if(cosAng > 1) {
-			cosAng = 1; // might be > 1 due to rounding errors
+		return getDistance(lat, lon, other.lat, other.lon);
+	}
+
+	/**
+	 * Calculates the distance between two points without allocating position objects,
+	 * using the selected {@link DistanceStrategy}.
+	 * 
+	 * @return distance in meters (approximated using a 2d sphere)
+	 */
+	public static double getDistance(double latDegA, double lonDegA, double latDegB, double lonDegB) {
+		return distanceStrategy.getDistance(latDegA, lonDegA, latDegB, lonDegB);
+	}
+
+	public static DistanceStrategy getDistanceStrategy() {
+		return distanceStrategy;
+	}
+
+	/**
+	 * Selects the formula used for all distance calculations, defaults to {@link DistanceStrategy#HAVERSINE}.
+	 * 
+	 * @param strategy
+	 */
+	public static void setDistanceStrategy(DistanceStrategy strategy) {
+		if(strategy == null) {
+			throw new IllegalArgumentException("must not be null");
 		}
-		double ang = Math.acos(cosAng);
-		double dist = ang * EARTH_RADIUS;
-		return dist;
+		distanceStrategy = strategy;
 	}
 
 	/**
@@ -72,21 +110,31 @@ public class Position {
 	 * http://www.movable-type.co.uk/scripts/latlong.html<br>
 	 * 
 	 * <pre>
-	 * θ = atan2( sin Δλ ⋅ cos φ2 , cos φ1 ⋅ sin φ2 − sin φ1 ⋅ cos φ2 ⋅ cos Δλ )
+	 * theta = atan2( sin dLon * cos lat2 , cos lat1 * sin lat2 - sin lat1 * cos lat2 * cos dLon )
 	 * </pre>
 	 * 
-	 * where φ1,λ1 is the start point, φ2,λ2 the end point (Δλ is the
+	 * where lat1,lon1 is the start point, lat2,lon2 the end point (dLon is the
 	 * difference in longitude)
 	 * 
 	 * @param nextPosition
 	 * @return bearing in degrees
 	 */
 	public double getBearing(Position nextPosition) {
+		return getBearing(lat, lon, nextPosition.getLat(), nextPosition.getLon());
+	}
+
+	/**
+	 * Returns the bearing from A to B without allocating position objects.
+	 * 
+	 * @see #getBearing(Position)
+	 * @return bearing in degrees
+	 */
+	public static double getBearing(double latDegA, double lonDegA, double latDegB, double lonDegB) {
 		double lat1, lat2, lon1, lon2;
-		lat1 = Math.toRadians(lat); // φ1
-		lon1 = Math.toRadians(lon); // λ1
-		lat2 = Math.toRadians(nextPosition.getLat()); // φ2
-		lon2 = Math.toRadians(nextPosition.getLon()); // λ2
+		lat1 = Math.toRadians(latDegA);
+		lon1 = Math.toRadians(lonDegA);
+		lat2 = Math.toRadians(latDegB);
+		lon2 = Math.toRadians(lonDegB);
 
 		double y = Math.sin(lon2 - lon1) * Math.cos(lat2);
 		double x = Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(lon2 - lon1);
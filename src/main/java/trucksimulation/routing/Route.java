@@ -28,6 +28,7 @@ public class Route {
 	private transient String osmPath;
 	private transient String ghCacheLocation;
 	private transient GraphHopper hopper;
+	private transient RouteIndex index;
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(Route.class);
 		
@@ -125,6 +126,18 @@ public class Route {
 	public int getSegmentCount() {
 		return segments.length;
 	}
+	
+	/**
+	 * Returns the distance and time index of the route, which is built on first access.
+	 * 
+	 * @return index over all points of the route
+	 */
+	public RouteIndex getIndex() {
+		if(index == null) {
+			index = new RouteIndex(segments);
+		}
+		return index;
+	}
 
 	public Position getStart() {
 		return start;
@@ -178,6 +191,7 @@ public class Route {
 			throw new IllegalArgumentException("segments must not be null");
 		}
 		this.segments = segments;
+		this.index = null;
 		this.start = segments[0].getPoint(0);
 		RouteSegment lastSeg = segments[segments.length-1];
 		this.goal = lastSeg.getPoint(lastSeg.getSize()-1);
@@ -11,6 +11,7 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.mongo.FindOptions;
 import io.vertx.ext.mongo.MongoClient;
 import trucksimulation.Bus;
 import trucksimulation.Serializer;
@@ -60,10 +61,15 @@ public class RouteCalculationVerticle extends AbstractVerticle {
 	
 	/**
 	 * 
-	 * @param msg can contain a size field to specify sample size
+	 * @param msg can contain a size field to specify sample size. If it contains a pick field,
+	 *     a single city is picked deterministically by the value of the field instead of sampling cities.
 	 */
 	private void getCitySample(Message<JsonObject> msg) {
 		JsonObject message = msg.body();
+		if(message.getLong("pick") != null) {
+			pickCity(msg, message.getLong("pick"));
+			return;
+		}
 		JsonObject sample = new JsonObject().put("$sample", new JsonObject().put("size", message.getInteger("size", 50)));
 		JsonObject aggregate = new JsonObject();
 		aggregate.put("aggregate", "cities").put("pipeline", new JsonArray().add(sample));
@@ -78,6 +84,30 @@ public class RouteCalculationVerticle extends AbstractVerticle {
 		
 	}
 	
+	/**
+	 * Replies with an array containing the city at position pick modulo the number of cities, ordered by id.
+	 * 
+	 * @param msg
+	 * @param pick
+	 */
+	private void pickCity(Message<JsonObject> msg, long pick) {
+		mongo.count("cities", new JsonObject(), count -> {
+			if(count.failed() || count.result() == 0) {
+				msg.fail(500, count.failed() ? count.cause().getMessage() : "no cities available");
+				return;
+			}
+			int skip = (int) Math.floorMod(pick, count.result());
+			FindOptions options = new FindOptions().setSort(new JsonObject().put("_id", 1)).setSkip(skip).setLimit(1);
+			mongo.findWithOptions("cities", new JsonObject(), options, res -> {
+				if(res.failed()) {
+					msg.fail(500, res.cause().getMessage());
+				} else {
+					msg.reply(new JsonArray(res.result()));
+				}
+			});
+		});
+	}
+	
 	
 
 }
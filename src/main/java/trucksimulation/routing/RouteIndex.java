@@ -0,0 +1,279 @@
+package trucksimulation.routing;
+
+import java.util.Arrays;
+
+/**
+ * Cumulative distance and time over all points of a route.
+ *
+ * The points of all segments are numbered consecutively. For each point the index stores the
+ * distance in meters and the planned driving time in ms from the start of the route, so that
+ * positions, segments and remaining distance or time at an arbitrary distance along the route
+ * can be looked up with a binary search instead of walking the route point by point.
+ *
+ * The time of a leg between two points is based on the speed of the segment which contains
+ * the leg's end point. Segments without a valid speed use the speed of the previous segment.
+ */
+public class RouteIndex {
+
+	private final double[] lats;
+	private final double[] lons;
+	/** distance in meters from the start of the route to each point */
+	private final double[] distances;
+	/** planned time in ms from the start of the route to each point */
+	private final double[] times;
+	/** segment of each point */
+	private final int[] pointSegments;
+	/** index of the first point of each segment */
+	private final int[] segmentStarts;
+
+	public RouteIndex(RouteSegment[] segments) {
+		int count = 0;
+		segmentStarts = new int[segments.length];
+		for(int s = 0; s < segments.length; s++) {
+			segmentStarts[s] = count;
+			count += segments[s].getSize();
+		}
+		lats = new double[count];
+		lons = new double[count];
+		distances = new double[count];
+		times = new double[count];
+		pointSegments = new int[count];
+
+		double speed = 0;
+		int idx = 0;
+		for(int s = 0; s < segments.length; s++) {
+			RouteSegment segment = segments[s];
+			if(segment.getSpeed() > 0 && !Double.isInfinite(segment.getSpeed())) {
+				speed = segment.getSpeed();
+			}
+			for(int p = 0; p < segment.getSize(); p++) {
+				lats[idx] = segment.getLat(p);
+				lons[idx] = segment.getLon(p);
+				pointSegments[idx] = s;
+				if(idx > 0) {
+					// keep duplicate points at exactly the same distance, whatever rounding error the distance strategy has
+					boolean duplicate = lats[idx - 1] == lats[idx] && lons[idx - 1] == lons[idx];
+					double leg = duplicate ? 0 : Position.getDistance(lats[idx - 1], lons[idx - 1], lats[idx], lons[idx]);
+					distances[idx] = distances[idx - 1] + leg;
+					times[idx] = times[idx - 1] + (speed > 0 ? leg / speed * 1000 : 0);
+				}
+				idx++;
+			}
+		}
+	}
+
+	/**
+	 * @return number of points of the route
+	 */
+	public int getPointCount() {
+		return distances.length;
+	}
+
+	/**
+	 * @return length of the route in meters, measured along all of its points
+	 */
+	public double getLength() {
+		return distances.length == 0 ? 0 : distances[distances.length - 1];
+	}
+
+	/**
+	 * @return planned time in ms to drive the whole route
+	 */
+	public double getTotalTime() {
+		return times.length == 0 ? 0 : times[times.length - 1];
+	}
+
+	/**
+	 * @param point index of the point
+	 * @return distance in meters from the start of the route to the point
+	 */
+	public double getDistance(int point) {
+		return distances[point];
+	}
+
+	/**
+	 * @param point index of the point
+	 * @return planned time in ms from the start of the route to the point
+	 */
+	public double getTime(int point) {
+		return times[point];
+	}
+
+	public double getLat(int point) {
+		return lats[point];
+	}
+
+	public double getLon(int point) {
+		return lons[point];
+	}
+
+	/**
+	 * @param point index of the point
+	 * @return the segment which contains the point
+	 */
+	public int getSegmentOfPoint(int point) {
+		return pointSegments[point];
+	}
+
+	/**
+	 * @param segment
+	 * @param pointInSegment index of the point within the segment
+	 * @return index of the point within the whole route
+	 */
+	public int getPointIndex(int segment, int pointInSegment) {
+		return segmentStarts[segment] + pointInSegment;
+	}
+
+	/**
+	 * @param point index of the point within the whole route
+	 * @return index of the point within its segment
+	 */
+	public int getPointInSegment(int point) {
+		return point - segmentStarts[pointSegments[point]];
+	}
+
+	/**
+	 * Returns the last point which has been passed after driving the given distance.
+	 * Points at the same distance (duplicate points where segments meet) are all considered passed.
+	 *
+	 * @param distance distance in meters from the start of the route
+	 * @return index of the point, 0 for negative distances
+	 */
+	public int getPointIndexAt(double distance) {
+		int idx = Arrays.binarySearch(distances, distance);
+		if(idx < 0) {
+			// insertion point - 1 is the last point before the distance
+			return Math.max(0, -idx - 2);
+		}
+		while(idx + 1 < distances.length && distances[idx + 1] == distance) {
+			idx++;
+		}
+		return idx;
+	}
+
+	/**
+	 * @param distance distance in meters from the start of the route
+	 * @return the segment in which a truck drives after the given distance, i.e. the segment of the next point
+	 */
+	public int getSegmentAt(double distance) {
+		int point = Math.min(getPointIndexAt(distance) + 1, distances.length - 1);
+		return pointSegments[point];
+	}
+
+	/**
+	 * Writes the position after driving the given distance along the route into the buffer.
+	 *
+	 * @param distance distance in meters from the start of the route, clamped to the length of the route
+	 * @param out buffer which receives latitude and longitude at offset and offset+1
+	 * @param offset index of the latitude in the buffer
+	 */
+	public void getPositionAt(double distance, double[] out, int offset) {
+		int point = getPointIndexAt(distance);
+		if(point >= distances.length - 1 || distance <= 0) {
+			int last = distance <= 0 ? 0 : distances.length - 1;
+			out[offset] = lats[last];
+			out[offset + 1] = lons[last];
+			return;
+		}
+		double legLength = distances[point + 1] - distances[point];
+		double fraction = legLength > 0 ? (distance - distances[point]) / legLength : 0;
+		Position.interpolate(lats[point], lons[point], lats[point + 1], lons[point + 1], fraction, out, offset);
+	}
+
+	/**
+	 * @param distance distance in meters from the start of the route
+	 * @return position after driving the given distance along the route
+	 */
+	public Position getPositionAt(double distance) {
+		double[] latLon = new double[2];
+		getPositionAt(distance, latLon, 0);
+		return new Position(latLon[0], latLon[1]);
+	}
+
+	/**
+	 * @param distance distance in meters from the start of the route
+	 * @return planned time in ms to reach the given distance
+	 */
+	public double getTimeAt(double distance) {
+		int point = getPointIndexAt(distance);
+		if(point >= distances.length - 1) {
+			return getTotalTime();
+		}
+		if(distance <= 0) {
+			return 0;
+		}
+		double legLength = distances[point + 1] - distances[point];
+		double fraction = legLength > 0 ? (distance - distances[point]) / legLength : 0;
+		return Position.interpolate(times[point], times[point + 1], fraction);
+	}
+
+	/**
+	 * @param timeMs planned time in ms since the start of the route
+	 * @return distance in meters which is driven according to plan after the given time
+	 */
+	public double getDistanceAtTime(double timeMs) {
+		if(timeMs <= 0 || times.length == 0) {
+			return 0;
+		}
+		int idx = Arrays.binarySearch(times, timeMs);
+		if(idx >= 0) {
+			return distances[idx];
+		}
+		int point = -idx - 2;
+		if(point >= times.length - 1) {
+			return getLength();
+		}
+		double legTime = times[point + 1] - times[point];
+		double fraction = legTime > 0 ? (timeMs - times[point]) / legTime : 0;
+		return Position.interpolate(distances[point], distances[point + 1], fraction);
+	}
+
+	/**
+	 * Projects a position onto the route, i.e. searches the closest location on any leg of the route.
+	 * Legs are treated as straight lines in an equirectangular projection around the position, which is
+	 * accurate for the short legs of a route.
+	 *
+	 * @return distance in meters from the start of the route to the closest location on the route
+	 */
+	public double project(double lat, double lon) {
+		if(distances.length < 2) {
+			return 0;
+		}
+		double cosLat = Math.cos(Math.toRadians(lat));
+		double minDistance = Double.MAX_VALUE;
+		double projected = 0;
+		for(int i = 0; i < lats.length - 1; i++) {
+			double ax = (lons[i] - lon) * cosLat;
+			double ay = lats[i] - lat;
+			double dx = (lons[i + 1] - lons[i]) * cosLat;
+			double dy = lats[i + 1] - lats[i];
+			double legLength = dx * dx + dy * dy;
+			double fraction = legLength > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / legLength)) : 0;
+			double px = ax + fraction * dx;
+			double py = ay + fraction * dy;
+			double distance = px * px + py * py;
+			if(distance < minDistance) {
+				minDistance = distance;
+				projected = distances[i] + fraction * (distances[i + 1] - distances[i]);
+			}
+		}
+		return projected;
+	}
+
+	/**
+	 * @param distance distance in meters from the start of the route
+	 * @return remaining distance in meters to the end of the route
+	 */
+	public double getRemainingDistance(double distance) {
+		return Math.max(0, getLength() - distance);
+	}
+
+	/**
+	 * @param distance distance in meters from the start of the route
+	 * @return planned remaining time in ms to the end of the route
+	 */
+	public double getRemainingTime(double distance) {
+		return Math.max(0, getTotalTime() - getTimeAt(distance));
+	}
+
+}
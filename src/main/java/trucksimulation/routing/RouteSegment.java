@@ -44,6 +44,24 @@ public class RouteSegment {
 	public Position getPoint(int idx) {
 		return new Position(lats[idx], lons[idx]);
 	}
+	
+	/**
+	 * Allocation free alternative to {@link #getPoint(int)}.
+	 * @param idx
+	 * @return latitude of the point
+	 */
+	public double getLat(int idx) {
+		return lats[idx];
+	}
+	
+	/**
+	 * Allocation free alternative to {@link #getPoint(int)}.
+	 * @param idx
+	 * @return longitude of the point
+	 */
+	public double getLon(int idx) {
+		return lons[idx];
+	}
 
 	/**
 	 * 
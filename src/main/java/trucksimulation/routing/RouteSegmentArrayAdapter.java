@@ -3,7 +3,6 @@ package trucksimulation.routing;
 import java.lang.reflect.Type;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
@@ -24,6 +23,11 @@ import trucksimulation.Serializer;
  */
 public class RouteSegmentArrayAdapter implements JsonSerializer<RouteSegment[]>, JsonDeserializer<RouteSegment[]> {
 
+	/** (de)serializes the unwrapped segments, shared by all adapters as Gson is thread-safe */
+	private static final Gson SEGMENTS_GSON = Serializer.getBuilder()
+			.registerTypeAdapter(RouteSegment.class, new RouteSegmentAdapter())
+			.create();
+
 	/**
 	 * Wraps the array in a json object which represents a geojson GeometryCollection.
 	 * 
@@ -31,12 +35,9 @@ public class RouteSegmentArrayAdapter implements JsonSerializer<RouteSegment[]>,
 	 */
 	@Override
 	public JsonElement serialize(RouteSegment[] src, Type typeOfSrc, JsonSerializationContext context) {
-		GsonBuilder builder = new GsonBuilder();
-		builder.registerTypeAdapter(RouteSegment.class, new RouteSegmentAdapter());
-		Gson gson = builder.create();
 		JsonParser parser = new JsonParser();
 		// gson.toJsonTree(src) does not seem to work 
-		JsonArray arr = parser.parse(gson.toJson(src)).getAsJsonArray();
+		JsonArray arr = parser.parse(SEGMENTS_GSON.toJson(src)).getAsJsonArray();
 		JsonObject geojson  = new JsonObject();
 		geojson.addProperty("type", "GeometryCollection");
 		geojson.add("geometries", arr);
@@ -53,9 +54,7 @@ public class RouteSegmentArrayAdapter implements JsonSerializer<RouteSegment[]>,
 		if(json.isJsonObject()) {
 			JsonObject geojson = json.getAsJsonObject();
 			JsonArray arr = geojson.get("geometries").getAsJsonArray();
-			GsonBuilder builder = Serializer.getBuilder();
-			builder.registerTypeAdapter(RouteSegment.class, new RouteSegmentAdapter());
-			return builder.create().fromJson(arr, RouteSegment[].class);	
+			return SEGMENTS_GSON.fromJson(arr, RouteSegment[].class);
 		} else {
 			throw new IllegalStateException("could not deserialize segments field, was expecting an object for " + typeOfT);
 		}
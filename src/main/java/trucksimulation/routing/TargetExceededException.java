@@ -1,5 +1,11 @@
 package trucksimulation.routing;
 
+/**
+ * Signals that a move would pass the target point.
+ * 
+ * The exception is used to report an expected condition, hence instances created with
+ * {@link #TargetExceededException(String, double)} do not fill in a stack trace.
+ */
 public class TargetExceededException extends Exception {
 
 	private static final long serialVersionUID = 1L;
@@ -13,7 +19,7 @@ public class TargetExceededException extends Exception {
 	}
 	
 	public TargetExceededException(String message, double exceededMeters) {
-		super(message);
+		super(message, null, false, false);
 		this.exceededBy = exceededMeters;
 	}
 
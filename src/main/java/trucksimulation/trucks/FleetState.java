@@ -0,0 +1,579 @@
+package trucksimulation.trucks;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import trucksimulation.routing.DistanceStrategy;
+import trucksimulation.routing.Position;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteIndex;
+import trucksimulation.routing.RouteSegment;
+
+/**
+ * Column oriented movement state of a fleet of trucks.
+ *
+ * Each truck occupies an int slot and its position, target, speed, route progress, timestamp and
+ * pause countdown are stored in primitive arrays indexed by that slot. {@link Truck} instances are
+ * views onto a slot of a fleet state.
+ *
+ * {@link #advanceAll(int)} moves all trucks of the fleet at once. Trucks which are driving towards
+ * their current target point are moved in a tight loop over the primitive columns, only trucks which
+ * pause, pass a point of their route or arrive are handled one by one.
+ * Trucks which pass points jump directly to their new position using the route's {@link RouteIndex},
+ * no matter how many points are passed within one step.
+ *
+ * Lazy trucks are skipped by {@link #advanceAll(int)}, their position is computed from a {@link SpeedProfile}
+ * and written into the fleet with {@link #moveTo(int, double, long)} only when it is needed.
+ * Parked trucks are skipped as well: instead of counting down the pause of a truck in each advance,
+ * the owner of the fleet may {@link #park(int) park} the truck and {@link #unpark(int, long) unpark} it
+ * when its pause is over.
+ */
+public class FleetState {
+
+	/** the truck has been moved */
+	public static final byte MOVED = 0;
+	/** the truck is having a break and has not been moved */
+	public static final byte PAUSED = 1;
+	/** the truck has completed its break with this advance, it has not been moved yet */
+	public static final byte BREAK_COMPLETED = 2;
+	/** the truck has arrived at its destination with this advance */
+	public static final byte ARRIVED = 3;
+	/** the truck has arrived earlier and waits for a new route */
+	public static final byte WAITING = 4;
+	/** no route has been assigned to the truck */
+	public static final byte NO_ROUTE = 5;
+
+	private static final byte FLAG_NEEDS_ROUTE = 1;
+	private static final byte FLAG_IN_INCIDENT = 2;
+	private static final byte FLAG_LAZY = 4;
+	private static final byte FLAG_PARKED = 8;
+	/** trucks with one of these flags are not moved by {@link #advanceAll(int)} */
+	private static final byte DETACHED = FLAG_LAZY | FLAG_PARKED;
+	private static final double DEFAULT_SPEED = 5.0;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int size = 0;
+	private double[] lat;
+	private double[] lon;
+	private double[] targetLat;
+	private double[] targetLon;
+	private double[] goalLat;
+	private double[] goalLon;
+	/** speed in m/s */
+	private double[] speed;
+	private int[] segment;
+	private int[] point;
+	/** distance in meters driven along the route */
+	private double[] offset;
+	/** timestamp in ms */
+	private long[] ts;
+	/** remaining pause time in seconds */
+	private int[] idle;
+	private byte[] flags;
+	/** result of the last advance */
+	private byte[] status;
+	private Route[] routes;
+	/** scratch column for the remaining distance to the target point */
+	private double[] remaining;
+	/** scratch buffer for position lookups */
+	private final double[] position = new double[2];
+
+	public FleetState() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public FleetState(int capacity) {
+		allocateColumns(Math.max(1, capacity));
+	}
+
+	private void allocateColumns(int capacity) {
+		lat = new double[capacity];
+		lon = new double[capacity];
+		targetLat = new double[capacity];
+		targetLon = new double[capacity];
+		goalLat = new double[capacity];
+		goalLon = new double[capacity];
+		speed = new double[capacity];
+		segment = new int[capacity];
+		point = new int[capacity];
+		offset = new double[capacity];
+		ts = new long[capacity];
+		idle = new int[capacity];
+		flags = new byte[capacity];
+		status = new byte[capacity];
+		routes = new Route[capacity];
+		remaining = new double[capacity];
+	}
+
+	private void grow() {
+		int capacity = lat.length * 2;
+		lat = Arrays.copyOf(lat, capacity);
+		lon = Arrays.copyOf(lon, capacity);
+		targetLat = Arrays.copyOf(targetLat, capacity);
+		targetLon = Arrays.copyOf(targetLon, capacity);
+		goalLat = Arrays.copyOf(goalLat, capacity);
+		goalLon = Arrays.copyOf(goalLon, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		segment = Arrays.copyOf(segment, capacity);
+		point = Arrays.copyOf(point, capacity);
+		offset = Arrays.copyOf(offset, capacity);
+		ts = Arrays.copyOf(ts, capacity);
+		idle = Arrays.copyOf(idle, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		status = Arrays.copyOf(status, capacity);
+		routes = Arrays.copyOf(routes, capacity);
+		remaining = Arrays.copyOf(remaining, capacity);
+	}
+
+	/**
+	 * Reserves a slot for a new truck.
+	 *
+	 * @param timestamp initial timestamp of the truck in ms
+	 * @return the slot of the truck
+	 */
+	public int allocate(long timestamp) {
+		if(size == lat.length) {
+			grow();
+		}
+		int slot = size++;
+		speed[slot] = DEFAULT_SPEED;
+		ts[slot] = timestamp;
+		status[slot] = NO_ROUTE;
+		return slot;
+	}
+
+	/**
+	 * Copies the state of a truck from another fleet into a new slot of this fleet.
+	 *
+	 * @return the slot of the truck in this fleet
+	 */
+	public int copyFrom(FleetState other, int otherSlot) {
+		int slot = allocate(other.ts[otherSlot]);
+		lat[slot] = other.lat[otherSlot];
+		lon[slot] = other.lon[otherSlot];
+		targetLat[slot] = other.targetLat[otherSlot];
+		targetLon[slot] = other.targetLon[otherSlot];
+		goalLat[slot] = other.goalLat[otherSlot];
+		goalLon[slot] = other.goalLon[otherSlot];
+		speed[slot] = other.speed[otherSlot];
+		segment[slot] = other.segment[otherSlot];
+		point[slot] = other.point[otherSlot];
+		offset[slot] = other.offset[otherSlot];
+		idle[slot] = other.idle[otherSlot];
+		flags[slot] = other.flags[otherSlot];
+		status[slot] = other.status[otherSlot];
+		routes[slot] = other.routes[otherSlot];
+		return slot;
+	}
+
+	/**
+	 * Writes the movement state of the truck, except for its route, in a compact binary form.
+	 *
+	 * @see #read(int, DataInput, Route)
+	 */
+	public void write(int slot, DataOutput out) throws IOException {
+		out.writeDouble(lat[slot]);
+		out.writeDouble(lon[slot]);
+		out.writeDouble(targetLat[slot]);
+		out.writeDouble(targetLon[slot]);
+		out.writeDouble(goalLat[slot]);
+		out.writeDouble(goalLon[slot]);
+		out.writeDouble(speed[slot]);
+		out.writeInt(segment[slot]);
+		out.writeInt(point[slot]);
+		out.writeDouble(offset[slot]);
+		out.writeLong(ts[slot]);
+		out.writeInt(idle[slot]);
+		out.writeByte(flags[slot]);
+		out.writeByte(status[slot]);
+	}
+
+	/**
+	 * Restores the movement state of a truck which has been written by {@link #write(int, DataOutput)}.
+	 *
+	 * @param slot the slot into which the state is restored
+	 * @param in
+	 * @param route the truck's route, may be null
+	 */
+	public void read(int slot, DataInput in, Route route) throws IOException {
+		routes[slot] = route;
+		lat[slot] = in.readDouble();
+		lon[slot] = in.readDouble();
+		targetLat[slot] = in.readDouble();
+		targetLon[slot] = in.readDouble();
+		goalLat[slot] = in.readDouble();
+		goalLon[slot] = in.readDouble();
+		speed[slot] = in.readDouble();
+		segment[slot] = in.readInt();
+		point[slot] = in.readInt();
+		offset[slot] = in.readDouble();
+		ts[slot] = in.readLong();
+		idle[slot] = in.readInt();
+		flags[slot] = in.readByte();
+		status[slot] = in.readByte();
+	}
+
+	/**
+	 * Assigns a route to the truck and positions the truck at the start of the route.
+	 *
+	 * @return false if the route does not contain a point to drive to
+	 */
+	public boolean setRoute(int slot, Route route) {
+		routes[slot] = route;
+		lat[slot] = route.getStart().getLat();
+		lon[slot] = route.getStart().getLon();
+		goalLat[slot] = route.getGoal().getLat();
+		goalLon[slot] = route.getGoal().getLon();
+		segment[slot] = 0;
+		point[slot] = 0;
+		offset[slot] = 0;
+		flags[slot] &= ~FLAG_NEEDS_ROUTE;
+		status[slot] = MOVED;
+		return proceedToNextPoint(slot);
+	}
+
+	/**
+	 * Moves all trucks of the fleet for the given amount of time.
+	 *
+	 * The first loop calculates the distance of each truck to its target point. The second loop moves all
+	 * trucks which neither pause, arrive nor pass their target point with this step, all other trucks
+	 * are advanced individually by {@link #advance(int, int)}. The result of each truck's advance can be
+	 * retrieved with {@link #getStatus(int)}. Lazy and parked trucks are skipped by both loops, so they
+	 * cost nothing per tick.
+	 *
+	 * @param dt time step in seconds
+	 */
+	public void advanceAll(int dt) {
+		final int n = size;
+		// read the volatile strategy once per tick instead of once per truck
+		final DistanceStrategy distance = Position.getDistanceStrategy();
+		for(int i = 0; i < n; i++) {
+			if((flags[i] & DETACHED) == 0) {
+				remaining[i] = distance.getDistance(lat[i], lon[i], targetLat[i], targetLon[i]);
+			}
+		}
+		final long dtMs = dt * 1000L;
+		for(int i = 0; i < n; i++) {
+			if((flags[i] & DETACHED) != 0) {
+				continue;
+			}
+			double step = speed[i] * dt;
+			boolean straight = (flags[i] & FLAG_NEEDS_ROUTE) == 0 && idle[i] <= 0 && routes[i] != null && step < remaining[i]
+					&& (lat[i] != goalLat[i] || lon[i] != goalLon[i]);
+			if(straight) {
+				double fraction = step / remaining[i];
+				lat[i] = Position.interpolate(lat[i], targetLat[i], fraction);
+				lon[i] = Position.interpolate(lon[i], targetLon[i], fraction);
+				offset[i] += step;
+				ts[i] += dtMs;
+				status[i] = MOVED;
+			} else {
+				advance(i, dt);
+			}
+		}
+	}
+
+	/**
+	 * Moves a single truck for the given amount of time, unless it is in pause mode or has already arrived.
+	 * The truck's time advances in either case, as long as it has a route.
+	 *
+	 * @param slot slot of the truck
+	 * @param dt time step in seconds
+	 * @return result of the advance, one of the status constants of this class
+	 */
+	public byte advance(int slot, int dt) {
+		status[slot] = step(slot, dt);
+		if(status[slot] != NO_ROUTE) {
+			ts[slot] += dt * 1000L;
+		}
+		return status[slot];
+	}
+
+	private byte step(int slot, int dt) {
+		if(routes[slot] == null) {
+			return NO_ROUTE;
+		}
+		if(idle[slot] > 0) {
+			idle[slot] -= dt;
+			return idle[slot] > 0 ? PAUSED : BREAK_COMPLETED;
+		}
+		if(isAtGoal(slot) && (flags[slot] & FLAG_NEEDS_ROUTE) == 0) {
+			// use needsNewRoute flag to ensure arrival is only signalled once per destination
+			flags[slot] |= FLAG_NEEDS_ROUTE;
+			return ARRIVED;
+		} else if((flags[slot] & FLAG_NEEDS_ROUTE) != 0) {
+			// don't move until a new route has been set
+			return WAITING;
+		}
+		double distance = speed[slot] * dt;
+		double dist2Target = Position.getDistance(lat[slot], lon[slot], targetLat[slot], targetLon[slot]);
+		if(distance <= dist2Target) {
+			if(dist2Target > 0) {
+				double fraction = distance / dist2Target;
+				lat[slot] = Position.interpolate(lat[slot], targetLat[slot], fraction);
+				lon[slot] = Position.interpolate(lon[slot], targetLon[slot], fraction);
+				offset[slot] += distance;
+			}
+			return MOVED;
+		}
+		return jump(slot, distance - dist2Target);
+	}
+
+	/**
+	 * Moves the truck past its current target point.
+	 *
+	 * @param exceededBy distance in meters to drive beyond the current target point
+	 * @return {@link #MOVED} or {@link #ARRIVED} if the end of the route has been reached
+	 */
+	private byte jump(int slot, double exceededBy) {
+		RouteIndex index = routes[slot].getIndex();
+		int targetPoint = index.getPointIndex(segment[slot], point[slot]);
+		return place(slot, index.getDistance(targetPoint) + exceededBy);
+	}
+
+	/**
+	 * Puts a lazy truck at the given distance along its route, its pause time and speed have to be set before.
+	 * Other than {@link #advance(int, int)}, the truck's timestamp is set to the given time.
+	 *
+	 * @param slot slot of the truck
+	 * @param distance distance in meters along the truck's route
+	 * @param timestamp time in ms of the truck's new state
+	 * @return result of the move, one of the status constants of this class
+	 */
+	public byte moveTo(int slot, double distance, long timestamp) {
+		if(routes[slot] == null) {
+			status[slot] = NO_ROUTE;
+		} else {
+			ts[slot] = timestamp;
+			if(idle[slot] > 0) {
+				status[slot] = PAUSED;
+			} else if((flags[slot] & FLAG_NEEDS_ROUTE) != 0) {
+				status[slot] = WAITING;
+			} else {
+				status[slot] = place(slot, distance);
+			}
+		}
+		return status[slot];
+	}
+
+	/**
+	 * Puts the truck at the given distance along its route and sets the next point as target.
+	 *
+	 * @return {@link #MOVED} or {@link #ARRIVED} if the end of the route has been reached
+	 */
+	private byte place(int slot, double newOffset) {
+		RouteIndex index = routes[slot].getIndex();
+		int lastPoint = index.getPointCount() - 1;
+		int passed = index.getPointIndexAt(newOffset);
+		if(passed >= lastPoint) {
+			lat[slot] = index.getLat(lastPoint);
+			lon[slot] = index.getLon(lastPoint);
+			offset[slot] = index.getLength();
+			enterSegments(slot, index.getSegmentOfPoint(lastPoint));
+			segment[slot] = routes[slot].getSegmentCount();
+			point[slot] = 0;
+			flags[slot] |= FLAG_NEEDS_ROUTE;
+			return ARRIVED;
+		}
+		enterSegments(slot, index.getSegmentOfPoint(passed + 1));
+		segment[slot] = index.getSegmentOfPoint(passed + 1);
+		point[slot] = index.getPointInSegment(passed + 1);
+		targetLat[slot] = index.getLat(passed + 1);
+		targetLon[slot] = index.getLon(passed + 1);
+		index.getPositionAt(newOffset, position, 0);
+		lat[slot] = position[0];
+		lon[slot] = position[1];
+		offset[slot] = newOffset;
+		return MOVED;
+	}
+
+	/**
+	 * Updates the speed for all segments which are entered when driving from the current segment
+	 * to the new segment, unless the truck is in a traffic incident.
+	 */
+	private void enterSegments(int slot, int newSegment) {
+		if((flags[slot] & FLAG_LAZY) != 0) {
+			// the speed of lazy trucks is given by their speed profile
+			return;
+		}
+		Route route = routes[slot];
+		for(int s = segment[slot] + 1; s <= newSegment; s++) {
+			if(s < route.getSegmentCount() - 1) {
+				double nextSpeed = route.getSegment(s).getSpeed();
+				if(nextSpeed > 0 && (flags[slot] & FLAG_IN_INCIDENT) == 0) {
+					speed[slot] = nextSpeed;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the next point of the route as target. Updates the speed when entering a new segment
+	 * unless the truck is in a traffic incident.
+	 *
+	 * @return false if the truck has reached the end of its route
+	 */
+	private boolean proceedToNextPoint(int slot) {
+		Route route = routes[slot];
+		RouteSegment currentSegment = route.getSegment(segment[slot]);
+		if(currentSegment.getSize() > point[slot] + 1) {
+			point[slot]++;
+		} else {
+			if(segment[slot] + 1 >= route.getSegmentCount()) {
+				segment[slot]++;
+				point[slot] = 0;
+				flags[slot] |= FLAG_NEEDS_ROUTE;
+				return false;
+			}
+			enterSegments(slot, segment[slot] + 1);
+			segment[slot]++;
+			point[slot] = 0;
+			currentSegment = route.getSegment(segment[slot]);
+		}
+		targetLat[slot] = currentSegment.getLat(point[slot]);
+		targetLon[slot] = currentSegment.getLon(point[slot]);
+		return true;
+	}
+
+	public boolean isAtGoal(int slot) {
+		return lat[slot] == goalLat[slot] && lon[slot] == goalLon[slot];
+	}
+
+	/**
+	 * @return number of allocated slots
+	 */
+	public int size() {
+		return size;
+	}
+
+	public byte getStatus(int slot) {
+		return status[slot];
+	}
+
+	public double getLat(int slot) {
+		return lat[slot];
+	}
+
+	public double getLon(int slot) {
+		return lon[slot];
+	}
+
+	public void setPosition(int slot, double latitude, double longitude) {
+		lat[slot] = latitude;
+		lon[slot] = longitude;
+	}
+
+	public double getSpeed(int slot) {
+		return speed[slot];
+	}
+
+	public void setSpeed(int slot, double value) {
+		speed[slot] = value;
+	}
+
+	public long getTimestamp(int slot) {
+		return ts[slot];
+	}
+
+	public void setTimestamp(int slot, long timestamp) {
+		ts[slot] = timestamp;
+	}
+
+	public int getSegment(int slot) {
+		return segment[slot];
+	}
+
+	public int getPoint(int slot) {
+		return point[slot];
+	}
+
+	/**
+	 * @return distance in meters which the truck has driven along its route
+	 */
+	public double getOffset(int slot) {
+		return offset[slot];
+	}
+
+	public Route getRoute(int slot) {
+		return routes[slot];
+	}
+
+	/**
+	 * @return remaining pause time in seconds
+	 */
+	public int getIdle(int slot) {
+		return idle[slot];
+	}
+
+	/**
+	 * @param seconds pause time in seconds
+	 */
+	public void setIdle(int slot, int seconds) {
+		idle[slot] = seconds;
+	}
+
+	/**
+	 * @return true if the truck has arrived at the end of its route and waits for a new route
+	 */
+	public boolean needsRoute(int slot) {
+		return (flags[slot] & FLAG_NEEDS_ROUTE) != 0;
+	}
+
+	public boolean isLazy(int slot) {
+		return (flags[slot] & FLAG_LAZY) != 0;
+	}
+
+	/**
+	 * @param lazy true if the truck should no longer be moved by {@link #advanceAll(int)}
+	 */
+	public void setLazy(int slot, boolean lazy) {
+		if(lazy) {
+			flags[slot] |= FLAG_LAZY;
+		} else {
+			flags[slot] &= ~FLAG_LAZY;
+		}
+	}
+
+	/**
+	 * @return true if the truck is having a break and is neither moved nor its pause counted down
+	 */
+	public boolean isParked(int slot) {
+		return (flags[slot] & FLAG_PARKED) != 0;
+	}
+
+	/**
+	 * Stops moving a pausing truck. While the truck is parked, its timestamp and remaining pause time
+	 * keep the values at the time it has been parked, i.e. its pause ends at
+	 * <code>getTimestamp(slot) + getIdle(slot) * 1000</code>.
+	 */
+	public void park(int slot) {
+		flags[slot] |= FLAG_PARKED;
+	}
+
+	/**
+	 * Ends the pause of a parked truck, the truck is moved again with the next advance.
+	 *
+	 * @param timestamp current time in ms
+	 */
+	public void unpark(int slot, long timestamp) {
+		flags[slot] &= ~FLAG_PARKED;
+		idle[slot] = 0;
+		ts[slot] = timestamp;
+		status[slot] = BREAK_COMPLETED;
+	}
+
+	public boolean isInIncident(int slot) {
+		return (flags[slot] & FLAG_IN_INCIDENT) != 0;
+	}
+
+	public void setInIncident(int slot, boolean inIncident) {
+		if(inIncident) {
+			flags[slot] |= FLAG_IN_INCIDENT;
+		} else {
+			flags[slot] &= ~FLAG_IN_INCIDENT;
+		}
+	}
+
+}
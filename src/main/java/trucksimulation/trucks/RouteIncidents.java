@@ -0,0 +1,125 @@
+package trucksimulation.trucks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import trucksimulation.routing.Position;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteIndex;
+import trucksimulation.traffic.TrafficIncident;
+
+/**
+ * Traffic incidents projected onto a route.
+ *
+ * Each incident is represented by the interval between the distances along the route at which its start
+ * and its end are located, the intervals are sorted by their start. Whether a truck is in an incident can
+ * then be decided by comparing the distance which the truck has driven along its route with the intervals.
+ *
+ * Incidents whose start or end is not located on the route, or whose end comes before the start in
+ * driving direction, do not affect the route and are not contained.
+ */
+public class RouteIncidents {
+
+	/**
+	 * Maximum distance in meters between the start or end of an incident and the route,
+	 * incidents which are farther away are considered not to be on the route.
+	 */
+	public static final double MAX_DISTANCE = 50;
+
+	private final double[] starts;
+	private final double[] ends;
+	private final TrafficIncident[] incidents;
+
+	public RouteIncidents(Route route, List<TrafficIncident> candidates) {
+		RouteIndex index = route.getIndex();
+		List<Interval> intervals = new ArrayList<>();
+		for(TrafficIncident incident : candidates) {
+			double start = project(index, incident.getStart());
+			double end = project(index, incident.getEnd());
+			if(start >= 0 && end > start) {
+				intervals.add(new Interval(start, end, incident));
+			}
+		}
+		intervals.sort(Comparator.comparingDouble(i -> i.start));
+		starts = new double[intervals.size()];
+		ends = new double[intervals.size()];
+		incidents = new TrafficIncident[intervals.size()];
+		for(int i = 0; i < intervals.size(); i++) {
+			starts[i] = intervals.get(i).start;
+			ends[i] = intervals.get(i).end;
+			incidents[i] = intervals.get(i).incident;
+		}
+	}
+
+	/**
+	 * @return distance along the route of the position, -1 if the position is not on the route
+	 */
+	private static double project(RouteIndex index, Position pos) {
+		double offset = index.project(pos.getLat(), pos.getLon());
+		Position projected = index.getPositionAt(offset);
+		return projected.getDistance(pos) <= MAX_DISTANCE ? offset : -1;
+	}
+
+	/**
+	 * @return number of incidents on the route
+	 */
+	public int size() {
+		return incidents.length;
+	}
+
+	/**
+	 * @return distance in meters along the route at which the incident starts
+	 */
+	public double getStart(int i) {
+		return starts[i];
+	}
+
+	/**
+	 * @return distance in meters along the route at which the incident ends
+	 */
+	public double getEnd(int i) {
+		return ends[i];
+	}
+
+	public TrafficIncident getIncident(int i) {
+		return incidents[i];
+	}
+
+	/**
+	 * @return position of the incident in the sorted intervals, -1 if the incident is not on the route
+	 */
+	public int indexOf(TrafficIncident incident) {
+		for(int i = 0; i < incidents.length; i++) {
+			if(incidents[i] == incident) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param offset distance in meters along the route
+	 * @return position of the first incident which starts at or after the given distance, {@link #size()} if there is none
+	 */
+	public int getFirstAfter(double offset) {
+		int i = 0;
+		while(i < starts.length && starts[i] < offset) {
+			i++;
+		}
+		return i;
+	}
+
+	private static class Interval {
+		private final double start;
+		private final double end;
+		private final TrafficIncident incident;
+
+		private Interval(double start, double end, TrafficIncident incident) {
+			this.start = start;
+			this.end = end;
+			this.incident = incident;
+		}
+	}
+
+}
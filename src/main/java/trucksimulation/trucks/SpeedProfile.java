@@ -0,0 +1,273 @@
+package trucksimulation.trucks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteIndex;
+import trucksimulation.traffic.TrafficIncident;
+
+/**
+ * Planned movement of a truck along its route as a function of simulated time.
+ *
+ * The profile consists of breakpoints at which the truck's speed changes: the end of a pause,
+ * entering a segment, entering or leaving a traffic incident and the arrival at the end of the route.
+ * Between two breakpoints the truck drives with constant speed, so the distance driven along the route
+ * at any time is found with a binary search over the breakpoints instead of moving the truck in each tick.
+ *
+ * The speed rules are the same as for trucks which are moved by their {@link FleetState}: the truck keeps
+ * its speed within its current segment, adopts the speed of each following segment except the last one
+ * and drives with the incident's speed while it is in a traffic incident.
+ *
+ * A profile is only valid as long as the truck's route, pause time and incidents don't change.
+ */
+public class SpeedProfile {
+
+	/** the truck starts to drive */
+	public static final byte START = 0;
+	/** the truck's break is over and it starts to drive */
+	public static final byte PAUSE_END = 1;
+	/** the truck enters a segment of its route */
+	public static final byte SEGMENT = 2;
+	/** the truck enters a traffic incident */
+	public static final byte ENTER_INCIDENT = 3;
+	/** the truck leaves a traffic incident */
+	public static final byte LEAVE_INCIDENT = 4;
+	/** the truck arrives at the end of its route */
+	public static final byte ARRIVAL = 5;
+
+	private final Route route;
+	/** simulated time in ms of each breakpoint */
+	private double[] times;
+	/** distance in meters along the route of each breakpoint */
+	private double[] offsets;
+	/** speed in m/s from each breakpoint on */
+	private double[] speeds;
+	private byte[] types;
+	private TrafficIncident[] incidents;
+	private int size = 0;
+
+	/**
+	 * Builds the profile of a truck starting from its current state.
+	 *
+	 * @param route the truck's route
+	 * @param startTime simulated time in ms of the truck's current state
+	 * @param startOffset distance in meters which the truck has already driven along the route
+	 * @param segment the segment in which the truck currently drives
+	 * @param speed current speed in m/s
+	 * @param idleSeconds remaining pause time in seconds
+	 * @param curIncident the incident in which the truck currently is, null if none
+	 * @param routeIncidents the truck's incidents projected onto its route
+	 */
+	public SpeedProfile(Route route, long startTime, double startOffset, int segment, double speed, int idleSeconds,
+			TrafficIncident curIncident, RouteIncidents routeIncidents) {
+		this.route = route;
+		RouteIndex index = route.getIndex();
+		List<Event> events = new ArrayList<>();
+		for(int s = segment + 1; s < route.getSegmentCount() - 1; s++) {
+			double segmentSpeed = route.getSegment(s).getSpeed();
+			int firstPoint = index.getPointIndex(s, 0);
+			if(segmentSpeed > 0 && firstPoint > 0) {
+				events.add(new Event(index.getDistance(firstPoint - 1), SEGMENT, segmentSpeed, null));
+			}
+		}
+		for(int i = 0; i < routeIncidents.size(); i++) {
+			TrafficIncident incident = routeIncidents.getIncident(i);
+			if(incident != curIncident && routeIncidents.getStart(i) >= startOffset) {
+				events.add(new Event(routeIncidents.getStart(i), ENTER_INCIDENT, 0, incident));
+				events.add(new Event(routeIncidents.getEnd(i), LEAVE_INCIDENT, 0, incident));
+			}
+		}
+		if(curIncident != null) {
+			// an incident which is not on the route is left immediately
+			int current = routeIncidents.indexOf(curIncident);
+			double end = current >= 0 ? Math.max(startOffset, routeIncidents.getEnd(current)) : startOffset;
+			events.add(new Event(end, LEAVE_INCIDENT, 0, curIncident));
+		}
+		// sorting is stable, segment changes precede incidents at the same distance
+		events.sort(Comparator.comparingDouble(e -> e.offset));
+
+		int capacity = events.size() + 2;
+		times = new double[capacity];
+		offsets = new double[capacity];
+		speeds = new double[capacity];
+		types = new byte[capacity];
+		incidents = new TrafficIncident[capacity];
+
+		double time = startTime + Math.max(0, idleSeconds) * 1000.0;
+		double offset = startOffset;
+		double curSpeed = speed;
+		double plannedSpeed = speed;
+		TrafficIncident active = curIncident;
+		add(time, offset, curSpeed, idleSeconds > 0 ? PAUSE_END : START, null);
+		for(Event event : events) {
+			if(!(curSpeed > 0)) {
+				// the truck doesn't move any further
+				return;
+			}
+			if(event.type == SEGMENT) {
+				plannedSpeed = event.speed;
+				if(active != null) {
+					continue;
+				}
+			} else if(event.type == ENTER_INCIDENT && active != null || event.type == LEAVE_INCIDENT && event.incident != active) {
+				// overlapping incidents are ignored, as the truck can only be in one incident at a time
+				continue;
+			}
+			time += (event.offset - offset) / curSpeed * 1000;
+			offset = event.offset;
+			if(event.type == SEGMENT) {
+				curSpeed = event.speed;
+			} else if(event.type == ENTER_INCIDENT) {
+				active = event.incident;
+				curSpeed = event.incident.getSpeed();
+			} else {
+				active = null;
+				double segmentSpeed = route.getSegment(index.getSegmentAt(offset)).getSpeed();
+				curSpeed = segmentSpeed > 0 ? segmentSpeed : plannedSpeed;
+			}
+			add(time, offset, curSpeed, event.type, event.incident);
+		}
+		if(curSpeed > 0) {
+			time += Math.max(0, index.getLength() - offset) / curSpeed * 1000;
+			add(time, Math.max(offset, index.getLength()), curSpeed, ARRIVAL, null);
+		}
+	}
+
+	private void add(double time, double offset, double speed, byte type, TrafficIncident incident) {
+		times[size] = time;
+		offsets[size] = offset;
+		speeds[size] = speed;
+		types[size] = type;
+		incidents[size] = incident;
+		size++;
+	}
+
+	/**
+	 * @return index of the last breakpoint at or before the given time, -1 if the time is before the first breakpoint
+	 */
+	private int indexAt(double time) {
+		int idx = Arrays.binarySearch(times, 0, size, time);
+		if(idx < 0) {
+			return -idx - 2;
+		}
+		while(idx + 1 < size && times[idx + 1] == time) {
+			idx++;
+		}
+		return idx;
+	}
+
+	/**
+	 * @param time simulated time in ms
+	 * @return distance in meters along the route which the truck has driven at the given time
+	 */
+	public double getOffsetAt(long time) {
+		int k = indexAt(time);
+		if(k < 0) {
+			return offsets[0];
+		}
+		if(types[k] == ARRIVAL || !(speeds[k] > 0)) {
+			return offsets[k];
+		}
+		double offset = offsets[k] + speeds[k] * (time - times[k]) / 1000;
+		return k + 1 < size ? Math.min(offset, offsets[k + 1]) : offset;
+	}
+
+	/**
+	 * @param time simulated time in ms
+	 * @return speed in m/s of the truck at the given time, pauses are not taken into account
+	 */
+	public double getSpeedAt(long time) {
+		return speeds[Math.max(0, indexAt(time))];
+	}
+
+	/**
+	 * @param time simulated time in ms
+	 * @return remaining pause time in seconds at the given time
+	 */
+	public int getRemainingPause(long time) {
+		if(types[0] != PAUSE_END || time >= times[0]) {
+			return 0;
+		}
+		return (int) Math.ceil((times[0] - time) / 1000);
+	}
+
+	/**
+	 * @return simulated time in ms at which the truck arrives at the end of its route,
+	 * Long.MAX_VALUE if the truck doesn't move any further
+	 */
+	public long getArrivalTime() {
+		return types[size - 1] == ARRIVAL ? (long) Math.ceil(times[size - 1]) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param time simulated time in ms
+	 * @return index of the first breakpoint after the given time, {@link #size()} if there is none
+	 */
+	public int getNextBreakpoint(long time) {
+		return indexAt(time) + 1;
+	}
+
+	/**
+	 * @return number of breakpoints
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return simulated time in ms of the breakpoint
+	 */
+	public double getTime(int breakpoint) {
+		return times[breakpoint];
+	}
+
+	/**
+	 * @return distance in meters along the route of the breakpoint
+	 */
+	public double getOffset(int breakpoint) {
+		return offsets[breakpoint];
+	}
+
+	/**
+	 * @return speed in m/s from the breakpoint on
+	 */
+	public double getSpeed(int breakpoint) {
+		return speeds[breakpoint];
+	}
+
+	/**
+	 * @return type of the breakpoint, one of the constants of this class
+	 */
+	public byte getType(int breakpoint) {
+		return types[breakpoint];
+	}
+
+	/**
+	 * @return the incident which is entered or left at the breakpoint, null for other breakpoints
+	 */
+	public TrafficIncident getIncident(int breakpoint) {
+		return incidents[breakpoint];
+	}
+
+	public Route getRoute() {
+		return route;
+	}
+
+	private static class Event {
+		private final double offset;
+		private final byte type;
+		private final double speed;
+		private final TrafficIncident incident;
+
+		private Event(double offset, byte type, double speed, TrafficIncident incident) {
+			this.offset = offset;
+			this.type = type;
+			this.speed = speed;
+			this.incident = incident;
+		}
+	}
+
+}
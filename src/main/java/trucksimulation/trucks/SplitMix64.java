@@ -0,0 +1,95 @@
+package trucksimulation.trucks;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random stream of a truck whose state can be written to and restored from a checkpoint without changing it.
+ *
+ * Implements the SplitMix64 algorithm of {@link SplittableRandom}: a stream created with the same seed produces the
+ * same values as <code>new SplittableRandom(seed)</code>, also after {@link #split()}. The state consists of the
+ * current seed and the stream's gamma. Not thread-safe.
+ */
+public final class SplitMix64 {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long seed;
+	private final long gamma;
+
+	/**
+	 * Creates a stream with a random seed.
+	 */
+	public SplitMix64() {
+		this(new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * @param seed
+	 */
+	public SplitMix64(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Restores a stream from its state.
+	 *
+	 * @param seed see {@link #getSeed()}
+	 * @param gamma see {@link #getGamma()}, must be odd
+	 */
+	public SplitMix64(long seed, long gamma) {
+		if((gamma & 1) == 0) {
+			throw new IllegalArgumentException("gamma must be odd");
+		}
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * @return a new stream whose values are independent of this stream's values
+	 */
+	public SplitMix64 split() {
+		return new SplitMix64(nextLong(), mixGamma(nextSeed()));
+	}
+
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * @return a value in [0, 1)
+	 */
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * @return the current seed, which is advanced by the gamma for each value
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getGamma() {
+		return gamma;
+	}
+
+	private long nextSeed() {
+		return seed += gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+}
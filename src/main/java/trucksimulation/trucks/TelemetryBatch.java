@@ -0,0 +1,217 @@
+package trucksimulation.trucks;
+
+import java.util.Arrays;
+
+import trucksimulation.routing.Position;
+
+/**
+ * Immutable envelope of the telemetry data which the trucks of a simulation have sent within one flush
+ * interval. The data is stored column by column in primitive arrays, so that a batch of thousands of
+ * messages costs a handful of objects instead of one object per message.
+ *
+ * Batches are created with a {@link Builder}, which is reused for all batches of a simulation.
+ */
+public final class TelemetryBatch {
+
+	private final int size;
+	private final String[] truckIds;
+	private final String[] boxIds;
+	private final long[] timeStamps;
+	/** NaN if the data has no position */
+	private final double[] lats;
+	private final double[] lons;
+	private final double[] altitudes;
+	private final int[] verticalAccuracies;
+	private final int[] horizontalAccuracies;
+	private final double[] speeds;
+	private final double[] bearings;
+	private final double[] temperatures;
+
+	private TelemetryBatch(Builder builder) {
+		size = builder.size;
+		truckIds = Arrays.copyOf(builder.truckIds, size);
+		boxIds = Arrays.copyOf(builder.boxIds, size);
+		timeStamps = Arrays.copyOf(builder.timeStamps, size);
+		lats = Arrays.copyOf(builder.lats, size);
+		lons = Arrays.copyOf(builder.lons, size);
+		altitudes = Arrays.copyOf(builder.altitudes, size);
+		verticalAccuracies = Arrays.copyOf(builder.verticalAccuracies, size);
+		horizontalAccuracies = Arrays.copyOf(builder.horizontalAccuracies, size);
+		speeds = Arrays.copyOf(builder.speeds, size);
+		bearings = Arrays.copyOf(builder.bearings, size);
+		temperatures = Arrays.copyOf(builder.temperatures, size);
+	}
+
+	/**
+	 * @return number of messages in the batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i index of the message, in the order in which the messages have been added
+	 * @return the message as individual telemetry message
+	 */
+	public TelemetryMessage get(int i) {
+		return new TelemetryMessage(truckIds[i], boxIds[i], timeStamps[i], lats[i], lons[i], altitudes[i],
+				verticalAccuracies[i], horizontalAccuracies[i], speeds[i], bearings[i], temperatures[i]);
+	}
+
+	public String getTruckId(int i) {
+		return truckIds[i];
+	}
+
+	public String getBoxId(int i) {
+		return boxIds[i];
+	}
+
+	public long getTimeStamp(int i) {
+		return timeStamps[i];
+	}
+
+	public boolean hasPosition(int i) {
+		return !Double.isNaN(lats[i]);
+	}
+
+	public double getLat(int i) {
+		return lats[i];
+	}
+
+	public double getLon(int i) {
+		return lons[i];
+	}
+
+	public double getAltitude(int i) {
+		return altitudes[i];
+	}
+
+	public int getVerticalAccuracy(int i) {
+		return verticalAccuracies[i];
+	}
+
+	public int getHorizontalAccuracy(int i) {
+		return horizontalAccuracies[i];
+	}
+
+	public double getSpeed(int i) {
+		return speeds[i];
+	}
+
+	public double getBearing(int i) {
+		return bearings[i];
+	}
+
+	public double getTemperature(int i) {
+		return temperatures[i];
+	}
+
+	/**
+	 * Collects messages until the next batch is built. Not thread-safe.
+	 */
+	public static final class Builder {
+
+		private int size = 0;
+		private String[] truckIds;
+		private String[] boxIds;
+		private long[] timeStamps;
+		private double[] lats;
+		private double[] lons;
+		private double[] altitudes;
+		private int[] verticalAccuracies;
+		private int[] horizontalAccuracies;
+		private double[] speeds;
+		private double[] bearings;
+		private double[] temperatures;
+
+		public Builder() {
+			this(16);
+		}
+
+		/**
+		 * @param capacity expected number of messages per batch
+		 */
+		public Builder(int capacity) {
+			allocate(Math.max(1, capacity));
+		}
+
+		/**
+		 * @param truckId id of the truck to which the box is mounted
+		 * @param data
+		 * @return this builder
+		 */
+		public Builder add(String truckId, TelemetryData data) {
+			Position pos = data.getPosition();
+			return add(truckId, data.getId(), data.getTimeStamp(),
+					pos != null ? pos.getLat() : Double.NaN, pos != null ? pos.getLon() : Double.NaN,
+					data.getAltitude(), data.getVerticalAccuracy(), data.getHorizontalAccuracy(),
+					data.getSpeed(), data.getBearing(), data.getTemperature());
+		}
+
+		/**
+		 * @param msg
+		 * @return this builder
+		 */
+		public Builder add(TelemetryMessage msg) {
+			return add(msg.getTruckId(), msg.getBoxId(), msg.getTimeStamp(), msg.getLat(), msg.getLon(),
+					msg.getAltitude(), msg.getVerticalAccuracy(), msg.getHorizontalAccuracy(),
+					msg.getSpeed(), msg.getBearing(), msg.getTemperature());
+		}
+
+		public Builder add(String truckId, String boxId, long timeStamp, double lat, double lon, double altitude,
+				int verticalAccuracy, int horizontalAccuracy, double speed, double bearing, double temperature) {
+			if(size == truckIds.length) {
+				allocate(size * 2);
+			}
+			truckIds[size] = truckId;
+			boxIds[size] = boxId;
+			timeStamps[size] = timeStamp;
+			lats[size] = lat;
+			lons[size] = lon;
+			altitudes[size] = altitude;
+			verticalAccuracies[size] = verticalAccuracy;
+			horizontalAccuracies[size] = horizontalAccuracy;
+			speeds[size] = speed;
+			bearings[size] = bearing;
+			temperatures[size] = temperature;
+			size++;
+			return this;
+		}
+
+		/**
+		 * @return number of messages which have been added since the last batch has been built
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Builds a batch of all messages which have been added and clears the builder.
+		 *
+		 * @return the batch
+		 */
+		public TelemetryBatch build() {
+			TelemetryBatch batch = new TelemetryBatch(this);
+			Arrays.fill(truckIds, 0, size, null);
+			Arrays.fill(boxIds, 0, size, null);
+			size = 0;
+			return batch;
+		}
+
+		private void allocate(int capacity) {
+			truckIds = truckIds == null ? new String[capacity] : Arrays.copyOf(truckIds, capacity);
+			boxIds = boxIds == null ? new String[capacity] : Arrays.copyOf(boxIds, capacity);
+			timeStamps = timeStamps == null ? new long[capacity] : Arrays.copyOf(timeStamps, capacity);
+			lats = lats == null ? new double[capacity] : Arrays.copyOf(lats, capacity);
+			lons = lons == null ? new double[capacity] : Arrays.copyOf(lons, capacity);
+			altitudes = altitudes == null ? new double[capacity] : Arrays.copyOf(altitudes, capacity);
+			verticalAccuracies = verticalAccuracies == null ? new int[capacity] : Arrays.copyOf(verticalAccuracies, capacity);
+			horizontalAccuracies = horizontalAccuracies == null ? new int[capacity] : Arrays.copyOf(horizontalAccuracies, capacity);
+			speeds = speeds == null ? new double[capacity] : Arrays.copyOf(speeds, capacity);
+			bearings = bearings == null ? new double[capacity] : Arrays.copyOf(bearings, capacity);
+			temperatures = temperatures == null ? new double[capacity] : Arrays.copyOf(temperatures, capacity);
+		}
+
+	}
+
+}
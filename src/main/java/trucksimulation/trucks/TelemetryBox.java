@@ -1,25 +1,42 @@
 package trucksimulation.trucks;
 
+
 import trucksimulation.routing.Position;
 
 /**
  * Represents the telemetry box which is mounted to a truck.
  * By default, boxes do not deteriorate data, unless explicitly set with {@link #setDeteriorate(boolean)}.
+ * 
+ * The box only keeps its current and its previous data, from which speed and bearing are calculated.
+ * Both are stored in two slots which are reused with each update, hence updating the box doesn't allocate.
+ * The data returned by {@link #getTelemetryData()} is overwritten by the next but one update, consumers
+ * which need to keep it must {@link TelemetryData#copy() copy} it.
  *
  */
 public class TelemetryBox {
 	
 	private String id;
-	private TelemetryData prevData;
-	private TelemetryData curData;
+	private final TelemetryData[] slots = new TelemetryData[2];
+	/** index of the slot of the current data */
+	private int cur = 0;
+	/** number of updates since the box has been created, at most 2 */
+	private int count = 0;
 	private boolean deteriorate;
+	/** source of the deterioration of positions */
+	private SplitMix64 random = new SplitMix64();
 
 	public TelemetryBox(String id) {
 		this.id = id;
+		for(int i = 0; i < slots.length; i++) {
+			slots[i] = new TelemetryData(id, false, random);
+		}
 	}
 
+	/**
+	 * @return the current data, null if the box hasn't been updated yet
+	 */
 	public TelemetryData getTelemetryData() {
-		return curData;		
+		return count > 0 ? slots[cur] : null;
 	}
 	
 	/**
@@ -28,36 +45,57 @@ public class TelemetryBox {
 	 * @param timestamp time in ms
 	 */
 	public TelemetryData update(Position pos, long timestamp) {
-		prevData = curData;
-		curData = new TelemetryData(id, deteriorate);
-		curData.setTimeStamp(timestamp);
-		curData.setPosition(pos);
-		curData.setSpeed(getSpeed());
-		if(prevData != null) {
-			curData.setBearing(prevData.getPosition().getBearing(pos));
-		}
-		return curData;
+		return update(pos.getLat(), pos.getLon(), timestamp);
 	}
 	
 	/**
-	 * Calculates the current speed using the distance between last and current position.
-	 * Due to inexact position data, speeds can differ from the actual speed.
+	 * Updates the box's data in place: the slot of the previous data is overwritten with the new data.
 	 * 
-	 * @return speed in m/s
+	 * @param lat
+	 * @param lon
+	 * @param timestamp time in ms
+	 * @return the current data
 	 */
-	private double getSpeed() {
+	public TelemetryData update(double lat, double lon, long timestamp) {
+		TelemetryData prevData = count > 0 ? slots[cur] : null;
+		cur ^= 1;
+		count = Math.min(2, count + 1);
+		TelemetryData curData = slots[cur];
+		curData.setTimeStamp(timestamp);
+		curData.setPosition(lat, lon);
 		if(prevData != null && prevData.getPosition() != null) {
 			Position prevPos = prevData.getPosition();
 			Position curPos = curData.getPosition();
-			double dist = prevPos.getDistance(curPos);
-			return dist / (curData.getTimeStamp() - prevData.getTimeStamp()) * 1000;	
+			double dist = Position.getDistance(prevPos.getLat(), prevPos.getLon(), curPos.getLat(), curPos.getLon());
+			curData.setSpeed(dist / (curData.getTimeStamp() - prevData.getTimeStamp()) * 1000);
+			curData.setBearing(Position.getBearing(prevPos.getLat(), prevPos.getLon(), lat, lon));
 		} else {
-			return 0;
+			curData.setSpeed(0);
+			curData.setBearing(0);
+		}
+		return curData;
+	}
+
+	/**
+	 * Sets the data which has been sent last, the speed and bearing of the next data are calculated from it.
+	 * The data is copied into the box.
+	 * 
+	 * @param data
+	 */
+	public void setTelemetryData(TelemetryData data) {
+		if(data == null) {
+			count = 0;
+			return;
 		}
+		slots[cur].set(data);
+		count = Math.max(1, count);
 	}
 
 	public void setId(String id) {
 		this.id = id;
+		for(TelemetryData slot : slots) {
+			slot.setId(id);
+		}
 	}
 	
 	public boolean isDeteriorating() {
@@ -66,8 +104,25 @@ public class TelemetryBox {
 
 	public void setDeteriorate(boolean deteriorate) {
 		this.deteriorate = deteriorate;
+		for(TelemetryData slot : slots) {
+			slot.setDeteriorate(deteriorate);
+		}
+	}
+
+	public SplitMix64 getRandom() {
+		return random;
+	}
+
+	/**
+	 * Sets the source of the deterioration of positions, a seeded source makes the deterioration reproducible.
+	 * 
+	 * @param random
+	 */
+	public void setRandom(SplitMix64 random) {
+		this.random = random;
+		for(TelemetryData slot : slots) {
+			slot.setRandom(random);
+		}
 	}
-	
-	
 
 }
@@ -1,9 +1,12 @@
 package trucksimulation.trucks;
 
-import java.util.Random;
 
 import trucksimulation.routing.Position;
 
+/**
+ * Data which a telemetry box sends. The data of a {@link TelemetryBox} is overwritten by later updates
+ * of the box, consumers which need to keep it must {@link #copy()} it.
+ */
 public class TelemetryData {
 	
 	private String id;
@@ -15,12 +18,24 @@ public class TelemetryData {
 	private double speed;
 	private double bearing;
 	private double temperature = 20.0;
-	private transient Random random = new Random();
+	private transient SplitMix64 random;
 	private transient boolean deteriorate;
+	/** true if the position object belongs to this data and can be updated in place */
+	private transient boolean ownsPosition = false;
 	
 	public TelemetryData(String id, boolean deteriorate) {
+		this(id, deteriorate, deteriorate ? new SplitMix64() : null);
+	}
+	
+	/**
+	 * @param id
+	 * @param deteriorate
+	 * @param random source of the deterioration of positions, required if deteriorate is true
+	 */
+	public TelemetryData(String id, boolean deteriorate, SplitMix64 random) {
 		this.id = id;
 		this.deteriorate = deteriorate;
+		this.random = random;
 	}
 	
 	public String getId() {
@@ -54,19 +69,85 @@ public class TelemetryData {
 	}
 	public void setPosition(Position position) {
 		if(deteriorate) {
-			this.position = deteriorate(position);
+			setPosition(position.getLat(), position.getLon());
 		} else {
 			this.position = position;
+			ownsPosition = false;
 		}
 		
 	}
 	
-	private Position deteriorate(Position pos) {
-		double lat = pos.getLat() + getDeterioration();
-		double lon = pos.getLon() + getDeterioration();
-		Position newPos = new Position(lat, lon);
-		horizontalAccuracy = (int) Math.round(newPos.getDistance(pos));
-		return newPos;
+	/**
+	 * Sets the position, deteriorated if this data deteriorates positions. The position object of the data
+	 * is updated in place if it has been created by the data itself.
+	 * 
+	 * @param lat
+	 * @param lon
+	 */
+	public void setPosition(double lat, double lon) {
+		double dataLat = lat;
+		double dataLon = lon;
+		if(deteriorate) {
+			dataLat += getDeterioration();
+			dataLon += getDeterioration();
+			horizontalAccuracy = (int) Math.round(Position.getDistance(dataLat, dataLon, lat, lon));
+		}
+		if(ownsPosition) {
+			position.setLat(dataLat);
+			position.setLon(dataLon);
+		} else {
+			position = new Position(dataLat, dataLon);
+			ownsPosition = true;
+		}
+	}
+	
+	/**
+	 * Sets all data to the values of the given data, without deteriorating its position again.
+	 * 
+	 * @param other
+	 */
+	public void set(TelemetryData other) {
+		id = other.id;
+		timeStamp = other.timeStamp;
+		if(other.position == null) {
+			position = null;
+			ownsPosition = false;
+		} else if(ownsPosition) {
+			position.setLat(other.position.getLat());
+			position.setLon(other.position.getLon());
+		} else {
+			position = new Position(other.position.getLat(), other.position.getLon());
+			ownsPosition = true;
+		}
+		altitude = other.altitude;
+		verticalAccuracy = other.verticalAccuracy;
+		horizontalAccuracy = other.horizontalAccuracy;
+		speed = other.speed;
+		bearing = other.bearing;
+		temperature = other.temperature;
+	}
+	
+	/**
+	 * @return a copy of the data which is not changed by later updates of the box
+	 */
+	public TelemetryData copy() {
+		TelemetryData copy = new TelemetryData(id, false);
+		copy.set(this);
+		return copy;
+	}
+	
+	/**
+	 * @param deteriorate true if positions should be deteriorated, requires a source of randomness
+	 */
+	public void setDeteriorate(boolean deteriorate) {
+		this.deteriorate = deteriorate;
+	}
+	
+	/**
+	 * @param random source of the deterioration of positions
+	 */
+	public void setRandom(SplitMix64 random) {
+		this.random = random;
 	}
 	
 	/**
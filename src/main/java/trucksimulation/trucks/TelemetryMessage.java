@@ -0,0 +1,141 @@
+package trucksimulation.trucks;
+
+import trucksimulation.routing.Position;
+
+/**
+ * Immutable snapshot of the telemetry data which a truck's box has sent, as published on the event bus.
+ *
+ * Consumers in the same vert.x instance receive the message by reference, which is safe as it cannot change
+ * after it has been published. Json is only produced by the consumers which need it, see
+ * {@link trucksimulation.TelemetryDataWriter}.
+ */
+public final class TelemetryMessage {
+
+	private final String truckId;
+	private final String boxId;
+	private final long timeStamp;
+	/** NaN if the data has no position */
+	private final double lat;
+	private final double lon;
+	private final double altitude;
+	private final int verticalAccuracy;
+	private final int horizontalAccuracy;
+	private final double speed;
+	private final double bearing;
+	private final double temperature;
+
+	public TelemetryMessage(String truckId, String boxId, long timeStamp, double lat, double lon, double altitude,
+			int verticalAccuracy, int horizontalAccuracy, double speed, double bearing, double temperature) {
+		this.truckId = truckId;
+		this.boxId = boxId;
+		this.timeStamp = timeStamp;
+		this.lat = lat;
+		this.lon = lon;
+		this.altitude = altitude;
+		this.verticalAccuracy = verticalAccuracy;
+		this.horizontalAccuracy = horizontalAccuracy;
+		this.speed = speed;
+		this.bearing = bearing;
+		this.temperature = temperature;
+	}
+
+	/**
+	 * @param truckId id of the truck to which the box is mounted
+	 * @param data
+	 * @return a snapshot of the data
+	 */
+	public static TelemetryMessage of(String truckId, TelemetryData data) {
+		Position pos = data.getPosition();
+		return new TelemetryMessage(truckId, data.getId(), data.getTimeStamp(),
+				pos != null ? pos.getLat() : Double.NaN, pos != null ? pos.getLon() : Double.NaN,
+				data.getAltitude(), data.getVerticalAccuracy(), data.getHorizontalAccuracy(),
+				data.getSpeed(), data.getBearing(), data.getTemperature());
+	}
+
+	public String getTruckId() {
+		return truckId;
+	}
+
+	public String getBoxId() {
+		return boxId;
+	}
+
+	public long getTimeStamp() {
+		return timeStamp;
+	}
+
+	public boolean hasPosition() {
+		return !Double.isNaN(lat);
+	}
+
+	public double getLat() {
+		return lat;
+	}
+
+	public double getLon() {
+		return lon;
+	}
+
+	public double getAltitude() {
+		return altitude;
+	}
+
+	public int getVerticalAccuracy() {
+		return verticalAccuracy;
+	}
+
+	public int getHorizontalAccuracy() {
+		return horizontalAccuracy;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public double getBearing() {
+		return bearing;
+	}
+
+	public double getTemperature() {
+		return temperature;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof TelemetryMessage)) {
+			return false;
+		}
+		TelemetryMessage other = (TelemetryMessage) obj;
+		return timeStamp == other.timeStamp
+				&& verticalAccuracy == other.verticalAccuracy
+				&& horizontalAccuracy == other.horizontalAccuracy
+				&& Double.compare(lat, other.lat) == 0
+				&& Double.compare(lon, other.lon) == 0
+				&& Double.compare(altitude, other.altitude) == 0
+				&& Double.compare(speed, other.speed) == 0
+				&& Double.compare(bearing, other.bearing) == 0
+				&& Double.compare(temperature, other.temperature) == 0
+				&& (truckId == null ? other.truckId == null : truckId.equals(other.truckId))
+				&& (boxId == null ? other.boxId == null : boxId.equals(other.boxId));
+	}
+
+	@Override
+	public int hashCode() {
+		int result = truckId == null ? 0 : truckId.hashCode();
+		result = 31 * result + (boxId == null ? 0 : boxId.hashCode());
+		result = 31 * result + Long.hashCode(timeStamp);
+		result = 31 * result + Double.hashCode(lat);
+		result = 31 * result + Double.hashCode(lon);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "TelemetryMessage [truckId=" + truckId + ", ts=" + timeStamp + ", lat=" + lat + ", lon=" + lon
+				+ ", speed=" + speed + ", bearing=" + bearing + "]";
+	}
+
+}
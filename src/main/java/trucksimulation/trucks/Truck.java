@@ -3,39 +3,49 @@ package trucksimulation.trucks;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import trucksimulation.routing.Position;
 import trucksimulation.routing.Route;
-import trucksimulation.routing.RouteSegment;
-import trucksimulation.routing.TargetExceededException;
 import trucksimulation.traffic.TrafficIncident;
 
+/**
+ * A truck which drives along its route.
+ * 
+ * The movement state of the truck (position, speed, route progress, timestamp and pause time) is stored
+ * in a slot of a {@link FleetState}, the truck itself is a view onto that slot.
+ * 
+ * Lazy trucks are not moved in each tick. Their position at any simulated time is computed from their
+ * {@link SpeedProfile} and is only written to the fleet state when the truck is materialized, see {@link #materialize(long)}.
+ */
 public class Truck {
 	
 	private String id;
-	private Route route;
+	private FleetState fleet;
+	private int slot;
 	private String routeId;
 	private TelemetryBox telemetryBox;
 	private TelemetryBox telemetryBoxInexact;
 	private List<TrafficIncident> incidents = new ArrayList<>();
 	/** points to the current traffic incident if the truck is affected by one. null otherwise. */
 	private TrafficIncident curIncident = null;
+	/** incidents projected onto the current route, built on demand and reset whenever the route or incidents change */
+	private RouteIncidents routeIncidents;
+	/** first incident of {@link #routeIncidents} which has not been entered yet */
+	private int nextIncident;
+	/** distance along the route at which the current incident ends */
+	private double curIncidentEnd;
 	private TruckEventListener trafficEventListener;
-	private int idleCountdown = 0;
-	private boolean needsNewRoute = false;
+	/** planned movement of a lazy truck, built on demand and reset whenever the route, pause or incidents change */
+	private SpeedProfile profile;
+	/** first breakpoint of the speed profile which has not been handled by {@link #materialize(long)} */
+	private int nextBreakpoint;
 	
-	private double speed = 5.0;
-	private Position pos;
-	private Position targetPos;
 	private int interval = 1;
-	private long ts = 0;
-	
-	private int curRouteSegment = 0;
-	private int curSegmentPoint = 0;
+	/** source of all random decisions of the truck, e.g. its next destination in endless mode */
+	private SplitMix64 random = new SplitMix64();
 	
 	private static List<Truck> trucks = new ArrayList<>();
 	private static long nextTruckId = 100;
@@ -48,11 +58,22 @@ public class Truck {
 	 * @param id
 	 */
 	public Truck(String id) {
+		this(id, new FleetState(1));
+	}
+	
+	/**
+	 * Creates a truck whose state is stored in a new slot of the given fleet.
+	 * 
+	 * @param id
+	 * @param fleet
+	 */
+	public Truck(String id, FleetState fleet) {
 		this.id = id;
 		telemetryBox = new TelemetryBox(id);
 		telemetryBoxInexact = new TelemetryBox(id);
 		telemetryBoxInexact.setDeteriorate(true);
-		ts = LocalDateTime.now(ZoneOffset.UTC).toEpochSecond(ZoneOffset.UTC) * 1000;
+		this.fleet = fleet;
+		this.slot = fleet.allocate(LocalDateTime.now(ZoneOffset.UTC).toEpochSecond(ZoneOffset.UTC) * 1000);
 	}
 	
 	public static Truck buildTruck() {
@@ -71,11 +92,12 @@ public class Truck {
 	 */
 	public void pause(int pauseTimeMinutes) {
 		LOGGER.info("truck `{0}` is having a break for {1} minute/s.", id, pauseTimeMinutes);
-		this.idleCountdown = pauseTimeMinutes * 60;
+		fleet.setIdle(slot, pauseTimeMinutes * 60);
+		profile = null;
 	}
 	
 	public boolean isInPauseMode() {
-		return this.idleCountdown > 0;
+		return fleet.getIdle(slot) > 0;
 	}
 	
 	/**
@@ -86,61 +108,126 @@ public class Truck {
 	 * @see #pause(int)
 	 */
 	public void move() {
-		if(isInPauseMode()) {
-			idleCountdown--;
-			if(!isInPauseMode()) {
-				LOGGER.info("truck `{0}` completed its break.", id);
+		fleet.advance(slot, interval);
+		completeMove();
+	}
+	
+	/**
+	 * Updates telemetry data and traffic state after the truck's slot has been advanced in the fleet,
+	 * either by {@link #move()} or by {@link FleetState#advanceAll(int)}.
+	 * 
+	 * Throws a DestinationArrivedException if the truck has arrived at the last point of the route with the advance.
+	 */
+	public void completeMove() {
+		switch(fleet.getStatus(slot)) {
+		case FleetState.MOVED:
+			double lat = fleet.getLat(slot);
+			double lon = fleet.getLon(slot);
+			long ts = fleet.getTimestamp(slot);
+			telemetryBox.update(lat, lon, ts);
+			telemetryBoxInexact.update(lat, lon, ts);
+			if(!isLazy()) {
+				updateTrafficMode();
 			}
-		} else {
-			move(speed);
+			break;
+		case FleetState.BREAK_COMPLETED:
+			LOGGER.info("truck `{0}` completed its break.", id);
+			break;
+		case FleetState.ARRIVED:
+			throw new DestinationArrivedException("Truck has reached its target. Please assign a new route before proceeding.");
+		default:
+			// paused or waiting for a new route
+			break;
 		}
 	}
 	
-	private void move(double moveSpeed) {
-		if(hasArrived() && !needsNewRoute) {
-			// use needsNewRoute flag to ensure exception is only called once per destination
-			needsNewRoute = true;
-			throw new DestinationArrivedException("Already arrived at destination. Set a new destination / route.");
-		} else if (needsNewRoute) {
-			// don't move until a new route has been set
+	/**
+	 * Writes the position of a lazy truck at the given simulated time into the fleet state. Breakpoints of the
+	 * truck's speed profile which have been passed since the last materialization are handled in order,
+	 * i.e. traffic events are emitted and completed breaks are logged.
+	 * 
+	 * Call {@link #completeMove()} afterwards to update the telemetry data, just like after a move.
+	 * 
+	 * @param time simulated time in ms, must not be before the truck's current timestamp
+	 */
+	public void materialize(long time) {
+		SpeedProfile speedProfile = getSpeedProfile();
+		if(speedProfile == null) {
+			fleet.moveTo(slot, 0, time);
 			return;
 		}
-		try {
-			pos = pos.moveTowards(targetPos, moveSpeed * interval);
-		} catch (TargetExceededException e) {
-			pos = targetPos;
-			proceedToNextPoint();
-			move(e.getExceededBy());
+		int end = speedProfile.getNextBreakpoint(time);
+		for(int i = nextBreakpoint; i < end; i++) {
+			switch(speedProfile.getType(i)) {
+			case SpeedProfile.PAUSE_END:
+				LOGGER.info("truck `{0}` completed its break.", id);
+				break;
+			case SpeedProfile.ENTER_INCIDENT:
+				enterTraffic(speedProfile.getIncident(i));
+				break;
+			case SpeedProfile.LEAVE_INCIDENT:
+				leaveTraffic(speedProfile.getIncident(i));
+				incidents.remove(speedProfile.getIncident(i));
+				break;
+			default:
+				break;
+			}
 		}
-		ts += interval * 1000;
-		telemetryBox.update(pos, ts);
-		telemetryBoxInexact.update(pos, ts);
-		updateTrafficMode();
+		nextBreakpoint = Math.max(nextBreakpoint, end);
+		fleet.setIdle(slot, speedProfile.getRemainingPause(time));
+		fleet.setSpeed(slot, speedProfile.getSpeedAt(time));
+		fleet.moveTo(slot, speedProfile.getOffsetAt(time), time);
 	}
-
-	private void proceedToNextPoint() {	
-		RouteSegment currentSegment = route.getSegment(curRouteSegment);
-		if(currentSegment.getSize() > curSegmentPoint + 1) {
-			curSegmentPoint++;
-			targetPos = currentSegment.getPoint(curSegmentPoint);
-		} else {
-			curRouteSegment++;
-			curSegmentPoint = 0;
-			if(curRouteSegment == route.getSegmentCount() -1) {
-				currentSegment = route.getSegment(curRouteSegment);
-				targetPos = currentSegment.getPoint(curSegmentPoint);
-			} else if(curRouteSegment < route.getSegmentCount()) {
-				currentSegment = route.getSegment(curRouteSegment);
-				targetPos = currentSegment.getPoint(curSegmentPoint);
-				double nextSpeed = currentSegment.getSpeed();
-				if(nextSpeed > 0 && curIncident == null) {
-					speed = nextSpeed;
-				}
-			} else {
-				needsNewRoute = true;
-				throw new DestinationArrivedException("Truck has reached its target. Please assign a new route before proceeding.");
-			}
+	
+	/**
+	 * Computes the position of the truck at the given simulated time from its speed profile
+	 * without changing the truck's state.
+	 * 
+	 * @param time simulated time in ms
+	 * @return the position, null if the truck has no route
+	 */
+	public Position getPositionAt(long time) {
+		SpeedProfile speedProfile = getSpeedProfile();
+		if(speedProfile == null) {
+			return null;
+		}
+		return getRoute().getIndex().getPositionAt(speedProfile.getOffsetAt(time));
+	}
+	
+	/**
+	 * @return the planned movement of the truck starting at its current state, null if the truck has no route
+	 */
+	public SpeedProfile getSpeedProfile() {
+		if(profile == null && getRoute() != null) {
+			profile = new SpeedProfile(getRoute(), fleet.getTimestamp(slot), fleet.getOffset(slot), fleet.getSegment(slot),
+					fleet.getSpeed(slot), fleet.getIdle(slot), curIncident, getRouteIncidents());
+			nextBreakpoint = 0;
+		}
+		return profile;
+	}
+	
+	/**
+	 * @return simulated time in ms at which a lazy truck arrives at the end of its route,
+	 * Long.MAX_VALUE if it has already arrived or won't arrive
+	 */
+	public long getArrivalTime() {
+		SpeedProfile speedProfile = getSpeedProfile();
+		if(speedProfile == null || fleet.needsRoute(slot)) {
+			return Long.MAX_VALUE;
 		}
+		return speedProfile.getArrivalTime();
+	}
+	
+	public boolean isLazy() {
+		return fleet.isLazy(slot);
+	}
+	
+	/**
+	 * @param lazy true if the truck should be moved according to its speed profile instead of in each tick
+	 */
+	public void setLazy(boolean lazy) {
+		fleet.setLazy(slot, lazy);
+		profile = null;
 	}
 	
 	public String getId() {
@@ -150,7 +237,7 @@ public class Truck {
 		this.id = id;
 	}
 	public Route getRoute() {
-		return route;
+		return fleet.getRoute(slot);
 	}
 	
 	/**
@@ -159,29 +246,108 @@ public class Truck {
 	 * @param route
 	 */
 	public void setRoute(Route route) {
-		this.route = route;
-		this.pos = route.getStart();
-		curRouteSegment = 0;
-		curSegmentPoint = 0;
-		needsNewRoute = false;
-		this.proceedToNextPoint();
+		profile = null;
+		routeIncidents = null;
+		if(!fleet.setRoute(slot, route)) {
+			throw new DestinationArrivedException("Route does not contain a point to drive to.");
+		}
 	}
 
 	public double getSpeed() {
-		return speed;
+		return fleet.getSpeed(slot);
 	}
 	public void setSpeed(double speed) {
-		this.speed = speed;
+		fleet.setSpeed(slot, speed);
+		profile = null;
 	}
 
 	public Position getPos() {
-		return pos;
+		return new Position(fleet.getLat(slot), fleet.getLon(slot));
 	}
 
 	public void setPos(Position pos) {
-		this.pos = pos;
+		fleet.setPosition(slot, pos.getLat(), pos.getLon());
+	}
+	
+	/**
+	 * @return distance in meters which the truck has driven along its current route
+	 */
+	public double getRouteOffset() {
+		return fleet.getOffset(slot);
+	}
+	
+	/**
+	 * @return remaining distance in meters to the end of the current route
+	 */
+	public double getRemainingDistance() {
+		return getRoute().getIndex().getRemainingDistance(fleet.getOffset(slot));
+	}
+	
+	/**
+	 * @return planned remaining driving time in ms to the end of the current route
+	 */
+	public double getEta() {
+		return getRoute().getIndex().getRemainingTime(fleet.getOffset(slot));
+	}
+	
+	/**
+	 * @return current time of the truck in ms
+	 */
+	public long getTimestamp() {
+		return fleet.getTimestamp(slot);
+	}
+	
+	public FleetState getFleet() {
+		return fleet;
+	}
+	
+	/**
+	 * @return slot of the truck in its fleet
+	 */
+	public int getSlot() {
+		return slot;
+	}
+	
+	/**
+	 * Moves the state of the truck into a new slot of the given fleet.
+	 * The truck's previous slot is no longer used.
+	 * 
+	 * @param newFleet
+	 */
+	public void setFleet(FleetState newFleet) {
+		if(newFleet != fleet) {
+			slot = newFleet.copyFrom(fleet, slot);
+			fleet = newFleet;
+		}
 	}
 
+	public SplitMix64 getRandom() {
+		return random;
+	}
+	
+	/**
+	 * Sets the source of all randomness of the truck. The deterioration of the truck's telemetry data
+	 * is driven by a stream which is split from the given source.
+	 * 
+	 * @param random
+	 */
+	public void setRandom(SplitMix64 random) {
+		this.random = random;
+		telemetryBoxInexact.setRandom(random.split());
+	}
+
+	/**
+	 * Restores the source of all randomness of the truck and the stream driving the deterioration
+	 * without splitting, e.g. from a checkpoint.
+	 * 
+	 * @param random
+	 * @param deteriorationRandom
+	 */
+	public void setRandom(SplitMix64 random, SplitMix64 deteriorationRandom) {
+		this.random = random;
+		telemetryBoxInexact.setRandom(deteriorationRandom);
+	}
+	
 	public int getInterval() {
 		return interval;
 	}
@@ -215,33 +381,54 @@ public class Truck {
 	}
 
 	/**
-	 * Detects if the truck is entering or leaving a traffic incident.
-	 * Uses a simple check for the current distance to the traffic incidents start and end point.
-	 * It is assumed that only traffic incidents have been assigned to the truck that are actually
-	 * on the trucks route. 
-	  */
+	 * Detects if the truck is entering or leaving a traffic incident by comparing the distance which
+	 * the truck has driven along its route with the intervals of the incidents on the route.
+	 * Incidents which overlap the current incident are ignored.
+	 */
 	private void updateTrafficMode() {
-		Iterator<TrafficIncident> iter = incidents.iterator();
-		while(iter.hasNext()) {
-			TrafficIncident incident = iter.next();
-			double distToStart = pos.getDistance(incident.getStart());
-			double distToend = pos.getDistance(incident.getEnd());
-			
-			if(distToStart < speed * interval) {
-				enterTraffic(incident);
+		RouteIncidents onRoute = getRouteIncidents();
+		double offset = fleet.getOffset(slot);
+		if(curIncident != null && offset >= curIncidentEnd) {
+			TrafficIncident incident = curIncident;
+			leaveTraffic(incident);
+			incidents.remove(incident);
+		}
+		while(nextIncident < onRoute.size() && onRoute.getStart(nextIncident) <= offset) {
+			int i = nextIncident++;
+			if(curIncident != null) {
+				continue;
 			}
-			if(distToend < speed * interval) {
+			TrafficIncident incident = onRoute.getIncident(i);
+			enterTraffic(incident);
+			curIncidentEnd = onRoute.getEnd(i);
+			if(offset >= curIncidentEnd) {
+				// the whole incident has been passed within a single move
 				leaveTraffic(incident);
-				iter.remove();
+				incidents.remove(incident);
 			}
 		}
 	}
 	
+	/**
+	 * @return the truck's incidents projected onto its current route
+	 */
+	private RouteIncidents getRouteIncidents() {
+		if(routeIncidents == null) {
+			routeIncidents = new RouteIncidents(getRoute(), incidents);
+			double offset = fleet.getOffset(slot);
+			nextIncident = routeIncidents.getFirstAfter(offset);
+			int current = routeIncidents.indexOf(curIncident);
+			curIncidentEnd = current >= 0 ? routeIncidents.getEnd(current) : offset;
+		}
+		return routeIncidents;
+	}
+	
 	private void enterTraffic(TrafficIncident incident) {
 		if(curIncident != null && !curIncident.equals(incident)) {
 			throw new IllegalStateException("truck is already in a traffic incident. This is likely a bug in the updateTrafficMode method.");
 		}
-		this.speed = incident.getSpeed();
+		fleet.setSpeed(slot, incident.getSpeed());
+		fleet.setInIncident(slot, true);
 		curIncident = incident;
 		LOGGER.info("truck `{0}` has entered traffic `{1}`", id, curIncident);
 		if(trafficEventListener != null) {
@@ -250,9 +437,12 @@ public class Truck {
 	}
 	
 	private void leaveTraffic(TrafficIncident incident) {
-		this.speed = route.getSegment(curRouteSegment).getSpeed();
+		if(!isLazy()) {
+			fleet.setSpeed(slot, getRoute().getSegment(fleet.getSegment(slot)).getSpeed());
+		}
 		LOGGER.info("truck `{0}` has left traffic `{1}`", id, curIncident);
 		curIncident = null;
+		fleet.setInIncident(slot, false);
 		if(trafficEventListener != null) {
 			trafficEventListener.handleTrafficEvent(this, TruckEventListener.EventType.LEAVE_TRAFFIC);
 		}
@@ -266,6 +456,9 @@ public class Truck {
 
 	public void setCurIncident(TrafficIncident curIncident) {
 		this.curIncident = curIncident;
+		fleet.setInIncident(slot, curIncident != null);
+		profile = null;
+		routeIncidents = null;
 	}
 
 	public List<TrafficIncident> getTrafficIncidents() {
@@ -277,6 +470,8 @@ public class Truck {
 			throw new IllegalArgumentException("must not be null");
 		}
 		this.incidents.add(incident);
+		profile = null;
+		routeIncidents = null;
 	}
 	
 	public String getRouteId() {
@@ -288,7 +483,7 @@ public class Truck {
 	}
 
 	public boolean hasArrived() {
-		return this.pos.equals(route.getGoal());
+		return fleet.isAtGoal(slot);
 	}
 	
 	public TruckEventListener getTrafficEventListener() {
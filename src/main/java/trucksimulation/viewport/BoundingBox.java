@@ -0,0 +1,74 @@
+package trucksimulation.viewport;
+
+import io.vertx.core.json.JsonArray;
+
+/**
+ * Immutable rectangle of coordinates in degrees, including its edges. Boxes which cross the antimeridian are not
+ * supported.
+ */
+public final class BoundingBox {
+
+	private final double minLon;
+	private final double minLat;
+	private final double maxLon;
+	private final double maxLat;
+
+	public BoundingBox(double minLon, double minLat, double maxLon, double maxLat) {
+		if(!(minLon <= maxLon && minLat <= maxLat)) {
+			throw new IllegalArgumentException("bounding box must have min <= max");
+		}
+		if(minLon < -180 || maxLon > 180 || minLat < -90 || maxLat > 90) {
+			throw new IllegalArgumentException("bounding box must be within [-180, -90, 180, 90]");
+		}
+		this.minLon = minLon;
+		this.minLat = minLat;
+		this.maxLon = maxLon;
+		this.maxLat = maxLat;
+	}
+
+	/**
+	 * @param bbox array in GeoJSON order: <code>[minLon, minLat, maxLon, maxLat]</code>
+	 * @return the bounding box
+	 * @throws IllegalArgumentException if the array is not a valid bounding box
+	 */
+	public static BoundingBox fromJson(JsonArray bbox) {
+		if(bbox == null || bbox.size() != 4) {
+			throw new IllegalArgumentException("bbox must be an array [minLon, minLat, maxLon, maxLat]");
+		}
+		try {
+			return new BoundingBox(bbox.getDouble(0), bbox.getDouble(1), bbox.getDouble(2), bbox.getDouble(3));
+		} catch(ClassCastException | NullPointerException e) {
+			throw new IllegalArgumentException("bbox must contain four numbers", e);
+		}
+	}
+
+	public JsonArray toJson() {
+		return new JsonArray().add(minLon).add(minLat).add(maxLon).add(maxLat);
+	}
+
+	public boolean contains(double lat, double lon) {
+		return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+	}
+
+	public double getMinLon() {
+		return minLon;
+	}
+
+	public double getMinLat() {
+		return minLat;
+	}
+
+	public double getMaxLon() {
+		return maxLon;
+	}
+
+	public double getMaxLat() {
+		return maxLat;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + minLon + ", " + minLat + ", " + maxLon + ", " + maxLat + "]";
+	}
+
+}
@@ -0,0 +1,193 @@
+package trucksimulation.viewport;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Spatial index of the latest position of each truck, a uniform grid of cells of <code>cellSize</code> degrees.
+ *
+ * Moving a truck costs two hash lookups, a query costs the number of cells which the bounding box covers (at most
+ * the number of occupied cells) plus the number of trucks in these cells, independent of the size of the fleet.
+ * Trucks which have not been updated for a while, e.g. because they have arrived or their simulation has ended, are
+ * removed with {@link #evict(long, Consumer)} at the cost of the number of removed trucks. Not thread-safe.
+ */
+public class TruckGrid {
+
+	private final double cellSize;
+	private final Map<String, TelemetryMessage> trucks = new HashMap<>();
+	private final Map<Long, Map<String, TelemetryMessage>> cells = new HashMap<>();
+	/** time of the latest update of each truck, the least recently updated truck first */
+	private final LinkedHashMap<String, Long> updated = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * @param cellSize width and height of the cells in degrees
+	 */
+	public TruckGrid(double cellSize) {
+		if(!(cellSize > 0)) {
+			throw new IllegalArgumentException("cell size must be positive");
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Moves the truck of the message to the message's position. Messages without position are ignored, the truck
+	 * stays at its last known position.
+	 *
+	 * @param msg
+	 * @param now time of the update in ms
+	 * @return the previous message of the truck, null if the truck has not been in the index
+	 */
+	public TelemetryMessage update(TelemetryMessage msg, long now) {
+		if(!msg.hasPosition()) {
+			TelemetryMessage prev = trucks.get(msg.getTruckId());
+			if(prev != null) {
+				updated.put(msg.getTruckId(), now);
+			}
+			return prev;
+		}
+		updated.put(msg.getTruckId(), now);
+		TelemetryMessage prev = trucks.put(msg.getTruckId(), msg);
+		long cell = cell(msg.getLat(), msg.getLon());
+		if(prev != null) {
+			long prevCell = cell(prev.getLat(), prev.getLon());
+			if(prevCell != cell) {
+				removeFromCell(prevCell, prev.getTruckId());
+			}
+		}
+		cells.computeIfAbsent(cell, c -> new HashMap<>()).put(msg.getTruckId(), msg);
+		return prev;
+	}
+
+	/**
+	 * @param truckId
+	 * @return the removed message of the truck, null if the truck has not been in the index
+	 */
+	public TelemetryMessage remove(String truckId) {
+		updated.remove(truckId);
+		TelemetryMessage prev = trucks.remove(truckId);
+		if(prev != null) {
+			removeFromCell(cell(prev.getLat(), prev.getLon()), truckId);
+		}
+		return prev;
+	}
+
+	/**
+	 * Removes all trucks which have not been updated since the given time.
+	 *
+	 * @param updatedBefore time in ms
+	 * @param evicted receives the latest message of each removed truck
+	 */
+	public void evict(long updatedBefore, Consumer<TelemetryMessage> evicted) {
+		Iterator<Map.Entry<String, Long>> it = updated.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			if(entry.getValue() >= updatedBefore) {
+				return;
+			}
+			it.remove();
+			TelemetryMessage prev = trucks.remove(entry.getKey());
+			removeFromCell(cell(prev.getLat(), prev.getLon()), entry.getKey());
+			evicted.accept(prev);
+		}
+	}
+
+	/**
+	 * @param truckId
+	 * @return the latest message of the truck which had a position, null if the truck is not in the index
+	 */
+	public TelemetryMessage get(String truckId) {
+		return trucks.get(truckId);
+	}
+
+	/**
+	 * Passes the latest message of each truck within the bounding box to the consumer.
+	 *
+	 * @param bbox
+	 * @param consumer
+	 */
+	public void query(BoundingBox bbox, Consumer<TelemetryMessage> consumer) {
+		Consumer<Map<String, TelemetryMessage>> visitCell = cell -> {
+			for(TelemetryMessage msg : cell.values()) {
+				if(bbox.contains(msg.getLat(), msg.getLon())) {
+					consumer.accept(msg);
+				}
+			}
+		};
+		if(cellCount(bbox) > cells.size()) {
+			// the box covers most of the grid, only occupied cells are visited
+			cells.values().forEach(visitCell);
+		} else {
+			forEachCell(bbox, cell -> {
+				Map<String, TelemetryMessage> trucksInCell = cells.get(cell);
+				if(trucksInCell != null) {
+					visitCell.accept(trucksInCell);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return number of trucks in the index
+	 */
+	public int size() {
+		return trucks.size();
+	}
+
+	/**
+	 * @param lat
+	 * @param lon
+	 * @return key of the cell which contains the coordinates
+	 */
+	public long cell(double lat, double lon) {
+		return key((long) Math.floor(lat / cellSize), (long) Math.floor(lon / cellSize));
+	}
+
+	/**
+	 * @param bbox
+	 * @return number of cells which the bounding box covers
+	 */
+	public long cellCount(BoundingBox bbox) {
+		long rows = (long) Math.floor(bbox.getMaxLat() / cellSize) - (long) Math.floor(bbox.getMinLat() / cellSize) + 1;
+		long cols = (long) Math.floor(bbox.getMaxLon() / cellSize) - (long) Math.floor(bbox.getMinLon() / cellSize) + 1;
+		return rows * cols;
+	}
+
+	/**
+	 * Passes the keys of all cells which the bounding box covers to the consumer.
+	 *
+	 * @param bbox
+	 * @param consumer
+	 */
+	public void forEachCell(BoundingBox bbox, LongConsumer consumer) {
+		long minRow = (long) Math.floor(bbox.getMinLat() / cellSize);
+		long maxRow = (long) Math.floor(bbox.getMaxLat() / cellSize);
+		long minCol = (long) Math.floor(bbox.getMinLon() / cellSize);
+		long maxCol = (long) Math.floor(bbox.getMaxLon() / cellSize);
+		for(long row = minRow; row <= maxRow; row++) {
+			for(long col = minCol; col <= maxCol; col++) {
+				consumer.accept(key(row, col));
+			}
+		}
+	}
+
+	private void removeFromCell(long cell, String truckId) {
+		Map<String, TelemetryMessage> trucksInCell = cells.get(cell);
+		if(trucksInCell != null) {
+			trucksInCell.remove(truckId);
+			if(trucksInCell.isEmpty()) {
+				cells.remove(cell);
+			}
+		}
+	}
+
+	private static long key(long row, long col) {
+		return (row << 32) | (col & 0xFFFFFFFFL);
+	}
+
+}
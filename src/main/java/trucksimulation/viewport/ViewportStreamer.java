@@ -0,0 +1,412 @@
+package trucksimulation.viewport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.Bus;
+import trucksimulation.TelemetryDataWriter;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Streams the trucks within the viewports of map clients, instead of the whole fleet to every client.
+ *
+ * <p>Clients subscribe a viewport by sending <code>{"id": ..., "bbox": [minLon, minLat, maxLon, maxLat]}</code> to
+ * {@link Bus#VIEWPORT_SUBSCRIBE}, optionally with <code>maxRate</code> (updates per second) and
+ * <code>deteriorated</code> (stream the deteriorated telemetry), and receive
+ * <code>{"trucks": [...], "removed": [...]}</code> on <code>truck.viewport.&lt;id&gt;</code>: the latest message of each
+ * truck which has moved within the viewport and the ids of the trucks which have left it since the previous update.
+ * The first update holds all trucks within the viewport. Subscribing again with the same id moves the viewport.</p>
+ *
+ * <p>The latest position of each truck is kept in a {@link TruckGrid}, viewports are registered in the cells of the
+ * grid which they cover. Each message thus costs an update of the grid and a check of the viewports of the truck's
+ * cell, each update of a client costs the number of trucks which have changed within its viewport. Viewports which
+ * cover more than {@link #MAX_VIEWPORT_CELLS} cells check every message, as they see most of the fleet anyway.</p>
+ *
+ * <p>Trucks which have sent no telemetry for <code>ttl</code> ms, e.g. because they have arrived or their simulation
+ * has been stopped or has ended, are removed from the grid and reported as removed to the viewports which contain
+ * them.</p>
+ *
+ * <p>Viewports of SockJS clients are bound to the socket which has subscribed them (the server adds the field
+ * <code>socket</code> to the request) and are removed when the socket is closed. Not thread-safe, all methods must be
+ * called on the context which has called {@link #start(boolean)}.</p>
+ */
+public class ViewportStreamer {
+
+	/** viewports which cover more cells are checked for every message */
+	static final long MAX_VIEWPORT_CELLS = 4096;
+	/** regex of the addresses on which viewports are streamed */
+	public static final String ADDRESS_REGEX = Pattern.quote(Bus.VIEWPORT.address() + ".") + "[A-Za-z0-9_-]{1,64}";
+	private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+	private final Vertx vertx;
+	private final double maxRate;
+	private final long ttl;
+	private final Layer exact;
+	private final Layer deteriorated;
+	private final Map<String, Viewport> viewports = new HashMap<>();
+
+	/**
+	 * @param vertx
+	 * @param cellSize width and height of the grid cells in degrees
+	 * @param maxRate maximum number of updates per second and viewport
+	 * @param ttl time in ms after which trucks which have sent no telemetry are removed
+	 */
+	public ViewportStreamer(Vertx vertx, double cellSize, double maxRate, long ttl) {
+		if(!(maxRate > 0)) {
+			throw new IllegalArgumentException("max rate must be positive");
+		}
+		if(ttl <= 0) {
+			throw new IllegalArgumentException("ttl must be positive");
+		}
+		this.vertx = vertx;
+		this.maxRate = maxRate;
+		this.ttl = ttl;
+		this.exact = new Layer(new TruckGrid(cellSize));
+		this.deteriorated = new Layer(new TruckGrid(cellSize));
+	}
+
+	/**
+	 * Consumes telemetry envelopes and subscription requests and periodically removes stale trucks.
+	 *
+	 * @param singles whether single telemetry messages are consumed as well, false if they are only republished
+	 *        envelopes
+	 */
+	public void start(boolean singles) {
+		EventBus eb = vertx.eventBus();
+		TelemetryMessageCodec.register(eb);
+		if(singles) {
+			eb.consumer(Bus.TELEMETRY.address(), (Message<TelemetryMessage> msg) -> update(msg.body(), false));
+			eb.consumer(Bus.TELEMETRY_DETER.address(), (Message<TelemetryMessage> msg) -> update(msg.body(), true));
+		}
+		eb.consumer(Bus.TELEMETRY_BATCH.address(), (Message<TelemetryBatch> msg) -> update(msg.body(), false));
+		eb.consumer(Bus.TELEMETRY_DETER_BATCH.address(), (Message<TelemetryBatch> msg) -> update(msg.body(), true));
+		eb.consumer(Bus.VIEWPORT_SUBSCRIBE.address(), (Message<Object> msg) -> {
+			try {
+				msg.reply(subscribe(request(msg)));
+			} catch(IllegalArgumentException | ClassCastException e) {
+				msg.fail(400, e.getMessage());
+			} catch(IllegalStateException e) {
+				msg.fail(409, e.getMessage());
+			}
+		});
+		eb.consumer(Bus.VIEWPORT_UNSUBSCRIBE.address(), (Message<Object> msg) -> {
+			try {
+				JsonObject request = request(msg);
+				boolean removed = unsubscribe(request.getString("id"), request.getString("socket"));
+				msg.reply(new JsonObject().put("unsubscribed", removed));
+			} catch(IllegalArgumentException | ClassCastException e) {
+				msg.fail(400, e.getMessage());
+			}
+		});
+		vertx.setPeriodic(Math.max(1, ttl / 2), t -> evictStale(System.currentTimeMillis()));
+	}
+
+	private static JsonObject request(Message<Object> msg) {
+		if(!(msg.body() instanceof JsonObject)) {
+			throw new IllegalArgumentException("request must be a json object");
+		}
+		return (JsonObject) msg.body();
+	}
+
+	/**
+	 * @param id
+	 * @return the address on which the viewport with the given id is streamed
+	 */
+	public static String address(String id) {
+		return Bus.VIEWPORT.address() + "." + id;
+	}
+
+	/**
+	 * @param address
+	 * @return id of the viewport which is streamed on the address, null if it is no viewport address
+	 */
+	public static String viewportId(String address) {
+		String prefix = Bus.VIEWPORT.address() + ".";
+		if(address == null || !address.startsWith(prefix)) {
+			return null;
+		}
+		String id = address.substring(prefix.length());
+		return ID.matcher(id).matches() ? id : null;
+	}
+
+	/**
+	 * Subscribes a viewport or moves a viewport which has been subscribed with the same id and socket.
+	 *
+	 * @param request
+	 * @return id, address, bbox, maxRate and deteriorated of the viewport
+	 * @throws IllegalArgumentException if the request is not valid
+	 * @throws IllegalStateException if the id belongs to a viewport of another socket
+	 */
+	public JsonObject subscribe(JsonObject request) {
+		String id = request.getString("id");
+		if(id == null || !ID.matcher(id).matches()) {
+			throw new IllegalArgumentException("id must consist of 1 to 64 letters, digits, '_' or '-'");
+		}
+		BoundingBox bbox = BoundingBox.fromJson(request.getJsonArray("bbox"));
+		Double requestedRate = request.getDouble("maxRate", maxRate);
+		if(requestedRate == null || !(requestedRate > 0)) {
+			throw new IllegalArgumentException("maxRate must be positive");
+		}
+		double rate = Math.min(maxRate, requestedRate);
+		boolean det = request.getBoolean("deteriorated", false);
+		String socket = request.getString("socket");
+
+		Viewport viewport = viewports.get(id);
+		if(viewport == null) {
+			viewport = new Viewport(id, socket);
+			viewports.put(id, viewport);
+		} else if(!Objects.equals(viewport.socket, socket)) {
+			throw new IllegalStateException("viewport " + id + " belongs to another client");
+		}
+		move(viewport, bbox, det);
+		vertx.cancelTimer(viewport.timerId);
+		Viewport v = viewport;
+		viewport.timerId = vertx.setPeriodic(Math.max(1, Math.round(1000 / rate)), t -> v.flush());
+		viewport.flush();
+		return new JsonObject()
+				.put("id", id)
+				.put("address", viewport.address)
+				.put("bbox", bbox.toJson())
+				.put("maxRate", rate)
+				.put("deteriorated", det);
+	}
+
+	/**
+	 * @param id
+	 * @param socket the socket which has subscribed the viewport
+	 * @return whether the viewport has been removed
+	 */
+	public boolean unsubscribe(String id, String socket) {
+		Viewport viewport = viewports.get(id);
+		if(viewport == null || !Objects.equals(viewport.socket, socket)) {
+			return false;
+		}
+		remove(viewport);
+		return true;
+	}
+
+	/**
+	 * Removes all viewports of a socket.
+	 *
+	 * @param socket
+	 */
+	public void closeSocket(String socket) {
+		List<Viewport> closed = new ArrayList<>();
+		for(Viewport viewport : viewports.values()) {
+			if(Objects.equals(viewport.socket, socket)) {
+				closed.add(viewport);
+			}
+		}
+		closed.forEach(this::remove);
+	}
+
+	/**
+	 * @return number of subscribed viewports
+	 */
+	public int getViewportCount() {
+		return viewports.size();
+	}
+
+	public void update(TelemetryBatch batch, boolean deteriorated) {
+		long now = System.currentTimeMillis();
+		for(int i = 0; i < batch.size(); i++) {
+			if(batch.hasPosition(i)) {
+				update(batch.get(i), deteriorated, now);
+			}
+		}
+	}
+
+	public void update(TelemetryMessage msg, boolean deteriorated) {
+		update(msg, deteriorated, System.currentTimeMillis());
+	}
+
+	private void update(TelemetryMessage msg, boolean deteriorated, long now) {
+		if(!msg.hasPosition()) {
+			return;
+		}
+		Layer layer = layer(deteriorated);
+		TelemetryMessage prev = layer.grid.update(msg, now);
+		long cell = layer.grid.cell(msg.getLat(), msg.getLon());
+		notify(layer.viewportsByCell.get(cell), prev, msg);
+		if(prev != null) {
+			long prevCell = layer.grid.cell(prev.getLat(), prev.getLon());
+			if(prevCell != cell) {
+				notify(layer.viewportsByCell.get(prevCell), prev, msg);
+			}
+		}
+		notify(layer.wideViewports, prev, msg);
+	}
+
+	private static void notify(List<Viewport> viewports, TelemetryMessage prev, TelemetryMessage msg) {
+		if(viewports == null) {
+			return;
+		}
+		for(Viewport viewport : viewports) {
+			if(viewport.bbox.contains(msg.getLat(), msg.getLon())) {
+				viewport.changed(msg);
+			} else if(prev != null && viewport.bbox.contains(prev.getLat(), prev.getLon())) {
+				viewport.left(msg.getTruckId());
+			}
+		}
+	}
+
+	/**
+	 * Removes the trucks which have sent no telemetry for <code>ttl</code> ms from the grids, the viewports
+	 * which contain them report them as removed with their next update.
+	 *
+	 * @param now time in ms
+	 */
+	void evictStale(long now) {
+		for(Layer layer : new Layer[] {exact, deteriorated}) {
+			layer.grid.evict(now - ttl, prev -> {
+				left(layer.viewportsByCell.get(layer.grid.cell(prev.getLat(), prev.getLon())), prev);
+				left(layer.wideViewports, prev);
+			});
+		}
+	}
+
+	private static void left(List<Viewport> viewports, TelemetryMessage prev) {
+		if(viewports == null) {
+			return;
+		}
+		for(Viewport viewport : viewports) {
+			if(viewport.bbox.contains(prev.getLat(), prev.getLon())) {
+				viewport.left(prev.getTruckId());
+			}
+		}
+	}
+
+	/**
+	 * Moves the viewport to the given bounding box and layer: the trucks which are only within the previous
+	 * bounding box leave the viewport, the trucks which are only within the new one are added.
+	 */
+	private void move(Viewport viewport, BoundingBox bbox, boolean det) {
+		BoundingBox oldBbox = viewport.bbox;
+		Layer oldLayer = oldBbox != null ? layer(viewport.deteriorated) : null;
+		Layer newLayer = layer(det);
+		if(oldLayer != null) {
+			oldLayer.remove(viewport);
+			oldLayer.grid.query(oldBbox, msg -> {
+				if(oldLayer != newLayer || !bbox.contains(msg.getLat(), msg.getLon())) {
+					viewport.left(msg.getTruckId());
+				}
+			});
+		}
+		newLayer.grid.query(bbox, msg -> {
+			if(oldLayer != newLayer || !oldBbox.contains(msg.getLat(), msg.getLon())) {
+				viewport.changed(msg);
+			}
+		});
+		viewport.bbox = bbox;
+		viewport.deteriorated = det;
+		newLayer.add(viewport);
+	}
+
+	private void remove(Viewport viewport) {
+		vertx.cancelTimer(viewport.timerId);
+		layer(viewport.deteriorated).remove(viewport);
+		viewports.remove(viewport.id);
+	}
+
+	private Layer layer(boolean deteriorated) {
+		return deteriorated ? this.deteriorated : exact;
+	}
+
+	/**
+	 * Positions of the exact or deteriorated telemetry and the viewports which stream them.
+	 */
+	private static class Layer {
+		final TruckGrid grid;
+		final Map<Long, List<Viewport>> viewportsByCell = new HashMap<>();
+		final List<Viewport> wideViewports = new ArrayList<>();
+
+		Layer(TruckGrid grid) {
+			this.grid = grid;
+		}
+
+		void add(Viewport viewport) {
+			if(grid.cellCount(viewport.bbox) > MAX_VIEWPORT_CELLS) {
+				wideViewports.add(viewport);
+			} else {
+				grid.forEachCell(viewport.bbox, cell -> viewportsByCell.computeIfAbsent(cell, c -> new ArrayList<>()).add(viewport));
+			}
+		}
+
+		void remove(Viewport viewport) {
+			if(grid.cellCount(viewport.bbox) > MAX_VIEWPORT_CELLS) {
+				wideViewports.remove(viewport);
+			} else {
+				grid.forEachCell(viewport.bbox, cell -> {
+					List<Viewport> inCell = viewportsByCell.get(cell);
+					if(inCell != null) {
+						inCell.remove(viewport);
+						if(inCell.isEmpty()) {
+							viewportsByCell.remove(cell);
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Changes of a viewport since its previous update, the latest message per truck.
+	 */
+	private class Viewport {
+		final String id;
+		final String socket;
+		final String address;
+		BoundingBox bbox;
+		boolean deteriorated;
+		long timerId = -1;
+		final Map<String, TelemetryMessage> changed = new LinkedHashMap<>();
+		final Set<String> left = new LinkedHashSet<>();
+
+		Viewport(String id, String socket) {
+			this.id = id;
+			this.socket = socket;
+			this.address = address(id);
+		}
+
+		void changed(TelemetryMessage msg) {
+			changed.put(msg.getTruckId(), msg);
+			left.remove(msg.getTruckId());
+		}
+
+		void left(String truckId) {
+			changed.remove(truckId);
+			left.add(truckId);
+		}
+
+		void flush() {
+			if(changed.isEmpty() && left.isEmpty()) {
+				return;
+			}
+			JsonArray trucks = new JsonArray();
+			for(TelemetryMessage msg : changed.values()) {
+				trucks.add(TelemetryDataWriter.toJson(msg));
+			}
+			JsonObject update = new JsonObject()
+					.put("trucks", trucks)
+					.put("removed", new JsonArray(new ArrayList<>(left)));
+			changed.clear();
+			left.clear();
+			vertx.eventBus().publish(address, update);
+		}
+	}
+
+}
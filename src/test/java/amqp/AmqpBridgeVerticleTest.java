@@ -0,0 +1,58 @@
+package amqp;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.Bus;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class AmqpBridgeVerticleTest {
+
+	private Vertx vertx = Vertx.vertx();
+
+	@After
+	public void tearDown() {
+		vertx.close();
+	}
+
+	@Test
+	public void testPublishesEnvelopesWithoutFanOut() throws Exception {
+		JsonObject conf = new JsonObject()
+				.put("amqp", new JsonObject().put("broker", "memory").put("telemetry", true).put("format", "binary"))
+				.put("simulation", new JsonObject().put("telemetryBatch", true).put("telemetryFanOut", false));
+		CompletableFuture<String> deployed = new CompletableFuture<>();
+		vertx.deployVerticle(new AmqpBridgeVerticle(), new DeploymentOptions().setConfig(conf), h -> deployed.complete(h.result()));
+		Assert.assertNotNull(deployed.get(5, TimeUnit.SECONDS));
+		BlockingQueue<JsonObject> metrics = new LinkedBlockingQueue<>();
+		vertx.eventBus().consumer(Bus.AMQP_METRICS.address(), (Message<JsonObject> msg) -> metrics.add(msg.body()));
+
+		TelemetryBatch.Builder envelope = new TelemetryBatch.Builder();
+		for(int i = 0; i < 10; i++) {
+			envelope.add(new TelemetryMessage("truck" + i, "truck" + i, 1465985004000L, 48.1, 11.5 + i * 0.001, 0, 20, 5, 10, 90, 20));
+		}
+		// single messages are not published without the fan-out adapter
+		vertx.eventBus().publish(Bus.TELEMETRY_DETER_BATCH.address(), envelope.build());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		long published = 0;
+		while(published < 10 && System.currentTimeMillis() < deadline) {
+			JsonObject m = metrics.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			if(m != null) {
+				published = m.getLong("published");
+			}
+		}
+		Assert.assertEquals(10, published);
+	}
+
+}
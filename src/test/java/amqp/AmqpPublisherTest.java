@@ -0,0 +1,138 @@
+package amqp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.DropPolicy;
+
+public class AmqpPublisherTest {
+
+	private Vertx vertx = Vertx.vertx();
+	private Context context = vertx.getOrCreateContext();
+	private InMemoryAmqpBroker broker = new InMemoryAmqpBroker(vertx);
+
+	@After
+	public void tearDown() {
+		vertx.close();
+	}
+
+	@Test
+	public void testPublishesBatchesOnAllChannels() throws Exception {
+		broker.setLatency(20);
+		AmqpPublisher publisher = onContext(() -> new AmqpPublisher(vertx, channels(2)).setBatchSize(10));
+		AtomicInteger confirmed = new AtomicInteger();
+		onContext(() -> {
+			for(int i = 0; i < 100; i++) {
+				publisher.publish(message(i), res -> {
+					if(res.succeeded()) {
+						confirmed.incrementAndGet();
+					}
+				});
+			}
+			return null;
+		});
+		JsonObject metrics = awaitMetrics(publisher, m -> m.getLong("published") == 100);
+		Assert.assertEquals(100, confirmed.get());
+		// the first message of each channel is published by itself, all others wait and are batched
+		Assert.assertTrue(metrics.getDouble("avgBatchSize") > 5);
+		List<String> bodies = broker.getMessages().stream().map(m -> new String(m.getBody(), StandardCharsets.UTF_8))
+				.sorted().collect(Collectors.toList());
+		Assert.assertEquals(100, bodies.size());
+		Assert.assertEquals(100, bodies.stream().distinct().count());
+		Assert.assertEquals("telemetry.truck7", broker.getMessages().stream()
+				.filter(m -> new String(m.getBody(), StandardCharsets.UTF_8).equals("msg7")).findFirst().get().getRoutingKey());
+	}
+
+	@Test
+	public void testRetriesRejectedBatches() throws Exception {
+		broker.setNackRate(0.3, 1);
+		AmqpPublisher publisher = onContext(() -> new AmqpPublisher(vertx, channels(2)).setBatchSize(5).setRetries(10, 1));
+		onContext(() -> {
+			for(int i = 0; i < 50; i++) {
+				publisher.publish(message(i), null);
+			}
+			return null;
+		});
+		JsonObject metrics = awaitMetrics(publisher, m -> m.getLong("published") == 50);
+		Assert.assertTrue(metrics.getLong("retries") > 0);
+		Assert.assertEquals(0, (long) metrics.getLong("failed"));
+		Assert.assertEquals(50, broker.getMessages().size());
+	}
+
+	@Test
+	public void testBuffersAndDropsWhileBlocked() throws Exception {
+		broker.setBlocked(true);
+		AmqpPublisher publisher = onContext(() -> new AmqpPublisher(vertx, channels(1))
+				.setMaxPending(10).setDropPolicy(DropPolicy.OLDEST));
+		List<Boolean> results = new ArrayList<>();
+		onContext(() -> {
+			for(int i = 0; i < 15; i++) {
+				publisher.publish(message(i), res -> results.add(res.succeeded()));
+			}
+			return null;
+		});
+		JsonObject metrics = onContext(publisher::getMetrics);
+		Assert.assertEquals(10, (int) metrics.getInteger("pending"));
+		Assert.assertEquals(5, (long) metrics.getLong("dropped"));
+		Assert.assertEquals(1, (int) metrics.getInteger("blockedChannels"));
+		Assert.assertEquals(Arrays.asList(false, false, false, false, false), onContext(() -> new ArrayList<>(results)));
+
+		broker.setBlocked(false);
+		awaitMetrics(publisher, m -> m.getLong("published") == 10);
+		// the oldest messages have been dropped
+		Assert.assertEquals("msg5", new String(broker.getMessages().get(0).getBody(), StandardCharsets.UTF_8));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsEmptyBuffer() {
+		new AmqpPublisher(vertx, channels(1)).setMaxPending(0);
+	}
+
+	private List<AmqpChannel> channels(int count) {
+		List<AmqpChannel> channels = new ArrayList<>();
+		for(int i = 0; i < count; i++) {
+			channels.add(broker.createChannel());
+		}
+		return channels;
+	}
+
+	private AmqpMessage message(int i) {
+		return new AmqpMessage("telemetry", "telemetry.truck" + i, "text/plain", ("msg" + i).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private <T> T onContext(Supplier<T> action) throws Exception {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		context.runOnContext(v -> result.complete(action.get()));
+		return result.get(5, TimeUnit.SECONDS);
+	}
+
+	private JsonObject awaitMetrics(AmqpPublisher publisher, Predicate<JsonObject> condition) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(true) {
+			JsonObject metrics = onContext(publisher::getMetrics);
+			if(condition.test(metrics)) {
+				return metrics;
+			}
+			if(System.currentTimeMillis() > deadline) {
+				throw new AssertionError("timed out, metrics: " + metrics);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package trucksimulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class HttpTelemetrySinkTest {
+
+	private Vertx vertx;
+	private Context context;
+	private HttpServer server;
+	private final List<String> bodies = new ArrayList<>();
+	private final List<Buffer> rawBodies = new ArrayList<>();
+	private final List<String> encodings = new ArrayList<>();
+	private Consumer<HttpServerRequest> responder = req -> req.response().end();
+
+	@Before
+	public void setUp() throws Exception {
+		vertx = Vertx.vertx();
+		context = vertx.getOrCreateContext();
+		CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+		server = vertx.createHttpServer().requestHandler(req -> req.bodyHandler(body -> {
+			synchronized(bodies) {
+				bodies.add(decompress(req.getHeader("content-encoding"), body.getBytes()));
+				rawBodies.add(body);
+				encodings.add(req.getHeader("content-encoding"));
+			}
+			responder.accept(req);
+		})).listen(0, res -> listening.complete(res.result()));
+		listening.get(5, TimeUnit.SECONDS);
+	}
+
+	@After
+	public void tearDown() {
+		vertx.close();
+	}
+
+	@Test
+	public void testPostsBatchesAsJsonArrays() throws Exception {
+		HttpTelemetrySink sink = onContext(() -> createSink(TelemetryFormat.JSON).setBatchSize(10).setBatchMs(50));
+		onContext(() -> {
+			for(int i = 0; i < 25; i++) {
+				sink.send(message(i));
+			}
+			return null;
+		});
+		JsonObject metrics = awaitMetrics(sink, m -> m.getLong("sentMessages") == 25);
+		Assert.assertEquals(3, (long) metrics.getLong("requests"));
+		Assert.assertEquals(25 / 3.0, metrics.getDouble("avgBatchSize"), 1e-9);
+		Assert.assertEquals(3, bodies.size());
+		int received = 0;
+		for(String body : bodies) {
+			received += new JsonArray(body).size();
+		}
+		Assert.assertEquals(25, received);
+	}
+
+	@Test
+	public void testRetriesFailedRequests() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		responder = req -> req.response().setStatusCode(requests.incrementAndGet() <= 2 ? 503 : 200).end();
+		HttpTelemetrySink sink = onContext(() -> createSink(TelemetryFormat.NDJSON).setBatchSize(2).setRetries(3, 10));
+		onContext(() -> {
+			sink.send(message(1));
+			sink.send(message(2));
+			return null;
+		});
+		JsonObject metrics = awaitMetrics(sink, m -> m.getLong("sentMessages") == 2);
+		Assert.assertEquals(2, (long) metrics.getLong("retries"));
+		Assert.assertEquals(0, (long) metrics.getLong("failedMessages"));
+		Assert.assertEquals(3, bodies.size());
+		Assert.assertEquals(2, bodies.get(2).split("\n").length);
+	}
+
+	@Test
+	public void testBoundsRequestsInFlight() throws Exception {
+		List<HttpServerRequest> held = new ArrayList<>();
+		responder = held::add;
+		HttpTelemetrySink sink = onContext(() -> createSink(TelemetryFormat.JSON).setMaxInFlight(2).setMaxPending(5));
+		onContext(() -> {
+			for(int i = 0; i < 10; i++) {
+				sink.send(message(i));
+			}
+			return null;
+		});
+		awaitMetrics(sink, m -> bodies.size() == 2);
+		JsonObject metrics = onContext(sink::getMetrics);
+		Assert.assertEquals(2, (int) metrics.getInteger("inFlight"));
+		Assert.assertEquals(5, (long) metrics.getLong("pendingMessages"));
+		Assert.assertEquals(3, (long) metrics.getLong("droppedMessages"));
+
+		responder = req -> req.response().end();
+		context.runOnContext(v -> held.forEach(req -> req.response().end()));
+		metrics = awaitMetrics(sink, m -> m.getLong("sentMessages") == 7);
+		Assert.assertEquals(0, (int) metrics.getInteger("inFlight"));
+		// the first messages are sent, the last ones have been dropped
+		long latest = 0;
+		for(String body : bodies) {
+			latest = Math.max(latest, new JsonObject(body).getLong("timeStamp") % 10);
+		}
+		Assert.assertEquals(6, latest);
+	}
+
+	@Test
+	public void testCompressesBodies() throws Exception {
+		for(HttpTelemetrySink.Compression compression : new HttpTelemetrySink.Compression[] {
+				HttpTelemetrySink.Compression.GZIP, HttpTelemetrySink.Compression.DEFLATE}) {
+			bodies.clear();
+			encodings.clear();
+			HttpTelemetrySink sink = onContext(() -> createSink(TelemetryFormat.JSON).setBatchSize(100).setCompression(compression, 9));
+			onContext(() -> {
+				for(int i = 0; i < 100; i++) {
+					sink.send(message(i));
+				}
+				return null;
+			});
+			JsonObject metrics = awaitMetrics(sink, m -> m.getLong("sentMessages") == 100);
+			Assert.assertEquals(compression.getEncoding(), encodings.get(0));
+			Assert.assertEquals(100, new JsonArray(bodies.get(0)).size());
+			Assert.assertEquals(bodies.get(0).length(), (long) metrics.getLong("uncompressedBytes"));
+			Assert.assertTrue(metrics.getLong("bytes") * 5 < metrics.getLong("uncompressedBytes"));
+		}
+	}
+
+	@Test
+	public void testBinaryBodiesContinueTheStream() throws Exception {
+		// each body is a key frame by default
+		Assert.assertTrue(binaryRatio(1) > 4);
+		Assert.assertTrue(binaryRatio(10) > 10);
+	}
+
+	/**
+	 * Posts single messages of a truck in binary frames and decodes them.
+	 *
+	 * @return the ratio of the size of the messages in json to the size of the bodies
+	 */
+	private double binaryRatio(int keyFrameInterval) throws Exception {
+		synchronized(bodies) {
+			bodies.clear();
+			rawBodies.clear();
+		}
+		HttpTelemetrySink sink = onContext(() -> createSink(TelemetryFormat.BINARY).setMaxInFlight(1).setKeyFrameInterval(keyFrameInterval));
+		List<TelemetryMessage> messages = new ArrayList<>();
+		long json = 0;
+		for(int i = 0; i < 100; i++) {
+			messages.add(message(i));
+			json += TelemetryDataWriter.toJson(message(i)).encode().length();
+		}
+		onContext(() -> {
+			messages.forEach(sink::send);
+			return null;
+		});
+		JsonObject metrics = awaitMetrics(sink, m -> m.getLong("sentMessages") == 100);
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		for(int i = 0; i < 100; i++) {
+			Buffer body = rawBodies.get(i);
+			Assert.assertEquals(i % keyFrameInterval == 0, (body.getByte(1) & TelemetryEncoder.KEY_FRAME) != 0);
+			Assert.assertEquals(messages.get(i).getLon(), decoder.decode(body).get(0).getLon(), 1e-7);
+		}
+		return (double) json / metrics.getLong("bytes");
+	}
+
+	@Test
+	public void testConsumesEnvelopesWithoutFanOut() throws Exception {
+		JsonObject simConf = new JsonObject()
+				.put("receiverUrl", "http://localhost:" + server.actualPort() + "/telemetry")
+				.put("receiverBatchSize", 10)
+				.put("telemetryBatch", true)
+				.put("telemetryFanOut", false);
+		CompletableFuture<String> deployed = new CompletableFuture<>();
+		vertx.deployVerticle(new HttpNotificationVerticle(), new DeploymentOptions().setConfig(new JsonObject().put("simulation", simConf)),
+				h -> deployed.complete(h.result()));
+		deployed.get(5, TimeUnit.SECONDS);
+		TelemetryBatch.Builder envelope = new TelemetryBatch.Builder();
+		for(int i = 0; i < 10; i++) {
+			envelope.add(message(i));
+		}
+		// single messages are not published without the fan-out adapter
+		vertx.eventBus().publish(Bus.TELEMETRY_DETER_BATCH.address(), envelope.build());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while(bodySize() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(1, bodySize());
+		Assert.assertEquals(10, new JsonArray(bodies.get(0)).size());
+	}
+
+	private int bodySize() {
+		synchronized(bodies) {
+			return bodies.size();
+		}
+	}
+
+	private static String decompress(String encoding, byte[] body) {
+		if(encoding == null) {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+		try(InputStream in = "gzip".equals(encoding) ? new GZIPInputStream(new ByteArrayInputStream(body))
+				: new InflaterInputStream(new ByteArrayInputStream(body))) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[4096];
+			int n;
+			while((n = in.read(chunk)) > 0) {
+				out.write(chunk, 0, n);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private HttpTelemetrySink createSink(TelemetryFormat format) {
+		HttpClientOptions opts = new HttpClientOptions().setDefaultHost("localhost").setDefaultPort(server.actualPort());
+		return new HttpTelemetrySink(vertx, vertx.createHttpClient(opts), "/telemetry", format);
+	}
+
+	private TelemetryMessage message(int i) {
+		return new TelemetryMessage("truck", "truck", 1465985004000L + i, 48.1, 11.5 + i * 0.001, 0, 20, 5, 10, 90, 20);
+	}
+
+	private <T> T onContext(Supplier<T> action) throws Exception {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		context.runOnContext(v -> result.complete(action.get()));
+		return result.get(5, TimeUnit.SECONDS);
+	}
+
+	private JsonObject awaitMetrics(HttpTelemetrySink sink, Predicate<JsonObject> condition) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(true) {
+			JsonObject metrics = onContext(sink::getMetrics);
+			if(condition.test(metrics)) {
+				return metrics;
+			}
+			if(System.currentTimeMillis() > deadline) {
+				throw new AssertionError("timed out, metrics: " + metrics);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import trucksimulation.routing.DistanceStrategy;
 import trucksimulation.routing.Position;
 import trucksimulation.routing.TargetExceededException;
 
@@ -40,4 +41,40 @@ public class PositionTest {
 		assertTrue("bearing is wrong: " + bearing, bearing > 268 && bearing < 271);
 	}
 
+	@Test
+	public void testExceededTargetHasNoStackTrace() {
+		Position start = new Position(51, 11);
+		try {
+			start.moveTowards(new Position(51, 11.001), 1000);
+			fail("target should have been exceeded");
+		} catch (TargetExceededException e) {
+			assertEquals(0, e.getStackTrace().length);
+			assertTrue(e.getExceededBy() > 0);
+		}
+	}
+
+	@Test
+	public void testDistanceStrategies() {
+		Position a = new Position(55.674556955871516, 12.564518769782456);
+		Position b = new Position(55.6756683962569, 12.567897980687722);
+		double exact = DistanceStrategy.HAVERSINE.getDistance(a.getLat(), a.getLon(), b.getLat(), b.getLon());
+		assertEquals(exact, DistanceStrategy.LAW_OF_COSINES.getDistance(a.getLat(), a.getLon(), b.getLat(), b.getLon()), 0.1);
+		assertEquals(exact, DistanceStrategy.EQUIRECTANGULAR.getDistance(a.getLat(), a.getLon(), b.getLat(), b.getLon()), exact * 1e-8);
+		
+		// about 10km north east
+		double far = DistanceStrategy.HAVERSINE.getDistance(69.9, 12.5, 69.95, 12.7);
+		assertEquals(far, DistanceStrategy.EQUIRECTANGULAR.getDistance(69.9, 12.5, 69.95, 12.7), far * 1e-6);
+		
+		assertEquals(0, DistanceStrategy.HAVERSINE.getDistance(a.getLat(), a.getLon(), a.getLat(), a.getLon()), 0);
+		assertEquals(0, DistanceStrategy.EQUIRECTANGULAR.getDistance(a.getLat(), a.getLon(), a.getLat(), a.getLon()), 0);
+		
+		DistanceStrategy previous = Position.getDistanceStrategy();
+		try {
+			Position.setDistanceStrategy(DistanceStrategy.EQUIRECTANGULAR);
+			assertEquals(DistanceStrategy.EQUIRECTANGULAR.getDistance(a.getLat(), a.getLon(), b.getLat(), b.getLon()), a.getDistance(b), 0);
+		} finally {
+			Position.setDistanceStrategy(previous);
+		}
+	}
+
 }
@@ -1,5 +1,6 @@
 package trucksimulation;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -14,6 +15,7 @@ import io.vertx.core.json.JsonObject;
 import trucksimulation.routing.GraphHopperBuilder;
 import trucksimulation.routing.Position;
 import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteIndex;
 import trucksimulation.routing.RouteSegment;
 
 public class RouteTest {
@@ -81,4 +83,37 @@ public class RouteTest {
 		System.out.println(Serializer.get().toJson(r));
 	}
 
+	@Test
+	public void testRouteIndex() {
+		double[] lats1 = {11.0, 11.1, 11.2};
+		double[] lons1 = {55.0, 55.0, 55.1};
+		RouteSegment seg1 = new RouteSegment(lats1, lons1, 1000 * 1000, 10000);
+		double[] lats2 = {11.2, 11.3};
+		double[] lons2 = {55.1, 55.1};
+		RouteSegment seg2 = new RouteSegment(lats2, lons2, 500 * 1000, 10000);
+		Route r = new Route();
+		r.setSegments(seg1, seg2);
+		RouteIndex index = r.getIndex();
+		
+		assertEquals(5, index.getPointCount());
+		double firstLeg = seg1.getPoint(0).getDistance(seg1.getPoint(1));
+		assertEquals(firstLeg, index.getDistance(1), 1e-9);
+		// duplicate point where the segments meet
+		assertEquals(index.getDistance(2), index.getDistance(3), 0);
+		assertEquals(3, index.getPointIndexAt(index.getDistance(2)));
+		assertEquals(1, index.getSegmentAt(index.getDistance(2)));
+		assertEquals(0, index.getSegmentAt(firstLeg / 2));
+		
+		Position halfway = index.getPositionAt(firstLeg / 2);
+		assertEquals(11.05, halfway.getLat(), 1e-9);
+		assertEquals(r.getGoal(), index.getPositionAt(index.getLength() + 100));
+		assertEquals(0, index.getRemainingDistance(index.getLength()), 0);
+		
+		// 10m/s on the first and 20m/s on the second segment
+		assertEquals(firstLeg / 10 * 1000, index.getTime(1), 1e-6);
+		double distance = index.getLength() - 1000;
+		assertEquals(1000.0 / 20 * 1000, index.getRemainingTime(distance), 1e-6);
+		assertEquals(distance, index.getDistanceAtTime(index.getTimeAt(distance)), 1e-6);
+	}
+
 }
@@ -0,0 +1,214 @@
+package trucksimulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteSegment;
+import trucksimulation.trucks.TelemetryMessage;
+import trucksimulation.trucks.Truck;
+
+public class SimulationCheckpointTest {
+
+	private static final int TRUCKS = 2;
+	private static final int DURATION_S = 600;
+	private static final int CHECKPOINT_S = 300;
+	private static final int PUBLISH_INTERVAL = 5;
+	/** start time of seeded simulations */
+	private static final long START_MS = LocalDateTime.of(2017, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testResumedSimulationContinuesLikeOriginal() throws InterruptedException {
+		SimulationCheckpoint writer = new SimulationCheckpoint();
+		AtomicReference<Buffer> routes = new AtomicReference<>();
+		AtomicReference<Buffer> checkpoint = new AtomicReference<>();
+		List<JsonObject> original = run(simulation -> {
+			addTrucks(simulation);
+			simulation.setCheckpointHandler(CHECKPOINT_S, s -> {
+				Buffer records = writer.writeRoutes(s);
+				if(writer.isNewRouteFile()) {
+					routes.set(records);
+				} else {
+					routes.get().appendBuffer(records);
+				}
+				checkpoint.compareAndSet(null, writer.write(s));
+			});
+			simulation.start();
+		});
+		Assert.assertEquals(TRUCKS * DURATION_S / PUBLISH_INTERVAL, original.size());
+		Assert.assertNotNull(checkpoint.get());
+		// a partially written record at the end of the route file is ignored
+		routes.get().appendBytes(new byte[] {0, 5, 'r', 'o'});
+
+		List<JsonObject> resumed = run(simulation -> {
+			SimulationCheckpoint.restore(routes.get(), checkpoint.get(), simulation);
+			Assert.assertEquals(TRUCKS, simulation.getTrucks().size());
+			Assert.assertEquals(CHECKPOINT_S * 1000, simulation.getClock().getElapsed());
+			simulation.resume();
+		});
+		List<JsonObject> afterCheckpoint = original.stream()
+				.filter(m -> m.getLong("timeStamp") > START_MS + CHECKPOINT_S * 1000)
+				.collect(Collectors.toList());
+		Assert.assertEquals(TRUCKS * (DURATION_S - CHECKPOINT_S) / PUBLISH_INTERVAL, resumed.size());
+		Assert.assertEquals(afterCheckpoint, resumed);
+	}
+
+	@Test
+	public void testCheckpointsDoNotChangeSeededSimulation() throws InterruptedException {
+		List<JsonObject> plain = run(simulation -> {
+			addTrucks(simulation);
+			simulation.start();
+		});
+		List<JsonObject> checkpointed = run(simulation -> {
+			addTrucks(simulation);
+			SimulationCheckpoint writer = new SimulationCheckpoint();
+			simulation.setCheckpointHandler(PUBLISH_INTERVAL, s -> {
+				writer.writeRoutes(s);
+				writer.write(s);
+			});
+			simulation.start();
+		});
+		Assert.assertEquals(TRUCKS * DURATION_S / PUBLISH_INTERVAL, plain.size());
+		Assert.assertEquals(plain, checkpointed);
+	}
+
+	@Test
+	public void testWritesRoutesOnce() {
+		Simulation simulation = new Simulation("checkpointed");
+		addTrucks(simulation);
+		simulation.getTrucks().forEach(truck -> truck.setRoute(buildRoute()));
+		simulation.restoreState(new SimulationClock(START_MS), 0);
+		SimulationCheckpoint writer = new SimulationCheckpoint();
+		Buffer routes = writer.writeRoutes(simulation);
+		Assert.assertTrue(writer.isNewRouteFile());
+		Buffer checkpoint = writer.write(simulation);
+		// only routes which have been assigned since are written again
+		Assert.assertEquals(0, writer.writeRoutes(simulation).length());
+		Assert.assertFalse(writer.isNewRouteFile());
+		Assert.assertEquals(checkpoint.length(), writer.write(simulation).length());
+		Assert.assertTrue(checkpoint.length() < routes.length());
+
+		simulation.getTrucks().get(0).setRoute(buildRoute());
+		Buffer newRoutes = writer.writeRoutes(simulation);
+		Assert.assertTrue(newRoutes.length() > 0 && newRoutes.length() < routes.length());
+
+		writer.reset();
+		Assert.assertEquals(routes.length(), writer.writeRoutes(simulation).length());
+		Assert.assertTrue(writer.isNewRouteFile());
+	}
+
+	@Test
+	public void testStartsNewRouteFileWhenRoutesAreReassigned() throws IOException {
+		Path routeFile = tmp.getRoot().toPath().resolve("checkpointed.routes");
+		Path file = tmp.getRoot().toPath().resolve("checkpointed.ckpt");
+		Simulation simulation = new Simulation("checkpointed");
+		addTrucks(simulation);
+		simulation.restoreState(new SimulationClock(START_MS), 0);
+		SimulationCheckpoint writer = new SimulationCheckpoint();
+		int newRouteFiles = 0;
+		// the trucks get new routes as in endless mode, until most written routes are no longer used
+		for(int round = 1; round <= 4; round++) {
+			for(int i = 0; i < TRUCKS; i++) {
+				Route route = buildRoute();
+				route.setDistanceMeters(round * 1000 + i);
+				simulation.getTrucks().get(i).setRoute(route);
+			}
+			Buffer routes = writer.writeRoutes(simulation);
+			if(writer.isNewRouteFile()) {
+				newRouteFiles++;
+			}
+			SimulationControllerVerticle.writeFiles(routeFile, routes, writer.isNewRouteFile(), file, writer.write(simulation));
+		}
+		Assert.assertEquals(2, newRouteFiles);
+
+		Simulation restored = new Simulation("checkpointed");
+		SimulationCheckpoint.restore(Buffer.buffer(Files.readAllBytes(routeFile)), Buffer.buffer(Files.readAllBytes(file)), restored);
+		Assert.assertEquals(TRUCKS, restored.getTrucks().size());
+		for(int i = 0; i < TRUCKS; i++) {
+			Assert.assertEquals(4 * 1000 + i, restored.getTrucks().get(i).getRoute().getDistanceMeters(), 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRestoreRejectsOtherSimulation() {
+		Simulation simulation = new Simulation("other");
+		Buffer routes = Buffer.buffer(new byte[] {0x54, 0x53, 0x52, 0x54, 0, 0, 0, 3, 0, 1, 'x'});
+		SimulationCheckpoint.restore(routes, Buffer.buffer(), simulation);
+	}
+
+	/**
+	 * Runs a seeded simulation in batch mode and collects the deteriorated telemetry data.
+	 */
+	private List<JsonObject> run(SimulationSetup setup) throws InterruptedException {
+		Vertx vertx = Vertx.vertx();
+		List<JsonObject> messages = Collections.synchronizedList(new ArrayList<>());
+		vertx.eventBus().<TelemetryMessage>consumer(Bus.TELEMETRY_DETER.address(), msg -> messages.add(TelemetryDataWriter.toJson(msg.body())));
+		CountDownLatch ended = new CountDownLatch(1);
+		vertx.runOnContext(v -> {
+			Simulation simulation = new Simulation("checkpointed", vertx);
+			simulation.setSeed(42);
+			simulation.setBatchMode(DURATION_S * 1000);
+			simulation.setPublishInterval(PUBLISH_INTERVAL);
+			simulation.setEndHandler(s -> ended.countDown());
+			setup.setUp(simulation);
+		});
+		Assert.assertTrue(ended.await(10, TimeUnit.SECONDS));
+		// messages are delivered asynchronously, wait until the bus is drained
+		Thread.sleep(200);
+		vertx.close();
+		return new ArrayList<>(messages);
+	}
+
+	private void addTrucks(Simulation simulation) {
+		simulation.setTruckCount(TRUCKS);
+		for(int i = 0; i < TRUCKS; i++) {
+			Truck truck = new Truck("truck" + i, simulation.getFleet());
+			truck.setRouteId("route");
+			simulation.addTruck(truck);
+		}
+		simulation.setIncidentCount(0);
+		simulation.addRoute("route", buildRoute());
+	}
+
+	private interface SimulationSetup {
+		void setUp(Simulation simulation);
+	}
+
+	private Route buildRoute() {
+		RouteSegment seg1 = new RouteSegment();
+		seg1.setLats(1.0, 1.1, 1.11, 1.2, 1.3);
+		seg1.setLons(1.0, 1.0, 1.4, 1.5, 1.5);
+		seg1.setDistance(30);
+		seg1.setTime(1000);
+		RouteSegment seg2 = new RouteSegment();
+		seg2.setLats(1.35, 1.4, 1.5, 1.55);
+		seg2.setLons(1.55, 1.4, 1.3, 1.3);
+		seg2.setDistance(35);
+		seg2.setTime(1000);
+		Route r = new Route();
+		r.setSegments(seg1, seg2);
+		return r;
+	}
+
+}
@@ -0,0 +1,135 @@
+package trucksimulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+
+public class SimulationControllerVerticleTest {
+
+	private static final int SHARDS = 8;
+
+	private Vertx vertx = Vertx.vertx();
+
+	@After
+	public void tearDown() {
+		vertx.close();
+	}
+
+	@Test
+	public void testEveryTruckIsInExactlyOneShard() {
+		for(int shardCount = 1; shardCount <= SHARDS; shardCount++) {
+			int[] trucksPerShard = new int[shardCount];
+			for(int truck = 0; truck < 10000; truck++) {
+				String truckId = Integer.toHexString(truck * 7919) + "c91aff1b6865e0eb";
+				int shards = 0;
+				for(int shard = 0; shard < shardCount; shard++) {
+					if(SimulationControllerVerticle.isInShard(truckId, shard, shardCount)) {
+						shards++;
+						trucksPerShard[shard]++;
+					}
+				}
+				Assert.assertEquals(truckId + " of " + shardCount + " shards", 1, shards);
+			}
+			for(int trucks : trucksPerShard) {
+				// the trucks are spread across all shards
+				Assert.assertTrue(trucks > 10000 / shardCount / 2);
+			}
+		}
+	}
+
+	@Test
+	public void testSimulationEndsOnceAfterAllShards() throws Exception {
+		List<Shard> shards = deployShards();
+		BlockingQueue<JsonObject> ended = new LinkedBlockingQueue<>();
+		CompletableFuture<Void> registered = new CompletableFuture<>();
+		vertx.eventBus().consumer(Bus.SIMULATION_ENDED.address(), (Message<JsonObject> msg) -> ended.add(msg.body()))
+				.completionHandler(h -> registered.complete(null));
+		registered.get(5, TimeUnit.SECONDS);
+		vertx.sharedData().<String, Integer>getLocalMap("simShardsMap").put("sim", SHARDS);
+		vertx.sharedData().<String, Integer>getLocalMap("simArrivalsMap").put("sim", 0);
+
+		// all but the last shard end concurrently on their own event loops
+		CountDownLatch shardsEnded = new CountDownLatch(SHARDS - 1);
+		for(int i = 0; i < SHARDS - 1; i++) {
+			Shard shard = shards.get(i);
+			int arrived = i;
+			shard.getContext().runOnContext(v -> {
+				shard.shardEnded("sim", arrived);
+				shardsEnded.countDown();
+			});
+		}
+		Assert.assertTrue(shardsEnded.await(5, TimeUnit.SECONDS));
+		Assert.assertNull(ended.poll(200, TimeUnit.MILLISECONDS));
+
+		Shard last = shards.get(SHARDS - 1);
+		last.getContext().runOnContext(v -> last.shardEnded("sim", 100));
+		JsonObject end = ended.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals("sim", end.getString("id"));
+		// 0 + 1 + ... + 6 arrivals of the first shards and 100 of the last one
+		Assert.assertEquals(121, (int) end.getInteger("arrived"));
+		Assert.assertNull(ended.poll(200, TimeUnit.MILLISECONDS));
+		Assert.assertNull(vertx.sharedData().getLocalMap("simShardsMap").get("sim"));
+	}
+
+	@Test
+	public void testStartsSimulationOnce() throws Exception {
+		deployShards();
+		// the shards consume the start requests concurrently
+		int requests = 2 * SHARDS;
+		BlockingQueue<Boolean> replies = new LinkedBlockingQueue<>();
+		for(int i = 0; i < requests; i++) {
+			vertx.eventBus().send(Bus.START_SIMULATION.address(), new JsonObject().put("_id", "sim"), h -> replies.add(h.succeeded()));
+		}
+		int started = 0;
+		for(int i = 0; i < requests; i++) {
+			if(replies.poll(5, TimeUnit.SECONDS)) {
+				started++;
+			}
+		}
+		Assert.assertEquals(1, started);
+		Assert.assertEquals(SHARDS, (int) vertx.sharedData().<String, Integer>getLocalMap("simShardsMap").get("sim"));
+	}
+
+	private List<Shard> deployShards() throws Exception {
+		List<Shard> shards = new ArrayList<>();
+		for(int i = 0; i < SHARDS; i++) {
+			Shard shard = new Shard();
+			CompletableFuture<Void> deployed = new CompletableFuture<>();
+			JsonObject conf = new JsonObject().put("shardIndex", i).put("shardCount", SHARDS);
+			vertx.deployVerticle(shard, new DeploymentOptions().setConfig(conf), h -> {
+				if(h.succeeded()) {
+					deployed.complete(null);
+				} else {
+					deployed.completeExceptionally(h.cause());
+				}
+			});
+			deployed.get(5, TimeUnit.SECONDS);
+			shards.add(shard);
+		}
+		return shards;
+	}
+
+	/**
+	 * Exposes the context of the shard, so that it can be ended on its own event loop.
+	 */
+	private static class Shard extends SimulationControllerVerticle {
+		Context getContext() {
+			return context;
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package trucksimulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteSegment;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+import trucksimulation.trucks.Truck;
+
+public class SimulationTest {
+
+	private static final int TRUCKS = 2;
+	private static final int DURATION_S = 600;
+	private static final int PUBLISH_INTERVAL = 5;
+
+	@Test
+	public void testSameSeedProducesSameTelemetry() throws InterruptedException {
+		List<String> first = runSeeded(42);
+		List<String> second = runSeeded(42);
+		Assert.assertEquals(TRUCKS * DURATION_S / PUBLISH_INTERVAL, first.size());
+		Assert.assertEquals(first, second);
+		Assert.assertNotEquals(first, runSeeded(43));
+	}
+
+	@Test
+	public void testBatchedTelemetryFansOutToSameMessages() throws InterruptedException {
+		List<String> batched = runSeeded(42, true);
+		Assert.assertEquals(runSeeded(42, false), batched);
+	}
+
+	@Test
+	public void testCoarsenKeepsUpWithWallClock() throws InterruptedException {
+		JsonObject metrics = runBlocked(OverrunPolicy.COARSEN);
+		Assert.assertTrue(metrics.getLong("coarsenedSteps") > 0);
+		Assert.assertTrue(metrics.getLong("droppedMessages") > 0);
+		// every timer tick is simulated, either by itself or by a coarse step which covers the following ticks
+		long steps = metrics.getLong("ticks") - metrics.getLong("droppedTicks") + metrics.getLong("coarsenedSteps");
+		Assert.assertEquals(steps * 1000, (long) metrics.getLong("simulatedMs"));
+		Assert.assertTrue(metrics.getLong("simulatedMs") >= metrics.getLong("ticks") * 1000);
+	}
+
+	@Test
+	public void testSlowClockDropsLateTicks() throws InterruptedException {
+		JsonObject metrics = runBlocked(OverrunPolicy.SLOW_CLOCK);
+		Assert.assertTrue(metrics.getLong("droppedTicks") > 0);
+		Assert.assertEquals(0, (long) metrics.getLong("coarsenedSteps"));
+		Assert.assertEquals((metrics.getLong("ticks") - metrics.getLong("droppedTicks")) * 1000, (long) metrics.getLong("simulatedMs"));
+	}
+
+	/**
+	 * Runs a simulation with a short interval and blocks its event loop for a while, so that the following ticks are late.
+	 * 
+	 * @return the simulation's metrics after it has been stopped
+	 */
+	private JsonObject runBlocked(OverrunPolicy policy) throws InterruptedException {
+		Vertx vertx = Vertx.vertx();
+		CompletableFuture<Simulation> started = new CompletableFuture<>();
+		Context context = vertx.getOrCreateContext();
+		context.runOnContext(v -> {
+			Simulation simulation = new Simulation("overrun", vertx);
+			simulation.setIntervalMs(10);
+			simulation.setOverrunPolicy(policy);
+			simulation.setTruckCount(TRUCKS);
+			for(int i = 0; i < TRUCKS; i++) {
+				Truck truck = new Truck("truck" + i, simulation.getFleet());
+				truck.setRouteId("route");
+				simulation.addTruck(truck);
+			}
+			simulation.setIncidentCount(0);
+			simulation.addRoute("route", buildRoute());
+			simulation.start();
+			started.complete(simulation);
+		});
+		Thread.sleep(500);
+		context.runOnContext(v -> sleep(200));
+		Thread.sleep(500);
+		CompletableFuture<JsonObject> metrics = new CompletableFuture<>();
+		context.runOnContext(v -> {
+			Simulation simulation = started.join();
+			simulation.stop();
+			metrics.complete(simulation.getMetrics());
+		});
+		try {
+			return metrics.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			throw new AssertionError(e);
+		} finally {
+			vertx.close();
+		}
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs a small simulation in batch mode and collects the deteriorated telemetry data.
+	 */
+	private List<String> runSeeded(long seed) throws InterruptedException {
+		return runSeeded(seed, false);
+	}
+
+	/**
+	 * @param batchTelemetry if true, the simulation publishes envelopes which are fanned out by the {@link TelemetryFanOutVerticle}
+	 */
+	private List<String> runSeeded(long seed, boolean batchTelemetry) throws InterruptedException {
+		Vertx vertx = Vertx.vertx();
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		List<TelemetryBatch> batches = Collections.synchronizedList(new ArrayList<>());
+		vertx.eventBus().<TelemetryMessage>consumer(Bus.TELEMETRY_DETER.address(), msg -> messages.add(TelemetryDataWriter.toJson(msg.body()).encode()));
+		vertx.eventBus().<TelemetryBatch>consumer(Bus.TELEMETRY_DETER_BATCH.address(), msg -> batches.add(msg.body()));
+		if(batchTelemetry) {
+			CountDownLatch deployed = new CountDownLatch(1);
+			vertx.deployVerticle(new TelemetryFanOutVerticle(), h -> deployed.countDown());
+			Assert.assertTrue(deployed.await(5, TimeUnit.SECONDS));
+		}
+		CountDownLatch ended = new CountDownLatch(1);
+		vertx.runOnContext(v -> {
+			Simulation simulation = new Simulation("seeded", vertx);
+			simulation.setSeed(seed);
+			simulation.setBatchTelemetry(batchTelemetry, 0);
+			simulation.setBatchMode(DURATION_S * 1000);
+			simulation.setPublishInterval(PUBLISH_INTERVAL);
+			simulation.setEndHandler(s -> ended.countDown());
+			simulation.setTruckCount(TRUCKS);
+			for(int i = 0; i < TRUCKS; i++) {
+				Truck truck = new Truck("truck" + i, simulation.getFleet());
+				truck.setRouteId("route");
+				simulation.addTruck(truck);
+			}
+			simulation.setIncidentCount(0);
+			simulation.addRoute("route", buildRoute());
+			simulation.start();
+		});
+		Assert.assertTrue(ended.await(10, TimeUnit.SECONDS));
+		long deadline = System.currentTimeMillis() + 5000;
+		while(messages.size() < TRUCKS * DURATION_S / PUBLISH_INTERVAL && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		vertx.close();
+		if(batchTelemetry) {
+			// deteriorated data of both trucks is published in the same ticks, one envelope each
+			Assert.assertEquals(DURATION_S / PUBLISH_INTERVAL, batches.size());
+			Assert.assertTrue(batches.stream().allMatch(b -> b.size() == TRUCKS));
+		} else {
+			Assert.assertTrue(batches.isEmpty());
+		}
+		return new ArrayList<>(messages);
+	}
+
+	private Route buildRoute() {
+		RouteSegment seg1 = new RouteSegment();
+		seg1.setLats(1.0, 1.1, 1.11, 1.2, 1.3);
+		seg1.setLons(1.0, 1.0, 1.4, 1.5, 1.5);
+		seg1.setDistance(30);
+		seg1.setTime(1000);
+		RouteSegment seg2 = new RouteSegment();
+		seg2.setLats(1.35, 1.4, 1.5, 1.55);
+		seg2.setLons(1.55, 1.4, 1.3, 1.3);
+		seg2.setDistance(35);
+		seg2.setTime(1000);
+		Route r = new Route();
+		r.setSegments(seg1, seg2);
+		return r;
+	}
+
+}
@@ -0,0 +1,50 @@
+package trucksimulation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TelemetryBatchCodecTest {
+
+	private final TelemetryBatchCodec codec = new TelemetryBatchCodec();
+
+	@Test
+	public void testWireRoundTrip() {
+		TelemetryBatch.Builder builder = new TelemetryBatch.Builder(1);
+		TelemetryMessage[] messages = {
+				new TelemetryMessage("truck1", "box1", 1000, 48.15, 11.51, 0, 20, 4, 9.86, 324.1, 20),
+				new TelemetryMessage("tr\u00fcck2", null, 2000, Double.NaN, Double.NaN, 0, 20, 5, Double.NaN, 0, 20),
+				new TelemetryMessage(null, "box3", 3000, 1.3, 1.5, 100, 10, 3, 12.5, 90, 21.5)
+		};
+		for(TelemetryMessage msg : messages) {
+			builder.add(msg);
+		}
+		TelemetryBatch batch = builder.build();
+
+		Buffer buffer = Buffer.buffer().appendString("prefix");
+		codec.encodeToWire(buffer, batch);
+		TelemetryBatch decoded = codec.decodeFromWire("prefix".length(), buffer);
+		Assert.assertEquals(messages.length, decoded.size());
+		for(int i = 0; i < messages.length; i++) {
+			Assert.assertEquals(messages[i], decoded.get(i));
+		}
+		Assert.assertFalse(decoded.hasPosition(1));
+	}
+
+	@Test
+	public void testBuilderIsReusable() {
+		TelemetryBatch.Builder builder = new TelemetryBatch.Builder();
+		TelemetryMessage msg = new TelemetryMessage("truck", "box", 1, 1.0, 2.0, 0, 20, 5, 10, 0, 20);
+		TelemetryBatch first = builder.add(msg).add(msg).build();
+		Assert.assertEquals(0, builder.size());
+		TelemetryBatch second = builder.add(msg).build();
+		Assert.assertEquals(2, first.size());
+		Assert.assertEquals(1, second.size());
+		Assert.assertEquals(msg, first.get(1));
+		Assert.assertSame(second, codec.transform(second));
+	}
+
+}
@@ -0,0 +1,45 @@
+package trucksimulation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonObject;
+import trucksimulation.routing.Position;
+import trucksimulation.trucks.SplitMix64;
+import trucksimulation.trucks.TelemetryData;
+
+public class TelemetryDataWriterTest {
+
+	@Test
+	public void testMatchesGson() {
+		TelemetryData data = buildData();
+		JsonObject expected = new JsonObject(Serializer.get().toJson(data)).put("truckId", "truck\"1");
+		StringBuilder out = new StringBuilder();
+		TelemetryDataWriter.write(data, "truck\"1", out);
+		Assert.assertEquals(expected, new JsonObject(out.toString()));
+		Assert.assertEquals(expected.encode(), out.toString());
+		Assert.assertEquals(expected, TelemetryDataWriter.toJson(data, "truck\"1"));
+	}
+
+	@Test
+	public void testNonFiniteValuesAreNull() {
+		TelemetryData data = buildData();
+		data.setSpeed(Double.NaN);
+		StringBuilder out = new StringBuilder();
+		TelemetryDataWriter.write(data, "truck", out);
+		JsonObject json = new JsonObject(out.toString());
+		Assert.assertTrue(json.containsKey("speed"));
+		Assert.assertNull(json.getDouble("speed"));
+		Assert.assertEquals(json, TelemetryDataWriter.toJson(data, "truck"));
+	}
+
+	private TelemetryData buildData() {
+		TelemetryData data = new TelemetryData("box", true, new SplitMix64(7));
+		data.setTimeStamp(1465985004000L);
+		data.setPosition(new Position(48.15301418564581, 11.51435004278778));
+		data.setSpeed(9.863748019093341);
+		data.setBearing(324.08819041630136);
+		return data;
+	}
+
+}
@@ -0,0 +1,155 @@
+package trucksimulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TelemetryEncoderTest {
+
+	@Test
+	public void testRoundTripWithinResolution() {
+		TelemetryEncoder encoder = new TelemetryEncoder();
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		TelemetryMessage msg = new TelemetryMessage("truck1", "truck1", 1465985004000L, 48.15301418564581, 11.51435004278778,
+				0, 20, 4, 9.863748019093341, 324.08819041630136, 20);
+		List<TelemetryMessage> decoded = decoder.decode(encoder.encode(msg));
+		Assert.assertEquals(1, decoded.size());
+		assertClose(msg, decoded.get(0));
+	}
+
+	@Test
+	public void testStreamIsDeltaEncoded() {
+		TelemetryEncoder encoder = new TelemetryEncoder();
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		List<TelemetryMessage> samples = samples("truck1", 100);
+		int binary = 0;
+		int json = 0;
+		for(TelemetryMessage msg : samples) {
+			Buffer frame = encoder.encode(msg);
+			binary += frame.length();
+			json += TelemetryDataWriter.toJson(msg).encode().length();
+			assertClose(msg, decoder.decode(frame).get(0));
+		}
+		Assert.assertTrue("binary " + binary + " bytes, json " + json + " bytes", binary * 10 < json);
+	}
+
+	@Test
+	public void testFramesWithSeveralTrucks() {
+		TelemetryEncoder encoder = new TelemetryEncoder();
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		List<TelemetryMessage> messages = new ArrayList<>();
+		List<TelemetryMessage> first = samples("a", 3);
+		List<TelemetryMessage> second = samples("b", 3);
+		for(int i = 0; i < 3; i++) {
+			messages.add(first.get(i));
+			messages.add(second.get(i));
+		}
+		messages.add(new TelemetryMessage("c", null, 5, Double.NaN, Double.NaN, 0, 20, 5, Double.NaN, 0, 20));
+		List<TelemetryMessage> decoded = decoder.decode(encoder.encode(messages));
+		Assert.assertEquals(messages.size(), decoded.size());
+		for(int i = 0; i < messages.size(); i++) {
+			assertClose(messages.get(i), decoded.get(i));
+		}
+		Assert.assertFalse(decoded.get(6).hasPosition());
+		Assert.assertTrue(Double.isNaN(decoded.get(6).getSpeed()));
+	}
+
+	@Test
+	public void testResetStartsKeyFrame() {
+		TelemetryEncoder encoder = new TelemetryEncoder();
+		List<TelemetryMessage> samples = samples("truck1", 2);
+		encoder.encode(samples.get(0));
+		Buffer continued = encoder.encode(samples.get(1));
+		try {
+			new TelemetryDecoder().decode(continued);
+			Assert.fail("a stream must start with a key frame");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+		encoder.reset();
+		assertClose(samples.get(1), new TelemetryDecoder().decode(encoder.encode(samples.get(1))).get(0));
+	}
+
+	@Test
+	public void testKeyFrameInterval() {
+		TelemetryEncoder encoder = new TelemetryEncoder().setKeyFrameInterval(3);
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		List<TelemetryMessage> samples = samples("truck1", 7);
+		for(int i = 0; i < samples.size(); i++) {
+			Buffer frame = encoder.encode(samples.get(i));
+			Assert.assertEquals(i % 3 == 0, (frame.getByte(1) & TelemetryEncoder.KEY_FRAME) != 0);
+			assertClose(samples.get(i), decoder.decode(frame).get(0));
+		}
+	}
+
+	@Test
+	public void testLostFrameIsDetected() {
+		TelemetryEncoder encoder = new TelemetryEncoder().setKeyFrameInterval(3);
+		TelemetryDecoder decoder = new TelemetryDecoder();
+		List<Buffer> frames = new ArrayList<>();
+		for(TelemetryMessage msg : samples("truck1", 6)) {
+			frames.add(encoder.encode(msg));
+		}
+		decoder.decode(frames.get(0));
+		try {
+			decoder.decode(frames.get(2));
+			Assert.fail("frame 1 has been lost");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+		// the stream continues with the next key frame
+		List<TelemetryMessage> samples = samples("truck1", 6);
+		assertClose(samples.get(3), decoder.decode(frames.get(3)).get(0));
+		assertClose(samples.get(4), decoder.decode(frames.get(4)).get(0));
+	}
+
+	@Test
+	public void testDecodesFramesWithoutSequence() {
+		TelemetryMessage msg = samples("truck1", 1).get(0);
+		Buffer frame = new TelemetryEncoder().encode(msg);
+		// version 1 frames have no sequence number, which is 0 and takes one byte in a key frame
+		Buffer old = Buffer.buffer().appendByte(TelemetryEncoder.VERSION_WITHOUT_SEQUENCE).appendByte(frame.getByte(1))
+				.appendBuffer(frame, 3, frame.length() - 3);
+		assertClose(msg, new TelemetryDecoder().decode(old).get(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncatedFrameIsRejected() {
+		Buffer frame = new TelemetryEncoder().encode(samples("truck1", 1).get(0));
+		new TelemetryDecoder().decode(frame.getBuffer(0, frame.length() - 2));
+	}
+
+	/**
+	 * @return samples of a truck which drives north east at about 25m/s and publishes every 5s
+	 */
+	private List<TelemetryMessage> samples(String truckId, int count) {
+		List<TelemetryMessage> samples = new ArrayList<>();
+		for(int i = 0; i < count; i++) {
+			samples.add(new TelemetryMessage(truckId, truckId, 1465985004000L + i * 5000L,
+					48.15301418564581 + i * 0.0008123456789, 11.51435004278778 + i * 0.0011987654321,
+					0, 20, 3 + i % 4, 24.863748019093341 + (i % 3) * 0.51, 45.08819041630136 + (i % 5) * 0.3, 20));
+		}
+		return samples;
+	}
+
+	private void assertClose(TelemetryMessage expected, TelemetryMessage actual) {
+		Assert.assertEquals(expected.getTruckId(), actual.getTruckId());
+		Assert.assertEquals(expected.getBoxId(), actual.getBoxId());
+		Assert.assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+		Assert.assertEquals(expected.getLat(), actual.getLat(), 1e-7);
+		Assert.assertEquals(expected.getLon(), actual.getLon(), 1e-7);
+		Assert.assertEquals(expected.getAltitude(), actual.getAltitude(), 0.01);
+		Assert.assertEquals(expected.getVerticalAccuracy(), actual.getVerticalAccuracy());
+		Assert.assertEquals(expected.getHorizontalAccuracy(), actual.getHorizontalAccuracy());
+		Assert.assertEquals(expected.getSpeed(), actual.getSpeed(), 0.001);
+		Assert.assertEquals(expected.getBearing(), actual.getBearing(), 0.01);
+		Assert.assertEquals(expected.getTemperature(), actual.getTemperature(), 0.01);
+		Assert.assertEquals(expected.hasPosition(), actual.hasPosition());
+	}
+
+}
@@ -0,0 +1,49 @@
+package trucksimulation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.buffer.Buffer;
+import trucksimulation.routing.Position;
+import trucksimulation.trucks.SplitMix64;
+import trucksimulation.trucks.TelemetryData;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TelemetryMessageCodecTest {
+
+	private final TelemetryMessageCodec codec = new TelemetryMessageCodec();
+
+	@Test
+	public void testWireRoundTrip() {
+		TelemetryData data = new TelemetryData("b\u00f6x", true, new SplitMix64(7));
+		data.setTimeStamp(1465985004000L);
+		data.setPosition(new Position(48.15301418564581, 11.51435004278778));
+		data.setSpeed(9.863748019093341);
+		data.setBearing(324.08819041630136);
+		TelemetryMessage msg = TelemetryMessage.of("truck1", data);
+
+		Buffer buffer = Buffer.buffer().appendString("prefix");
+		codec.encodeToWire(buffer, msg);
+		TelemetryMessage decoded = codec.decodeFromWire("prefix".length(), buffer);
+		Assert.assertEquals(msg, decoded);
+		Assert.assertEquals(TelemetryDataWriter.toJson(data, "truck1"), TelemetryDataWriter.toJson(decoded));
+	}
+
+	@Test
+	public void testWireRoundTripWithoutPositionAndIds() {
+		TelemetryMessage msg = new TelemetryMessage(null, null, 1, Double.NaN, Double.NaN, 0, 20, 5, Double.NaN, 0, 20);
+		Buffer buffer = Buffer.buffer();
+		codec.encodeToWire(buffer, msg);
+		TelemetryMessage decoded = codec.decodeFromWire(0, buffer);
+		Assert.assertEquals(msg, decoded);
+		Assert.assertFalse(decoded.hasPosition());
+		Assert.assertNull(decoded.getTruckId());
+	}
+
+	@Test
+	public void testLocalConsumersReceiveSameInstance() {
+		TelemetryMessage msg = new TelemetryMessage("truck", "box", 1, 1.0, 2.0, 0, 20, 5, 10, 0, 20);
+		Assert.assertSame(msg, codec.transform(msg));
+	}
+
+}
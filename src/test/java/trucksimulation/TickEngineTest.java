@@ -0,0 +1,95 @@
+package trucksimulation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+
+public class TickEngineTest {
+	
+	private static Vertx vertx;
+	
+	@BeforeClass
+	public static void initVertx() {
+		vertx = Vertx.vertx();
+	}
+	
+	@AfterClass
+	public static void closeVertx() {
+		vertx.close();
+	}
+
+	@Test
+	public void testCountsOverrunsAndLag() throws Exception {
+		CompletableFuture<TickEngine> stopped = new CompletableFuture<>();
+		vertx.runOnContext(v -> {
+			TickEngine[] engine = new TickEngine[1];
+			engine[0] = new TickEngine(vertx, "slow", 10, tickNo -> {
+				// each tick takes three intervals, so the following ticks start late
+				sleep(30);
+				if(tickNo == 5) {
+					engine[0].stop();
+					// the tick is accounted for after the handler has returned
+					vertx.runOnContext(done -> stopped.complete(engine[0]));
+				}
+			});
+			engine[0].start();
+		});
+		TickEngine engine = stopped.get(10, TimeUnit.SECONDS);
+		Assert.assertFalse(engine.isRunning());
+		Assert.assertEquals(5, engine.getTickCount());
+		Assert.assertEquals(5, engine.getOverrunCount());
+		Assert.assertTrue(engine.getMaxTickNanos() >= 30 * 1000000);
+		Assert.assertTrue(engine.getMaxLagMs() >= 20);
+		Assert.assertEquals(5, (long) engine.getStats().getLong("overruns"));
+	}
+
+	@Test
+	public void testBatchRunsAllTicks() throws InterruptedException {
+		CountDownLatch completed = new CountDownLatch(1);
+		AtomicLong ticks = new AtomicLong();
+		vertx.runOnContext(v -> {
+			// the interval must not slow down batch mode
+			TickEngine engine = new TickEngine(vertx, "batch", 60000, tickNo -> ticks.incrementAndGet());
+			engine.startBatch(100000, done -> completed.countDown());
+		});
+		Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(100000, ticks.get());
+	}
+	
+	@Test
+	public void testStopEndsBatch() throws InterruptedException {
+		CountDownLatch stopped = new CountDownLatch(1);
+		AtomicLong ticks = new AtomicLong();
+		vertx.runOnContext(v -> {
+			TickEngine[] engine = new TickEngine[1];
+			engine[0] = new TickEngine(vertx, "batch", 1000, tickNo -> {
+				ticks.set(tickNo);
+				if(tickNo == 10) {
+					engine[0].stop();
+					stopped.countDown();
+				}
+			});
+			engine[0].startBatch(100000, done -> Assert.fail("stopped batch must not complete"));
+		});
+		Assert.assertTrue(stopped.await(10, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		Assert.assertEquals(10, ticks.get());
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package trucksimulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+	@Test
+	public void testItemsFireAtTheirTick() {
+		TimingWheel<Long> wheel = new TimingWheel<>(5);
+		long[] dues = {6, 7, 7, 260, 261, 512, 70000, 20000000};
+		for(long due : dues) {
+			wheel.schedule(due, due);
+		}
+		List<Long> fired = new ArrayList<>();
+		while(wheel.size() > 0) {
+			wheel.advance(item -> {
+				Assert.assertEquals(wheel.getTick(), (long) item);
+				fired.add(item);
+			});
+		}
+		Assert.assertEquals(dues.length, fired.size());
+		Assert.assertEquals(20000000, wheel.getTick());
+	}
+
+	@Test
+	public void testItemsScheduledWhileFiring() {
+		TimingWheel<String> wheel = new TimingWheel<>(0);
+		wheel.schedule(0, "a");
+		wheel.schedule(1, "b");
+		List<String> fired = new ArrayList<>();
+		for(int i = 0; i < 600; i++) {
+			wheel.advance(item -> {
+				fired.add(item + wheel.getTick());
+				if(wheel.getTick() == 1) {
+					// the current tick has passed, the item is fired with the next tick
+					wheel.schedule(wheel.getTick(), item);
+					wheel.schedule(wheel.getTick() + 300, item);
+				}
+			});
+		}
+		Assert.assertEquals("[a1, b1, a2, b2, a301, b301]", fired.toString());
+	}
+
+	@Test
+	public void testOverflowBeyondAllLevels() {
+		long start = (1L << 32) - 10;
+		TimingWheel<Long> wheel = new TimingWheel<>(start);
+		wheel.schedule(start + 20, start + 20);
+		wheel.schedule((1L << 33) + 3, (1L << 33) + 3);
+		List<Long> fired = new ArrayList<>();
+		for(int i = 0; i < 20; i++) {
+			wheel.advance(fired::add);
+		}
+		Assert.assertEquals(1, fired.size());
+		Assert.assertEquals(1, wheel.size());
+	}
+
+}
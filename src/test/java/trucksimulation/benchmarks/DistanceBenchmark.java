@@ -0,0 +1,66 @@
+package trucksimulation.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trucksimulation.routing.DistanceStrategy;
+
+/**
+ * Compares the distance strategies for the short distances the simulation calculates (steps of a truck
+ * and legs of a route, up to a few hundred meters).
+ *
+ * Run with <code>mvn test-compile exec:exec@benchmark -Dbenchmark=DistanceBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+	private static final int COUNT = 1024;
+
+	@Param({"LAW_OF_COSINES", "HAVERSINE", "EQUIRECTANGULAR"})
+	private DistanceStrategy strategy;
+
+	private double[] lats = new double[COUNT + 1];
+	private double[] lons = new double[COUNT + 1];
+
+	@Setup
+	public void createTrack() {
+		Random random = new Random(42);
+		lats[0] = 51.0;
+		lons[0] = 10.0;
+		for(int i = 1; i <= COUNT; i++) {
+			// steps of up to roughly 300m
+			lats[i] = lats[i - 1] + (random.nextDouble() - 0.5) * 0.005;
+			lons[i] = lons[i - 1] + (random.nextDouble() - 0.5) * 0.005;
+		}
+	}
+
+	/**
+	 * @return length of the track, the benchmark time is the time for {@value #COUNT} distances
+	 */
+	@Benchmark
+	public double trackLength() {
+		double length = 0;
+		for(int i = 0; i < COUNT; i++) {
+			length += strategy.getDistance(lats[i], lons[i], lats[i + 1], lons[i + 1]);
+		}
+		return length;
+	}
+
+}
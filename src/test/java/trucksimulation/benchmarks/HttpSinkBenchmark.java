@@ -0,0 +1,183 @@
+package trucksimulation.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.HttpTelemetrySink;
+import trucksimulation.TelemetryDataWriter;
+import trucksimulation.TelemetryFormat;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Throughput of the {@link HttpTelemetrySink} posting json to a local stand-in receiver, which decompresses each
+ * request like a real receiver would, at different batch sizes and compression levels.
+ *
+ * <ul>
+ * <li>post: messages per second which are posted and acknowledged by the receiver</li>
+ * <li>compress: batches per second which a single thread compresses, i.e. the CPU cost of compression</li>
+ * </ul>
+ *
+ * The bytes sent per message are printed after each trial, they determine the throughput on a bandwidth-limited link.
+ *
+ * Run with <code>mvn test-compile exec:exec@benchmark -Dbenchmark=HttpSinkBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class HttpSinkBenchmark {
+
+	private static final int MESSAGES = 10000;
+	private static final int TRUCKS = 1000;
+
+	@Param({"1", "10", "100", "1000"})
+	public int batchSize;
+
+	/** compression and level */
+	@Param({"none", "gzip-1", "gzip-6", "gzip-9", "deflate-6"})
+	public String compression;
+
+	private Vertx vertx;
+	private Context context;
+	private HttpServer receiver;
+	private HttpTelemetrySink sink;
+	private HttpTelemetrySink.Compression method;
+	private int level;
+	private List<TelemetryMessage> messages;
+	private Buffer batch;
+	private volatile CountDownLatch pendingRequests;
+
+	@Setup
+	public void setUp() throws Exception {
+		String[] parts = compression.split("-");
+		method = HttpTelemetrySink.Compression.valueOf(parts[0].toUpperCase());
+		level = parts.length > 1 ? Integer.parseInt(parts[1]) : -1;
+		messages = createMessages();
+		StringBuilder json = new StringBuilder().append('[');
+		for(int i = 0; i < batchSize; i++) {
+			if(i > 0) {
+				json.append(',');
+			}
+			TelemetryDataWriter.write(messages.get(i), json);
+		}
+		batch = Buffer.buffer(json.append(']').toString());
+
+		vertx = Vertx.vertx();
+		CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+		vertx.createHttpServer().requestHandler(req -> req.bodyHandler(body -> {
+			decompress(req.getHeader("content-encoding"), body);
+			req.response().end();
+			pendingRequests.countDown();
+		})).listen(0, res -> listening.complete(res.result()));
+		receiver = listening.get(5, TimeUnit.SECONDS);
+
+		context = vertx.getOrCreateContext();
+		CompletableFuture<HttpTelemetrySink> created = new CompletableFuture<>();
+		context.runOnContext(v -> {
+			HttpClientOptions opts = new HttpClientOptions().setDefaultHost("localhost").setDefaultPort(receiver.actualPort())
+					.setKeepAlive(true).setMaxPoolSize(64);
+			created.complete(new HttpTelemetrySink(vertx, vertx.createHttpClient(opts), "/telemetry", TelemetryFormat.JSON)
+					.setBatchSize(batchSize)
+					.setMaxInFlight(64)
+					.setMaxPending(Long.MAX_VALUE)
+					.setCompression(method, level));
+		});
+		sink = created.get(5, TimeUnit.SECONDS);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		CompletableFuture<JsonObject> metrics = new CompletableFuture<>();
+		context.runOnContext(v -> metrics.complete(sink.getMetrics()));
+		JsonObject m = metrics.get(5, TimeUnit.SECONDS);
+		if(m.getLong("sentMessages") > 0) {
+				System.out.printf("%nbatch size %d, %s: %.1f bytes per message (%.1f uncompressed), %.3f ms compression per request%n",
+					batchSize, compression, (double) m.getLong("bytes") / m.getLong("sentMessages"),
+					(double) m.getLong("uncompressedBytes") / m.getLong("sentMessages"), m.getDouble("avgCompressMs"));
+		}
+		vertx.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void post() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch((MESSAGES + batchSize - 1) / batchSize);
+		pendingRequests = latch;
+		context.runOnContext(v -> {
+			for(TelemetryMessage msg : messages) {
+				sink.send(msg);
+			}
+			sink.flush();
+		});
+		if(!latch.await(60, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("receiver did not acknowledge all requests");
+		}
+	}
+
+	@Benchmark
+	public Buffer compress() {
+		return method.compress(batch, level);
+	}
+
+	/**
+	 * @return messages of trucks which send one after the other, as during a simulation
+	 */
+	private static List<TelemetryMessage> createMessages() {
+		SplittableRandom random = new SplittableRandom(42);
+		List<TelemetryMessage> messages = new ArrayList<>(MESSAGES);
+		for(int i = 0; i < MESSAGES; i++) {
+			String id = String.format("57600524c91aff1b6865%04d", i % TRUCKS);
+			messages.add(new TelemetryMessage(id, id, 1465985004000L + i * 15, 47.5 + random.nextDouble() * 6,
+					6 + random.nextDouble() * 9, 0, 20, random.nextInt(3, 8), random.nextDouble() * 30,
+					random.nextDouble() * 360, 20));
+		}
+		return messages;
+	}
+
+	private static void decompress(String encoding, Buffer body) {
+		if(encoding == null) {
+			return;
+		}
+		try(InputStream in = "gzip".equals(encoding) ? new GZIPInputStream(new ByteArrayInputStream(body.getBytes()))
+				: new InflaterInputStream(new ByteArrayInputStream(body.getBytes()))) {
+			byte[] chunk = new byte[8192];
+			while(in.read(chunk) > 0) {
+				// read the whole body
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package trucksimulation.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.Serializer;
+import trucksimulation.TelemetryDataWriter;
+import trucksimulation.TelemetryEncoder;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.routing.Position;
+import trucksimulation.routing.PositionAdapter;
+import trucksimulation.routing.RouteSegment;
+import trucksimulation.routing.RouteSegmentAdapter;
+import trucksimulation.routing.RouteSegmentArrayAdapter;
+import trucksimulation.traffic.LocalDateTimeAdapter;
+import trucksimulation.trucks.SplitMix64;
+import trucksimulation.trucks.TelemetryData;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * Cost per message of serializing the telemetry data of a truck, which is done for every truck in every tick.
+ *
+ * <ul>
+ * <li>freshGson: a new Gson instance per message and a json string which is parsed into a json object, as done previously</li>
+ * <li>sharedGson: the shared Gson instance of {@link Serializer#get()}, still with the intermediate string</li>
+ * <li>jsonObject: {@link TelemetryDataWriter#toJson(TelemetryData, String)}, as published on the event bus</li>
+ * <li>streaming: {@link TelemetryDataWriter#write(TelemetryData, String, StringBuilder)} into a reused builder</li>
+ * <li>message: the {@link TelemetryMessage} which is published on the event bus and passed by reference to local consumers</li>
+ * <li>wire: a {@link TelemetryMessage} encoded by the {@link TelemetryMessageCodec} for clustered consumers</li>
+ * <li>binary: a key frame of the compact binary format written by a {@link TelemetryEncoder}, as sent by the sinks</li>
+ * </ul>
+ *
+ * Run with <code>mvn test-compile exec:exec@benchmark -Dbenchmark=SerializationBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private static final String TRUCK_ID = "57600524c91aff1b6865e0eb";
+
+	private TelemetryData data;
+	private StringBuilder buffer = new StringBuilder(256);
+	private TelemetryMessageCodec codec = new TelemetryMessageCodec();
+	private TelemetryEncoder encoder = new TelemetryEncoder();
+
+	@Setup
+	public void createData() {
+		data = new TelemetryData(TRUCK_ID, true, new SplitMix64(42));
+		data.setTimeStamp(1465985004000L);
+		data.setPosition(new Position(48.15301418564581, 11.51435004278778));
+		data.setSpeed(9.863748019093341);
+		data.setBearing(324.08819041630136);
+	}
+
+	@Benchmark
+	public JsonObject freshGson() {
+		Gson gson = new GsonBuilder()
+				.registerTypeAdapter(RouteSegment.class, new RouteSegmentAdapter())
+				.registerTypeAdapter(RouteSegment[].class, new RouteSegmentArrayAdapter())
+				.registerTypeAdapter(Position.class, new PositionAdapter())
+				.registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+				.create();
+		return new JsonObject(gson.toJson(data)).put("truckId", TRUCK_ID);
+	}
+
+	@Benchmark
+	public JsonObject sharedGson() {
+		return new JsonObject(Serializer.get().toJson(data)).put("truckId", TRUCK_ID);
+	}
+
+	@Benchmark
+	public JsonObject jsonObject() {
+		return TelemetryDataWriter.toJson(data, TRUCK_ID);
+	}
+
+	@Benchmark
+	public int streaming() {
+		buffer.setLength(0);
+		TelemetryDataWriter.write(data, TRUCK_ID, buffer);
+		return buffer.length();
+	}
+
+	@Benchmark
+	public TelemetryMessage message() {
+		return TelemetryMessage.of(TRUCK_ID, data);
+	}
+
+	@Benchmark
+	public int wire() {
+		Buffer wire = Buffer.buffer(128);
+		codec.encodeToWire(wire, TelemetryMessage.of(TRUCK_ID, data));
+		return wire.length();
+	}
+
+	@Benchmark
+	public int binary() {
+		encoder.reset();
+		return encoder.encode(TelemetryMessage.of(TRUCK_ID, data)).length();
+	}
+
+}
@@ -0,0 +1,198 @@
+package trucksimulation.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.Bus;
+import trucksimulation.HttpNotificationVerticle;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.receiver.TelemetryReceiverVerticle;
+import trucksimulation.trucks.TelemetryMessage;
+
+/**
+ * End-to-end load test of the http notifications: a synthetic fleet publishes deteriorated box messages at a fixed
+ * rate, the {@link HttpNotificationVerticle} posts them to a {@link TelemetryReceiverVerticle} in the same JVM.
+ * Prints the sink's and the receiver's statistics once per second and a summary of the sustained throughput,
+ * the delivery latency and the heap usage at the end.
+ *
+ * Run with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=trucksimulation.benchmarks.SinkLoadBenchmark -Dexec.args="trucks=20000 batchSize=100"</code>
+ *
+ * Arguments (all optional): <code>trucks</code> (10000), <code>interval</code> seconds between two messages of a truck (1),
+ * <code>duration</code> in seconds (30), <code>format</code> (json), <code>batchSize</code> (1), <code>batchMs</code> (0),
+ * <code>maxInFlight</code> (64), <code>maxPending</code> (10000), <code>compression</code> (none),
+ * <code>latency</code> and <code>errorRate</code> of the receiver (0).
+ */
+public class SinkLoadBenchmark {
+
+	private static final String PATH = "/telematics";
+	private static final long TICK_MS = 50;
+	private static final long DRAIN_MS = 10000;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> params = new HashMap<>();
+		for(String arg : args) {
+			String[] kv = arg.split("=", 2);
+			params.put(kv[0], kv.length > 1 ? kv[1] : "");
+		}
+		int trucks = Integer.parseInt(params.getOrDefault("trucks", "10000"));
+		double interval = Double.parseDouble(params.getOrDefault("interval", "1"));
+		int duration = Integer.parseInt(params.getOrDefault("duration", "30"));
+
+		Vertx vertx = Vertx.vertx();
+		TelemetryMessageCodec.register(vertx.eventBus());
+		TelemetryReceiverVerticle receiver = new TelemetryReceiverVerticle();
+		deploy(vertx, receiver, new JsonObject().put("receiver", new JsonObject()
+				.put("port", 0)
+				.put("path", PATH)
+				.put("latency", Long.parseLong(params.getOrDefault("latency", "0")))
+				.put("errorRate", Double.parseDouble(params.getOrDefault("errorRate", "0")))));
+		deploy(vertx, new HttpNotificationVerticle(), new JsonObject().put("simulation", new JsonObject()
+				.put("receiverUrl", "http://localhost:" + receiver.getPort() + PATH)
+				.put("receiverFormat", params.getOrDefault("format", "json"))
+				.put("receiverBatchSize", Integer.parseInt(params.getOrDefault("batchSize", "1")))
+				.put("receiverBatchMs", Long.parseLong(params.getOrDefault("batchMs", "0")))
+				.put("receiverMaxInFlight", Integer.parseInt(params.getOrDefault("maxInFlight", "64")))
+				.put("receiverMaxPending", Long.parseLong(params.getOrDefault("maxPending", "10000")))
+				.put("receiverCompression", params.getOrDefault("compression", "none"))));
+
+		JsonObject[] sinkMetrics = {new JsonObject()};
+		vertx.eventBus().consumer(Bus.RECEIVER_METRICS.address(), msg -> sinkMetrics[0] = (JsonObject) msg.body());
+		HttpClient statsClient = vertx.createHttpClient(new HttpClientOptions().setDefaultHost("localhost").setDefaultPort(receiver.getPort()));
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		System.out.printf("%d trucks, one message every %.1fs per truck, %.0f messages/s for %ds, %s%n",
+				trucks, interval, trucks / interval, duration, params);
+		SyntheticFleet fleet = new SyntheticFleet(trucks, interval);
+		String fleetId = deploy(vertx, fleet, new JsonObject());
+		long start = System.currentTimeMillis();
+		long maxHeap = 0;
+		long received = 0;
+		long receivedAtEnd = -1;
+		long lastChange = start;
+		JsonObject stats = new JsonObject();
+		while(true) {
+			Thread.sleep(1000);
+			long now = System.currentTimeMillis();
+			stats = stats(statsClient);
+			long heap = memory.getHeapMemoryUsage().getUsed();
+			maxHeap = Math.max(maxHeap, heap);
+			JsonObject latency = stats.getJsonObject("latencyMs");
+			System.out.printf("%3ds published %d, received %d, pending %d, dropped %d, failed %d, p50 %dms, p99 %dms, heap %dMB%n",
+					(now - start) / 1000, fleet.published, stats.getLong("messages"),
+					sinkMetrics[0].getLong("pendingMessages", 0L), sinkMetrics[0].getLong("droppedMessages", 0L),
+					sinkMetrics[0].getLong("failedMessages", 0L), latency.getLong("p50"), latency.getLong("p99"), heap >> 20);
+			if(stats.getLong("messages") != received) {
+				received = stats.getLong("messages");
+				lastChange = now;
+			}
+			if(receivedAtEnd < 0 && now - start >= duration * 1000L) {
+				undeploy(vertx, fleetId);
+				receivedAtEnd = received;
+			}
+			if(receivedAtEnd >= 0 && (received >= fleet.published || now - lastChange >= DRAIN_MS)) {
+				break;
+			}
+		}
+		JsonObject latency = stats.getJsonObject("latencyMs");
+		System.out.printf("%nsustained throughput: %.0f messages/s (published %.0f messages/s)%n",
+				receivedAtEnd / (double) duration, fleet.published / (double) duration);
+		System.out.printf("delivered %d of %d messages, %d dropped, %d failed, %d bytes per message%n",
+				received, fleet.published, sinkMetrics[0].getLong("droppedMessages", 0L),
+				sinkMetrics[0].getLong("failedMessages", 0L), received > 0 ? stats.getLong("bytes") / received : 0);
+		System.out.printf("delivery latency: mean %.1fms, p50 %dms, p99 %dms, max %dms%n",
+				latency.getDouble("mean"), latency.getLong("p50"), latency.getLong("p99"), latency.getLong("max"));
+		System.out.printf("max heap used: %dMB%n", maxHeap >> 20);
+		vertx.close();
+	}
+
+	private static String deploy(Vertx vertx, Verticle verticle, JsonObject conf) throws Exception {
+		CompletableFuture<String> deployed = new CompletableFuture<>();
+		vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(conf), res -> {
+			if(res.succeeded()) {
+				deployed.complete(res.result());
+			} else {
+				deployed.completeExceptionally(res.cause());
+			}
+		});
+		return deployed.get(10, TimeUnit.SECONDS);
+	}
+
+	private static void undeploy(Vertx vertx, String deploymentId) throws Exception {
+		CompletableFuture<Void> undeployed = new CompletableFuture<>();
+		vertx.undeploy(deploymentId, res -> undeployed.complete(null));
+		undeployed.get(10, TimeUnit.SECONDS);
+	}
+
+	private static JsonObject stats(HttpClient client) throws Exception {
+		CompletableFuture<JsonObject> stats = new CompletableFuture<>();
+		client.request(HttpMethod.GET, PATH + "/stats", res -> res.bodyHandler(body -> stats.complete(body.toJsonObject()))).end();
+		return stats.get(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Publishes deteriorated box messages of trucks which drive in straight lines, stamped with wall-clock time.
+	 * The trucks send one after the other, spread evenly over the message interval.
+	 */
+	private static class SyntheticFleet extends AbstractVerticle {
+
+		private final int trucks;
+		private final double interval;
+		private final String[] ids;
+		private final double[] lats;
+		private final double[] lons;
+		private final double[] bearings;
+		private volatile long published = 0;
+		private int next = 0;
+		private double due = 0;
+
+		SyntheticFleet(int trucks, double interval) {
+			this.trucks = trucks;
+			this.interval = interval;
+			ids = new String[trucks];
+			lats = new double[trucks];
+			lons = new double[trucks];
+			bearings = new double[trucks];
+			SplittableRandom random = new SplittableRandom(42);
+			for(int i = 0; i < trucks; i++) {
+				ids[i] = String.format("57600524c91aff1b%08d", i);
+				lats[i] = 47.5 + random.nextDouble() * 6;
+				lons[i] = 6 + random.nextDouble() * 9;
+				bearings[i] = random.nextDouble() * 360;
+			}
+		}
+
+		@Override
+		public void start() {
+			double perTick = trucks * TICK_MS / (interval * 1000);
+			vertx.setPeriodic(TICK_MS, t -> {
+				long now = System.currentTimeMillis();
+				due += perTick;
+				for(; due >= 1; due--) {
+					int i = next;
+					next = (next + 1) % trucks;
+					double distance = 20 * interval / 111000;
+					lats[i] += distance * Math.cos(Math.toRadians(bearings[i]));
+					lons[i] += distance * Math.sin(Math.toRadians(bearings[i]));
+					vertx.eventBus().publish(Bus.TELEMETRY_DETER.address(), new TelemetryMessage(ids[i], ids[i], now,
+							lats[i], lons[i], 0, 20, 5, 20, bearings[i], 20));
+					published++;
+				}
+			});
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package trucksimulation.receiver;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.HttpTelemetrySink;
+import trucksimulation.TelemetryDataWriter;
+import trucksimulation.TelemetryEncoder;
+import trucksimulation.TelemetryFormat;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TelemetryReceiverVerticleTest {
+
+	private static final String PATH = "/telematics";
+
+	private Vertx vertx = Vertx.vertx();
+	private HttpClient client;
+
+	@After
+	public void tearDown() {
+		vertx.close();
+	}
+
+	@Test
+	public void testCountsAndValidatesMessages() throws Exception {
+		deploy(new JsonObject());
+		long now = System.currentTimeMillis();
+		TelemetryMessage valid = message(now - 20, 48.1);
+		String json = TelemetryDataWriter.toJson(valid).encode();
+
+		Assert.assertEquals(200, post(TelemetryFormat.JSON, null, Buffer.buffer(json)));
+		Assert.assertEquals(200, post(TelemetryFormat.JSON, null, Buffer.buffer("[" + json + "," + json + "]")));
+		Assert.assertEquals(200, post(TelemetryFormat.NDJSON, "gzip",
+				HttpTelemetrySink.Compression.GZIP.compress(Buffer.buffer(json + "\n" + json + "\n"), 6)));
+		Assert.assertEquals(200, post(TelemetryFormat.BINARY, "deflate", HttpTelemetrySink.Compression.DEFLATE.compress(
+				new TelemetryEncoder().encode(Arrays.asList(valid, valid, valid)), 6)));
+		Assert.assertEquals(400, post(TelemetryFormat.JSON, null, Buffer.buffer(TelemetryDataWriter.toJson(message(now, 123)).encode())));
+		Assert.assertEquals(400, post(TelemetryFormat.JSON, null, Buffer.buffer("{not json")));
+
+		JsonObject stats = stats();
+		Assert.assertEquals(6, (long) stats.getLong("requests"));
+		Assert.assertEquals(8, (long) stats.getLong("messages"));
+		Assert.assertEquals(1, (long) stats.getLong("invalidMessages"));
+		Assert.assertEquals(2, (long) stats.getLong("invalidRequests"));
+		JsonObject latency = stats.getJsonObject("latencyMs");
+		Assert.assertTrue(latency.getLong("p50") >= 20);
+		Assert.assertTrue(latency.getLong("p99") < 5000);
+	}
+
+	@Test
+	public void testInjectsErrorsAndLatency() throws Exception {
+		deploy(new JsonObject().put("errorRate", 0.5).put("latency", 100).put("seed", 1));
+		Buffer body = Buffer.buffer(TelemetryDataWriter.toJson(message(System.currentTimeMillis(), 48.1)).encode());
+		int rejected = 0;
+		long start = System.nanoTime();
+		for(int i = 0; i < 20; i++) {
+			if(post(TelemetryFormat.JSON, null, body) == 503) {
+				rejected++;
+			}
+		}
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 20 * 100);
+		Assert.assertTrue(rejected > 0 && rejected < 20);
+		JsonObject stats = stats();
+		Assert.assertEquals(rejected, (long) stats.getLong("rejectedRequests"));
+		Assert.assertEquals(20 - rejected, (long) stats.getLong("messages"));
+	}
+
+	private void deploy(JsonObject receiverConf) throws Exception {
+		TelemetryReceiverVerticle receiver = new TelemetryReceiverVerticle();
+		JsonObject conf = new JsonObject().put("receiver", receiverConf.put("port", 0).put("path", PATH));
+		CompletableFuture<String> deployed = new CompletableFuture<>();
+		vertx.deployVerticle(receiver, new DeploymentOptions().setConfig(conf), res -> {
+			if(res.succeeded()) {
+				deployed.complete(res.result());
+			} else {
+				deployed.completeExceptionally(res.cause());
+			}
+		});
+		deployed.get(5, TimeUnit.SECONDS);
+		client = vertx.createHttpClient(new HttpClientOptions().setDefaultHost("localhost").setDefaultPort(receiver.getPort()));
+	}
+
+	private int post(TelemetryFormat format, String encoding, Buffer body) throws Exception {
+		CompletableFuture<Integer> status = new CompletableFuture<>();
+		client.post(PATH, res -> status.complete(res.statusCode()))
+				.putHeader("content-type", format.getContentType())
+				.putHeader("content-encoding", encoding != null ? encoding : "identity")
+				.end(body);
+		return status.get(5, TimeUnit.SECONDS);
+	}
+
+	private JsonObject stats() throws Exception {
+		CompletableFuture<JsonObject> stats = new CompletableFuture<>();
+		client.request(HttpMethod.GET, PATH + "/stats", res -> res.bodyHandler(body -> stats.complete(body.toJsonObject()))).end();
+		return stats.get(5, TimeUnit.SECONDS);
+	}
+
+	private TelemetryMessage message(long timeStamp, double lat) {
+		return new TelemetryMessage("truck", "truck", timeStamp, lat, 11.5, 0, 20, 5, 10, 90, 20);
+	}
+
+}
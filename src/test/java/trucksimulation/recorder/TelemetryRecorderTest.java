@@ -0,0 +1,127 @@
+package trucksimulation.recorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import trucksimulation.trucks.TelemetryBatch;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TelemetryRecorderTest {
+
+	private static final int TRUCKS = 100;
+	private static final int ROUNDS = 1500;
+	private static final long START = 1465985004000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRecordsAllMessagesToSeveralSegments() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		List<TelemetryMessage> messages = messages();
+		try(TelemetryRecorder recorder = new TelemetryRecorder(dir, 1 << 20, 60000, Long.MAX_VALUE)) {
+			messages.forEach(recorder::record);
+			recorder.close();
+			Assert.assertEquals(messages.size(), recorder.getRecorded());
+			Assert.assertEquals(0, recorder.getDropped());
+		}
+		TelemetryRecordingReader reader = new TelemetryRecordingReader(dir);
+		Assert.assertTrue(reader.getSegments().size() > 1);
+		List<TelemetryMessage> recorded = new ArrayList<>();
+		reader.read(recorded::add);
+		assertSame(messages, recorded);
+	}
+
+	@Test
+	public void testReadsTimeRangeFromIndex() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		List<TelemetryMessage> messages = messages();
+		try(TelemetryRecorder recorder = new TelemetryRecorder(dir, 1 << 20, 10000, Long.MAX_VALUE)) {
+			messages.forEach(recorder::record);
+		}
+		long from = START + 123 * 5000L;
+		long to = START + 1321 * 5000L;
+		List<TelemetryMessage> expected = messages.stream()
+				.filter(m -> m.getTimeStamp() >= from && m.getTimeStamp() <= to)
+				.collect(Collectors.toList());
+		List<TelemetryMessage> recorded = new ArrayList<>();
+		new TelemetryRecordingReader(dir).read(from, to, recorded::add);
+		assertSame(expected, recorded);
+	}
+
+	@Test
+	public void testRecordsBatchesAndAppendsNewSegments() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		List<TelemetryMessage> messages = messages();
+		TelemetryBatch.Builder builder = new TelemetryBatch.Builder();
+		int half = messages.size() / 2;
+		try(TelemetryRecorder recorder = new TelemetryRecorder(dir, 1 << 20, 60000, Long.MAX_VALUE)) {
+			for(int i = 0; i < half; i++) {
+				builder.add(messages.get(i));
+				if(builder.size() == TRUCKS) {
+					recorder.record(builder.build());
+				}
+			}
+		}
+		int segments = new TelemetryRecordingReader(dir).getSegments().size();
+		try(TelemetryRecorder recorder = new TelemetryRecorder(dir, 1 << 20, 60000, Long.MAX_VALUE)) {
+			messages.subList(half, messages.size()).forEach(recorder::record);
+		}
+		TelemetryRecordingReader reader = new TelemetryRecordingReader(dir);
+		Assert.assertTrue(reader.getSegments().size() > segments);
+		List<TelemetryMessage> recorded = new ArrayList<>();
+		reader.read(recorded::add);
+		assertSame(messages, recorded);
+	}
+
+	@Test
+	public void testDropsMessagesWhenWriterIsBehind() throws IOException {
+		try(TelemetryRecorder recorder = new TelemetryRecorder(folder.getRoot().toPath(), 1 << 20, 60000, 0)) {
+			Assert.assertFalse(recorder.record(messages().get(0)));
+			recorder.close();
+			Assert.assertEquals(1, recorder.getDropped());
+			Assert.assertEquals(0, recorder.getRecorded());
+		}
+	}
+
+	/**
+	 * @return messages of trucks which publish every 5s while driving in different directions
+	 */
+	private List<TelemetryMessage> messages() {
+		List<TelemetryMessage> messages = new ArrayList<>();
+		for(int round = 0; round < ROUNDS; round++) {
+			for(int truck = 0; truck < TRUCKS; truck++) {
+				String id = "57600524c91aff1b6865" + String.format("%04d", truck);
+				double angle = truck * 2 * Math.PI / TRUCKS;
+				messages.add(new TelemetryMessage(id, id, START + round * 5000L,
+						48.1 + truck * 0.01 + round * 0.001 * Math.sin(angle), 11.5 + round * 0.001 * Math.cos(angle),
+						0, 20, 1 + (round + truck) % 7, 22.2 + truck % 5, Math.toDegrees(angle), 20));
+			}
+		}
+		return messages;
+	}
+
+	private void assertSame(List<TelemetryMessage> expected, List<TelemetryMessage> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			TelemetryMessage e = expected.get(i);
+			TelemetryMessage a = actual.get(i);
+			Assert.assertEquals(e.getTruckId(), a.getTruckId());
+			Assert.assertEquals(e.getTimeStamp(), a.getTimeStamp());
+			Assert.assertEquals(e.getLat(), a.getLat(), 1e-7);
+			Assert.assertEquals(e.getLon(), a.getLon(), 1e-7);
+			Assert.assertEquals(e.getHorizontalAccuracy(), a.getHorizontalAccuracy());
+			Assert.assertEquals(e.getSpeed(), a.getSpeed(), 1e-3);
+			Assert.assertEquals(e.getBearing(), a.getBearing(), 1e-2);
+		}
+	}
+
+}
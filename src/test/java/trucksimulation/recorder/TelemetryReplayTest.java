@@ -0,0 +1,88 @@
+package trucksimulation.recorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TelemetryReplayTest {
+
+	private static final long START = 1465985004000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = folder.getRoot().toPath();
+		try(TelemetryRecorder recorder = new TelemetryRecorder(dir, 1 << 20, 1000, Long.MAX_VALUE)) {
+			// 10 trucks sending every second for 10 seconds
+			for(int second = 0; second < 10; second++) {
+				for(int truck = 0; truck < 10; truck++) {
+					recorder.record(new TelemetryMessage("truck" + truck, "truck" + truck, START + second * 1000,
+							48.1 + truck * 0.01, 11.5 + second * 0.001, 0, 20, 5, 10, 90, 20));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPacesMessagesByTheirTime() throws IOException {
+		TelemetryReplay replay = new TelemetryReplay(dir, 20);
+		List<Long> delays = new ArrayList<>();
+		List<TelemetryMessage> replayed = new ArrayList<>();
+		long start = System.nanoTime();
+		long count = replay.replay(Long.MIN_VALUE, Long.MAX_VALUE, START, start, chunk -> {
+			long delay = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			for(TelemetryMessage msg : chunk) {
+				delays.add(delay);
+				replayed.add(msg);
+			}
+		});
+		Assert.assertEquals(100, count);
+		Assert.assertEquals(100, replayed.size());
+		for(int i = 0; i < replayed.size(); i++) {
+			long due = (replayed.get(i).getTimeStamp() - START) / 20;
+			Assert.assertTrue("message " + i + " replayed too early", delays.get(i) >= due);
+			if(i > 0) {
+				Assert.assertTrue(replayed.get(i).getTimeStamp() >= replayed.get(i - 1).getTimeStamp());
+			}
+		}
+		Assert.assertTrue(delays.get(99) >= 450);
+	}
+
+	@Test
+	public void testReplaysRangeAtMaximumSpeed() throws IOException {
+		TelemetryReplay replay = new TelemetryReplay(dir, 0);
+		List<TelemetryMessage> replayed = new ArrayList<>();
+		long count = replay.replay(START + 3000, START + 5000, START + 3000, System.nanoTime(), replayed::addAll);
+		Assert.assertEquals(30, count);
+		for(TelemetryMessage msg : replayed) {
+			Assert.assertTrue(msg.getTimeStamp() >= START + 3000 && msg.getTimeStamp() <= START + 5000);
+		}
+		Assert.assertEquals(START, replay.getReader().getFirstTimeStamp());
+	}
+
+	@Test
+	public void testStopsReplay() throws IOException {
+		TelemetryReplay replay = new TelemetryReplay(dir, 1);
+		List<TelemetryMessage> replayed = new ArrayList<>();
+		long count = replay.replay(Long.MIN_VALUE, Long.MAX_VALUE, START, System.nanoTime(), chunk -> {
+			replayed.addAll(chunk);
+			replay.stop();
+		});
+		Assert.assertEquals(10, count);
+		Assert.assertEquals(10, replayed.size());
+	}
+
+}
@@ -3,6 +3,7 @@ package trucksimulation.traffic;
 import org.junit.Assert;
 import org.junit.Test;
 
+import trucksimulation.routing.Position;
 import trucksimulation.routing.Route;
 import trucksimulation.routing.RouteSegment;
 import trucksimulation.trucks.DestinationArrivedException;
@@ -69,7 +70,27 @@ public class TrafficIncidentTest {
 		
 	}
 	
-	
+	@Test
+	public void testIncidentBesideRouteIsIgnored() {
+		Truck truck = new Truck("fast");
+		truck.setRoute(buildRoute());
+		truck.setSpeed(1000);
+		// roughly 200m east of the first leg of the route
+		TrafficIncident incident = new TrafficIncident();
+		incident.setStart(new Position(1.02, 1.002));
+		incident.setEnd(new Position(1.08, 1.002));
+		truck.addTrafficIncident(incident);
+		
+		while(true) {
+			try {
+				truck.move();
+				Assert.assertNull(truck.getCurIncident());
+			} catch(DestinationArrivedException ex) {
+				break;
+			}
+		}
+		Assert.assertEquals(1, truck.getTrafficIncidents().size());
+	}
 	
 	private Route buildRoute() {
 		RouteSegment seg1 = new RouteSegment();
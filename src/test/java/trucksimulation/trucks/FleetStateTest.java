@@ -0,0 +1,145 @@
+package trucksimulation.trucks;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import trucksimulation.routing.Position;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteSegment;
+
+public class FleetStateTest {
+
+	@Test
+	public void testAdvanceAllMatchesSingleAdvance() {
+		FleetState batch = new FleetState(2);
+		FleetState single = new FleetState(2);
+		int[] batchSlots = new int[3];
+		int[] singleSlots = new int[3];
+		for(int i = 0; i < 3; i++) {
+			batchSlots[i] = batch.allocate(0);
+			singleSlots[i] = single.allocate(0);
+			batch.setRoute(batchSlots[i], buildRoute());
+			single.setRoute(singleSlots[i], buildRoute());
+			batch.setSpeed(batchSlots[i], 100 + i * 500);
+			single.setSpeed(singleSlots[i], 100 + i * 500);
+		}
+		for(int step = 0; step < 200; step++) {
+			batch.advanceAll(1);
+			for(int i = 0; i < 3; i++) {
+				single.advance(singleSlots[i], 1);
+				Assert.assertEquals(single.getStatus(singleSlots[i]), batch.getStatus(batchSlots[i]));
+				Assert.assertEquals(single.getLat(singleSlots[i]), batch.getLat(batchSlots[i]), 1e-12);
+				Assert.assertEquals(single.getLon(singleSlots[i]), batch.getLon(batchSlots[i]), 1e-12);
+				Assert.assertEquals(single.getTimestamp(singleSlots[i]), batch.getTimestamp(batchSlots[i]));
+			}
+		}
+	}
+
+	@Test
+	public void testArrivalIsSignalledOnce() {
+		FleetState fleet = new FleetState();
+		int slot = fleet.allocate(0);
+		fleet.setRoute(slot, buildRoute());
+		int arrivals = 0;
+		for(int step = 0; step < 20000; step++) {
+			fleet.advanceAll(1);
+			if(fleet.getStatus(slot) == FleetState.ARRIVED) {
+				arrivals++;
+			}
+		}
+		Assert.assertEquals(1, arrivals);
+		Assert.assertTrue(fleet.isAtGoal(slot));
+		Assert.assertEquals(FleetState.WAITING, fleet.getStatus(slot));
+	}
+
+	@Test
+	public void testPassesSeveralPointsInOneStep() {
+		FleetState fleet = new FleetState();
+		int slot = fleet.allocate(0);
+		Route route = buildRoute();
+		fleet.setRoute(slot, route);
+		double distance = route.getIndex().getDistance(7) + 10;
+		fleet.setSpeed(slot, distance);
+		fleet.advanceAll(1);
+		Assert.assertEquals(FleetState.MOVED, fleet.getStatus(slot));
+		Assert.assertEquals(distance, fleet.getOffset(slot), 1e-6);
+		Assert.assertEquals(1, fleet.getSegment(slot));
+		Assert.assertEquals(3, fleet.getPoint(slot));
+		Position expected = route.getIndex().getPositionAt(distance);
+		Assert.assertEquals(expected.getLat(), fleet.getLat(slot), 1e-12);
+		Assert.assertEquals(expected.getLon(), fleet.getLon(slot), 1e-12);
+		Assert.assertEquals(route.getSegment(1).getSpeed(), fleet.getSpeed(slot), 0);
+	}
+
+	@Test
+	public void testPausedTruckDoesNotMove() {
+		FleetState fleet = new FleetState();
+		int slot = fleet.allocate(0);
+		fleet.setRoute(slot, buildRoute());
+		fleet.setIdle(slot, 2);
+		double lat = fleet.getLat(slot);
+		fleet.advanceAll(1);
+		Assert.assertEquals(FleetState.PAUSED, fleet.getStatus(slot));
+		fleet.advanceAll(1);
+		Assert.assertEquals(FleetState.BREAK_COMPLETED, fleet.getStatus(slot));
+		Assert.assertEquals(lat, fleet.getLat(slot), 0);
+		fleet.advanceAll(1);
+		Assert.assertEquals(FleetState.MOVED, fleet.getStatus(slot));
+		Assert.assertNotEquals(lat, fleet.getLat(slot), 0);
+	}
+
+	@Test
+	public void testParkedTruckIsSkipped() {
+		FleetState fleet = new FleetState();
+		int slot = fleet.allocate(0);
+		fleet.setRoute(slot, buildRoute());
+		fleet.setIdle(slot, 60);
+		fleet.park(slot);
+		double lat = fleet.getLat(slot);
+		for(int step = 0; step < 100; step++) {
+			fleet.advanceAll(1);
+		}
+		Assert.assertEquals(60, fleet.getIdle(slot));
+		Assert.assertEquals(0, fleet.getTimestamp(slot));
+		fleet.unpark(slot, 60000);
+		Assert.assertEquals(FleetState.BREAK_COMPLETED, fleet.getStatus(slot));
+		fleet.advanceAll(1);
+		Assert.assertEquals(FleetState.MOVED, fleet.getStatus(slot));
+		Assert.assertEquals(61000, fleet.getTimestamp(slot));
+		Assert.assertNotEquals(lat, fleet.getLat(slot), 0);
+	}
+
+	@Test
+	public void testTruckViewMovesToOtherFleet() {
+		Truck truck = new Truck("view");
+		truck.setRoute(buildRoute());
+		truck.move();
+		FleetState fleet = new FleetState();
+		fleet.allocate(0);
+		truck.setFleet(fleet);
+		Assert.assertSame(fleet, truck.getFleet());
+		Assert.assertEquals(1, truck.getSlot());
+		Assert.assertEquals(truck.getPos().getLat(), fleet.getLat(1), 0);
+		Assert.assertSame(truck.getRoute(), fleet.getRoute(1));
+	}
+
+	private Route buildRoute() {
+		RouteSegment seg1 = new RouteSegment();
+		seg1.setLats(1.0, 1.1, 1.11, 1.2, 1.3);
+		seg1.setLons(1.0, 1.0, 1.4, 1.5, 1.5);
+		seg1.setDistance(30);
+		seg1.setTime(1000);
+		RouteSegment seg2 = new RouteSegment();
+		seg2.setLats(1.35, 1.4, 1.5, 1.55);
+		seg2.setLons(1.55, 1.4, 1.3, 1.3);
+		seg2.setDistance(35);
+		seg2.setTime(1000);
+		RouteSegment seg3 = new RouteSegment();
+		seg3.setLats(1.65, 1.7, 1.9, 2.0);
+		seg3.setLons(1.25, 1.2, 1.3, 1.3);
+		Route r = new Route();
+		r.setSegments(seg1, seg2, seg3);
+		return r;
+	}
+
+}
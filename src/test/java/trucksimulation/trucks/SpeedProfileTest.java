@@ -0,0 +1,113 @@
+package trucksimulation.trucks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import trucksimulation.routing.Position;
+import trucksimulation.routing.Route;
+import trucksimulation.routing.RouteSegment;
+import trucksimulation.traffic.TrafficIncident;
+
+public class SpeedProfileTest {
+
+	@Test
+	public void testLazyPositionMatchesStepping() {
+		Truck eager = new Truck("eager");
+		eager.setRoute(buildRoute());
+		Truck lazy = new Truck("lazy");
+		lazy.getFleet().setTimestamp(lazy.getSlot(), eager.getTimestamp());
+		lazy.setLazy(true);
+		lazy.setRoute(buildRoute());
+		long arrivalTime = lazy.getArrivalTime();
+		Assert.assertNotEquals(Long.MAX_VALUE, arrivalTime);
+
+		while(true) {
+			try {
+				eager.move();
+			} catch(DestinationArrivedException ex) {
+				break;
+			}
+			if(eager.getTimestamp() % 5000 == 0) {
+				lazy.materialize(eager.getTimestamp());
+				lazy.completeMove();
+				// speed changes take effect one step later when moving in steps of one second
+				Assert.assertEquals(eager.getRouteOffset(), lazy.getRouteOffset(), 50);
+				Assert.assertEquals(eager.getPos().getLat(), lazy.getPos().getLat(), 0.001);
+				Assert.assertEquals(lazy.getPos(), lazy.getTelemetryBox().getTelemetryData().getPosition());
+			}
+		}
+		Assert.assertEquals(eager.getTimestamp(), arrivalTime, 2000);
+		lazy.materialize(arrivalTime);
+		try {
+			lazy.completeMove();
+			Assert.fail("arrival must be signalled");
+		} catch(DestinationArrivedException ex) {
+			Assert.assertEquals(eager.getPos(), lazy.getPos());
+		}
+	}
+
+	@Test
+	public void testPauseAndIncidentBreakpoints() {
+		Route route = buildRoute();
+		Truck undisturbed = new Truck("undisturbed");
+		undisturbed.setLazy(true);
+		undisturbed.setRoute(route);
+
+		Truck truck = new Truck("lazy");
+		truck.getFleet().setTimestamp(truck.getSlot(), undisturbed.getTimestamp());
+		truck.setLazy(true);
+		truck.setRoute(route);
+		truck.pause(1);
+		TrafficIncident incident = new TrafficIncident();
+		incident.setStart(new Position(1.1, 1.0));
+		incident.setEnd(new Position(1.2, 1.5));
+		incident.setSpeed(1.0);
+		truck.addTrafficIncident(incident);
+		List<TruckEventListener.EventType> events = new ArrayList<>();
+		truck.setTrafficEventListener((t, type) -> events.add(type));
+
+		long start = truck.getTimestamp();
+		SpeedProfile profile = truck.getSpeedProfile();
+		Assert.assertEquals(SpeedProfile.PAUSE_END, profile.getType(0));
+		Assert.assertEquals(start + 60000, profile.getTime(0), 0);
+		Assert.assertTrue(truck.getArrivalTime() > undisturbed.getArrivalTime() + 60000);
+
+		truck.materialize(start + 30000);
+		Assert.assertEquals(FleetState.PAUSED, truck.getFleet().getStatus(truck.getSlot()));
+		Assert.assertEquals(30, truck.getFleet().getIdle(truck.getSlot()));
+		Assert.assertEquals(route.getStart(), truck.getPos());
+
+		for(long time = start + 60000; time < truck.getArrivalTime(); time += 600000) {
+			truck.materialize(time);
+			Assert.assertEquals(truck.getRouteOffset(), profile.getOffsetAt(time), 1e-9);
+		}
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals(TruckEventListener.EventType.ENTER_TRAFFIC, events.get(0));
+		Assert.assertEquals(TruckEventListener.EventType.LEAVE_TRAFFIC, events.get(1));
+		Assert.assertNull(truck.getCurIncident());
+		Assert.assertTrue(truck.getTrafficIncidents().isEmpty());
+	}
+
+	private Route buildRoute() {
+		RouteSegment seg1 = new RouteSegment();
+		seg1.setLats(1.0, 1.1, 1.11, 1.2, 1.3);
+		seg1.setLons(1.0, 1.0, 1.4, 1.5, 1.5);
+		seg1.setDistance(30);
+		seg1.setTime(1000);
+		RouteSegment seg2 = new RouteSegment();
+		seg2.setLats(1.35, 1.4, 1.5, 1.55);
+		seg2.setLons(1.55, 1.4, 1.3, 1.3);
+		seg2.setDistance(35);
+		seg2.setTime(1000);
+		RouteSegment seg3 = new RouteSegment();
+		seg3.setLats(1.65, 1.7, 1.9, 2.0);
+		seg3.setLons(1.25, 1.2, 1.3, 1.3);
+		Route r = new Route();
+		r.setSegments(seg1, seg2, seg3);
+		return r;
+	}
+
+}
@@ -0,0 +1,35 @@
+package trucksimulation.trucks;
+
+import java.util.SplittableRandom;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SplitMix64Test {
+
+	@Test
+	public void testProducesSameValuesAsSplittableRandom() {
+		SplitMix64 random = new SplitMix64(42);
+		SplittableRandom expected = new SplittableRandom(42);
+		for(int i = 0; i < 100; i++) {
+			Assert.assertEquals(expected.nextLong(), random.nextLong());
+			Assert.assertEquals(expected.nextDouble(), random.nextDouble(), 0);
+		}
+		SplitMix64 split = random.split();
+		SplittableRandom expectedSplit = expected.split();
+		for(int i = 0; i < 100; i++) {
+			Assert.assertEquals(expectedSplit.nextDouble(), split.nextDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testRestoredStreamContinuesLikeOriginal() {
+		SplitMix64 random = new SplitMix64(7).split();
+		random.nextLong();
+		SplitMix64 restored = new SplitMix64(random.getSeed(), random.getGamma());
+		for(int i = 0; i < 100; i++) {
+			Assert.assertEquals(random.nextLong(), restored.nextLong());
+		}
+	}
+
+}
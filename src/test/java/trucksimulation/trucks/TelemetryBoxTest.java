@@ -0,0 +1,62 @@
+package trucksimulation.trucks;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import trucksimulation.routing.Position;
+
+public class TelemetryBoxTest {
+
+	@Test
+	public void testSlotsAreReused() {
+		TelemetryBox box = new TelemetryBox("truck");
+		Assert.assertNull(box.getTelemetryData());
+		TelemetryData first = box.update(1.0, 1.0, 1000);
+		TelemetryData second = box.update(1.0, 1.001, 2000);
+		TelemetryData third = box.update(1.0, 1.002, 3000);
+		Assert.assertNotSame(first, second);
+		Assert.assertSame(first, third);
+		Assert.assertSame(third, box.getTelemetryData());
+		Assert.assertEquals(new Position(1.0, 1.002), third.getPosition());
+	}
+
+	@Test
+	public void testSpeedAndBearingFromPreviousData() {
+		TelemetryBox box = new TelemetryBox("truck");
+		TelemetryData first = box.update(1.0, 1.0, 1000);
+		Assert.assertEquals(0, first.getSpeed(), 0);
+		TelemetryData second = box.update(1.0, 1.001, 3000);
+		double distance = new Position(1.0, 1.0).getDistance(new Position(1.0, 1.001));
+		Assert.assertEquals(distance / 2, second.getSpeed(), 1e-9);
+		Assert.assertEquals(new Position(1.0, 1.0).getBearing(new Position(1.0, 1.001)), second.getBearing(), 1e-9);
+	}
+
+	@Test
+	public void testCopyIsNotOverwritten() {
+		TelemetryBox box = new TelemetryBox("truck");
+		box.setDeteriorate(true);
+		box.setRandom(new SplitMix64(1));
+		TelemetryData data = box.update(1.0, 1.0, 1000);
+		TelemetryData copy = data.copy();
+		Position pos = new Position(data.getPosition().getLat(), data.getPosition().getLon());
+		Assert.assertNotEquals(new Position(1.0, 1.0), pos);
+		box.update(1.0, 1.001, 2000);
+		box.update(1.0, 1.002, 3000);
+		Assert.assertNotEquals(pos, data.getPosition());
+		Assert.assertEquals(pos, copy.getPosition());
+		Assert.assertEquals(1000, copy.getTimeStamp());
+	}
+
+	@Test
+	public void testRestoredDataContinuesSpeed() {
+		TelemetryBox box = new TelemetryBox("truck");
+		TelemetryData last = new TelemetryData("truck", false);
+		last.setPosition(new Position(1.0, 1.0));
+		last.setTimeStamp(1000);
+		box.setTelemetryData(last);
+		TelemetryData next = box.update(1.0, 1.001, 2000);
+		Assert.assertEquals(new Position(1.0, 1.0).getDistance(new Position(1.0, 1.001)), next.getSpeed(), 1e-9);
+		Assert.assertEquals(new Position(1.0, 1.0), last.getPosition());
+	}
+
+}
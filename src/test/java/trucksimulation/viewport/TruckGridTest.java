@@ -0,0 +1,93 @@
+package trucksimulation.viewport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonArray;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class TruckGridTest {
+
+	private static final BoundingBox MUNICH = new BoundingBox(11.4, 48.0, 11.7, 48.3);
+
+	@Test
+	public void testQueriesTrucksWithinBoundingBox() {
+		TruckGrid grid = new TruckGrid(0.1);
+		grid.update(message("munich", 1, 48.137, 11.575), 1);
+		grid.update(message("berlin", 1, 52.52, 13.405), 1);
+		grid.update(message("edge", 1, 48.0, 11.7), 1);
+		grid.update(message("south", 1, -33.9, -70.6), 1);
+
+		Assert.assertEquals(4, grid.size());
+		Assert.assertEquals(2, query(grid, MUNICH).size());
+		Assert.assertTrue(query(grid, MUNICH).contains("munich"));
+		Assert.assertTrue(query(grid, MUNICH).contains("edge"));
+		Assert.assertEquals(4, query(grid, new BoundingBox(-180, -90, 180, 90)).size());
+		Assert.assertEquals(1, query(grid, new BoundingBox(-71, -34, -70, -33)).size());
+	}
+
+	@Test
+	public void testMovesTrucksBetweenCells() {
+		TruckGrid grid = new TruckGrid(0.1);
+		Assert.assertNull(grid.update(message("truck", 1, 48.137, 11.575), 1));
+		TelemetryMessage prev = grid.update(message("truck", 2, 52.52, 13.405), 2);
+		Assert.assertEquals(1, prev.getTimeStamp());
+		Assert.assertTrue(query(grid, MUNICH).isEmpty());
+		Assert.assertEquals(1, grid.size());
+
+		// messages without position keep the truck at its last known position
+		grid.update(new TelemetryMessage("truck", "truck", 3, Double.NaN, Double.NaN, 0, 20, 5, 10, 90, 20), 3);
+		Assert.assertEquals(2, grid.get("truck").getTimeStamp());
+
+		Assert.assertNotNull(grid.remove("truck"));
+		Assert.assertEquals(0, grid.size());
+		Assert.assertTrue(query(grid, new BoundingBox(-180, -90, 180, 90)).isEmpty());
+	}
+
+	@Test
+	public void testEvictsStaleTrucks() {
+		TruckGrid grid = new TruckGrid(0.1);
+		grid.update(message("munich", 1, 48.137, 11.575), 1);
+		grid.update(message("berlin", 2, 52.52, 13.405), 2);
+		grid.update(message("edge", 3, 48.0, 11.7), 3);
+		// updates without position keep a truck alive
+		grid.update(new TelemetryMessage("munich", "munich", 4, Double.NaN, Double.NaN, 0, 20, 5, 10, 90, 20), 4);
+
+		List<String> evicted = new ArrayList<>();
+		grid.evict(4, msg -> evicted.add(msg.getTruckId()));
+		Assert.assertEquals(2, evicted.size());
+		Assert.assertTrue(evicted.containsAll(list("berlin", "edge")));
+		Assert.assertEquals(list("munich"), query(grid, new BoundingBox(-180, -90, 180, 90)));
+
+		grid.evict(5, msg -> evicted.add(msg.getTruckId()));
+		Assert.assertEquals(0, grid.size());
+		Assert.assertTrue(query(grid, MUNICH).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsInvalidBoundingBox() {
+		BoundingBox.fromJson(new JsonArray().add(11.7).add(48.0).add(11.4).add(48.3));
+	}
+
+	private static List<String> list(String... truckIds) {
+		List<String> list = new ArrayList<>();
+		for(String truckId : truckIds) {
+			list.add(truckId);
+		}
+		return list;
+	}
+
+	private static List<String> query(TruckGrid grid, BoundingBox bbox) {
+		List<String> trucks = new ArrayList<>();
+		grid.query(bbox, msg -> trucks.add(msg.getTruckId()));
+		return trucks;
+	}
+
+	private static TelemetryMessage message(String truckId, long ts, double lat, double lon) {
+		return new TelemetryMessage(truckId, truckId, ts, lat, lon, 0, 20, 5, 10, 90, 20);
+	}
+
+}
@@ -0,0 +1,203 @@
+package trucksimulation.viewport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import trucksimulation.Bus;
+import trucksimulation.TelemetryMessageCodec;
+import trucksimulation.trucks.TelemetryMessage;
+
+public class ViewportStreamerTest {
+
+	private static final JsonArray MUNICH = new JsonArray().add(11.4).add(48.0).add(11.7).add(48.3);
+
+	private Vertx vertx = Vertx.vertx();
+	private Context context;
+	private ViewportStreamer streamer;
+
+	@Before
+	public void setUp() throws Exception {
+		TelemetryMessageCodec.register(vertx.eventBus());
+		context = vertx.getOrCreateContext();
+		streamer = onContext(() -> {
+			ViewportStreamer s = new ViewportStreamer(vertx, 0.1, 10, 60000);
+			s.start(true);
+			return s;
+		});
+	}
+
+	@After
+	public void tearDown() {
+		vertx.close();
+	}
+
+	@Test
+	public void testStreamsOnlyTrucksWithinViewport() throws Exception {
+		publish("munich", 1, 48.137, 11.575);
+		publish("berlin", 1, 52.52, 13.405);
+		BlockingQueue<JsonObject> updates = receive("map");
+		BlockingQueue<JsonObject> worldUpdates = receive("world");
+		JsonObject reply = subscribe(new JsonObject().put("id", "map").put("bbox", MUNICH).put("maxRate", 20)).result();
+		Assert.assertEquals(ViewportStreamer.address("map"), reply.getString("address"));
+		subscribe(new JsonObject().put("id", "world").put("bbox", new JsonArray().add(-180).add(-90).add(180).add(90)));
+
+		Assert.assertEquals(list("munich"), trucks(updates.poll(5, TimeUnit.SECONDS)));
+		Assert.assertEquals(2, worldUpdates.poll(5, TimeUnit.SECONDS).getJsonArray("trucks").size());
+
+		// berlin moves into the viewport, munich leaves it, hamburg stays outside, all before the next update
+		onContext(() -> {
+			streamer.update(message("berlin", 2, 48.2, 11.6), false);
+			streamer.update(message("munich", 2, 48.4, 11.575), false);
+			streamer.update(message("hamburg", 2, 53.55, 9.99), false);
+			return null;
+		});
+		JsonObject update = updates.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals(list("berlin"), trucks(update));
+		Assert.assertEquals(new JsonArray().add("munich"), update.getJsonArray("removed"));
+		Assert.assertNull(updates.poll(300, TimeUnit.MILLISECONDS));
+
+		JsonObject worldUpdate = worldUpdates.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals(3, worldUpdate.getJsonArray("trucks").size());
+		Assert.assertTrue(worldUpdate.getJsonArray("removed").isEmpty());
+	}
+
+	@Test
+	public void testCoalescesUpdatesToMaxRate() throws Exception {
+		BlockingQueue<JsonObject> updates = receive("map");
+		subscribe(new JsonObject().put("id", "map").put("bbox", MUNICH).put("maxRate", 2));
+		for(int i = 1; i <= 50; i++) {
+			publish("munich", i, 48.1 + i * 0.001, 11.575);
+		}
+		List<JsonObject> received = new ArrayList<>();
+		long end = System.currentTimeMillis() + 1200;
+		JsonObject update;
+		while((update = updates.poll(end - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) != null) {
+			received.add(update);
+		}
+		Assert.assertTrue(received.size() >= 1 && received.size() <= 3);
+		JsonArray trucks = received.get(received.size() - 1).getJsonArray("trucks");
+		Assert.assertEquals(1, trucks.size());
+		Assert.assertEquals(50, (long) trucks.getJsonObject(0).getLong("timeStamp"));
+	}
+
+	@Test
+	public void testMovesViewport() throws Exception {
+		publish("munich", 1, 48.137, 11.575);
+		publish("berlin", 1, 52.52, 13.405);
+		BlockingQueue<JsonObject> updates = receive("map");
+		subscribe(new JsonObject().put("id", "map").put("bbox", MUNICH));
+		Assert.assertEquals(list("munich"), trucks(updates.poll(5, TimeUnit.SECONDS)));
+
+		subscribe(new JsonObject().put("id", "map").put("bbox", new JsonArray().add(13).add(52).add(14).add(53)));
+		JsonObject update = updates.poll(5, TimeUnit.SECONDS);
+		Assert.assertEquals(list("berlin"), trucks(update));
+		Assert.assertEquals(new JsonArray().add("munich"), update.getJsonArray("removed"));
+		Assert.assertEquals(1, (int) onContext(streamer::getViewportCount));
+	}
+
+	@Test
+	public void testRemovesStaleTrucks() throws Exception {
+		publish("munich", 1, 48.137, 11.575);
+		BlockingQueue<JsonObject> updates = receive("map");
+		subscribe(new JsonObject().put("id", "map").put("bbox", MUNICH));
+		Assert.assertEquals(list("munich"), trucks(updates.poll(5, TimeUnit.SECONDS)));
+
+		// munich has sent no telemetry for longer than the ttl, e.g. because its simulation has been stopped
+		onContext(() -> {
+			streamer.evictStale(System.currentTimeMillis() + 60001);
+			return null;
+		});
+		JsonObject update = updates.poll(5, TimeUnit.SECONDS);
+		Assert.assertTrue(update.getJsonArray("trucks").isEmpty());
+		Assert.assertEquals(new JsonArray().add("munich"), update.getJsonArray("removed"));
+
+		// a new viewport no longer sees the truck
+		BlockingQueue<JsonObject> otherUpdates = receive("other");
+		subscribe(new JsonObject().put("id", "other").put("bbox", MUNICH));
+		Assert.assertNull(otherUpdates.poll(300, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testBindsViewportsToSocket() throws Exception {
+		JsonObject request = new JsonObject().put("id", "map").put("bbox", MUNICH).put("socket", "socket1");
+		Assert.assertTrue(subscribe(request).succeeded());
+		AsyncResult<JsonObject> foreign = subscribe(request.copy().put("socket", "socket2"));
+		Assert.assertEquals(409, ((ReplyException) foreign.cause()).failureCode());
+		AsyncResult<JsonObject> invalid = subscribe(new JsonObject().put("id", "other").put("bbox", new JsonArray().add(1)));
+		Assert.assertEquals(400, ((ReplyException) invalid.cause()).failureCode());
+
+		Assert.assertEquals(1, (int) onContext(streamer::getViewportCount));
+		Assert.assertFalse(onContext(() -> streamer.unsubscribe("map", "socket2")));
+		onContext(() -> {
+			streamer.closeSocket("socket1");
+			return null;
+		});
+		Assert.assertEquals(0, (int) onContext(streamer::getViewportCount));
+	}
+
+	private void publish(String truckId, long ts, double lat, double lon) {
+		vertx.eventBus().publish(Bus.TELEMETRY.address(), message(truckId, ts, lat, lon));
+	}
+
+	private static TelemetryMessage message(String truckId, long ts, double lat, double lon) {
+		return new TelemetryMessage(truckId, truckId, ts, lat, lon, 0, 20, 5, 10, 90, 20);
+	}
+
+	private BlockingQueue<JsonObject> receive(String viewport) throws Exception {
+		BlockingQueue<JsonObject> updates = new LinkedBlockingQueue<>();
+		CompletableFuture<Void> registered = new CompletableFuture<>();
+		vertx.eventBus().consumer(ViewportStreamer.address(viewport), (Message<JsonObject> msg) -> updates.add(msg.body()))
+				.completionHandler(h -> registered.complete(null));
+		registered.get(5, TimeUnit.SECONDS);
+		return updates;
+	}
+
+	private AsyncResult<JsonObject> subscribe(JsonObject request) throws Exception {
+		CompletableFuture<AsyncResult<JsonObject>> reply = new CompletableFuture<>();
+		vertx.eventBus().send(Bus.VIEWPORT_SUBSCRIBE.address(), request, (AsyncResult<Message<JsonObject>> h) -> {
+			reply.complete(h.succeeded() ? Future.succeededFuture(h.result().body()) : Future.failedFuture(h.cause()));
+		});
+		return reply.get(5, TimeUnit.SECONDS);
+	}
+
+	private <T> T onContext(Supplier<T> action) throws Exception {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		context.runOnContext(v -> result.complete(action.get()));
+		return result.get(5, TimeUnit.SECONDS);
+	}
+
+	private static List<String> list(String... truckIds) {
+		List<String> list = new ArrayList<>();
+		for(String truckId : truckIds) {
+			list.add(truckId);
+		}
+		return list;
+	}
+
+	private static List<String> trucks(JsonObject update) {
+		List<String> trucks = new ArrayList<>();
+		for(Object truck : update.getJsonArray("trucks")) {
+			trucks.add(((JsonObject) truck).getString("truckId"));
+		}
+		return trucks;
+	}
+
+}